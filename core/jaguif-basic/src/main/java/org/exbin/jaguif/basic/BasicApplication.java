@@ -32,6 +32,7 @@ import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.App;
 import org.exbin.jaguif.ApplicationBundleKeys;
+import org.exbin.jaguif.StartupTracer;
 
 /**
  * Basic framework application.
@@ -51,34 +52,43 @@ public class BasicApplication {
     }
 
     public BasicApplication(DynamicClassLoader dynamicClassLoader, Class manifestClass, @Nullable ResourceBundle appBundle) {
-        App.setAppBundle(appBundle);
-        BasicApplication.this.setAppDirectory(manifestClass);
-        File configDirectory;
-        File appsConfigDirectory;
-        String osName = System.getProperty("os.name").toLowerCase();
-        try {
-            if (osName.startsWith("win")) {
-                String appData = System.getenv("APPDATA");
-                if (appData != null) {
-                    appsConfigDirectory = Paths.get(appData).toFile();
+        try (StartupTracer.Phase phase = StartupTracer.begin("application setup")) {
+            App.setAppBundle(appBundle);
+            BasicApplication.this.setAppDirectory(manifestClass);
+            File configDirectory;
+            File appsConfigDirectory;
+            String osName = System.getProperty("os.name").toLowerCase();
+            try {
+                if (osName.startsWith("win")) {
+                    String appData = System.getenv("APPDATA");
+                    if (appData != null) {
+                        appsConfigDirectory = Paths.get(appData).toFile();
+                    } else {
+                        appsConfigDirectory = Paths.get(System.getProperty("user.home"), "AppData", "Local").toFile();
+                    }
+                } else {
+                    appsConfigDirectory = new File(System.getProperty("user.home"), ".config");
+                }
+                if (appBundle == null) {
+                    configDirectory = new File(appsConfigDirectory, manifestClass.getName());
                 } else {
-                    appsConfigDirectory = Paths.get(System.getProperty("user.home"), "AppData", "Local").toFile();
+                    configDirectory = new File(appsConfigDirectory, appBundle.getString(ApplicationBundleKeys.APPLICATION_VENDOR_ID) + File.separator + appBundle.getString(ApplicationBundleKeys.APPLICATION_ID) + File.separator + appBundle.getString(ApplicationBundleKeys.APPLICATION_VERSION));
                 }
-            } else {
-                appsConfigDirectory = new File(System.getProperty("user.home"), ".config");
+            } catch (Throwable tw) {
+                Logger.getLogger(BasicApplication.class.getName()).log(Level.SEVERE, "Unable to locate configuration directory", tw);
+                configDirectory = new File("");
             }
-            if (appBundle == null) {
-                configDirectory = new File(appsConfigDirectory, manifestClass.getName());
-            } else {
-                configDirectory = new File(appsConfigDirectory, appBundle.getString(ApplicationBundleKeys.APPLICATION_VENDOR_ID) + File.separator + appBundle.getString(ApplicationBundleKeys.APPLICATION_ID) + File.separator + appBundle.getString(ApplicationBundleKeys.APPLICATION_VERSION));
+            App.setConfigDirectory(configDirectory);
+            if (!configDirectory.getPath().isEmpty()) {
+                StartupTracer.setTraceFile(new File(configDirectory, StartupTracer.TRACE_FILE_NAME));
+            }
+            moduleProvider = new BasicModuleProvider(dynamicClassLoader, manifestClass);
+            moduleProvider.setParallelDiscovery(true);
+            if (!configDirectory.getPath().isEmpty()) {
+                moduleProvider.setModuleIndex(new ModuleIndex(new File(configDirectory, ModuleIndex.INDEX_FILE_NAME)));
             }
-        } catch (Throwable tw) {
-            Logger.getLogger(BasicApplication.class.getName()).log(Level.SEVERE, "Unable to locate configuration directory", tw);
-            configDirectory = new File("");
+            App.setModuleProvider(moduleProvider);
         }
-        App.setConfigDirectory(configDirectory);
-        moduleProvider = new BasicModuleProvider(dynamicClassLoader, manifestClass);
-        App.setModuleProvider(moduleProvider);
     }
 
     @Nonnull
@@ -18,6 +18,8 @@ package org.exbin.jaguif.basic;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -29,7 +31,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +52,7 @@ import org.exbin.jaguif.LauncherModule;
 import org.exbin.jaguif.Module;
 import org.exbin.jaguif.ModuleProvider;
 import org.exbin.jaguif.PluginModule;
+import org.exbin.jaguif.StartupTracer;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -57,9 +67,38 @@ public class BasicModuleProvider implements ModuleProvider {
     private Class manifestClass;
     private static final String MODULE_ID = "MODULE_ID";
     private static final String MODULE_FILE = "module.xml";
+    /**
+     * Module identifiers declared by module interfaces.
+     * <p>
+     * MODULE_ID field is expected not to change once initialized.
+     */
+    private static final ClassValue<String> MODULE_IDS = new ClassValue<String>() {
+        @Nullable
+        @Override
+        protected String computeValue(Class<?> interfaceClass) {
+            try {
+                Field declaredField = interfaceClass.getDeclaredField(MODULE_ID);
+                Object moduleId = declaredField.get(null);
+                if (moduleId instanceof String) {
+                    return (String) moduleId;
+                }
+            } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException ex) {
+                Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            return null;
+        }
+    };
     private final Map<String, ModuleRecord> modules = new HashMap<>();
+    private final Map<Class<?>, Module> resolvedModules = new ConcurrentHashMap<>();
+    private volatile int modulesRevision = 0;
     private final Map<String, LibraryRecord> libraries = new HashMap<>();
     private DynamicClassLoader contextClassLoader;
+    private boolean parallelDiscovery = false;
+    private ModuleClassLoaderStrategy classLoaderStrategy = ModuleClassLoaderStrategy.PER_MODULE;
+    private final List<DynamicClassLoader> moduleClassLoaders = new ArrayList<>();
+    private final List<ModuleLayerClassLoader> layerClassLoaders = new ArrayList<>();
+    private final Map<String, Integer> moduleLayers = new HashMap<>();
+    private ModuleIndex moduleIndex = null;
 
     public BasicModuleProvider(DynamicClassLoader contextClassLoader, Class manifestClass) {
         this.contextClassLoader = contextClassLoader;
@@ -68,7 +107,12 @@ public class BasicModuleProvider implements ModuleProvider {
 
     @Override
     public void launch(Runnable runnable) {
-        Thread runThread = new Thread(runnable, "app");
+        Thread runThread = new Thread(() -> {
+            try (StartupTracer.Phase phase = StartupTracer.begin("launch")) {
+                runnable.run();
+            }
+            StartupTracer.finish();
+        }, "app");
         runThread.setContextClassLoader(contextClassLoader);
         runThread.start();
     }
@@ -80,7 +124,10 @@ public class BasicModuleProvider implements ModuleProvider {
             Constructor<?> constructor = launcherClass.getConstructor();
             LauncherModule launcherModule = (LauncherModule) constructor.newInstance();
             Thread runThread = new Thread(() -> {
-                launcherModule.launch(args);
+                try (StartupTracer.Phase phase = StartupTracer.begin("launch")) {
+                    launcherModule.launch(args);
+                }
+                StartupTracer.finish();
             }, "app");
             runThread.setContextClassLoader(contextClassLoader);
             runThread.start();
@@ -92,21 +139,23 @@ public class BasicModuleProvider implements ModuleProvider {
     @Nonnull
     @Override
     public <T extends Module> T getModule(Class<T> interfaceClass) {
-        try {
-            Field declaredField = interfaceClass.getDeclaredField(MODULE_ID);
-            if (declaredField != null) {
-                Object moduleId = declaredField.get(null);
-                if (moduleId instanceof String) {
-                    @SuppressWarnings("unchecked")
-                    T module = (T) getModuleById((String) moduleId);
-                    return module;
-                }
+        Module module = resolvedModules.get(interfaceClass);
+        if (module == null) {
+            int revision = modulesRevision;
+            String moduleId = MODULE_IDS.get(interfaceClass);
+            if (moduleId == null) {
+                throw new IllegalArgumentException("Module for class " + interfaceClass.getCanonicalName() + " was not found.");
+            }
+
+            module = getModuleById(moduleId);
+            if (revision == modulesRevision) {
+                resolvedModules.put(interfaceClass, module);
             }
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException ex) {
-            Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, null, ex);
         }
 
-        throw new IllegalArgumentException("Module for class " + interfaceClass.getCanonicalName() + " was not found.");
+        @SuppressWarnings("unchecked")
+        T result = (T) module;
+        return result;
     }
 
     @Nonnull
@@ -115,13 +164,60 @@ public class BasicModuleProvider implements ModuleProvider {
         return manifestClass;
     }
 
+    public boolean isParallelDiscovery() {
+        return parallelDiscovery;
+    }
+
+    /**
+     * Sets whether library files should be scanned for module declarations
+     * in parallel.
+     *
+     * @param parallelDiscovery true for parallel scanning
+     */
+    public void setParallelDiscovery(boolean parallelDiscovery) {
+        this.parallelDiscovery = parallelDiscovery;
+    }
+
+    @Nullable
+    public ModuleIndex getModuleIndex() {
+        return moduleIndex;
+    }
+
+    /**
+     * Sets persistent index of module declarations used to skip reading of
+     * unchanged library files.
+     *
+     * @param moduleIndex module index or null to read all library files
+     */
+    public void setModuleIndex(@Nullable ModuleIndex moduleIndex) {
+        this.moduleIndex = moduleIndex;
+    }
+
+    @Nonnull
+    public ModuleClassLoaderStrategy getClassLoaderStrategy() {
+        return classLoaderStrategy;
+    }
+
+    /**
+     * Sets strategy for class loaders of preloaded modules.
+     * <p>
+     * Must be set before modules are initialized.
+     *
+     * @param classLoaderStrategy class loader strategy
+     */
+    public void setClassLoaderStrategy(ModuleClassLoaderStrategy classLoaderStrategy) {
+        this.classLoaderStrategy = classLoaderStrategy;
+    }
+
     public void addModulesFromPath(URI pathUri, ModuleFileLocation fileLocation) {
         File directory = new File(pathUri);
         if (directory.exists() && directory.isDirectory()) {
             File[] jarFiles = directory.listFiles((File pathname) -> pathname.isFile() && pathname.getName().endsWith(".jar"));
+            List<ModuleCandidate> candidates = new ArrayList<>();
             for (File jarFile : jarFiles) {
-                addModulePlugin(jarFile.toURI(), fileLocation, false);
+                candidates.add(new ModuleCandidate(jarFile.toURI(), fileLocation, false));
             }
+            addModulePlugins(candidates);
         }
     }
 
@@ -136,9 +232,11 @@ public class BasicModuleProvider implements ModuleProvider {
     public void addClassPathModules() {
         String classpath = System.getProperty("java.class.path");
         String[] classpathEntries = classpath.split(File.pathSeparator);
+        List<ModuleCandidate> candidates = new ArrayList<>();
         for (String classpathEntry : classpathEntries) {
-            addModulePlugin(new File(classpathEntry).toURI(), BasicModuleFileLocation.CLASSPATH, true);
+            candidates.add(new ModuleCandidate(new File(classpathEntry).toURI(), BasicModuleFileLocation.CLASSPATH, true));
         }
+        addModulePlugins(candidates);
     }
 
     public void addModulesFromManifest(Class manifestClass) {
@@ -150,13 +248,15 @@ public class BasicModuleProvider implements ModuleProvider {
             String classPaths = manifest.getMainAttributes().getValue(new Attributes.Name("Class-Path"));
             String[] paths = classPaths.split(" ");
             String rootDirectory = new File(moduleClassLocation.toURI()).getParentFile().toURI().toString();
+            List<ModuleCandidate> candidates = new ArrayList<>();
             for (String path : paths) {
                 try {
-                    addModulePlugin(new URI(rootDirectory + path), BasicModuleFileLocation.MANIFEST, true);
+                    candidates.add(new ModuleCandidate(new URI(rootDirectory + path), BasicModuleFileLocation.MANIFEST, true));
                 } catch (URISyntaxException ex) {
                     // Ignore
                 }
             }
+            addModulePlugins(candidates);
         } catch (IOException | URISyntaxException ex) {
             // Ignore
         }
@@ -215,14 +315,7 @@ public class BasicModuleProvider implements ModuleProvider {
 
         if (preloaded) {
             try {
-                DynamicClassLoader loader;
-                //                    try {
-                //                        loader = new DynamicClassLoader("classpath", contextClassLoader);
-                //                    } catch (Throwable tw) {
-                // Alternative when executed from Java 8
-                loader = new DynamicClassLoader(contextClassLoader);
-                //                    }
-
+                DynamicClassLoader loader = getModuleClassLoader(moduleRecord);
                 loader.add(moduleLink.toURL());
                 Class<?> clazz = Class.forName(moduleRecord.getModuleId(), true, loader);
 
@@ -256,105 +349,308 @@ public class BasicModuleProvider implements ModuleProvider {
         return module;
     }
 
+    @Nonnull
+    private DynamicClassLoader getModuleClassLoader(BasicModuleRecord moduleRecord) {
+        if (classLoaderStrategy == ModuleClassLoaderStrategy.PER_MODULE) {
+            DynamicClassLoader loader = new DynamicClassLoader(contextClassLoader);
+            moduleClassLoaders.add(loader);
+            return loader;
+        }
+
+        // Module is placed above layers of all its dependencies
+        int layer = 0;
+        for (String dependencyModuleId : moduleRecord.getDependencyModuleIds()) {
+            Integer dependencyLayer = moduleLayers.get(dependencyModuleId);
+            if (dependencyLayer != null && dependencyLayer >= layer) {
+                layer = dependencyLayer + 1;
+            }
+        }
+        while (layerClassLoaders.size() <= layer) {
+            ClassLoader parent = layerClassLoaders.isEmpty() ? contextClassLoader : layerClassLoaders.get(layerClassLoaders.size() - 1);
+            ModuleLayerClassLoader layerClassLoader = new ModuleLayerClassLoader(parent, layerClassLoaders.size());
+            layerClassLoaders.add(layerClassLoader);
+            moduleClassLoaders.add(layerClassLoader);
+        }
+        moduleLayers.put(moduleRecord.getModuleId(), layer);
+        return layerClassLoaders.get(layer);
+    }
+
+    /**
+     * Returns number of class loaders created for preloaded modules.
+     *
+     * @return number of class loaders
+     */
+    public int getModuleClassLoadersCount() {
+        return moduleClassLoaders.size();
+    }
+
+    /**
+     * Returns number of classes loaded by module class loaders including
+     * context class loader.
+     *
+     * @return number of loaded classes
+     */
+    public int getLoadedClassesCount() {
+        int loadedClassesCount = contextClassLoader.getLoadedClassesCount();
+        for (DynamicClassLoader moduleClassLoader : moduleClassLoaders) {
+            loadedClassesCount += moduleClassLoader.getLoadedClassesCount();
+        }
+        return loadedClassesCount;
+    }
+
+    private void logClassLoadingStatistics() {
+        long metaspaceUsed = -1;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(memoryPool.getName())) {
+                metaspaceUsed = memoryPool.getUsage().getUsed();
+            }
+        }
+        Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.INFO, "Module class loading ({0}): {1} class loaders, {2} classes loaded, metaspace used {3} kB",
+                new Object[]{classLoaderStrategy, moduleClassLoaders.size(), getLoadedClassesCount(), metaspaceUsed < 0 ? "?" : String.valueOf(metaspaceUsed / 1024)});
+    }
+
+    /**
+     * Registers modules and libraries of given library files.
+     * <p>
+     * Module declarations are read in parallel when enabled and registered in
+     * order of library files.
+     *
+     * @param candidates library files
+     */
+    void addModulePlugins(List<ModuleCandidate> candidates) {
+        try (StartupTracer.Phase phase = StartupTracer.begin("module discovery")) {
+            long startTime = System.nanoTime();
+            if (moduleIndex != null) {
+                moduleIndex.load();
+            }
+
+            List<ModuleIndex.Entry> entries = readModuleEntries(candidates);
+            for (int i = 0; i < candidates.size(); i++) {
+                addModulePlugin(candidates.get(i), entries.get(i));
+            }
+
+            if (moduleIndex != null) {
+                moduleIndex.save();
+            }
+            Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.INFO, "Discovery of {0} library files took {1} ms{2}", new Object[]{candidates.size(), (System.nanoTime() - startTime) / 1000000,
+                moduleIndex == null ? "" : " (index hits: " + moduleIndex.getHitCount() + ", misses: " + moduleIndex.getMissCount() + ")"});
+        }
+    }
+
+    @Nonnull
+    private List<ModuleIndex.Entry> readModuleEntries(List<ModuleCandidate> candidates) {
+        List<ModuleIndex.Entry> entries = new ArrayList<>();
+        int threadsCount = Math.min(Runtime.getRuntime().availableProcessors(), candidates.size());
+        if (!parallelDiscovery || threadsCount < 2) {
+            for (ModuleCandidate candidate : candidates) {
+                entries.add(readModuleEntry(candidate.uri));
+            }
+            return entries;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount, (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "moduleDiscovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<ModuleIndex.Entry>> futures = new ArrayList<>();
+            for (ModuleCandidate candidate : candidates) {
+                futures.add(executor.submit(() -> readModuleEntry(candidate.uri)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                ModuleIndex.Entry entry;
+                try {
+                    entry = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, "Library: " + candidates.get(i).uri, ex.getCause());
+                    entry = new ModuleIndex.Entry();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    entry = readModuleEntry(candidates.get(i).uri);
+                }
+                entries.add(entry);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
     /**
-     * Attempts to load main library class if library URL contains valid module
-     * declaration.
+     * Reads module declaration of library file.
+     * <p>
+     * Safe to be called from multiple threads.
      *
      * @param libraryUri library URI
+     * @return module entry
      */
     @Nonnull
-    private BasicModuleRecord addModulePlugin(URI libraryUri, ModuleFileLocation fileLocation, boolean preloaded) {
-        final BasicModuleRecord moduleRecord = new BasicModuleRecord();
-        moduleRecord.setFileLocation(fileLocation);
-        moduleRecord.setClassLoader(contextClassLoader);
-        moduleRecord.setModule(new BasicModuleRecord.ModuleLink(libraryUri, preloaded));
+    private ModuleIndex.Entry readModuleEntry(URI libraryUri) {
+        File libraryFile = null;
+        if ("file".equals(libraryUri.getScheme())) {
+            try {
+                libraryFile = new File(libraryUri);
+            } catch (IllegalArgumentException ex) {
+                // Not a local file
+            }
+        }
 
-        URL moduleRecordUrl = null;
-        InputStream moduleRecordStream = null;
+        if (libraryFile != null) {
+            if (!libraryFile.isFile()) {
+                // Directories and missing files don't contain module declaration
+                return new ModuleIndex.Entry();
+            }
+
+            if (moduleIndex != null) {
+                ModuleIndex.Entry entry = moduleIndex.get(libraryFile);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        ModuleIndex.Entry entry = new ModuleIndex.Entry();
+        boolean complete = true;
         try {
-            moduleRecordUrl = new URL("jar:" + libraryUri.toURL().toExternalForm() + "!/META-INF/" + MODULE_FILE);
-            moduleRecordStream = moduleRecordUrl.openStream();
+            if (libraryFile != null) {
+                try (JarFile jarFile = new JarFile(libraryFile)) {
+                    JarEntry moduleJarEntry = jarFile.getJarEntry("META-INF/" + MODULE_FILE);
+                    if (moduleJarEntry != null) {
+                        try (InputStream moduleRecordStream = jarFile.getInputStream(moduleJarEntry)) {
+                            complete = readModuleFile(moduleRecordStream, entry);
+                        }
+                    }
+                }
+            } else {
+                URL moduleRecordUrl = new URL("jar:" + libraryUri.toURL().toExternalForm() + "!/META-INF/" + MODULE_FILE);
+                try (InputStream moduleRecordStream = moduleRecordUrl.openStream()) {
+                    complete = readModuleFile(moduleRecordStream, entry);
+                }
+            }
+        } catch (IOException ex) {
+            // ignore
+        }
 
+        if (entry.module) {
             // TODO Don't guess it from file name
-            String fileName = libraryUri.toURL().getFile();
-            if (fileName.endsWith(".jar")) {
+            String fileName = libraryUri.getRawPath();
+            if (fileName != null && fileName.endsWith(".jar")) {
                 int lastIndex = fileName.lastIndexOf("-");
                 if (lastIndex > 0) {
                     if (fileName.length() > lastIndex + 9 && "SNAPSHOT".equals(fileName.substring(lastIndex + 1, lastIndex + 9))) {
                         int prevIndex = fileName.lastIndexOf("-", lastIndex - 1);
                         if (prevIndex > 0) {
-                            moduleRecord.setVersion(fileName.substring(prevIndex + 1, fileName.length() - 4));
+                            entry.version = fileName.substring(prevIndex + 1, fileName.length() - 4);
                         }
                     } else {
-                        moduleRecord.setVersion(fileName.substring(lastIndex + 1, fileName.length() - 4));
+                        entry.version = fileName.substring(lastIndex + 1, fileName.length() - 4);
                     }
                 }
             }
-        } catch (IOException ex) {
-            // ignore
         }
 
-        if (moduleRecordStream != null) {
-            try {
-                DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-                Document document = documentBuilder.parse(moduleRecordStream);
-                NodeList moduleNodeList = document.getElementsByTagName("module");
-                if (moduleNodeList.getLength() > 0) {
-                    Node moduleNode = moduleNodeList.item(0);
-                    NodeList childModuleNode = moduleNode.getChildNodes();
-                    for (int i = 0; i < childModuleNode.getLength(); i++) {
-                        Node node = childModuleNode.item(i);
-                        if ("id".equals(node.getNodeName())) {
-                            moduleRecord.setModuleId(node.getTextContent());
-                        } else if ("api".equals(node.getNodeName())) {
-                            moduleRecord.setModuleId(node.getTextContent());
-                            moduleRecord.setType(ModuleType.API);
-                        } else if ("plugin".equals(node.getNodeName())) {
-                            moduleRecord.setModuleId(node.getTextContent());
-                            moduleRecord.setType(ModuleType.PLUGIN);
-                        } else if ("name".equals(node.getNodeName())) {
-                            moduleRecord.setName(node.getTextContent());
-                        } else if ("description".equals(node.getNodeName())) {
-                            moduleRecord.setDescription(node.getTextContent());
-                        } else if ("icon".equals(node.getNodeName())) {
-                            // TODO
-                            String iconPath = node.getTextContent();
-                            moduleRecord.setIcon(null);
-                        } else if ("homepage".equals(node.getNodeName())) {
-                            moduleRecord.setHomepage(node.getTextContent());
-                        } else if ("provider".equals(node.getNodeName())) {
-                            moduleRecord.setProvider(node.getTextContent());
-                        } else if ("dependency".equals(node.getNodeName())) {
-                            List<String> dependecyModuleIds = new ArrayList<>();
-                            List<String> dependecyLibraries = new ArrayList<>();
-                            NodeList childNodes = node.getChildNodes();
-                            for (int j = 0; j < childNodes.getLength(); j++) {
-                                Node depRecord = childNodes.item(j);
-                                if ("module".equals(depRecord.getNodeName())) {
-                                    dependecyModuleIds.add(depRecord.getAttributes().getNamedItem("id").getNodeValue());
-                                } else if ("library".equals(depRecord.getNodeName())) {
-                                    Node mavenAttributeNode = depRecord.getAttributes().getNamedItem("maven");
-                                    if (mavenAttributeNode != null) {
-                                        dependecyLibraries.add(BasicModuleProvider.mavenCodeToFileName(mavenAttributeNode.getNodeValue()));
-                                    } else {
-                                        dependecyLibraries.add(depRecord.getAttributes().getNamedItem("jar").getNodeValue());
-                                    }
+        if (complete && libraryFile != null && moduleIndex != null) {
+            moduleIndex.put(libraryFile, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Parses module declaration file.
+     *
+     * @param moduleRecordStream module declaration stream
+     * @param entry target module entry
+     * @return true if declaration was fully processed
+     */
+    private static boolean readModuleFile(InputStream moduleRecordStream, ModuleIndex.Entry entry) {
+        entry.module = true;
+        try {
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+            Document document = documentBuilder.parse(moduleRecordStream);
+            NodeList moduleNodeList = document.getElementsByTagName("module");
+            if (moduleNodeList.getLength() > 0) {
+                Node moduleNode = moduleNodeList.item(0);
+                NodeList childModuleNode = moduleNode.getChildNodes();
+                for (int i = 0; i < childModuleNode.getLength(); i++) {
+                    Node node = childModuleNode.item(i);
+                    if ("id".equals(node.getNodeName())) {
+                        entry.moduleId = node.getTextContent();
+                    } else if ("api".equals(node.getNodeName())) {
+                        entry.moduleId = node.getTextContent();
+                        entry.type = ModuleType.API;
+                    } else if ("plugin".equals(node.getNodeName())) {
+                        entry.moduleId = node.getTextContent();
+                        entry.type = ModuleType.PLUGIN;
+                    } else if ("name".equals(node.getNodeName())) {
+                        entry.name = node.getTextContent();
+                    } else if ("description".equals(node.getNodeName())) {
+                        entry.description = node.getTextContent();
+                    } else if ("icon".equals(node.getNodeName())) {
+                        // TODO
+                        String iconPath = node.getTextContent();
+                    } else if ("homepage".equals(node.getNodeName())) {
+                        entry.homepage = node.getTextContent();
+                    } else if ("provider".equals(node.getNodeName())) {
+                        entry.provider = node.getTextContent();
+                    } else if ("dependency".equals(node.getNodeName())) {
+                        List<String> dependecyModuleIds = new ArrayList<>();
+                        List<String> dependecyLibraries = new ArrayList<>();
+                        NodeList childNodes = node.getChildNodes();
+                        for (int j = 0; j < childNodes.getLength(); j++) {
+                            Node depRecord = childNodes.item(j);
+                            if ("module".equals(depRecord.getNodeName())) {
+                                dependecyModuleIds.add(depRecord.getAttributes().getNamedItem("id").getNodeValue());
+                            } else if ("library".equals(depRecord.getNodeName())) {
+                                Node mavenAttributeNode = depRecord.getAttributes().getNamedItem("maven");
+                                if (mavenAttributeNode != null) {
+                                    dependecyLibraries.add(BasicModuleProvider.mavenCodeToFileName(mavenAttributeNode.getNodeValue()));
+                                } else {
+                                    dependecyLibraries.add(depRecord.getAttributes().getNamedItem("jar").getNodeValue());
                                 }
                             }
-                            moduleRecord.setDependencyModuleIds(dependecyModuleIds);
-                            moduleRecord.setDependencyLibraries(dependecyLibraries);
                         }
+                        entry.dependencyModuleIds = dependecyModuleIds;
+                        entry.dependencyLibraries = dependecyLibraries;
                     }
                 }
+            }
 //                XBPullReader pullReader = new XBPullReader(moduleRecordStream);
 //                XBPProviderSerialHandler serial = new XBPProviderSerialHandler(new XBToXBTPullConvertor(pullReader));
 //                serial.process(moduleInfo);
-            } catch (IOException | SAXException | ParserConfigurationException ex) {
-                Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, null, ex);
-            }
+        } catch (IOException | SAXException | ParserConfigurationException ex) {
+            Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Registers module or library of library file.
+     *
+     * @param candidate library file
+     * @param entry module entry of library file
+     */
+    private void addModulePlugin(ModuleCandidate candidate, ModuleIndex.Entry entry) {
+        URI libraryUri = candidate.uri;
+        if (entry.module) {
+            BasicModuleRecord moduleRecord = new BasicModuleRecord();
+            moduleRecord.setFileLocation(candidate.fileLocation);
+            moduleRecord.setClassLoader(contextClassLoader);
+            moduleRecord.setModule(new BasicModuleRecord.ModuleLink(libraryUri, candidate.preloaded));
+            moduleRecord.setModuleId(entry.moduleId);
+            moduleRecord.setType(entry.type);
+            moduleRecord.setVersion(entry.version);
+            moduleRecord.setName(entry.name);
+            moduleRecord.setDescription(entry.description);
+            moduleRecord.setHomepage(entry.homepage);
+            moduleRecord.setProvider(entry.provider);
+            moduleRecord.setDependencyModuleIds(entry.dependencyModuleIds);
+            moduleRecord.setDependencyLibraries(entry.dependencyLibraries);
             if (!modules.containsKey(moduleRecord.getModuleId())) {
                 modules.put(moduleRecord.getModuleId(), moduleRecord);
+                invalidateResolvedModules();
             }
         } else {
             try {
@@ -370,11 +666,9 @@ public class BasicModuleProvider implements ModuleProvider {
                 Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-
-        return moduleRecord;
     }
 
-    private void addModule(Module module) {
+    void addModule(Module module) {
         String canonicalName = module.getClass().getCanonicalName();
         BasicModuleRecord moduleInfo = new BasicModuleRecord(canonicalName, module, contextClassLoader);
         URL moduleClassLocation = moduleInfo.getClass().getProtectionDomain().getCodeSource().getLocation();
@@ -396,84 +690,66 @@ public class BasicModuleProvider implements ModuleProvider {
             }
         } */
         modules.put(canonicalName, moduleInfo);
+        invalidateResolvedModules();
+    }
+
+    private void invalidateResolvedModules() {
+        modulesRevision++;
+        resolvedModules.clear();
     }
 
     /**
      * Initializes all modules in order of their dependencies.
      */
     public void initModules() {
-        List<ModuleRecord> unprocessedModules = new ArrayList<>(modules.values());
-        // Priority modules first, ignore dependecy for now
-        {
-            int moduleIndex = 0;
-            while (moduleIndex < unprocessedModules.size()) {
-                ModuleRecord moduleRecord = unprocessedModules.get(moduleIndex);
-//                Module module = moduleRecord.getModule();
-//                if (module instanceof LookAndFeelApplier) {
-                ////                    module.init(moduleHandler);
-//                    unprocessedModules.remove(moduleIndex);
-//                } else {
-                moduleIndex++;
-//                }
-            }
+        try (StartupTracer.Phase phase = StartupTracer.begin("initModules")) {
+            initModulesInOrder();
         }
+    }
 
-        // Process dependencies
-        int preRoundCount;
-        int postRoundCount;
-        do {
-            preRoundCount = unprocessedModules.size();
-
-            int moduleIndex = 0;
-            while (moduleIndex < unprocessedModules.size()) {
-                ModuleRecord moduleRecord = unprocessedModules.get(moduleIndex);
-                // Process single module
-                List<String> dependencyModuleIds = moduleRecord.getDependencyModuleIds();
-                boolean dependecySatisfied = true;
-                for (String dependecyModuleId : dependencyModuleIds) {
-                    ModuleRecord dependecyModule = getModuleRecordById(dependecyModuleId);
-                    if (dependecyModule == null || (dependecyModule.getModule() instanceof BasicModuleRecord.ModuleLink) || findModule(unprocessedModules, dependecyModuleId)) {
-                        dependecySatisfied = false;
-                        break;
-                    }
+    private void initModulesInOrder() {
+        ModuleDependencyGraph dependencyGraph = new ModuleDependencyGraph(modules.values());
+        List<ModuleRecord> unprocessedModules = new ArrayList<>();
+        // Dependencies precede module in initialization order
+        for (ModuleRecord moduleRecord : dependencyGraph.getInitializationOrder()) {
+            boolean dependecySatisfied = true;
+            for (String dependecyModuleId : moduleRecord.getDependencyModuleIds()) {
+                if (!isModuleLoaded(modules.get(dependecyModuleId))) {
+                    dependecySatisfied = false;
+                    break;
                 }
+            }
 
-                if (dependecySatisfied) {
-                    Module module = moduleRecord.getModule();
-                    String moduleId = ((BasicModuleRecord) moduleRecord).getModuleId();
-                    if (module instanceof BasicModuleRecord.ModuleLink && !moduleId.isEmpty()) {
+            if (dependecySatisfied) {
+                Module module = moduleRecord.getModule();
+                String moduleId = moduleRecord.getModuleId();
+                if (module instanceof BasicModuleRecord.ModuleLink && !moduleId.isEmpty()) {
+                    try (StartupTracer.Phase phase = StartupTracer.begin(StartupTracer.MODULE_CATEGORY, "load " + moduleId)) {
                         loadModule((BasicModuleRecord) moduleRecord);
                     }
-//                    module.init(moduleHandler);
-                    unprocessedModules.remove(moduleIndex);
-                } else {
-                    moduleIndex++;
                 }
+            } else {
+                unprocessedModules.add(moduleRecord);
             }
+        }
+        unprocessedModules.addAll(dependencyGraph.getUnorderedModules());
 
-            postRoundCount = unprocessedModules.size();
-        } while (postRoundCount > 0 && postRoundCount < preRoundCount);
-
-        if (postRoundCount > 0) {
+        if (!unprocessedModules.isEmpty()) {
+            StringBuilder builder = new StringBuilder("Unsatisfied dependency detected");
             for (ModuleRecord unprocessedModule : unprocessedModules) {
-                Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, "Unprocessed Module: {0}", unprocessedModule.getModuleId());
-                List<String> dependencyModuleIds = unprocessedModule.getDependencyModuleIds();
-                for (String dependecyModuleId : dependencyModuleIds) {
-                    ModuleRecord dependecyModule = getModuleRecordById(dependecyModuleId);
-                    if (dependecyModule == null || (dependecyModule.getModule() instanceof BasicModuleRecord.ModuleLink) || findModule(unprocessedModules, dependecyModuleId)) {
-                        System.out.println("Missing dep: " + dependecyModuleId);
-                    }
-                }
-            }
-            for (ModuleRecord module : modules.values()) {
-                System.out.println("Module: " + module.getModuleId() + (module.getModule() instanceof BasicModuleRecord.ModuleLink ? " L" : ""));
+                String chain = dependencyGraph.describeUnsatisfied(unprocessedModule.getModuleId(), BasicModuleProvider::isModuleLoaded);
+                Logger.getLogger(BasicModuleProvider.class.getName()).log(Level.SEVERE, "Unprocessed module: {0}", chain);
+                builder.append("\n  ").append(chain);
             }
-            throw new IllegalStateException("Unsatisfied dependency detected");
+            throw new IllegalStateException(builder.toString());
         }
+        logClassLoadingStatistics();
 
         for (ModuleRecord moduleRecord : modules.values()) {
             if (moduleRecord.getType() == ModuleType.PLUGIN) {
-                ((PluginModule) moduleRecord.getModule()).register();
+                try (StartupTracer.Phase phase = StartupTracer.begin(StartupTracer.MODULE_CATEGORY, "register " + moduleRecord.getModuleId())) {
+                    ((PluginModule) moduleRecord.getModule()).register();
+                }
             }
         }
     }
@@ -489,8 +765,8 @@ public class BasicModuleProvider implements ModuleProvider {
         return modules.get(moduleId);
     }
 
-    private boolean findModule(List<ModuleRecord> modules, String moduleId) {
-        return modules.stream().anyMatch((module) -> (moduleId.equals(module.getModuleId())));
+    private static boolean isModuleLoaded(@Nullable ModuleRecord moduleRecord) {
+        return moduleRecord != null && !(moduleRecord.getModule() instanceof BasicModuleRecord.ModuleLink);
     }
 
     /**
@@ -550,4 +826,18 @@ public class BasicModuleProvider implements ModuleProvider {
         URI uri;
         boolean loaded = false;
     }
+
+    @ParametersAreNonnullByDefault
+    static class ModuleCandidate {
+
+        final URI uri;
+        final ModuleFileLocation fileLocation;
+        final boolean preloaded;
+
+        public ModuleCandidate(URI uri, ModuleFileLocation fileLocation, boolean preloaded) {
+            this.uri = uri;
+            this.fileLocation = fileLocation;
+            this.preloaded = preloaded;
+        }
+    }
 }
@@ -16,15 +16,35 @@
 package org.exbin.jaguif.basic;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.Manifest;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**
  * Dynamic class loader.
+ * <p>
+ * Added jar files are indexed by directories (packages) so that lookup of
+ * class or resource reads only jar files owning its directory. Indexed jar
+ * files are opened only by the index. Class path entries which cannot be
+ * indexed and all entries added after them are looked up in class path order
+ * by the URL class loader. Names which were not found are
+ * remembered until class path of any dynamic class loader changes.
  */
 @ParametersAreNonnullByDefault
 public class DynamicClassLoader extends URLClassLoader {
@@ -33,7 +53,21 @@ public class DynamicClassLoader extends URLClassLoader {
         registerAsParallelCapable();
     }
 
+    private static final int MISSING_CACHE_LIMIT = 16384;
+    /**
+     * Changes whenever any dynamic class loader is extended, as parent loader
+     * might be dynamic as well.
+     */
+    private static final AtomicLong CLASS_PATH_GENERATION = new AtomicLong();
+
     private boolean clientFirst = false;
+    private final AtomicInteger loadedClassesCount = new AtomicInteger();
+    private final JarPackageIndex packageIndex = new JarPackageIndex();
+    private final List<URL> classPath = new CopyOnWriteArrayList<>();
+    private volatile int unindexedCount = 0;
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+    private final Set<String> missingResources = ConcurrentHashMap.newKeySet();
+    private volatile long missingGeneration = -1;
 
     /*
      * Required when this classloader is used as the system classloader.
@@ -64,36 +98,257 @@ public class DynamicClassLoader extends URLClassLoader {
         }
     }
 
-    void add(URL url) {
-        addURL(url);
+    synchronized void add(URL url) {
+        // Entries after unindexed entry are left to URL class loader to keep class path order
+        if (unindexedCount > 0 || !packageIndex.addJar(url)) {
+            unindexedCount++;
+            addURL(url);
+        }
+        classPath.add(url);
+        CLASS_PATH_GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Returns all class path entries including indexed jar files.
+     *
+     * @return class path entries in order they were added
+     */
+    @Nonnull
+    @Override
+    public URL[] getURLs() {
+        return classPath.toArray(new URL[0]);
+    }
+
+    @Nonnull
+    public JarPackageIndex getPackageIndex() {
+        return packageIndex;
+    }
+
+    /**
+     * Returns number of classes defined by this class loader.
+     *
+     * @return number of loaded classes
+     */
+    public int getLoadedClassesCount() {
+        return loadedClassesCount.get();
+    }
+
+    protected final void countLoadedClass() {
+        loadedClassesCount.incrementAndGet();
     }
 
     @Nonnull
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        if (clientFirst) {
-            // has the class loaded already?
-            Class<?> loadedClass = findLoadedClass(name);
-            if (loadedClass == null) {
-                try {
-                    // find the class from given jar urls 
-                    loadedClass = findClass(name);
-                } catch (ClassNotFoundException e) {
-                    // Hmmm... class does not exist in the given urls.
-                    // Let's try finding it in our parent classloader.
-                    // this'll throw ClassNotFoundException in failure.                  
-                    loadedClass = super.loadClass(name, resolve);
+        long generation = CLASS_PATH_GENERATION.get();
+        if (isMissing(missingClasses, name, generation)) {
+            throw new ClassNotFoundException(name);
+        }
+
+        try {
+            if (clientFirst) {
+                synchronized (getClassLoadingLock(name)) {
+                    // has the class loaded already?
+                    Class<?> loadedClass = findLoadedClass(name);
+                    if (loadedClass == null) {
+                        try {
+                            // find the class from given jar urls
+                            loadedClass = findClass(name);
+                        } catch (ClassNotFoundException e) {
+                            // Hmmm... class does not exist in the given urls.
+                            // Let's try finding it in our parent classloader.
+                            // this'll throw ClassNotFoundException in failure.
+                            loadedClass = super.loadClass(name, resolve);
+                        }
+                    }
+
+                    // marked to resolve
+                    if (resolve) {
+                        resolveClass(loadedClass);
+                    }
+                    return loadedClass;
                 }
             }
 
-            // marked to resolve
-            if (resolve) {
-                resolveClass(loadedClass);
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException ex) {
+            addMissing(missingClasses, name, generation);
+            throw ex;
+        }
+    }
+
+    @Nonnull
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        JarPackageIndex.IndexedJar jar = packageIndex.findJar(path);
+        if (jar == null) {
+            if (unindexedCount > 0) {
+                Class<?> loadedClass = super.findClass(name);
+                countLoadedClass();
+                return loadedClass;
             }
-            return loadedClass;
+            throw new ClassNotFoundException(name);
+        }
+
+        JarEntry entry = jar.getEntry(path);
+        if (entry == null) {
+            throw new ClassNotFoundException(name);
+        }
+        byte[] classData;
+        try (InputStream stream = jar.getJarFile().getInputStream(entry)) {
+            classData = readFully(stream, (int) entry.getSize());
+        } catch (IOException ex) {
+            throw new ClassNotFoundException(name, ex);
+        }
+
+        int packageEnd = name.lastIndexOf('.');
+        if (packageEnd > 0) {
+            definePackageIfNeeded(name.substring(0, packageEnd), jar);
+        }
+        // Signers are known after the entry was read
+        Class<?> loadedClass = defineClass(name, classData, 0, classData.length, jar.getCodeSource(entry.getCodeSigners()));
+        countLoadedClass();
+        return loadedClass;
+    }
+
+    @Nullable
+    @Override
+    public URL getResource(String name) {
+        long generation = CLASS_PATH_GENERATION.get();
+        if (isMissing(missingResources, name, generation)) {
+            return null;
         }
 
-        return super.loadClass(name, resolve);
+        URL resource = super.getResource(name);
+        if (resource == null) {
+            addMissing(missingResources, name, generation);
+        }
+        return resource;
+    }
+
+    @Nullable
+    @Override
+    public URL findResource(String name) {
+        JarPackageIndex.IndexedJar jar = packageIndex.findJar(name);
+        if (jar != null) {
+            return jar.getResourceUrl(name);
+        }
+        return unindexedCount > 0 ? super.findResource(name) : null;
+    }
+
+    @Nonnull
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> resources = new ArrayList<>();
+        for (JarPackageIndex.IndexedJar jar : packageIndex.findJars(name)) {
+            URL resourceUrl = jar.getResourceUrl(name);
+            if (resourceUrl != null) {
+                resources.add(resourceUrl);
+            }
+        }
+        if (unindexedCount > 0) {
+            // Indexed jar files precede all unindexed entries
+            resources.addAll(Collections.list(super.findResources(name)));
+        }
+        return Collections.enumeration(resources);
+    }
+
+    @Override
+    public void close() throws IOException {
+        packageIndex.close();
+        super.close();
+    }
+
+    private boolean isMissing(Set<String> missingNames, String name, long generation) {
+        if (generation != missingGeneration) {
+            missingClasses.clear();
+            missingResources.clear();
+            missingGeneration = generation;
+            return false;
+        }
+        return missingNames.contains(name);
+    }
+
+    private void addMissing(Set<String> missingNames, String name, long generation) {
+        if (generation != missingGeneration) {
+            return;
+        }
+        if (missingNames.size() >= MISSING_CACHE_LIMIT) {
+            missingNames.clear();
+        }
+        missingNames.add(name);
+        if (CLASS_PATH_GENERATION.get() != generation) {
+            // Class path changed during lookup
+            missingNames.remove(name);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void definePackageIfNeeded(String packageName, JarPackageIndex.IndexedJar jar) {
+        Manifest manifest = jar.getManifest();
+        Package definedPackage = getPackage(packageName);
+        if (definedPackage == null) {
+            try {
+                if (manifest != null) {
+                    definePackage(packageName, manifest, jar.getUrl());
+                } else {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                }
+                return;
+            } catch (IllegalArgumentException ex) {
+                // Package defined concurrently
+                definedPackage = getPackage(packageName);
+                if (definedPackage == null) {
+                    return;
+                }
+            }
+        }
+
+        // Same checks as performed by URL class loader
+        if (definedPackage.isSealed()) {
+            if (!definedPackage.isSealed(jar.getUrl())) {
+                throw new SecurityException("sealing violation: package " + packageName + " is sealed");
+            }
+        } else if (manifest != null && isSealed(packageName, manifest)) {
+            throw new SecurityException("sealing violation: can't seal package " + packageName + ": already loaded");
+        }
+    }
+
+    private static boolean isSealed(String packageName, Manifest manifest) {
+        Attributes attributes = manifest.getAttributes(packageName.replace('.', '/').concat("/"));
+        String sealed = attributes == null ? null : attributes.getValue(Attributes.Name.SEALED);
+        if (sealed == null) {
+            sealed = manifest.getMainAttributes().getValue(Attributes.Name.SEALED);
+        }
+        return "true".equalsIgnoreCase(sealed);
+    }
+
+    @Nonnull
+    private static byte[] readFully(InputStream stream, int size) throws IOException {
+        byte[] buffer = new byte[size >= 0 ? size : 8192];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                if (size >= 0) {
+                    break;
+                }
+                byte[] largerBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, largerBuffer, 0, length);
+                buffer = largerBuffer;
+            }
+            int read = stream.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
     }
 
     @Nullable
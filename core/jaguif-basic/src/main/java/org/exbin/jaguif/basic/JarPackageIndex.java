@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Index of directories of jar files.
+ * <p>
+ * Each directory containing files or directory entries (package for classes)
+ * is mapped to jar files which contain it, so that lookup of class or resource opens only
+ * jars owning its directory. Entries of multi-release jar files are resolved
+ * for the current runtime version.
+ */
+@ParametersAreNonnullByDefault
+public class JarPackageIndex {
+
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final int RUNTIME_VERSION = getRuntimeVersion();
+
+    private final List<IndexedJar> jars = new CopyOnWriteArrayList<>();
+    private final Map<String, List<IndexedJar>> directories = new ConcurrentHashMap<>();
+
+    /**
+     * Adds jar file to index.
+     *
+     * @param url jar file URL
+     * @return true if jar was indexed, false when URL is not local jar file
+     */
+    public synchronized boolean addJar(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return false;
+        }
+
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return false;
+        }
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try {
+            IndexedJar jar = new IndexedJar(url, new JarFile(file), jars.size());
+            Manifest manifest = jar.getManifest();
+            boolean multiRelease = manifest != null && Boolean.parseBoolean(manifest.getMainAttributes().getValue("Multi-Release"));
+            Set<String> jarDirectories = new LinkedHashSet<>();
+            Set<Integer> versions = new TreeSet<>(Collections.reverseOrder());
+            Enumeration<JarEntry> entries = jar.jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                // Directory entry is indexed as part of its own directory
+                String name = entry.getName();
+                if (multiRelease && name.startsWith(VERSIONS_PREFIX)) {
+                    int versionEnd = name.indexOf('/', VERSIONS_PREFIX.length());
+                    int version = versionEnd > 0 ? parseVersion(name.substring(VERSIONS_PREFIX.length(), versionEnd)) : -1;
+                    if (version < 9 || version > RUNTIME_VERSION) {
+                        continue;
+                    }
+                    versions.add(version);
+                    name = name.substring(versionEnd + 1);
+                }
+                jarDirectories.add(getDirectory(name));
+            }
+
+            jar.versions = versions.stream().mapToInt(Integer::intValue).toArray();
+            for (String directory : jarDirectories) {
+                directories.computeIfAbsent(directory, (key) -> new CopyOnWriteArrayList<>()).add(jar);
+            }
+            jars.add(jar);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(JarPackageIndex.class.getName()).log(Level.WARNING, "Unable to index " + url, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Finds jar file containing given resource.
+     *
+     * @param name resource name
+     * @return jar file or null if not found
+     */
+    @Nullable
+    public IndexedJar findJar(String name) {
+        List<IndexedJar> directoryJars = directories.get(getDirectory(name));
+        if (directoryJars != null) {
+            for (IndexedJar jar : directoryJars) {
+                if (jar.getEntry(name) != null) {
+                    return jar;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all jar files containing given resource.
+     *
+     * @param name resource name
+     * @return jar files
+     */
+    @Nonnull
+    public List<IndexedJar> findJars(String name) {
+        List<IndexedJar> directoryJars = directories.get(getDirectory(name));
+        if (directoryJars == null) {
+            return Collections.emptyList();
+        }
+
+        List<IndexedJar> result = new ArrayList<>();
+        for (IndexedJar jar : directoryJars) {
+            if (jar.getEntry(name) != null) {
+                result.add(jar);
+            }
+        }
+        return result;
+    }
+
+    public int getJarsCount() {
+        return jars.size();
+    }
+
+    public int getDirectoriesCount() {
+        return directories.size();
+    }
+
+    /**
+     * Closes all indexed jar files.
+     */
+    public void close() {
+        for (IndexedJar jar : jars) {
+            try {
+                jar.jarFile.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+        jars.clear();
+        directories.clear();
+    }
+
+    @Nonnull
+    private static String getDirectory(String name) {
+        return name.substring(0, name.lastIndexOf('/') + 1);
+    }
+
+    private static int parseVersion(String version) {
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static int getRuntimeVersion() {
+        // Version is 1.8 for Java 8 and feature number since Java 9
+        String version = System.getProperty("java.specification.version", "1.8");
+        int runtimeVersion = parseVersion(version.startsWith("1.") ? version.substring(2) : version);
+        return runtimeVersion > 0 ? runtimeVersion : 8;
+    }
+
+    /**
+     * Indexed jar file.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class IndexedJar {
+
+        private final URL url;
+        private final JarFile jarFile;
+        private final int order;
+        private final CodeSource codeSource;
+        private final String resourcePrefix;
+        private volatile int[] versions = new int[0];
+        private Manifest manifest;
+        private boolean manifestRead = false;
+
+        private IndexedJar(URL url, JarFile jarFile, int order) {
+            this.url = url;
+            this.jarFile = jarFile;
+            this.order = order;
+            codeSource = new CodeSource(url, (CodeSigner[]) null);
+            resourcePrefix = "jar:" + url.toExternalForm() + "!/";
+        }
+
+        @Nonnull
+        public URL getUrl() {
+            return url;
+        }
+
+        @Nonnull
+        public JarFile getJarFile() {
+            return jarFile;
+        }
+
+        /**
+         * Returns order in which jar file was added to the index.
+         *
+         * @return order starting from zero
+         */
+        public int getOrder() {
+            return order;
+        }
+
+        /**
+         * Returns code source for entry signed by given signers.
+         * <p>
+         * Signers of the entry are available only after its content was fully
+         * read.
+         *
+         * @param signers code signers or null if not signed
+         * @return code source
+         */
+        @Nonnull
+        public CodeSource getCodeSource(@Nullable CodeSigner[] signers) {
+            return signers == null ? codeSource : new CodeSource(url, signers);
+        }
+
+        /**
+         * Returns entry of the resource, versioned entry of multi-release jar
+         * file for current runtime is preferred.
+         *
+         * @param name resource name
+         * @return jar entry or null if not present
+         */
+        @Nullable
+        public JarEntry getEntry(String name) {
+            for (int version : versions) {
+                JarEntry entry = jarFile.getJarEntry(VERSIONS_PREFIX + version + "/" + name);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            return jarFile.getJarEntry(name);
+        }
+
+        @Nullable
+        public synchronized Manifest getManifest() {
+            if (!manifestRead) {
+                try {
+                    manifest = jarFile.getManifest();
+                } catch (IOException ex) {
+                    // ignore
+                }
+                manifestRead = true;
+            }
+            return manifest;
+        }
+
+        /**
+         * Returns URL of resource in this jar file.
+         *
+         * @param name resource name
+         * @return resource URL
+         */
+        @Nullable
+        public URL getResourceUrl(String name) {
+            JarEntry entry = getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                return new URL(resourcePrefix + entry.getName());
+            } catch (MalformedURLException ex) {
+                return null;
+            }
+        }
+    }
+}
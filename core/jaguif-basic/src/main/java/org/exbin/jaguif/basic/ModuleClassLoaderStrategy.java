@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+/**
+ * Strategy for assigning class loaders to preloaded modules.
+ */
+public enum ModuleClassLoaderStrategy {
+    /**
+     * Each module has its own class loader.
+     */
+    PER_MODULE,
+    /**
+     * Modules share single class loader per dependency layer.
+     * <p>
+     * Layer of module is above layers of all its dependencies and class
+     * loader of each layer delegates to class loader of the layer below.
+     */
+    LAYERED
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Graph of dependencies between modules.
+ * <p>
+ * Provides initialization order where each module follows all of its
+ * dependencies and describes why remaining modules can't be initialized.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleDependencyGraph {
+
+    private final Map<String, ModuleNode> nodes = new LinkedHashMap<>();
+    private final List<ModuleRecord> initializationOrder = new ArrayList<>();
+    private final List<ModuleRecord> unorderedModules = new ArrayList<>();
+
+    public ModuleDependencyGraph(Collection<ModuleRecord> modules) {
+        for (ModuleRecord moduleRecord : modules) {
+            nodes.put(moduleRecord.getModuleId(), new ModuleNode(moduleRecord));
+        }
+
+        for (ModuleNode node : nodes.values()) {
+            for (String dependencyModuleId : node.record.getDependencyModuleIds()) {
+                ModuleNode dependencyNode = nodes.get(dependencyModuleId);
+                if (dependencyNode == null) {
+                    node.missingDependencies = true;
+                } else {
+                    dependencyNode.dependents.add(node);
+                    node.pendingCount++;
+                }
+            }
+        }
+
+        Deque<ModuleNode> ready = new ArrayDeque<>();
+        for (ModuleNode node : nodes.values()) {
+            if (node.pendingCount == 0 && !node.missingDependencies) {
+                ready.add(node);
+            }
+        }
+        while (!ready.isEmpty()) {
+            ModuleNode node = ready.poll();
+            node.ordered = true;
+            initializationOrder.add(node.record);
+            for (ModuleNode dependent : node.dependents) {
+                dependent.pendingCount--;
+                if (dependent.pendingCount == 0 && !dependent.missingDependencies) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        for (ModuleNode node : nodes.values()) {
+            if (!node.ordered) {
+                unorderedModules.add(node.record);
+            }
+        }
+    }
+
+    /**
+     * Returns modules in initialization order.
+     * <p>
+     * Modules with missing dependencies or dependencies in cycle are not
+     * included.
+     *
+     * @return ordered modules
+     */
+    @Nonnull
+    public List<ModuleRecord> getInitializationOrder() {
+        return Collections.unmodifiableList(initializationOrder);
+    }
+
+    /**
+     * Returns modules which can't be ordered because of missing or cyclic
+     * dependencies.
+     *
+     * @return unordered modules
+     */
+    @Nonnull
+    public List<ModuleRecord> getUnorderedModules() {
+        return Collections.unmodifiableList(unorderedModules);
+    }
+
+    /**
+     * Describes chain of dependencies which prevents initialization of given
+     * module.
+     *
+     * @param moduleId module identifier
+     * @param initialized test whether module was successfully initialized
+     * @return description of dependency chain
+     */
+    @Nonnull
+    public String describeUnsatisfied(String moduleId, Predicate<ModuleRecord> initialized) {
+        List<String> chain = new ArrayList<>();
+        String reason = findUnsatisfied(moduleId, initialized, chain, new HashSet<>(), new HashSet<>());
+        if (chain.isEmpty()) {
+            return moduleId;
+        }
+        return String.join(" -> ", chain) + (reason.isEmpty() ? "" : " (" + reason + ")");
+    }
+
+    @Nonnull
+    private String findUnsatisfied(String moduleId, Predicate<ModuleRecord> initialized, List<String> chain, Set<String> path, Set<String> visited) {
+        chain.add(moduleId);
+        ModuleNode node = nodes.get(moduleId);
+        if (node == null) {
+            return "missing";
+        }
+        if (path.contains(moduleId)) {
+            return "cycle";
+        }
+        if (!visited.add(moduleId)) {
+            chain.remove(chain.size() - 1);
+            return "";
+        }
+
+        path.add(moduleId);
+        for (String dependencyModuleId : node.record.getDependencyModuleIds()) {
+            ModuleNode dependencyNode = nodes.get(dependencyModuleId);
+            if (dependencyNode != null && dependencyNode.ordered && initialized.test(dependencyNode.record)) {
+                continue;
+            }
+
+            String reason = findUnsatisfied(dependencyModuleId, initialized, chain, path, visited);
+            if (!reason.isEmpty()) {
+                return reason;
+            }
+        }
+        path.remove(moduleId);
+
+        if (chain.size() > 1 && !initialized.test(node.record)) {
+            // Dependency itself failed to initialize
+            return node.ordered ? "not initialized" : "";
+        }
+        chain.remove(chain.size() - 1);
+        return "";
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class ModuleNode {
+
+        final ModuleRecord record;
+        final List<ModuleNode> dependents = new ArrayList<>();
+        boolean missingDependencies = false;
+        int pendingCount = 0;
+        boolean ordered = false;
+
+        public ModuleNode(ModuleRecord record) {
+            this.record = record;
+        }
+    }
+}
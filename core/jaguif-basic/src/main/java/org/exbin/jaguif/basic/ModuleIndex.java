@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Persistent index of module declarations.
+ * <p>
+ * Entries are keyed by path of the library file and are valid only while
+ * size and modification time of the file are unchanged, so that unchanged
+ * libraries don't have to be opened on startup.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleIndex {
+
+    public static final String INDEX_FILE_NAME = "module-index.xml";
+    private static final String INDEX_VERSION = "1";
+    private static final String LIST_SEPARATOR = ",";
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded = false;
+    private boolean modified = false;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public ModuleIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    @Nonnull
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Loads index from file if not loaded yet.
+     * <p>
+     * Missing or unreadable index file is treated as empty index.
+     */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream stream = new FileInputStream(indexFile)) {
+            properties.loadFromXML(stream);
+        } catch (IOException ex) {
+            Logger.getLogger(ModuleIndex.class.getName()).log(Level.WARNING, "Unable to read module index " + indexFile, ex);
+            return;
+        }
+
+        if (!INDEX_VERSION.equals(properties.getProperty("version"))) {
+            return;
+        }
+
+        try {
+            int count = Integer.parseInt(properties.getProperty("count", "0"));
+            for (int i = 0; i < count; i++) {
+                Entry entry = readEntry(properties, i + ".");
+                entries.put(entry.path, entry);
+            }
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(ModuleIndex.class.getName()).log(Level.WARNING, "Invalid module index " + indexFile, ex);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns entry for library file if file was not changed since it was
+     * indexed.
+     *
+     * @param libraryFile library file
+     * @return entry or null
+     */
+    @Nullable
+    public synchronized Entry get(File libraryFile) {
+        Entry entry = entries.get(libraryFile.getAbsolutePath());
+        if (entry != null && entry.size == libraryFile.length() && entry.modified == libraryFile.lastModified()) {
+            hitCount++;
+            return entry;
+        }
+
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Stores entry for library file.
+     *
+     * @param libraryFile library file
+     * @param entry module entry
+     */
+    public synchronized void put(File libraryFile, Entry entry) {
+        entry.path = libraryFile.getAbsolutePath();
+        entry.size = libraryFile.length();
+        entry.modified = libraryFile.lastModified();
+        entries.put(entry.path, entry);
+        modified = true;
+    }
+
+    /**
+     * Saves index to file if it was modified.
+     * <p>
+     * Entries of no longer existing files are dropped.
+     */
+    public synchronized void save() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (!new File(iterator.next().path).isFile()) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+        if (!modified) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("version", INDEX_VERSION);
+        properties.setProperty("count", String.valueOf(entries.size()));
+        int index = 0;
+        for (Entry entry : entries.values()) {
+            writeEntry(properties, index + ".", entry);
+            index++;
+        }
+
+        try {
+            File directory = indexFile.getAbsoluteFile().getParentFile();
+            if (directory != null && !directory.isDirectory()) {
+                directory.mkdirs();
+            }
+            File tempFile = new File(indexFile.getPath() + ".tmp");
+            try (OutputStream stream = new FileOutputStream(tempFile)) {
+                properties.storeToXML(stream, null);
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } catch (IOException ex) {
+            Logger.getLogger(ModuleIndex.class.getName()).log(Level.WARNING, "Unable to write module index " + indexFile, ex);
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    @Nonnull
+    private static Entry readEntry(Properties properties, String prefix) {
+        Entry entry = new Entry();
+        entry.path = getRequired(properties, prefix + "path");
+        entry.size = Long.parseLong(getRequired(properties, prefix + "size"));
+        entry.modified = Long.parseLong(getRequired(properties, prefix + "modified"));
+        entry.module = Boolean.parseBoolean(properties.getProperty(prefix + "module"));
+        if (entry.module) {
+            entry.moduleId = properties.getProperty(prefix + "id", "");
+            entry.type = ModuleType.valueOf(properties.getProperty(prefix + "type", ModuleType.MODULE.name()));
+            entry.version = properties.getProperty(prefix + "version", "");
+            entry.name = properties.getProperty(prefix + "name");
+            entry.description = properties.getProperty(prefix + "description");
+            entry.homepage = properties.getProperty(prefix + "homepage");
+            entry.provider = properties.getProperty(prefix + "provider");
+            entry.dependencyModuleIds = splitList(properties.getProperty(prefix + "dependencies", ""));
+            entry.dependencyLibraries = splitList(properties.getProperty(prefix + "libraries", ""));
+        }
+        return entry;
+    }
+
+    private static void writeEntry(Properties properties, String prefix, Entry entry) {
+        properties.setProperty(prefix + "path", entry.path);
+        properties.setProperty(prefix + "size", String.valueOf(entry.size));
+        properties.setProperty(prefix + "modified", String.valueOf(entry.modified));
+        properties.setProperty(prefix + "module", String.valueOf(entry.module));
+        if (entry.module) {
+            properties.setProperty(prefix + "id", entry.moduleId);
+            properties.setProperty(prefix + "type", entry.type.name());
+            properties.setProperty(prefix + "version", entry.version);
+            setOptional(properties, prefix + "name", entry.name);
+            setOptional(properties, prefix + "description", entry.description);
+            setOptional(properties, prefix + "homepage", entry.homepage);
+            setOptional(properties, prefix + "provider", entry.provider);
+            properties.setProperty(prefix + "dependencies", String.join(LIST_SEPARATOR, entry.dependencyModuleIds));
+            properties.setProperty(prefix + "libraries", String.join(LIST_SEPARATOR, entry.dependencyLibraries));
+        }
+    }
+
+    @Nonnull
+    private static String getRequired(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value " + key);
+        }
+        return value;
+    }
+
+    private static void setOptional(Properties properties, String key, @Nullable String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    @Nonnull
+    private static List<String> splitList(String value) {
+        return value.isEmpty() ? Collections.emptyList() : new ArrayList<>(Arrays.asList(value.split(LIST_SEPARATOR)));
+    }
+
+    /**
+     * Module declaration of single library file.
+     */
+    @ParametersAreNonnullByDefault
+    static class Entry {
+
+        String path;
+        long size;
+        long modified;
+        /**
+         * Library contains module declaration.
+         */
+        boolean module = false;
+        String moduleId = "";
+        ModuleType type = ModuleType.MODULE;
+        String version = "";
+        String name;
+        String description;
+        String homepage;
+        String provider;
+        List<String> dependencyModuleIds = Collections.emptyList();
+        List<String> dependencyLibraries = Collections.emptyList();
+    }
+}
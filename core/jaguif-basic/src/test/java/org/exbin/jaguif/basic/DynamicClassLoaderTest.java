@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for dynamic class loader using generated jars.
+ */
+@ParametersAreNonnullByDefault
+public class DynamicClassLoaderTest {
+
+    private static final int JARS_COUNT = 60;
+    private static final int PACKAGES_PER_JAR = 40;
+    private static final int RESOURCES_PER_PACKAGE = 10;
+    private static final int LOOKUPS_COUNT = 20000;
+
+    private File workDirectory;
+    private final List<URL> jarUrls = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("dynamicClassLoader").toFile();
+        for (int jar = 0; jar < JARS_COUNT; jar++) {
+            File jarFile = new File(workDirectory, "library" + jar + ".jar");
+            try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile))) {
+                for (int pkg = 0; pkg < PACKAGES_PER_JAR; pkg++) {
+                    for (int resource = 0; resource < RESOURCES_PER_PACKAGE; resource++) {
+                        stream.putNextEntry(new JarEntry(getResourceName(jar, pkg, resource)));
+                        stream.write(("resource " + resource).getBytes(StandardCharsets.UTF_8));
+                        stream.closeEntry();
+                    }
+                }
+                // Resource shared by all jars
+                stream.putNextEntry(new JarEntry("META-INF/shared.properties"));
+                stream.write(("jar=" + jar).getBytes(StandardCharsets.UTF_8));
+                stream.closeEntry();
+            }
+            jarUrls.add(jarFile.toURI().toURL());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(workDirectory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testLookupParity() throws IOException {
+        try (URLClassLoader plainLoader = new URLClassLoader(jarUrls.toArray(new URL[0]), DynamicClassLoaderTest.class.getClassLoader());
+                DynamicClassLoader dynamicLoader = createDynamicClassLoader()) {
+            Assert.assertEquals(JARS_COUNT, dynamicLoader.getPackageIndex().getJarsCount());
+            Random random = new Random(3);
+            for (int i = 0; i < 1000; i++) {
+                String name = randomResourceName(random);
+                Assert.assertEquals(toExternalForm(plainLoader.getResource(name)), toExternalForm(dynamicLoader.getResource(name)));
+            }
+            Assert.assertEquals(Collections.list(plainLoader.getResources("META-INF/shared.properties")).size(),
+                    Collections.list(dynamicLoader.getResources("META-INF/shared.properties")).size());
+            Assert.assertEquals(toExternalForm(plainLoader.getResource("META-INF/shared.properties")), toExternalForm(dynamicLoader.getResource("META-INF/shared.properties")));
+        }
+    }
+
+    @Test
+    public void testMissingResourceFoundAfterAdd() throws IOException {
+        try (DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            String name = getResourceName(1, 2, 3);
+            Assert.assertNull(dynamicLoader.getResource(name));
+            Assert.assertNull(dynamicLoader.getResource(name));
+            dynamicLoader.add(jarUrls.get(1));
+            Assert.assertNotNull(dynamicLoader.getResource(name));
+        }
+    }
+
+    @Test
+    public void testMissingClassCached() throws IOException {
+        try (DynamicClassLoader dynamicLoader = createDynamicClassLoader()) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    dynamicLoader.loadClass("org.example.jar1.package2.Missing");
+                    Assert.fail("Class should not be found");
+                } catch (ClassNotFoundException ex) {
+                    // expected
+                }
+            }
+            Assert.assertSame(DynamicClassLoaderTest.class, dynamicLoader.loadClass(DynamicClassLoaderTest.class.getName()));
+        } catch (ClassNotFoundException ex) {
+            Assert.fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testMultiReleaseJar() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Multi-Release", "true");
+        File jarFile = new File(workDirectory, "multirelease.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile), manifest)) {
+            writeEntry(stream, "org/example/release/resource.txt", "base");
+            writeEntry(stream, "META-INF/versions/9/org/example/release/resource.txt", "version 9");
+            writeEntry(stream, "META-INF/versions/9/org/example/release/added.txt", "added in 9");
+        }
+
+        URL[] urls = new URL[]{jarFile.toURI().toURL()};
+        try (URLClassLoader plainLoader = new URLClassLoader(urls, DynamicClassLoaderTest.class.getClassLoader());
+                DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            dynamicLoader.add(urls[0]);
+            Assert.assertEquals(readResource(plainLoader.getResource("org/example/release/resource.txt")), readResource(dynamicLoader.getResource("org/example/release/resource.txt")));
+            Assert.assertEquals(readResource(plainLoader.getResource("org/example/release/added.txt")), readResource(dynamicLoader.getResource("org/example/release/added.txt")));
+        }
+    }
+
+    @Test
+    public void testUnindexedEntryOrder() throws IOException {
+        File classesDirectory = new File(workDirectory, "classes");
+        File sharedFile = new File(classesDirectory, "META-INF/shared.properties");
+        sharedFile.getParentFile().mkdirs();
+        Files.write(sharedFile.toPath(), "directory".getBytes(StandardCharsets.UTF_8));
+        List<URL> urls = new ArrayList<>();
+        urls.add(jarUrls.get(0));
+        urls.add(classesDirectory.toURI().toURL());
+        urls.addAll(jarUrls.subList(1, jarUrls.size()));
+
+        try (URLClassLoader plainLoader = new URLClassLoader(urls.toArray(new URL[0]), DynamicClassLoaderTest.class.getClassLoader());
+                DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            for (URL url : urls) {
+                dynamicLoader.add(url);
+            }
+            // Only jar preceding directory is indexed, rest is left to URL class loader
+            Assert.assertEquals(1, dynamicLoader.getPackageIndex().getJarsCount());
+            Assert.assertEquals(urls, Arrays.asList(dynamicLoader.getURLs()));
+            Assert.assertEquals(toExternalForm(plainLoader.getResource("META-INF/shared.properties")), toExternalForm(dynamicLoader.getResource("META-INF/shared.properties")));
+            List<String> plainResources = new ArrayList<>();
+            for (URL url : Collections.list(plainLoader.getResources("META-INF/shared.properties"))) {
+                plainResources.add(url.toExternalForm());
+            }
+            List<String> dynamicResources = new ArrayList<>();
+            for (URL url : Collections.list(dynamicLoader.getResources("META-INF/shared.properties"))) {
+                dynamicResources.add(url.toExternalForm());
+            }
+            Assert.assertEquals(plainResources, dynamicResources);
+            Assert.assertEquals("jar=0", readResource(dynamicLoader.getResource("META-INF/shared.properties")));
+
+            // Jar files after directory are searched in class path order
+            String name = getResourceName(5, 1, 1);
+            Assert.assertEquals(toExternalForm(plainLoader.getResource(name)), toExternalForm(dynamicLoader.getResource(name)));
+        }
+    }
+
+    @Test
+    public void testDirectoryEntries() throws IOException {
+        File jarFile = new File(workDirectory, "directories.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile))) {
+            stream.putNextEntry(new JarEntry("org/"));
+            stream.closeEntry();
+            stream.putNextEntry(new JarEntry("org/example/"));
+            stream.closeEntry();
+            writeEntry(stream, "org/example/resource.txt", "resource");
+        }
+
+        URL[] urls = new URL[]{jarFile.toURI().toURL()};
+        try (URLClassLoader plainLoader = new URLClassLoader(urls, DynamicClassLoaderTest.class.getClassLoader());
+                DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            dynamicLoader.add(urls[0]);
+            for (String name : new String[]{"org/", "org/example/", "org/example/resource.txt"}) {
+                URL resource = dynamicLoader.findResource(name);
+                Assert.assertNotNull(name, resource);
+                Assert.assertEquals(toExternalForm(plainLoader.findResource(name)), toExternalForm(resource));
+            }
+        }
+    }
+
+    @Test
+    public void testSealedPackage() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        File sourceDirectory = new File(workDirectory, "src/gen/sealed");
+        File classesDirectory = new File(workDirectory, "classes");
+        sourceDirectory.mkdirs();
+        classesDirectory.mkdirs();
+        List<String> compilerArgs = new ArrayList<>(Arrays.asList("-d", classesDirectory.getPath()));
+        for (String className : new String[]{"First", "Second"}) {
+            File sourceFile = new File(sourceDirectory, className + ".java");
+            Files.write(sourceFile.toPath(), ("package gen.sealed;\npublic class " + className + " {\n}\n").getBytes(StandardCharsets.UTF_8));
+            compilerArgs.add(sourceFile.getPath());
+        }
+        Assert.assertEquals(0, compiler.run(null, null, null, compilerArgs.toArray(new String[0])));
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.SEALED, "true");
+        File sealedJarFile = new File(workDirectory, "sealed.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(sealedJarFile), manifest)) {
+            stream.putNextEntry(new JarEntry("gen/sealed/First.class"));
+            stream.write(Files.readAllBytes(new File(classesDirectory, "gen/sealed/First.class").toPath()));
+            stream.closeEntry();
+        }
+        File otherJarFile = new File(workDirectory, "other.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(otherJarFile))) {
+            stream.putNextEntry(new JarEntry("gen/sealed/Second.class"));
+            stream.write(Files.readAllBytes(new File(classesDirectory, "gen/sealed/Second.class").toPath()));
+            stream.closeEntry();
+        }
+
+        try (DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            dynamicLoader.add(sealedJarFile.toURI().toURL());
+            dynamicLoader.add(otherJarFile.toURI().toURL());
+            Class<?> firstClass = dynamicLoader.loadClass("gen.sealed.First");
+            Assert.assertTrue(firstClass.getPackage().isSealed());
+            try {
+                dynamicLoader.loadClass("gen.sealed.Second");
+                Assert.fail("Class of sealed package should not be loaded from other jar");
+            } catch (SecurityException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSignedJar() throws Exception {
+        String className = SignedSample.class.getName();
+        String entryName = className.replace('.', '/') + ".class";
+        File jarFile = new File(workDirectory, "signed.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+                InputStream classStream = DynamicClassLoaderTest.class.getClassLoader().getResourceAsStream(entryName)) {
+            stream.putNextEntry(new JarEntry(entryName));
+            stream.write(readFully(classStream));
+            stream.closeEntry();
+        }
+        File keyStore = new File(workDirectory, "keystore.p12");
+        Assume.assumeTrue("JDK tools are available", runTool("keytool", "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=Test",
+                "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.getPath(), "-storepass", "password", "-keypass", "password")
+                && runTool("jarsigner", "-storetype", "PKCS12", "-keystore", keyStore.getPath(), "-storepass", "password", jarFile.getPath(), "test"));
+
+        try (DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader())) {
+            dynamicLoader.add(jarFile.toURI().toURL());
+            Class<?> signedClass = dynamicLoader.findClass(className);
+            Assert.assertSame(dynamicLoader, signedClass.getClassLoader());
+            CodeSigner[] signers = signedClass.getProtectionDomain().getCodeSource().getCodeSigners();
+            Assert.assertNotNull(signers);
+            Assert.assertEquals(1, signers.length);
+        }
+    }
+
+    @Test
+    public void testLookupThroughput() throws IOException {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        try (URLClassLoader plainLoader = new URLClassLoader(jarUrls.toArray(new URL[0]), DynamicClassLoaderTest.class.getClassLoader());
+                DynamicClassLoader dynamicLoader = createDynamicClassLoader()) {
+            // Warm up both loaders
+            long sink = lookup(plainLoader, LOOKUPS_COUNT / 10) + lookup(dynamicLoader, LOOKUPS_COUNT / 10);
+
+            long start = System.nanoTime();
+            sink += lookup(plainLoader, LOOKUPS_COUNT);
+            long plainTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            sink += lookup(dynamicLoader, LOOKUPS_COUNT);
+            long dynamicTime = System.nanoTime() - start;
+
+            System.out.println("Resource lookups x " + LOOKUPS_COUNT + " in " + JARS_COUNT + " jars x " + PACKAGES_PER_JAR + " packages, plain: "
+                    + (plainTime / 1000000) + " ms (" + (LOOKUPS_COUNT * 1000000000L / Math.max(plainTime, 1)) + "/s), indexed: "
+                    + (dynamicTime / 1000000) + " ms (" + (LOOKUPS_COUNT * 1000000000L / Math.max(dynamicTime, 1)) + "/s)");
+            Assert.assertEquals(LOOKUPS_COUNT + LOOKUPS_COUNT / 10, sink);
+        }
+    }
+
+    private DynamicClassLoader createDynamicClassLoader() {
+        DynamicClassLoader dynamicLoader = new DynamicClassLoader(DynamicClassLoaderTest.class.getClassLoader());
+        for (URL jarUrl : jarUrls) {
+            dynamicLoader.add(jarUrl);
+        }
+        return dynamicLoader;
+    }
+
+    private static long lookup(ClassLoader classLoader, int count) {
+        Random random = new Random(count);
+        long found = 0;
+        for (int i = 0; i < count; i++) {
+            // Every other lookup is for missing resource, as with probing of bundles and icons
+            String name = i % 2 == 0 ? randomResourceName(random) : "org/example/missing/Icon" + random.nextInt(100) + ".png";
+            if (classLoader.getResource(name) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static String randomResourceName(Random random) {
+        return getResourceName(random.nextInt(JARS_COUNT), random.nextInt(PACKAGES_PER_JAR), random.nextInt(RESOURCES_PER_PACKAGE));
+    }
+
+    private static String getResourceName(int jar, int pkg, int resource) {
+        return "org/example/jar" + jar + "/package" + pkg + "/resource" + resource + ".properties";
+    }
+
+    @Nullable
+    private static String toExternalForm(@Nullable URL url) {
+        return url == null ? null : url.toExternalForm();
+    }
+
+    private static void writeEntry(JarOutputStream stream, String name, String content) throws IOException {
+        stream.putNextEntry(new JarEntry(name));
+        stream.write(content.getBytes(StandardCharsets.UTF_8));
+        stream.closeEntry();
+    }
+
+    @Nullable
+    private static String readResource(@Nullable URL url) throws IOException {
+        if (url == null) {
+            return null;
+        }
+        try (InputStream stream = url.openStream()) {
+            return new String(readFully(stream), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private boolean runTool(String tool, String... args) throws InterruptedException {
+        File toolFile = new File(new File(System.getProperty("java.home"), "bin"), tool);
+        if (!toolFile.isFile()) {
+            return false;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(toolFile.getPath());
+        command.addAll(Arrays.asList(args));
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(workDirectory, tool + ".log")).start();
+            return process.waitFor() == 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Class loaded from signed jar file.
+     */
+    public static class SignedSample {
+    }
+}
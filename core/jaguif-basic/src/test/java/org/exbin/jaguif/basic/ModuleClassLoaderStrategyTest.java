@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.exbin.jaguif.Module;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for class loader strategies of preloaded modules.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleClassLoaderStrategyTest {
+
+    private static final int MODULES_COUNT = 40;
+    private static final int HELPER_CLASSES_COUNT = 20;
+
+    private File workDirectory;
+    private final List<File> moduleFiles = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+
+        workDirectory = Files.createTempDirectory("moduleClassLoader").toFile();
+        File sourceDirectory = new File(workDirectory, "src");
+        File classesDirectory = new File(workDirectory, "classes");
+        classesDirectory.mkdirs();
+        List<String> compilerArgs = new ArrayList<>();
+        compilerArgs.add("-d");
+        compilerArgs.add(classesDirectory.getPath());
+        compilerArgs.add("-classpath");
+        compilerArgs.add(new File(Module.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            StringBuilder moduleSource = new StringBuilder();
+            moduleSource.append("package gen.m").append(i).append(";\n");
+            moduleSource.append("public class Module").append(i).append(" implements org.exbin.jaguif.Module {\n");
+            moduleSource.append("    public Module").append(i).append("() {\n");
+            for (int j = 0; j < HELPER_CLASSES_COUNT; j++) {
+                moduleSource.append("        new gen.m").append(i).append(".util.Helper").append(j).append("();\n");
+                writeSource(sourceDirectory, "gen/m" + i + "/util/Helper" + j + ".java", "package gen.m" + i + ".util;\npublic class Helper" + j + " {\n}\n", compilerArgs);
+            }
+            moduleSource.append("    }\n}\n");
+            writeSource(sourceDirectory, "gen/m" + i + "/Module" + i + ".java", moduleSource.toString(), compilerArgs);
+        }
+        Assert.assertEquals(0, compiler.run(null, null, null, compilerArgs.toArray(new String[0])));
+
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            File moduleFile = new File(workDirectory, "module" + i + ".jar");
+            try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(moduleFile))) {
+                StringBuilder moduleRecord = new StringBuilder();
+                moduleRecord.append("<jaguif><module><id>gen.m").append(i).append(".Module").append(i).append("</id><dependency>");
+                if (i > 0) {
+                    // Binary tree of dependencies
+                    moduleRecord.append("<module id=\"gen.m").append((i - 1) / 2).append(".Module").append((i - 1) / 2).append("\"/>");
+                }
+                moduleRecord.append("</dependency></module></jaguif>");
+                stream.putNextEntry(new JarEntry("META-INF/module.xml"));
+                stream.write(moduleRecord.toString().getBytes(StandardCharsets.UTF_8));
+                stream.closeEntry();
+                addClasses(stream, new File(classesDirectory, "gen/m" + i), "gen/m" + i + "/");
+            }
+            moduleFiles.add(moduleFile);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (workDirectory != null) {
+            deleteRecursively(workDirectory);
+        }
+    }
+
+    @Test
+    public void testStrategies() {
+        BasicModuleProvider perModuleProvider = loadModules(ModuleClassLoaderStrategy.PER_MODULE);
+        BasicModuleProvider layeredProvider = loadModules(ModuleClassLoaderStrategy.LAYERED);
+
+        Assert.assertEquals(MODULES_COUNT, perModuleProvider.getModuleClassLoadersCount());
+        // Depth of binary tree
+        int layersCount = 32 - Integer.numberOfLeadingZeros(MODULES_COUNT);
+        Assert.assertEquals(layersCount, layeredProvider.getModuleClassLoadersCount());
+        Assert.assertEquals(MODULES_COUNT * (HELPER_CLASSES_COUNT + 1), perModuleProvider.getLoadedClassesCount());
+        Assert.assertEquals(MODULES_COUNT * (HELPER_CLASSES_COUNT + 1), layeredProvider.getLoadedClassesCount());
+
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            Module module = layeredProvider.getModuleById("gen.m" + i + ".Module" + i);
+            ModuleLayerClassLoader classLoader = (ModuleLayerClassLoader) module.getClass().getClassLoader();
+            int parentLayer = i == 0 ? -1 : ((ModuleLayerClassLoader) layeredProvider.getModuleById("gen.m" + ((i - 1) / 2) + ".Module" + ((i - 1) / 2)).getClass().getClassLoader()).getLayer();
+            Assert.assertEquals(parentLayer + 1, classLoader.getLayer());
+            Assert.assertNotNull(classLoader.getResource("META-INF/module.xml"));
+            Assert.assertNotNull(module.getClass().getPackage());
+        }
+    }
+
+    @Nonnull
+    private BasicModuleProvider loadModules(ModuleClassLoaderStrategy classLoaderStrategy) {
+        BasicModuleProvider moduleProvider = new BasicModuleProvider(new DynamicClassLoader(ModuleClassLoaderStrategyTest.class.getClassLoader()), ModuleClassLoaderStrategyTest.class);
+        moduleProvider.setClassLoaderStrategy(classLoaderStrategy);
+        List<BasicModuleProvider.ModuleCandidate> candidates = new ArrayList<>();
+        for (File moduleFile : moduleFiles) {
+            candidates.add(new BasicModuleProvider.ModuleCandidate(moduleFile.toURI(), BasicModuleFileLocation.CLASSPATH, true));
+        }
+        moduleProvider.addModulePlugins(candidates);
+
+        moduleProvider.initModules();
+        return moduleProvider;
+    }
+
+    private static void writeSource(File sourceDirectory, String path, String source, List<String> compilerArgs) throws IOException {
+        File sourceFile = new File(sourceDirectory, path);
+        sourceFile.getParentFile().mkdirs();
+        Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        compilerArgs.add(sourceFile.getPath());
+    }
+
+    private static void addClasses(JarOutputStream stream, File directory, String prefix) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addClasses(stream, file, prefix + file.getName() + "/");
+            } else {
+                stream.putNextEntry(new JarEntry(prefix + file.getName()));
+                stream.write(Files.readAllBytes(file.toPath()));
+                stream.closeEntry();
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.Module;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test for module dependency graph.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleDependencyGraphTest {
+
+    private static final int LARGE_GRAPH_SIZE = 20000;
+
+    @Test
+    public void testDependenciesPrecedeModule() {
+        Random random = new Random(11);
+        List<ModuleRecord> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            List<String> dependencies = new ArrayList<>();
+            for (int j = random.nextInt(4); j > 0 && i > 0; j--) {
+                dependencies.add("module" + random.nextInt(i));
+            }
+            records.add(createRecord("module" + i, dependencies.toArray(new String[0])));
+        }
+        // Shuffled input order must not matter
+        Collections.shuffle(records, random);
+
+        ModuleDependencyGraph graph = new ModuleDependencyGraph(records);
+        Assert.assertTrue(graph.getUnorderedModules().isEmpty());
+        Set<String> initialized = new HashSet<>();
+        for (ModuleRecord record : graph.getInitializationOrder()) {
+            Assert.assertTrue(initialized.containsAll(record.getDependencyModuleIds()));
+            initialized.add(record.getModuleId());
+        }
+        Assert.assertEquals(records.size(), initialized.size());
+    }
+
+    @Test
+    public void testMissingDependencyChain() {
+        List<ModuleRecord> records = Arrays.asList(
+                createRecord("app", "editor"),
+                createRecord("editor", "ui", "text"),
+                createRecord("ui"),
+                createRecord("text", "charset"));
+
+        ModuleDependencyGraph graph = new ModuleDependencyGraph(records);
+        Assert.assertEquals(1, graph.getInitializationOrder().size());
+        Assert.assertEquals(3, graph.getUnorderedModules().size());
+        Assert.assertEquals("app -> editor -> text -> charset (missing)", graph.describeUnsatisfied("app", this::isInitialized));
+    }
+
+    @Test
+    public void testCycleChain() {
+        List<ModuleRecord> records = Arrays.asList(
+                createRecord("app", "a"),
+                createRecord("a", "b"),
+                createRecord("b", "c"),
+                createRecord("c", "a"),
+                createRecord("d"));
+
+        ModuleDependencyGraph graph = new ModuleDependencyGraph(records);
+        Assert.assertEquals(1, graph.getInitializationOrder().size());
+        Assert.assertEquals("app -> a -> b -> c -> a (cycle)", graph.describeUnsatisfied("app", this::isInitialized));
+        Assert.assertEquals("b -> c -> a -> b (cycle)", graph.describeUnsatisfied("b", this::isInitialized));
+    }
+
+    @Test
+    public void testFailedDependencyChain() {
+        BasicModuleRecord failed = createRecord("failed");
+        failed.setModule(new BasicModuleRecord.ModuleLink(URI.create("file:/failed.jar"), false));
+        List<ModuleRecord> records = Arrays.asList(createRecord("app", "failed"), failed);
+
+        ModuleDependencyGraph graph = new ModuleDependencyGraph(records);
+        Assert.assertEquals(2, graph.getInitializationOrder().size());
+        Assert.assertEquals("app -> failed (not initialized)", graph.describeUnsatisfied("app", this::isInitialized));
+    }
+
+    @Test
+    public void testLargeGraph() {
+        List<ModuleRecord> records = new ArrayList<>();
+        for (int i = LARGE_GRAPH_SIZE - 1; i >= 0; i--) {
+            records.add(i == 0 ? createRecord("module0") : createRecord("module" + i, "module" + (i - 1)));
+        }
+
+        // Deep chain must not overflow stack
+        ModuleDependencyGraph graph = new ModuleDependencyGraph(records);
+        Assert.assertEquals(LARGE_GRAPH_SIZE, graph.getInitializationOrder().size());
+        Assert.assertEquals("module0", graph.getInitializationOrder().get(0).getModuleId());
+    }
+
+    private boolean isInitialized(ModuleRecord record) {
+        return !(record.getModule() instanceof BasicModuleRecord.ModuleLink);
+    }
+
+    @Nonnull
+    private static BasicModuleRecord createRecord(String moduleId, String... dependencyModuleIds) {
+        BasicModuleRecord record = new BasicModuleRecord(moduleId, new Module() {
+        }, ModuleDependencyGraphTest.class.getClassLoader());
+        record.setDependencyModuleIds(new ArrayList<>(Arrays.asList(dependencyModuleIds)));
+        return record;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for module discovery using generated library files.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleDiscoveryTest {
+
+    private static final int MODULES_COUNT = 120;
+    private static final int LIBRARIES_COUNT = 60;
+
+    private File workDirectory;
+    private File pluginsDirectory;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("moduleDiscovery").toFile();
+        pluginsDirectory = new File(workDirectory, "plugins");
+        pluginsDirectory.mkdirs();
+        indexFile = new File(new File(workDirectory, "config"), ModuleIndex.INDEX_FILE_NAME);
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            StringBuilder moduleFile = new StringBuilder();
+            moduleFile.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jaguif>\n<module>\n");
+            moduleFile.append(i % 10 == 0 ? "<api>" : "<id>").append("org.example.Module").append(i).append(i % 10 == 0 ? "</api>" : "</id>\n");
+            moduleFile.append("<name>Module ").append(i).append("</name>\n");
+            moduleFile.append("<description>Generated module</description>\n");
+            moduleFile.append("<dependency>\n");
+            if (i > 0) {
+                moduleFile.append("<module id=\"org.example.Module").append(i / 2).append("\"/>\n");
+            }
+            moduleFile.append("<library maven=\"org.example:library").append(i % LIBRARIES_COUNT).append(":1.0\"/>\n");
+            moduleFile.append("</dependency>\n</module>\n</jaguif>\n");
+            createJar(new File(pluginsDirectory, "module" + i + "-0." + i + ".jar"), moduleFile.toString());
+        }
+        for (int i = 0; i < LIBRARIES_COUNT; i++) {
+            createJar(new File(pluginsDirectory, "library" + i + "-1.0.jar"), null);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(workDirectory);
+    }
+
+    @Test
+    public void testParallelDiscoveryMatchesSerial() {
+        BasicModuleProvider serialProvider = createProvider(false, null);
+        serialProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+
+        BasicModuleProvider parallelProvider = createProvider(true, null);
+        parallelProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+
+        Assert.assertEquals(MODULES_COUNT, serialProvider.getModulesList().size());
+        Assert.assertEquals(describe(serialProvider), describe(parallelProvider));
+    }
+
+    @Test
+    public void testWarmStartSkipsUnchangedFiles() throws IOException {
+        BasicModuleProvider coldProvider = createProvider(true, new ModuleIndex(indexFile));
+        coldProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+        Assert.assertTrue(indexFile.isFile());
+        Assert.assertEquals(MODULES_COUNT + LIBRARIES_COUNT, coldProvider.getModuleIndex().getMissCount());
+
+        // Unchanged size and modification time means file doesn't have to be opened
+        for (File file : pluginsDirectory.listFiles()) {
+            long lastModified = file.lastModified();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.seek(0);
+                randomAccessFile.write(new byte[16]);
+            }
+            file.setLastModified(lastModified);
+        }
+
+        BasicModuleProvider warmProvider = createProvider(true, new ModuleIndex(indexFile));
+        warmProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+
+        Assert.assertEquals(MODULES_COUNT + LIBRARIES_COUNT, warmProvider.getModuleIndex().getHitCount());
+        Assert.assertEquals(0, warmProvider.getModuleIndex().getMissCount());
+        Assert.assertEquals(describe(coldProvider), describe(warmProvider));
+    }
+
+    @Test
+    public void testChangedFileIsReread() throws IOException {
+        BasicModuleProvider coldProvider = createProvider(false, new ModuleIndex(indexFile));
+        coldProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+
+        File changedFile = new File(pluginsDirectory, "module5-0.5.jar");
+        createJar(changedFile, "<jaguif><module><id>org.example.Changed</id></module></jaguif>");
+        changedFile.setLastModified(changedFile.lastModified() + 2000);
+
+        BasicModuleProvider warmProvider = createProvider(false, new ModuleIndex(indexFile));
+        warmProvider.addModulesFromPath(pluginsDirectory.toURI(), BasicModuleFileLocation.PLUGIN);
+        Assert.assertEquals(1, warmProvider.getModuleIndex().getMissCount());
+        Assert.assertTrue(warmProvider.hasModule("org.example.Changed"));
+        Assert.assertFalse(warmProvider.hasModule("org.example.Module5"));
+    }
+
+    @Nonnull
+    private BasicModuleProvider createProvider(boolean parallelDiscovery, @Nullable ModuleIndex moduleIndex) {
+        BasicModuleProvider moduleProvider = new BasicModuleProvider(new DynamicClassLoader(ModuleDiscoveryTest.class.getClassLoader()), ModuleDiscoveryTest.class);
+        moduleProvider.setParallelDiscovery(parallelDiscovery);
+        moduleProvider.setModuleIndex(moduleIndex);
+        return moduleProvider;
+    }
+
+    @Nonnull
+    private static String describe(BasicModuleProvider moduleProvider) {
+        List<String> records = new ArrayList<>();
+        for (ModuleRecord moduleRecord : moduleProvider.getModulesList()) {
+            records.add(moduleRecord.getModuleId() + " " + moduleRecord.getType() + " " + moduleRecord.getVersion() + " " + moduleRecord.getName()
+                    + " " + moduleRecord.getDependencyModuleIds() + " " + moduleRecord.getDependencyLibraries());
+        }
+        Collections.sort(records);
+        for (int i = 0; i < LIBRARIES_COUNT; i++) {
+            records.add("library" + i + " " + moduleProvider.hasLibrary("library" + i + "-1.0.jar"));
+        }
+        return String.join("\n", records);
+    }
+
+    private static void createJar(File file, @Nullable String moduleFile) throws IOException {
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(file))) {
+            if (moduleFile != null) {
+                stream.putNextEntry(new JarEntry("META-INF/module.xml"));
+                stream.write(moduleFile.getBytes(StandardCharsets.UTF_8));
+                stream.closeEntry();
+            }
+            stream.putNextEntry(new JarEntry("org/example/Dummy.class"));
+            stream.write(new byte[1024]);
+            stream.closeEntry();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.basic;
+
+import java.lang.reflect.Field;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.Module;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Test and microbenchmark for module lookup by interface class.
+ */
+@ParametersAreNonnullByDefault
+public class ModuleLookupTest {
+
+    private static final int LOOKUPS_COUNT = 2000000;
+
+    @Test
+    public void testLookupInvalidatedByAddedModule() {
+        BasicModuleProvider moduleProvider = createModuleProvider();
+        TestModule module = new TestModule();
+        moduleProvider.addModule(module);
+        Assert.assertSame(module, moduleProvider.getModule(TestModuleApi.class));
+        Assert.assertSame(module, moduleProvider.getModule(TestModuleApi.class));
+
+        TestModule replacedModule = new TestModule();
+        moduleProvider.addModule(replacedModule);
+        Assert.assertSame(replacedModule, moduleProvider.getModule(TestModuleApi.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLookupOfMissingModule() {
+        createModuleProvider().getModule(TestModuleApi.class);
+    }
+
+    @Test
+    public void testReflectionVersusCachedLookup() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        BasicModuleProvider moduleProvider = createModuleProvider();
+        TestModule module = new TestModule();
+        moduleProvider.addModule(module);
+
+        // Warm up both paths
+        long sink = reflectionLookup(moduleProvider, LOOKUPS_COUNT / 10) + cachedLookup(moduleProvider, LOOKUPS_COUNT / 10);
+
+        long start = System.nanoTime();
+        sink += reflectionLookup(moduleProvider, LOOKUPS_COUNT);
+        long reflectionTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        sink += cachedLookup(moduleProvider, LOOKUPS_COUNT);
+        long cachedTime = System.nanoTime() - start;
+
+        System.out.println("Module lookup x " + LOOKUPS_COUNT + ", reflection: " + (reflectionTime / 1000000) + " ms, cached: " + (cachedTime / 1000000) + " ms");
+        Assert.assertEquals(2L * (LOOKUPS_COUNT + LOOKUPS_COUNT / 10), sink);
+    }
+
+    private static long reflectionLookup(BasicModuleProvider moduleProvider, int count) throws Exception {
+        long found = 0;
+        for (int i = 0; i < count; i++) {
+            // Lookup as done before resolution cache
+            Field declaredField = TestModuleApi.class.getDeclaredField("MODULE_ID");
+            Object moduleId = declaredField.get(null);
+            if (moduleProvider.getModuleById((String) moduleId) instanceof TestModuleApi) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static long cachedLookup(BasicModuleProvider moduleProvider, int count) {
+        long found = 0;
+        for (int i = 0; i < count; i++) {
+            if (moduleProvider.getModule(TestModuleApi.class) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static BasicModuleProvider createModuleProvider() {
+        return new BasicModuleProvider(new DynamicClassLoader(ModuleLookupTest.class.getClassLoader()), ModuleLookupTest.class);
+    }
+
+    interface TestModuleApi extends Module {
+
+        String MODULE_ID = TestModule.class.getCanonicalName();
+    }
+
+    public static class TestModule implements TestModuleApi {
+    }
+}
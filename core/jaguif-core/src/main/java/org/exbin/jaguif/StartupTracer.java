@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Opt-in tracer of application startup phases.
+ * <p>
+ * Records durations of possibly nested phases and exports them in Chrome
+ * trace event format, which can be opened in chrome://tracing or Perfetto.
+ * Tracing is enabled by system property {@value #ENABLED_PROPERTY} or
+ * programmatically and ends when trace is finished.
+ */
+@ParametersAreNonnullByDefault
+public final class StartupTracer {
+
+    public static final String ENABLED_PROPERTY = "jaguif.startupTrace";
+    public static final String TRACE_FILE_NAME = "startup-trace.json";
+    public static final String MODULE_CATEGORY = "module";
+    private static final String PHASE_CATEGORY = "startup";
+    private static final int SLOWEST_MODULES_COUNT = 5;
+
+    private static final long ORIGIN_TIME = System.nanoTime();
+    private static final Phase NO_PHASE = () -> {
+    };
+    private static final List<TraceEvent> events = new ArrayList<>();
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+    private static File traceFile = null;
+
+    private StartupTracer() {
+        // No instance
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StartupTracer.enabled = enabled;
+    }
+
+    /**
+     * Sets file where trace is exported when finished.
+     *
+     * @param traceFile trace file or null for no export
+     */
+    public static synchronized void setTraceFile(@Nullable File traceFile) {
+        StartupTracer.traceFile = traceFile;
+    }
+
+    /**
+     * Begins startup phase.
+     *
+     * @param name phase name
+     * @return phase to close when finished
+     */
+    @Nonnull
+    public static Phase begin(String name) {
+        return begin(PHASE_CATEGORY, name);
+    }
+
+    /**
+     * Begins startup phase of given category.
+     *
+     * @param category phase category
+     * @param name phase name
+     * @return phase to close when finished
+     */
+    @Nonnull
+    public static Phase begin(String category, String name) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+
+        long startTime = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        return () -> {
+            long endTime = System.nanoTime();
+            synchronized (StartupTracer.class) {
+                if (enabled) {
+                    events.add(new TraceEvent(category, name, startTime - ORIGIN_TIME, endTime - startTime, thread.getId(), thread.getName()));
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns copy of recorded events.
+     *
+     * @return recorded events
+     */
+    @Nonnull
+    public static synchronized List<TraceEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Finishes tracing and exports trace into trace file if set.
+     */
+    public static void finish() {
+        File file;
+        List<TraceEvent> recordedEvents;
+        synchronized (StartupTracer.class) {
+            if (!enabled) {
+                return;
+            }
+            enabled = false;
+            file = traceFile;
+            recordedEvents = new ArrayList<>(events);
+            events.clear();
+        }
+
+        logSlowestModules(recordedEvents);
+        if (file != null) {
+            try {
+                export(recordedEvents, file);
+            } catch (IOException ex) {
+                Logger.getLogger(StartupTracer.class.getName()).log(Level.WARNING, "Unable to export startup trace", ex);
+            }
+        }
+    }
+
+    /**
+     * Exports events in Chrome trace event format.
+     *
+     * @param traceEvents trace events
+     * @param file target file
+     * @throws IOException if write fails
+     */
+    public static void export(List<TraceEvent> traceEvents, File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(tempFile.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("{\"traceEvents\":[");
+            Set<Long> namedThreads = new HashSet<>();
+            boolean first = true;
+            for (TraceEvent event : traceEvents) {
+                if (namedThreads.add(event.threadId)) {
+                    writer.write(first ? "\n" : ",\n");
+                    first = false;
+                    writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + event.threadId + ",\"args\":{\"name\":\"" + escape(event.threadName) + "\"}}");
+                }
+                writer.write(first ? "\n" : ",\n");
+                first = false;
+                writer.write("{\"name\":\"" + escape(event.name) + "\",\"cat\":\"" + escape(event.category) + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + event.threadId
+                        + ",\"ts\":" + (event.startTime / 1000) + ",\"dur\":" + (event.duration / 1000) + "}");
+            }
+            writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void logSlowestModules(List<TraceEvent> traceEvents) {
+        List<TraceEvent> moduleEvents = new ArrayList<>();
+        for (TraceEvent event : traceEvents) {
+            if (MODULE_CATEGORY.equals(event.category)) {
+                moduleEvents.add(event);
+            }
+        }
+        if (moduleEvents.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(moduleEvents, (first, second) -> Long.compare(second.duration, first.duration));
+        StringBuilder builder = new StringBuilder("Slowest module phases:");
+        for (int i = 0; i < Math.min(SLOWEST_MODULES_COUNT, moduleEvents.size()); i++) {
+            TraceEvent event = moduleEvents.get(i);
+            builder.append("\n  ").append(event.name).append(": ").append(event.duration / 1000000).append(" ms");
+        }
+        Logger.getLogger(StartupTracer.class.getName()).log(Level.INFO, builder.toString());
+    }
+
+    @Nonnull
+    private static String escape(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            switch (character) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        builder.append(character);
+                    }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Started startup phase.
+     */
+    public interface Phase extends AutoCloseable {
+
+        /**
+         * Ends phase.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Recorded phase.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class TraceEvent {
+
+        private final String category;
+        private final String name;
+        private final long startTime;
+        private final long duration;
+        private final long threadId;
+        private final String threadName;
+
+        private TraceEvent(String category, String name, long startTime, long duration, long threadId, String threadName) {
+            this.category = category;
+            this.name = name;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.threadId = threadId;
+            this.threadName = threadName;
+        }
+
+        @Nonnull
+        public String getCategory() {
+            return category;
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns start time relative to tracer initialization.
+         *
+         * @return start time in nanoseconds
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Returns duration of phase.
+         *
+         * @return duration in nanoseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test for startup tracer.
+ */
+@ParametersAreNonnullByDefault
+public class StartupTracerTest {
+
+    @Test
+    public void testNestedPhasesExported() throws IOException {
+        File traceFile = Files.createTempFile("startupTrace", ".json").toFile();
+        try {
+            StartupTracer.setTraceFile(traceFile);
+            StartupTracer.setEnabled(true);
+            try (StartupTracer.Phase outerPhase = StartupTracer.begin("outer")) {
+                try (StartupTracer.Phase innerPhase = StartupTracer.begin(StartupTracer.MODULE_CATEGORY, "load \"quoted\" module")) {
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            List<StartupTracer.TraceEvent> events = StartupTracer.getEvents();
+            Assert.assertEquals(2, events.size());
+            StartupTracer.TraceEvent inner = events.get(0);
+            StartupTracer.TraceEvent outer = events.get(1);
+            Assert.assertEquals("outer", outer.getName());
+            Assert.assertTrue(outer.getStartTime() <= inner.getStartTime());
+            Assert.assertTrue(outer.getStartTime() + outer.getDuration() >= inner.getStartTime() + inner.getDuration());
+
+            StartupTracer.finish();
+            Assert.assertFalse(StartupTracer.isEnabled());
+            String trace = new String(Files.readAllBytes(traceFile.toPath()), StandardCharsets.UTF_8);
+            Assert.assertTrue(trace, trace.startsWith("{\"traceEvents\":["));
+            Assert.assertTrue(trace, trace.contains("\"name\":\"load \\\"quoted\\\" module\",\"cat\":\"module\",\"ph\":\"X\""));
+
+            // Phases after finish are not recorded
+            StartupTracer.begin("late").close();
+            Assert.assertTrue(StartupTracer.getEvents().isEmpty());
+        } finally {
+            StartupTracer.setTraceFile(null);
+            traceFile.delete();
+        }
+    }
+}
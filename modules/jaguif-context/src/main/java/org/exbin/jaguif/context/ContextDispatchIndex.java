@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.context;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.context.api.ContextStateChangeListener;
+import org.exbin.jaguif.context.api.ContextStateUpdateListener;
+
+/**
+ * Per state class index of listeners across all context update groups.
+ * <p>
+ * Listener arrays are copy-on-write: they are rebuilt when listeners are
+ * registered or group is removed and shared as is with notification callers,
+ * which must not modify them.
+ */
+@ParametersAreNonnullByDefault
+public class ContextDispatchIndex {
+
+    private static final ContextStateChangeListener[] EMPTY_CHANGE_LISTENERS = new ContextStateChangeListener[0];
+    private static final ContextStateUpdateListener[] EMPTY_UPDATE_LISTENERS = new ContextStateUpdateListener[0];
+    private static final String[] EMPTY_GROUPS = new String[0];
+
+    private final Map<Class<?>, StateClassSlot> slots = new ConcurrentHashMap<>();
+    private final Map<String, Set<Class<?>>> groupStateClasses = new HashMap<>();
+
+    public synchronized void addChangeListener(String groupId, Class<?> stateClass, ContextStateChangeListener<?> listener) {
+        StateClassSlot slot = getOrCreateSlot(groupId, stateClass);
+        int length = slot.changeListeners.length;
+        ContextStateChangeListener[] listeners = new ContextStateChangeListener[length + 1];
+        String[] groups = new String[length + 1];
+        System.arraycopy(slot.changeListeners, 0, listeners, 0, length);
+        System.arraycopy(slot.changeGroups, 0, groups, 0, length);
+        listeners[length] = listener;
+        groups[length] = groupId;
+        slot.changeGroups = groups;
+        slot.changeListeners = listeners;
+    }
+
+    public synchronized void addUpdateListener(String groupId, Class<?> stateClass, ContextStateUpdateListener<?> listener) {
+        StateClassSlot slot = getOrCreateSlot(groupId, stateClass);
+        int length = slot.updateListeners.length;
+        ContextStateUpdateListener[] listeners = new ContextStateUpdateListener[length + 1];
+        String[] groups = new String[length + 1];
+        System.arraycopy(slot.updateListeners, 0, listeners, 0, length);
+        System.arraycopy(slot.updateGroups, 0, groups, 0, length);
+        listeners[length] = listener;
+        groups[length] = groupId;
+        slot.updateGroups = groups;
+        slot.updateListeners = listeners;
+    }
+
+    /**
+     * Removes all listeners registered for given group.
+     * <p>
+     * Only slots of state classes the group registered for are rebuilt.
+     *
+     * @param groupId group identifier
+     */
+    public synchronized void removeGroup(String groupId) {
+        Set<Class<?>> stateClasses = groupStateClasses.remove(groupId);
+        if (stateClasses == null) {
+            return;
+        }
+
+        for (Class<?> stateClass : stateClasses) {
+            StateClassSlot slot = slots.get(stateClass);
+            if (slot == null) {
+                continue;
+            }
+
+            int changeCount = countOtherGroups(slot.changeGroups, groupId);
+            ContextStateChangeListener[] changeListeners = changeCount == 0 ? EMPTY_CHANGE_LISTENERS : new ContextStateChangeListener[changeCount];
+            String[] changeGroups = changeCount == 0 ? EMPTY_GROUPS : new String[changeCount];
+            int target = 0;
+            for (int i = 0; i < slot.changeGroups.length; i++) {
+                if (!groupId.equals(slot.changeGroups[i])) {
+                    changeListeners[target] = slot.changeListeners[i];
+                    changeGroups[target] = slot.changeGroups[i];
+                    target++;
+                }
+            }
+
+            int updateCount = countOtherGroups(slot.updateGroups, groupId);
+            ContextStateUpdateListener[] updateListeners = updateCount == 0 ? EMPTY_UPDATE_LISTENERS : new ContextStateUpdateListener[updateCount];
+            String[] updateGroups = updateCount == 0 ? EMPTY_GROUPS : new String[updateCount];
+            target = 0;
+            for (int i = 0; i < slot.updateGroups.length; i++) {
+                if (!groupId.equals(slot.updateGroups[i])) {
+                    updateListeners[target] = slot.updateListeners[i];
+                    updateGroups[target] = slot.updateGroups[i];
+                    target++;
+                }
+            }
+
+            if (changeCount == 0 && updateCount == 0) {
+                slots.remove(stateClass);
+            } else {
+                slot.changeGroups = changeGroups;
+                slot.changeListeners = changeListeners;
+                slot.updateGroups = updateGroups;
+                slot.updateListeners = updateListeners;
+            }
+        }
+    }
+
+    /**
+     * Returns change listeners of all groups for given state class.
+     *
+     * @param stateClass state class
+     * @return shared array of listeners, must not be modified
+     */
+    @Nonnull
+    public ContextStateChangeListener[] getChangeListeners(Class<?> stateClass) {
+        StateClassSlot slot = slots.get(stateClass);
+        return slot == null ? EMPTY_CHANGE_LISTENERS : slot.changeListeners;
+    }
+
+    /**
+     * Returns update listeners of all groups for given state class.
+     *
+     * @param stateClass state class
+     * @return shared array of listeners, must not be modified
+     */
+    @Nonnull
+    public ContextStateUpdateListener[] getUpdateListeners(Class<?> stateClass) {
+        StateClassSlot slot = slots.get(stateClass);
+        return slot == null ? EMPTY_UPDATE_LISTENERS : slot.updateListeners;
+    }
+
+    @Nonnull
+    private StateClassSlot getOrCreateSlot(String groupId, Class<?> stateClass) {
+        StateClassSlot slot = slots.get(stateClass);
+        if (slot == null) {
+            slot = new StateClassSlot();
+            slots.put(stateClass, slot);
+        }
+
+        Set<Class<?>> stateClasses = groupStateClasses.get(groupId);
+        if (stateClasses == null) {
+            stateClasses = new HashSet<>();
+            groupStateClasses.put(groupId, stateClasses);
+        }
+        stateClasses.add(stateClass);
+
+        return slot;
+    }
+
+    private static int countOtherGroups(String[] groups, String groupId) {
+        int count = 0;
+        for (String group : groups) {
+            if (!groupId.equals(group)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class StateClassSlot {
+
+        private volatile ContextStateChangeListener[] changeListeners = EMPTY_CHANGE_LISTENERS;
+        private volatile ContextStateUpdateListener[] updateListeners = EMPTY_UPDATE_LISTENERS;
+        private String[] changeGroups = EMPTY_GROUPS;
+        private String[] updateGroups = EMPTY_GROUPS;
+    }
+}
@@ -17,7 +17,6 @@ package org.exbin.jaguif.context;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nonnull;
@@ -37,21 +36,32 @@ import org.exbin.jaguif.context.service.ContextMessagingService;
 public class ContextUpdateManager implements ContextUpdateManagement {
 
     public static final String DEFAULT_GROUP = "";
-    protected final ContextMessagingService messagingService = new ContextMessagingService();
+    protected final ContextMessagingService messagingService;
+    protected final ContextDispatchIndex dispatchIndex = new ContextDispatchIndex();
     protected final Map<String, ContextUpdateRecord> records = new HashMap<>();
 
     public ContextUpdateManager() {
-        records.put(DEFAULT_GROUP, new ContextUpdateRecord());
+        this(new ContextMessagingService());
+    }
+
+    public ContextUpdateManager(ContextMessagingService messagingService) {
+        this.messagingService = messagingService;
+        records.put(DEFAULT_GROUP, new ContextUpdateRecord(DEFAULT_GROUP, dispatchIndex));
     }
 
     @Override
     public void addGroup(String groupId) {
-        records.put(groupId, new ContextUpdateRecord());
+        ContextUpdateRecord previousRecord = records.put(groupId, new ContextUpdateRecord(groupId, dispatchIndex));
+        if (previousRecord != null) {
+            dispatchIndex.removeGroup(groupId);
+        }
     }
 
     @Override
     public void removeGroup(String groupId) {
-        records.remove(groupId);
+        if (records.remove(groupId) != null) {
+            dispatchIndex.removeGroup(groupId);
+        }
     }
 
     @Override
@@ -65,40 +75,20 @@ public class ContextUpdateManager implements ContextUpdateManagement {
         contextChange.register(record);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> void notifyStateChanged(Class<T> stateClass, @Nullable T contextInstance) {
-        LinkedList<ContextStateChangeListener> listeners = new LinkedList<>();
-        for (ContextUpdateRecord record : records.values()) {
-            List<ContextStateChangeListener<?>> changeListeners = record.getChangeListeners(stateClass);
-            if (changeListeners == null) {
-                continue;
-            }
-
-            for (ContextStateChangeListener changeListener : changeListeners) {
-                listeners.add(changeListener);
-            }
+        ContextStateChangeListener[] listeners = dispatchIndex.getChangeListeners(stateClass);
+        if (listeners.length > 0) {
+            messagingService.notifyStateChanged(stateClass, listeners, contextInstance);
         }
-
-        messagingService.notifyStateChanged(listeners, contextInstance);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> void notifyStateUpdated(Class<T> stateClass, T contextInstance, StateUpdateType updateType) {
-        LinkedList<ContextStateUpdateListener> listeners = new LinkedList<>();
-        for (ContextUpdateRecord record : records.values()) {
-            List<ContextStateUpdateListener<?>> updateListeners = record.getUpdateListeners(stateClass);
-            if (updateListeners == null) {
-                continue;
-            }
-
-            for (ContextStateUpdateListener updateListener : updateListeners) {
-                listeners.add(updateListener);
-            }
+        ContextStateUpdateListener[] listeners = dispatchIndex.getUpdateListeners(stateClass);
+        if (listeners.length > 0) {
+            messagingService.notifyStateUpdated(stateClass, listeners, contextInstance, updateType);
         }
-
-        messagingService.notifyStateUpdated(listeners, contextInstance, updateType);
     }
 
     @Nonnull
@@ -117,6 +107,11 @@ public class ContextUpdateManager implements ContextUpdateManagement {
         return listeners;
     }
 
+    @Nonnull
+    public ContextMessagingService getMessagingService() {
+        return messagingService;
+    }
+
     @Nonnull
     @Override
     public <T> List<ContextStateUpdateListener<?>> getUpdateListeners(String groupId, Class<T> contextClass) {
@@ -33,6 +33,17 @@ public class ContextUpdateRecord implements ContextChangeRegistration {
 
     protected final Map<Class<?>, List<ContextStateChangeListener<?>>> contextChangeListeners = new HashMap<>();
     protected final Map<Class<?>, List<ContextStateUpdateListener<?>>> contextStateUpdateListeners = new HashMap<>();
+    protected final String groupId;
+    protected final ContextDispatchIndex dispatchIndex;
+
+    public ContextUpdateRecord() {
+        this("", null);
+    }
+
+    public ContextUpdateRecord(String groupId, @Nullable ContextDispatchIndex dispatchIndex) {
+        this.groupId = groupId;
+        this.dispatchIndex = dispatchIndex;
+    }
 
     @Override
     public <T> void registerChangeListener(Class<T> contextClass, ContextStateChangeListener<T> listener) {
@@ -43,6 +54,9 @@ public class ContextUpdateRecord implements ContextChangeRegistration {
         }
 
         listeners.add(listener);
+        if (dispatchIndex != null) {
+            dispatchIndex.addChangeListener(groupId, contextClass, listener);
+        }
     }
 
     @Override
@@ -54,6 +68,9 @@ public class ContextUpdateRecord implements ContextChangeRegistration {
         }
 
         listeners.add(listener);
+        if (dispatchIndex != null) {
+            dispatchIndex.addUpdateListener(groupId, contextClass, listener);
+        }
     }
 
     @Nullable
@@ -15,98 +15,353 @@
  */
 package org.exbin.jaguif.context.service;
 
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
 import org.exbin.jaguif.context.api.ContextStateChangeListener;
 import org.exbin.jaguif.context.api.ContextStateUpdateListener;
 import org.exbin.jaguif.context.api.StateUpdateType;
 
 /**
  * Context messaging service.
+ * <p>
+ * In synchronous mode messages are delivered directly in the calling thread.
+ * In asynchronous mode messages are queued and delivered one at the time in
+ * event dispatch thread, where context listeners expect to be called. Message
+ * which is still pending when the same message (same context instance, state
+ * class and update type) is posted again is not queued twice. Pending state
+ * change is superseded by newer state change of the same state class.
  */
 @ParametersAreNonnullByDefault
 public class ContextMessagingService {
 
-    protected MessagingThread messagingThread;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final Object lock = new Object();
+    private final int queueCapacity;
+    private final Map<MessageKey, Message> pendingMessages = new LinkedHashMap<>();
+    private final Map<Class<?>, MessageKey> pendingChanges = new HashMap<>();
+    private DispatchMode dispatchMode;
+    private boolean deliveryScheduled = false;
+    private boolean dispatching = false;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
 
     public ContextMessagingService() {
-        // TODO Do messaging in background, one at the time
-        // TODO Throw out repeated messages
+        this(DispatchMode.SYNCHRONOUS, DEFAULT_QUEUE_CAPACITY);
     }
 
-    public void notifyStateChanged(LinkedList<ContextStateChangeListener> changeListeners, @Nullable Object instance) {
-        messagingThread = new MessagingThread("contextMessaging");
-        messagingThread.notifyStateChanged(changeListeners, instance);
-        messagingThread.start();
-        try {
-            messagingThread.join();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(ContextMessagingService.class.getName()).log(Level.SEVERE, null, ex);
+    public ContextMessagingService(DispatchMode dispatchMode, int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
         }
+        this.dispatchMode = dispatchMode;
+        this.queueCapacity = queueCapacity;
     }
 
-    public void notifyStateUpdated(LinkedList<ContextStateUpdateListener> updateListeners, Object contextInstance, StateUpdateType updateType) {
-        messagingThread = new MessagingThread("contextMessaging");
-        messagingThread.notifyStateUpdated(updateListeners, contextInstance, updateType);
-        messagingThread.start();
-        try {
-            messagingThread.join();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(ContextMessagingService.class.getName()).log(Level.SEVERE, null, ex);
+    @Nonnull
+    public DispatchMode getDispatchMode() {
+        synchronized (lock) {
+            return dispatchMode;
         }
     }
 
-    @ParametersAreNonnullByDefault
-    private static class MessagingThread extends Thread {
+    /**
+     * Sets dispatch mode.
+     * <p>
+     * Switching to synchronous mode delivers all pending messages first.
+     *
+     * @param dispatchMode dispatch mode
+     */
+    public void setDispatchMode(DispatchMode dispatchMode) {
+        synchronized (lock) {
+            this.dispatchMode = dispatchMode;
+        }
+        if (dispatchMode == DispatchMode.SYNCHRONOUS) {
+            flush();
+        }
+    }
 
-        private Object contextInstance;
-        private StateUpdateType updateType = null;
-        private LinkedList<ContextStateChangeListener> changeListeners = null;
-        private LinkedList<ContextStateUpdateListener> updateListeners = null;
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Notifies change listeners about state change.
+     *
+     * @param stateClass state class
+     * @param changeListeners listeners snapshot, must not be modified later
+     * @param contextInstance context instance
+     */
+    public void notifyStateChanged(Class<?> stateClass, ContextStateChangeListener[] changeListeners, @Nullable Object contextInstance) {
+        Message message = new Message(new MessageKey(stateClass, contextInstance, null));
+        message.changeListeners = changeListeners;
+        post(message);
+    }
+
+    /**
+     * Notifies update listeners about state update.
+     *
+     * @param stateClass state class
+     * @param updateListeners listeners snapshot, must not be modified later
+     * @param contextInstance context instance
+     * @param updateType update type
+     */
+    public void notifyStateUpdated(Class<?> stateClass, ContextStateUpdateListener[] updateListeners, Object contextInstance, StateUpdateType updateType) {
+        Message message = new Message(new MessageKey(stateClass, contextInstance, updateType));
+        message.updateListeners = updateListeners;
+        post(message);
+    }
 
-        private MessagingThread(String threadName) {
-            super(threadName);
+    /**
+     * Delivers all pending messages.
+     * <p>
+     * When called from event dispatch thread, pending messages are delivered
+     * directly, otherwise waits until they are delivered.
+     */
+    public void flush() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliverPending();
+            return;
         }
 
-        private void notifyStateChanged(LinkedList<ContextStateChangeListener> changeListeners, @Nullable Object contextInstance) {
-            this.changeListeners = changeListeners;
-            this.updateListeners = null;
-            this.contextInstance = contextInstance;
-            this.updateType = null;
+        synchronized (lock) {
+            while (!pendingMessages.isEmpty() || dispatching) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all pending messages.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            pendingMessages.clear();
+            pendingChanges.clear();
+            lock.notifyAll();
         }
+    }
 
-        private void notifyStateUpdated(LinkedList<ContextStateUpdateListener> updateListeners, Object contextInstance, StateUpdateType updateType) {
-            this.changeListeners = null;
-            this.updateListeners = updateListeners;
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    private void post(Message message) {
+        queuedCount.incrementAndGet();
+        boolean deliverDirectly;
+        DispatchMode mode;
+        synchronized (lock) {
+            mode = dispatchMode;
+            // Messages posted before switching mode must be delivered first
+            deliverDirectly = mode == DispatchMode.SYNCHRONOUS && pendingMessages.isEmpty() && !dispatching;
+            if (!deliverDirectly) {
+                enqueue(message);
+            }
+        }
+
+        if (deliverDirectly) {
+            deliver(message);
+        } else if (mode == DispatchMode.SYNCHRONOUS) {
+            flush();
+        }
+    }
+
+    private void enqueue(Message message) {
+        MessageKey key = message.key;
+        boolean dispatchThreadCall = SwingUtilities.isEventDispatchThread();
+        while (true) {
+            Message pendingMessage = pendingMessages.get(key);
+            if (pendingMessage != null) {
+                // Same message is still waiting, just refresh its listeners
+                pendingMessage.changeListeners = message.changeListeners;
+                pendingMessage.updateListeners = message.updateListeners;
+                coalescedCount.incrementAndGet();
+                return;
+            }
+
+            if (key.updateType == null) {
+                MessageKey supersededKey = pendingChanges.remove(key.stateClass);
+                if (supersededKey != null) {
+                    pendingMessages.remove(supersededKey);
+                    coalescedCount.incrementAndGet();
+                }
+            }
+
+            // Event dispatch thread can't wait for itself
+            if (pendingMessages.size() < queueCapacity || dispatchThreadCall) {
+                break;
+            }
+
+            // Queue is full, wait for event dispatch thread to catch up
+            scheduleDelivery();
+            try {
+                lock.wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        pendingMessages.put(key, message);
+        if (key.updateType == null) {
+            pendingChanges.put(key.stateClass, key);
+        }
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (!deliveryScheduled) {
+            deliveryScheduled = true;
+            SwingUtilities.invokeLater(() -> {
+                synchronized (lock) {
+                    deliveryScheduled = false;
+                }
+                deliverPending();
+            });
+        }
+    }
+
+    /**
+     * Delivers pending messages in event dispatch thread.
+     */
+    private void deliverPending() {
+        while (true) {
+            Message message;
+            synchronized (lock) {
+                if (dispatching) {
+                    // Nested call from listener, outer loop continues
+                    return;
+                }
+                Iterator<Message> iterator = pendingMessages.values().iterator();
+                if (!iterator.hasNext()) {
+                    lock.notifyAll();
+                    return;
+                }
+                message = iterator.next();
+                iterator.remove();
+                if (message.key.updateType == null) {
+                    pendingChanges.remove(message.key.stateClass, message.key);
+                }
+                dispatching = true;
+                lock.notifyAll();
+            }
+
+            try {
+                deliver(message);
+            } finally {
+                synchronized (lock) {
+                    dispatching = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Message message) {
+        if (message.key.updateType == null) {
+            for (ContextStateChangeListener listener : message.changeListeners) {
+                try {
+                    listener.stateChanged(message.key.contextInstance);
+                } catch (Throwable tw) {
+                    Logger.getLogger(ContextMessagingService.class.getName()).log(Level.SEVERE, null, tw);
+                }
+            }
+        } else {
+            for (ContextStateUpdateListener listener : message.updateListeners) {
+                try {
+                    listener.notifyStateUpdated(message.key.contextInstance, message.key.updateType);
+                } catch (Throwable tw) {
+                    Logger.getLogger(ContextMessagingService.class.getName()).log(Level.SEVERE, null, tw);
+                }
+            }
+        }
+        deliveredCount.incrementAndGet();
+    }
+
+    /**
+     * Message dispatch mode.
+     */
+    public enum DispatchMode {
+        /**
+         * Messages are delivered later in event dispatch thread and caller is
+         * not blocked.
+         */
+        ASYNCHRONOUS,
+        /**
+         * Messages are delivered directly in the calling thread.
+         */
+        SYNCHRONOUS
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class MessageKey {
+
+        private final Class<?> stateClass;
+        private final Object contextInstance;
+        private final StateUpdateType updateType;
+
+        private MessageKey(Class<?> stateClass, @Nullable Object contextInstance, @Nullable StateUpdateType updateType) {
+            this.stateClass = stateClass;
             this.contextInstance = contextInstance;
             this.updateType = updateType;
         }
 
-        @SuppressWarnings("unchecked")
         @Override
-        public void run() {
-            if (updateType == null) {
-                while (!changeListeners.isEmpty()) {
-                    if (Thread.interrupted()) {
-                        return;
-                    }
-
-                    ContextStateChangeListener listener = changeListeners.pop();
-                    listener.stateChanged(contextInstance);
-                }
-            } else {
-                while (!updateListeners.isEmpty()) {
-                    if (Thread.interrupted()) {
-                        return;
-                    }
-
-                    ContextStateUpdateListener listener = updateListeners.pop();
-                    listener.notifyStateUpdated(contextInstance, updateType);
-                }
+        public int hashCode() {
+            int hash = stateClass.hashCode();
+            hash = 31 * hash + System.identityHashCode(contextInstance);
+            hash = 31 * hash + (updateType == null ? 0 : updateType.hashCode());
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
             }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            MessageKey other = (MessageKey) obj;
+            return stateClass == other.stateClass && contextInstance == other.contextInstance
+                    && (updateType == null ? other.updateType == null : updateType.equals(other.updateType));
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class Message {
+
+        private final MessageKey key;
+        private ContextStateChangeListener[] changeListeners;
+        private ContextStateUpdateListener[] updateListeners;
+
+        private Message(MessageKey key) {
+            this.key = key;
         }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.context;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.context.api.ContextChangeRegistration;
+import org.exbin.jaguif.context.api.ContextStateChangeListener;
+import org.exbin.jaguif.context.service.ContextMessagingService;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Stress test for indexed listener dispatch.
+ */
+@ParametersAreNonnullByDefault
+public class ContextDispatchIndexTest {
+
+    private static final int GROUPS_COUNT = 50;
+    private static final int STATE_CLASSES_COUNT = 100;
+    private static final int LISTENERS_PER_GROUP_AND_CLASS = 1;
+    private static final int NOTIFICATIONS_COUNT = 20000;
+
+    @Test
+    public void testDispatchReachesOnlyRelevantListeners() {
+        ContextUpdateManager updateManager = new ContextUpdateManager(new ContextMessagingService(ContextMessagingService.DispatchMode.SYNCHRONOUS, 16));
+        Class<?>[] stateClasses = createStateClasses();
+        AtomicInteger[] counters = new AtomicInteger[STATE_CLASSES_COUNT];
+        for (int i = 0; i < STATE_CLASSES_COUNT; i++) {
+            counters[i] = new AtomicInteger();
+        }
+
+        for (int group = 0; group < GROUPS_COUNT; group++) {
+            String groupId = "group" + group;
+            updateManager.addGroup(groupId);
+            updateManager.addContextItem(groupId, (registrar) -> {
+                for (int i = 0; i < STATE_CLASSES_COUNT; i++) {
+                    AtomicInteger counter = counters[i];
+                    registerChangeListener(registrar, stateClasses[i], (instance) -> counter.incrementAndGet());
+                }
+            });
+        }
+
+        updateManager.notifyStateChanged(stateClasses[3], null);
+        Assert.assertEquals(GROUPS_COUNT, counters[3].get());
+        Assert.assertEquals(0, counters[4].get());
+
+        updateManager.removeGroup("group0");
+        updateManager.notifyStateChanged(stateClasses[3], null);
+        Assert.assertEquals(GROUPS_COUNT * 2 - 1, counters[3].get());
+
+        updateManager.addGroup("group1");
+        updateManager.notifyStateChanged(stateClasses[3], null);
+        Assert.assertEquals(GROUPS_COUNT * 3 - 3, counters[3].get());
+        Assert.assertEquals(0, counters[4].get());
+    }
+
+    @Test
+    public void testIndexedLookupVersusScan() {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        Class<?>[] stateClasses = createStateClasses();
+        ContextDispatchIndex dispatchIndex = new ContextDispatchIndex();
+        List<ContextUpdateRecord> records = new ArrayList<>();
+        ContextStateChangeListener<Object> listener = (instance) -> {
+        };
+        for (int group = 0; group < GROUPS_COUNT; group++) {
+            ContextUpdateRecord record = new ContextUpdateRecord("group" + group, dispatchIndex);
+            for (Class<?> stateClass : stateClasses) {
+                for (int i = 0; i < LISTENERS_PER_GROUP_AND_CLASS; i++) {
+                    registerChangeListener(record, stateClass, listener);
+                }
+            }
+            records.add(record);
+        }
+
+        // Warm up both paths
+        long sink = scanLookup(records, stateClasses) + indexedLookup(dispatchIndex, stateClasses);
+
+        long scanAllocated = getAllocatedBytes();
+        long scanStart = System.nanoTime();
+        sink += scanLookup(records, stateClasses);
+        long scanTime = System.nanoTime() - scanStart;
+        scanAllocated = getAllocatedBytes() - scanAllocated;
+
+        long indexAllocated = getAllocatedBytes();
+        long indexStart = System.nanoTime();
+        sink += indexedLookup(dispatchIndex, stateClasses);
+        long indexTime = System.nanoTime() - indexStart;
+        indexAllocated = getAllocatedBytes() - indexAllocated;
+
+        System.out.println("Listener lookup for " + NOTIFICATIONS_COUNT + " notifications, " + (GROUPS_COUNT * STATE_CLASSES_COUNT * LISTENERS_PER_GROUP_AND_CLASS) + " listeners");
+        System.out.println("  scan:    " + (scanTime / 1000000) + " ms, " + scanAllocated + " bytes allocated");
+        System.out.println("  indexed: " + (indexTime / 1000000) + " ms, " + indexAllocated + " bytes allocated");
+
+        Assert.assertEquals(2L * 2 * NOTIFICATIONS_COUNT * GROUPS_COUNT * LISTENERS_PER_GROUP_AND_CLASS, sink);
+        if (getAllocatedBytes() >= 0) {
+            Assert.assertTrue(indexAllocated < scanAllocated);
+        }
+    }
+
+    private static long scanLookup(List<ContextUpdateRecord> records, Class<?>[] stateClasses) {
+        long count = 0;
+        for (int i = 0; i < NOTIFICATIONS_COUNT; i++) {
+            Class<?> stateClass = stateClasses[i % stateClasses.length];
+            LinkedList<ContextStateChangeListener> listeners = new LinkedList<>();
+            for (ContextUpdateRecord record : records) {
+                List<ContextStateChangeListener<?>> changeListeners = record.getChangeListeners(stateClass);
+                if (changeListeners != null) {
+                    listeners.addAll(changeListeners);
+                }
+            }
+            count += listeners.size();
+        }
+        return count;
+    }
+
+    private static long indexedLookup(ContextDispatchIndex dispatchIndex, Class<?>[] stateClasses) {
+        long count = 0;
+        for (int i = 0; i < NOTIFICATIONS_COUNT; i++) {
+            count += dispatchIndex.getChangeListeners(stateClasses[i % stateClasses.length]).length;
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void registerChangeListener(ContextChangeRegistration registrar, Class<?> stateClass, ContextStateChangeListener<?> listener) {
+        registrar.registerChangeListener((Class<Object>) stateClass, (ContextStateChangeListener<Object>) listener);
+    }
+
+    private static Class<?>[] createStateClasses() {
+        // Distinct state classes are emulated by array classes of growing dimension
+        Class<?>[] stateClasses = new Class<?>[STATE_CLASSES_COUNT];
+        Class<?> stateClass = Object.class;
+        for (int i = 0; i < STATE_CLASSES_COUNT; i++) {
+            stateClass = Array.newInstance(stateClass, 0).getClass();
+            stateClasses[i] = stateClass;
+        }
+        return stateClasses;
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.context.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import org.exbin.jaguif.context.api.ContextStateChangeListener;
+import org.exbin.jaguif.context.api.ContextStateUpdateListener;
+import org.exbin.jaguif.context.api.StateUpdateType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for context messaging service.
+ */
+@ParametersAreNonnullByDefault
+public class ContextMessagingServiceTest {
+
+    private static final StateUpdateType FIRST_UPDATE = new StateUpdateType() {
+    };
+    private static final StateUpdateType SECOND_UPDATE = new StateUpdateType() {
+    };
+
+    @Test
+    public void testSynchronousDelivery() {
+        ContextMessagingService messagingService = new ContextMessagingService();
+        Assert.assertEquals(ContextMessagingService.DispatchMode.SYNCHRONOUS, messagingService.getDispatchMode());
+        List<Object> received = new ArrayList<>();
+        Thread callingThread = Thread.currentThread();
+        ContextStateChangeListener<?> listener = (instance) -> {
+            Assert.assertSame(callingThread, Thread.currentThread());
+            received.add(instance);
+        };
+
+        messagingService.notifyStateChanged(String.class, new ContextStateChangeListener[]{listener}, "first");
+        messagingService.notifyStateChanged(String.class, new ContextStateChangeListener[]{listener}, "second");
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(2, messagingService.getQueuedCount());
+        Assert.assertEquals(0, messagingService.getCoalescedCount());
+        Assert.assertEquals(2, messagingService.getDeliveredCount());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        ContextMessagingService messagingService = new ContextMessagingService(ContextMessagingService.DispatchMode.ASYNCHRONOUS, 16);
+        List<Object> changes = new ArrayList<>();
+        List<StateUpdateType> updates = new ArrayList<>();
+        boolean[] dispatchThread = new boolean[]{true};
+        ContextStateChangeListener<?> changeListener = (instance) -> {
+            dispatchThread[0] &= SwingUtilities.isEventDispatchThread();
+            changes.add(instance);
+        };
+        ContextStateUpdateListener<?> updateListener = (instance, updateType) -> {
+            dispatchThread[0] &= SwingUtilities.isEventDispatchThread();
+            updates.add(updateType);
+        };
+        Object context = new Object();
+
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 100; i++) {
+                messagingService.notifyStateChanged(String.class, new ContextStateChangeListener[]{changeListener}, "change" + i);
+                messagingService.notifyStateUpdated(String.class, new ContextStateUpdateListener[]{updateListener}, context, FIRST_UPDATE);
+            }
+            messagingService.notifyStateUpdated(String.class, new ContextStateUpdateListener[]{updateListener}, context, SECOND_UPDATE);
+            // Nothing is delivered while caller is still running
+            Assert.assertTrue(changes.isEmpty());
+        });
+        messagingService.flush();
+        SwingUtilities.invokeAndWait(() -> {
+        });
+
+        Assert.assertTrue(dispatchThread[0]);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("change99", changes.get(0));
+        Assert.assertEquals(2, updates.size());
+        Assert.assertSame(FIRST_UPDATE, updates.get(0));
+        Assert.assertSame(SECOND_UPDATE, updates.get(1));
+        Assert.assertEquals(201, messagingService.getQueuedCount());
+        Assert.assertEquals(198, messagingService.getCoalescedCount());
+        Assert.assertEquals(3, messagingService.getDeliveredCount());
+    }
+
+    @Test
+    public void testSynchronousFallback() throws Exception {
+        ContextMessagingService messagingService = new ContextMessagingService(ContextMessagingService.DispatchMode.ASYNCHRONOUS, 16);
+        List<Object> received = new ArrayList<>();
+        ContextStateChangeListener<?> listener = received::add;
+        SwingUtilities.invokeAndWait(() -> {
+            messagingService.notifyStateChanged(String.class, new ContextStateChangeListener[]{listener}, "queued");
+            Assert.assertTrue(received.isEmpty());
+
+            // Switching mode delivers pending messages first
+            messagingService.setDispatchMode(ContextMessagingService.DispatchMode.SYNCHRONOUS);
+            Assert.assertEquals(1, received.size());
+            messagingService.notifyStateChanged(Integer.class, new ContextStateChangeListener[]{listener}, "direct");
+            Assert.assertEquals(2, received.size());
+            Assert.assertEquals("direct", received.get(1));
+        });
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        ContextMessagingService messagingService = new ContextMessagingService(ContextMessagingService.DispatchMode.ASYNCHRONOUS, 4);
+        int[] delivered = new int[1];
+        ContextStateUpdateListener<?> listener = (instance, updateType) -> delivered[0]++;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                messagingService.notifyStateUpdated(String.class, new ContextStateUpdateListener[]{listener}, new Object(), FIRST_UPDATE);
+            }
+        });
+        producer.start();
+        producer.join();
+        messagingService.flush();
+        SwingUtilities.invokeAndWait(() -> {
+            Assert.assertEquals(1000, delivered[0]);
+        });
+        Assert.assertEquals(1000, messagingService.getDeliveredCount());
+        Assert.assertEquals(0, messagingService.getCoalescedCount());
+    }
+}
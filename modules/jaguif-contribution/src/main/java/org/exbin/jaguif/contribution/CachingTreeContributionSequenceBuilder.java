@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.Collections;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionDefinition;
+import org.exbin.jaguif.contribution.api.TreeContributionSequenceBuilder;
+import org.exbin.jaguif.contribution.api.TreeContributionSequenceOutput;
+
+/**
+ * Tree contribution sequence builder replaying memoized plans.
+ * <p>
+ * Plans are reused while revision of the definition is unchanged.
+ * Definitions without revision tracking are built directly.
+ */
+@ParametersAreNonnullByDefault
+public class CachingTreeContributionSequenceBuilder implements TreeContributionSequenceBuilder {
+
+    private final DefaultTreeContributionSequenceBuilder builder;
+    private final ContributionSequencePlanCache planCache = new ContributionSequencePlanCache();
+
+    public CachingTreeContributionSequenceBuilder() {
+        this(new DefaultTreeContributionSequenceBuilder());
+    }
+
+    public CachingTreeContributionSequenceBuilder(DefaultTreeContributionSequenceBuilder builder) {
+        this.builder = builder;
+    }
+
+    @Override
+    public void buildSequence(TreeContributionSequenceOutput targetSequence, String definitionId, @Nullable ContributionDefinition contributionDef) {
+        if (!(contributionDef instanceof DefaultContributionDefinition)) {
+            builder.buildSequence(targetSequence, definitionId, contributionDef);
+            return;
+        }
+
+        DefaultContributionDefinition definition = (DefaultContributionDefinition) contributionDef;
+        ContributionSequencePlan plan = planCache.getPlan(definition, Collections.emptyList(), builder::createPlan);
+        if (plan.isReplayable()) {
+            plan.replay(targetSequence, definitionId, (validity) -> planCache.getPlan(definition, validity, builder::createPlan), (output) -> {
+                // Plans don't match the definition, drop them
+                planCache.removePlans(definition);
+                builder.buildSequence(output, definitionId, contributionDef);
+            });
+        } else {
+            builder.buildSequence(targetSequence, definitionId, contributionDef);
+        }
+    }
+
+    /**
+     * Drops all memoized plans.
+     */
+    public void clearCache() {
+        planCache.clear();
+    }
+}
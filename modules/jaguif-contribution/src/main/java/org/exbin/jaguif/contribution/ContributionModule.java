@@ -34,6 +34,8 @@ import org.exbin.jaguif.contribution.api.TreeContributionSequenceBuilder;
 public class ContributionModule implements ContributionModuleApi {
 
     private ResourceBundle resourceBundle;
+    private boolean topologicalSequenceBuilder = false;
+    private boolean sequencePlanCaching = true;
 
     public ContributionModule() {
     }
@@ -50,6 +52,34 @@ public class ContributionModule implements ContributionModuleApi {
         return resourceBundle;
     }
 
+    public boolean isTopologicalSequenceBuilder() {
+        return topologicalSequenceBuilder;
+    }
+
+    /**
+     * Sets whether topological ordering engine should be used for created
+     * contribution sequence builders.
+     *
+     * @param topologicalSequenceBuilder true for topological builder
+     */
+    public void setTopologicalSequenceBuilder(boolean topologicalSequenceBuilder) {
+        this.topologicalSequenceBuilder = topologicalSequenceBuilder;
+    }
+
+    public boolean isSequencePlanCaching() {
+        return sequencePlanCaching;
+    }
+
+    /**
+     * Sets whether created contribution sequence builders should memoize
+     * sequence plans of unchanged definitions.
+     *
+     * @param sequencePlanCaching true for caching builders
+     */
+    public void setSequencePlanCaching(boolean sequencePlanCaching) {
+        this.sequencePlanCaching = sequencePlanCaching;
+    }
+
     @Nonnull
     @Override
     public ContributionDefinition createContributionDefinition() {
@@ -65,7 +95,11 @@ public class ContributionModule implements ContributionModuleApi {
     @Nonnull
     @Override
     public ContributionSequenceBuilder createContributionSequenceBuilder() {
-        return new DefaultContributionSequenceBuilder();
+        if (topologicalSequenceBuilder) {
+            return new TopologicalContributionSequenceBuilder();
+        }
+
+        return sequencePlanCaching ? new CachingContributionSequenceBuilder() : new DefaultContributionSequenceBuilder();
     }
 
     @Nonnull
@@ -77,6 +111,6 @@ public class ContributionModule implements ContributionModuleApi {
     @Nonnull
     @Override
     public TreeContributionSequenceBuilder createTreeContributionSequenceBuilder() {
-        return new DefaultTreeContributionSequenceBuilder();
+        return sequencePlanCaching ? new CachingTreeContributionSequenceBuilder() : new DefaultTreeContributionSequenceBuilder();
     }
 }
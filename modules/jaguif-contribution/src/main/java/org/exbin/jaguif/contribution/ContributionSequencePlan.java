@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionSequenceOutput;
+import org.exbin.jaguif.contribution.api.ItemSequenceContribution;
+import org.exbin.jaguif.contribution.api.SequenceContribution;
+import org.exbin.jaguif.contribution.api.SubSequenceContribution;
+import org.exbin.jaguif.contribution.api.TreeContributionSequenceOutput;
+
+/**
+ * Precomputed ordered plan of contribution sequence.
+ * <p>
+ * Plan is recorded by sequence builder for assumed validity of items and
+ * replayed into output later. Separators are placed during replay the same
+ * way as sequence builder does.
+ * <p>
+ * Order chosen by previous contribution hint depends on which items were
+ * valid. Such steps are recorded as checks and when replayed validity leads
+ * to different choice, replay continues with plan recorded for validity
+ * observed so far.
+ * <p>
+ * Output of replay is buffered and passed to target sequence only when replay
+ * succeeds. If recorded plans are inconsistent with observed validity,
+ * sequence is built directly instead.
+ */
+@ParametersAreNonnullByDefault
+public class ContributionSequencePlan {
+
+    private final List<Marker> markers = new ArrayList<>();
+    private final List<Integer> recordingPrevious = new ArrayList<>();
+    private final Set<String> subIds = new HashSet<>();
+    private boolean replayable = true;
+
+    ContributionSequencePlan() {
+        recordingPrevious.add(-1);
+    }
+
+    void addItem(ItemSequenceContribution contribution, boolean valid) {
+        if (valid) {
+            recordingPrevious.set(recordingPrevious.size() - 1, markers.size());
+        }
+        markers.add(new Marker(MarkerType.ITEM, contribution, valid, -1));
+    }
+
+    void queueSeparator() {
+        markers.add(new Marker(MarkerType.SEPARATOR, null, true, -1));
+    }
+
+    /**
+     * Records that choice of the next contribution depends on previous valid
+     * contribution.
+     */
+    void checkPrevious() {
+        markers.add(new Marker(MarkerType.CHECK, null, true, recordingPrevious.get(recordingPrevious.size() - 1)));
+    }
+
+    void startSub(SubSequenceContribution contribution, boolean hasSection, boolean valid) {
+        if (hasSection && !subIds.add(contribution.getContributionId())) {
+            // Section of repeated sub is processed by the first valid one
+            replayable = false;
+        }
+        if (valid) {
+            recordingPrevious.set(recordingPrevious.size() - 1, markers.size());
+        }
+        markers.add(new Marker(hasSection ? MarkerType.SUB_SECTION_START : MarkerType.SUB_START, contribution, valid, -1));
+        if (hasSection && valid) {
+            recordingPrevious.add(-1);
+        }
+    }
+
+    void endSub() {
+        recordingPrevious.remove(recordingPrevious.size() - 1);
+        markers.add(new Marker(MarkerType.SUB_SECTION_END, null, true, -1));
+    }
+
+    /**
+     * Returns true if plan can be replayed.
+     *
+     * @return true if replayable
+     */
+    public boolean isReplayable() {
+        return replayable;
+    }
+
+    public int getMarkersCount() {
+        return markers.size();
+    }
+
+    /**
+     * Checks whether plan was recorded for given validity of initialized
+     * items.
+     *
+     * @param validity validity of items in order of initialization
+     * @return true if matches
+     */
+    public boolean matchesValidity(List<Boolean> validity) {
+        int callIndex = 0;
+        for (Marker marker : markers) {
+            if (callIndex == validity.size()) {
+                return true;
+            }
+            if (marker.type.initializesItem) {
+                if (marker.valid != validity.get(callIndex)) {
+                    return false;
+                }
+                callIndex++;
+            }
+        }
+        return callIndex == validity.size();
+    }
+
+    /**
+     * Replays plan into flat sequence output.
+     *
+     * @param targetSequence target sequence
+     * @param planProvider provider of plans for diverged validity
+     * @param directBuilder builder used when plans are inconsistent, items
+     * already initialized by replay are not initialized again
+     */
+    public void replay(ContributionSequenceOutput targetSequence, PlanProvider planProvider, Consumer<ContributionSequenceOutput> directBuilder) {
+        BufferedOutput bufferedOutput = new BufferedOutput(new FlatOutputAdapter(targetSequence));
+        if (replay(bufferedOutput, "", planProvider)) {
+            bufferedOutput.flush();
+        } else {
+            bufferedOutput.passThrough();
+            directBuilder.accept(new FlatOutputView(bufferedOutput));
+        }
+    }
+
+    /**
+     * Replays plan into tree sequence output.
+     *
+     * @param targetSequence target sequence
+     * @param definitionId definition id
+     * @param planProvider provider of plans for diverged validity
+     * @param directBuilder builder used when plans are inconsistent, items
+     * already initialized by replay are not initialized again
+     */
+    public void replay(TreeContributionSequenceOutput targetSequence, String definitionId, PlanProvider planProvider, Consumer<TreeContributionSequenceOutput> directBuilder) {
+        BufferedOutput bufferedOutput = new BufferedOutput(targetSequence);
+        if (replay(bufferedOutput, definitionId, planProvider)) {
+            bufferedOutput.flush();
+        } else {
+            bufferedOutput.passThrough();
+            directBuilder.accept(bufferedOutput);
+        }
+    }
+
+    private boolean replay(BufferedOutput targetSequence, String definitionId, PlanProvider planProvider) {
+        ContributionSequencePlan plan = this;
+        List<Boolean> validity = new ArrayList<>();
+        List<ReplayFrame> frames = new ArrayList<>();
+        ReplayFrame frame = new ReplayFrame(targetSequence, "", null);
+        frames.add(frame);
+        Boolean pendingValidity = null;
+        boolean replanned = false;
+        int index = 0;
+        while (index < plan.markers.size()) {
+            Marker marker = plan.markers.get(index);
+            switch (marker.type) {
+                case ITEM: {
+                    boolean valid = frame.sequenceOutput.initItem(marker.contribution, definitionId, frame.subId);
+                    validity.add(valid);
+                    if (valid) {
+                        frame.add(marker.contribution);
+                        frame.previousMarker = index;
+                    }
+                    break;
+                }
+                case SEPARATOR: {
+                    frame.separatorQueued = true;
+                    break;
+                }
+                case CHECK: {
+                    if (marker.previousMarker != frame.previousMarker) {
+                        if (replanned) {
+                            return false;
+                        }
+                        plan = getDivergedPlan(planProvider, validity, index, marker.type);
+                        if (plan == null) {
+                            return false;
+                        }
+                        replanned = true;
+                        continue;
+                    }
+                    replanned = false;
+                    break;
+                }
+                case SUB_START: {
+                    if (frame.sequenceOutput.initItem(marker.contribution, definitionId, frame.subId)) {
+                        frame.previousMarker = index;
+                        validity.add(true);
+                    } else {
+                        validity.add(false);
+                    }
+                    break;
+                }
+                case SUB_SECTION_START: {
+                    boolean valid;
+                    if (pendingValidity == null) {
+                        valid = frame.sequenceOutput.initItem(marker.contribution, definitionId, frame.subId);
+                        validity.add(valid);
+                        if (valid != marker.valid) {
+                            plan = getDivergedPlan(planProvider, validity, index, marker.type);
+                            if (plan == null) {
+                                return false;
+                            }
+                            pendingValidity = valid;
+                            continue;
+                        }
+                    } else {
+                        valid = pendingValidity;
+                        pendingValidity = null;
+                        if (valid != marker.valid) {
+                            return false;
+                        }
+                    }
+
+                    if (valid) {
+                        SubSequenceContribution subContribution = (SubSequenceContribution) marker.contribution;
+                        frame.previousMarker = index;
+                        frame = new ReplayFrame(frame.sequenceOutput.createSubOutput(subContribution), subContribution.getContributionId(), subContribution);
+                        frames.add(frame);
+                    }
+                    break;
+                }
+                case SUB_SECTION_END: {
+                    frames.remove(frames.size() - 1);
+                    ReplayFrame parentFrame = frames.get(frames.size() - 1);
+                    if (!frame.sequenceOutput.isEmpty()) {
+                        parentFrame.add(frame.subContribution);
+                    }
+                    frame = parentFrame;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unsupported marker type: " + marker.type);
+            }
+            index++;
+        }
+        return true;
+    }
+
+    @Nullable
+    private static ContributionSequencePlan getDivergedPlan(PlanProvider planProvider, List<Boolean> validity, int index, MarkerType markerType) {
+        ContributionSequencePlan plan = planProvider.getPlan(validity);
+        // Plans recorded for the same validity share all markers up to this point
+        if (!plan.replayable || index >= plan.markers.size() || plan.markers.get(index).type != markerType) {
+            return null;
+        }
+        return plan;
+    }
+
+    /**
+     * Provider of plans recorded for particular validity of items.
+     */
+    public interface PlanProvider {
+
+        /**
+         * Returns plan matching given validity of items.
+         *
+         * @param validity validity of items in order of initialization
+         * @return sequence plan
+         */
+        @Nonnull
+        ContributionSequencePlan getPlan(List<Boolean> validity);
+    }
+
+    private enum MarkerType {
+        ITEM(true),
+        SEPARATOR(false),
+        CHECK(false),
+        SUB_START(true),
+        SUB_SECTION_START(true),
+        SUB_SECTION_END(false);
+
+        final boolean initializesItem;
+
+        private MarkerType(boolean initializesItem) {
+            this.initializesItem = initializesItem;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class Marker {
+
+        final MarkerType type;
+        final SequenceContribution contribution;
+        final boolean valid;
+        final int previousMarker;
+
+        Marker(MarkerType type, @Nullable SequenceContribution contribution, boolean valid, int previousMarker) {
+            this.type = type;
+            this.contribution = contribution;
+            this.valid = valid;
+            this.previousMarker = previousMarker;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class ReplayFrame {
+
+        final TreeContributionSequenceOutput sequenceOutput;
+        final String subId;
+        final SubSequenceContribution subContribution;
+        boolean separatorQueued = false;
+        int previousMarker = -1;
+
+        ReplayFrame(TreeContributionSequenceOutput sequenceOutput, String subId, @Nullable SubSequenceContribution subContribution) {
+            this.sequenceOutput = sequenceOutput;
+            this.subId = subId;
+            this.subContribution = subContribution;
+        }
+
+        void add(SequenceContribution contribution) {
+            if (separatorQueued) {
+                if (!sequenceOutput.isEmpty()) {
+                    sequenceOutput.addSeparator();
+                }
+                separatorQueued = false;
+            }
+            sequenceOutput.add(contribution);
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class FlatOutputAdapter implements TreeContributionSequenceOutput {
+
+        private final ContributionSequenceOutput sequenceOutput;
+
+        FlatOutputAdapter(ContributionSequenceOutput sequenceOutput) {
+            this.sequenceOutput = sequenceOutput;
+        }
+
+        @Override
+        public boolean initItem(SequenceContribution contribution, String definitionId, String subId) {
+            return sequenceOutput.initItem((ItemSequenceContribution) contribution);
+        }
+
+        @Override
+        public void add(SequenceContribution contribution) {
+            sequenceOutput.add((ItemSequenceContribution) contribution);
+        }
+
+        @Override
+        public void addSeparator() {
+            sequenceOutput.addSeparator();
+        }
+
+        @Nonnull
+        @Override
+        public TreeContributionSequenceOutput createSubOutput(SubSequenceContribution subContribution) {
+            throw new IllegalStateException("Flat sequence has no sub sequences");
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sequenceOutput.isEmpty();
+        }
+    }
+
+    /**
+     * Output buffering replayed sequence until replay is finished.
+     * <p>
+     * Items are initialized in target output immediately. Results are kept so
+     * that items are not initialized again when sequence is built directly.
+     */
+    @ParametersAreNonnullByDefault
+    private static final class BufferedOutput implements TreeContributionSequenceOutput {
+
+        final TreeContributionSequenceOutput targetOutput;
+        final Map<SequenceContribution, Boolean> initializedItems = new IdentityHashMap<>();
+        final Map<SequenceContribution, BufferedOutput> subOutputs = new IdentityHashMap<>();
+        // Separator is stored as null
+        final List<SequenceContribution> addedItems = new ArrayList<>();
+        boolean buffering = true;
+
+        BufferedOutput(TreeContributionSequenceOutput targetOutput) {
+            this.targetOutput = targetOutput;
+        }
+
+        @Override
+        public boolean initItem(SequenceContribution contribution, String definitionId, String subId) {
+            Boolean valid = buffering ? initializedItems.get(contribution) : initializedItems.remove(contribution);
+            if (valid == null) {
+                valid = targetOutput.initItem(contribution, definitionId, subId);
+                if (buffering) {
+                    initializedItems.put(contribution, valid);
+                }
+            }
+            return valid;
+        }
+
+        @Override
+        public void add(SequenceContribution contribution) {
+            if (buffering) {
+                addedItems.add(contribution);
+            } else {
+                targetOutput.add(contribution);
+            }
+        }
+
+        @Override
+        public void addSeparator() {
+            if (buffering) {
+                addedItems.add(null);
+            } else {
+                targetOutput.addSeparator();
+            }
+        }
+
+        @Nonnull
+        @Override
+        public TreeContributionSequenceOutput createSubOutput(SubSequenceContribution subContribution) {
+            BufferedOutput subOutput = subOutputs.get(subContribution);
+            if (subOutput == null) {
+                subOutput = new BufferedOutput(targetOutput.createSubOutput(subContribution));
+                subOutput.buffering = buffering;
+                subOutputs.put(subContribution, subOutput);
+            }
+            return subOutput;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return addedItems.isEmpty() && targetOutput.isEmpty();
+        }
+
+        /**
+         * Passes buffered sequence to target output.
+         */
+        void flush() {
+            for (SequenceContribution contribution : addedItems) {
+                if (contribution == null) {
+                    targetOutput.addSeparator();
+                } else {
+                    BufferedOutput subOutput = subOutputs.get(contribution);
+                    if (subOutput != null) {
+                        subOutput.flush();
+                    }
+                    targetOutput.add(contribution);
+                }
+            }
+            addedItems.clear();
+        }
+
+        /**
+         * Drops buffered sequence and passes further output directly to
+         * target output.
+         */
+        void passThrough() {
+            addedItems.clear();
+            buffering = false;
+            for (BufferedOutput subOutput : subOutputs.values()) {
+                subOutput.passThrough();
+            }
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class FlatOutputView implements ContributionSequenceOutput {
+
+        private final TreeContributionSequenceOutput sequenceOutput;
+
+        FlatOutputView(TreeContributionSequenceOutput sequenceOutput) {
+            this.sequenceOutput = sequenceOutput;
+        }
+
+        @Override
+        public boolean initItem(ItemSequenceContribution itemContribution) {
+            return sequenceOutput.initItem(itemContribution, "", "");
+        }
+
+        @Override
+        public void add(ItemSequenceContribution itemContribution) {
+            sequenceOutput.add(itemContribution);
+        }
+
+        @Override
+        public void addSeparator() {
+            sequenceOutput.addSeparator();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sequenceOutput.isEmpty();
+        }
+    }
+}
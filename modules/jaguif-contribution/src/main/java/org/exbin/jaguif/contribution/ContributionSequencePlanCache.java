@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BiFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionDefinition;
+
+/**
+ * Cache of contribution sequence plans keyed by definition revision.
+ * <p>
+ * Few most recently used plans recorded for different validity of items are
+ * kept for each definition. Definitions are referenced weakly.
+ */
+@ParametersAreNonnullByDefault
+class ContributionSequencePlanCache {
+
+    private static final int PLANS_PER_DEFINITION = 4;
+
+    private final Map<DefaultContributionDefinition, CachedPlans> plans = new WeakHashMap<>();
+
+    /**
+     * Returns plan for current revision of the definition matching given
+     * validity of items, creating it if needed.
+     *
+     * @param contributionDef contribution definition
+     * @param validity validity of items in order of initialization
+     * @param planFactory plan factory
+     * @return sequence plan
+     */
+    @Nonnull
+    synchronized ContributionSequencePlan getPlan(DefaultContributionDefinition contributionDef, List<Boolean> validity, BiFunction<ContributionDefinition, List<Boolean>, ContributionSequencePlan> planFactory) {
+        long revision = contributionDef.getRevision();
+        CachedPlans cachedPlans = plans.get(contributionDef);
+        if (cachedPlans == null || cachedPlans.revision != revision) {
+            cachedPlans = new CachedPlans(revision);
+            plans.put(contributionDef, cachedPlans);
+        }
+
+        for (int i = 0; i < cachedPlans.plans.size(); i++) {
+            ContributionSequencePlan plan = cachedPlans.plans.get(i);
+            if (plan.matchesValidity(validity)) {
+                if (i > 0) {
+                    cachedPlans.plans.remove(i);
+                    cachedPlans.plans.add(0, plan);
+                }
+                return plan;
+            }
+        }
+
+        ContributionSequencePlan plan = planFactory.apply(contributionDef, new ArrayList<>(validity));
+        cachedPlans.plans.add(0, plan);
+        if (cachedPlans.plans.size() > PLANS_PER_DEFINITION) {
+            cachedPlans.plans.remove(PLANS_PER_DEFINITION);
+        }
+        return plan;
+    }
+
+    /**
+     * Drops plans of given definition.
+     *
+     * @param contributionDef contribution definition
+     */
+    synchronized void removePlans(DefaultContributionDefinition contributionDef) {
+        plans.remove(contributionDef);
+    }
+
+    synchronized void clear() {
+        plans.clear();
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class CachedPlans {
+
+        final long revision;
+        final List<ContributionSequencePlan> plans = new ArrayList<>();
+
+        CachedPlans(long revision) {
+            this.revision = revision;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.exbin.jaguif.contribution;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ public class DefaultContributionDefinition implements ContributionDefinition {
 
     protected final List<SequenceContribution> contributions = new ArrayList<>();
     protected final Map<SequenceContribution, List<SequenceContributionRule>> rules = new HashMap<>();
+    protected long revision = 0;
 
     public DefaultContributionDefinition() {
     }
@@ -41,41 +43,62 @@ public class DefaultContributionDefinition implements ContributionDefinition {
     @Nonnull
     @Override
     public List<SequenceContribution> getContributions() {
-        return contributions;
+        return Collections.unmodifiableList(contributions);
     }
 
     public void setContributions(List<SequenceContribution> contributions) {
         this.contributions.clear();
         this.contributions.addAll(contributions);
+        revision++;
     }
 
     @Override
     public void addContribution(SequenceContribution contribution) {
         contributions.add(contribution);
+        revision++;
     }
 
     public void removeContribution(SequenceContribution contribution) {
-        contributions.remove(contribution);
+        if (contributions.remove(contribution)) {
+            revision++;
+        }
     }
 
     public boolean containsContribution(SequenceContribution contribution) {
         return contributions.contains(contribution);
     }
 
+    /**
+     * Returns copy of rules.
+     * <p>
+     * Definition has to be modified via its methods so that revision changes.
+     *
+     * @return unmodifiable map of unmodifiable rule lists
+     */
     @Nonnull
     public Map<SequenceContribution, List<SequenceContributionRule>> getRules() {
-        return rules;
+        Map<SequenceContribution, List<SequenceContributionRule>> result = new HashMap<>();
+        for (Map.Entry<SequenceContribution, List<SequenceContributionRule>> entry : rules.entrySet()) {
+            List<SequenceContributionRule> contributionRules = entry.getValue();
+            result.put(entry.getKey(), contributionRules == null ? null : Collections.unmodifiableList(contributionRules));
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     @Nonnull
     @Override
     public Optional<List<SequenceContributionRule>> getContributionRules(SequenceContribution contribution) {
-        return Optional.ofNullable(rules.get(contribution));
+        List<SequenceContributionRule> contributionRules = rules.get(contribution);
+        return contributionRules == null ? Optional.empty() : Optional.of(Collections.unmodifiableList(contributionRules));
     }
 
     public void setRules(Map<SequenceContribution, List<SequenceContributionRule>> rules) {
         this.rules.clear();
-        this.rules.putAll(rules);
+        for (Map.Entry<SequenceContribution, List<SequenceContributionRule>> entry : rules.entrySet()) {
+            List<SequenceContributionRule> contributionRules = entry.getValue();
+            this.rules.put(entry.getKey(), contributionRules == null ? null : new ArrayList<>(contributionRules));
+        }
+        revision++;
     }
 
     @Override
@@ -86,12 +109,15 @@ public class DefaultContributionDefinition implements ContributionDefinition {
             rules.put(contribution, contributionRules);
         }
         contributionRules.add(rule);
+        revision++;
     }
 
     public void removeRule(SequenceContribution contribution, SequenceContributionRule rule) {
         List<SequenceContributionRule> contributionRules = rules.get(contribution);
         if (contributionRules != null) {
-            contributionRules.remove(rule);
+            if (contributionRules.remove(rule)) {
+                revision++;
+            }
             if (contributionRules.isEmpty()) {
                 rules.put(contribution, null);
             }
@@ -101,5 +127,18 @@ public class DefaultContributionDefinition implements ContributionDefinition {
     public void clear() {
         rules.clear();
         contributions.clear();
+        revision++;
+    }
+
+    /**
+     * Returns revision of the definition.
+     * <p>
+     * Revision changes with each modification of contributions or rules done
+     * via methods of this class.
+     *
+     * @return revision
+     */
+    public long getRevision() {
+        return revision;
     }
 }
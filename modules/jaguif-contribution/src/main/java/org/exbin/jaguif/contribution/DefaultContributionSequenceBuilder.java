@@ -16,6 +16,7 @@
 package org.exbin.jaguif.contribution;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -54,6 +55,36 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
             return;
         }
 
+        buildSequence(targetSequence, contributionDef, null);
+    }
+
+    /**
+     * Creates plan of contribution sequence for later replay.
+     *
+     * @param contributionDef contribution definition
+     * @return sequence plan
+     */
+    @Nonnull
+    public ContributionSequencePlan createPlan(ContributionDefinition contributionDef) {
+        return createPlan(contributionDef, Collections.emptyList());
+    }
+
+    /**
+     * Creates plan of contribution sequence for later replay.
+     *
+     * @param contributionDef contribution definition
+     * @param validity validity of items in order of initialization, items
+     * beyond are considered valid
+     * @return sequence plan
+     */
+    @Nonnull
+    public ContributionSequencePlan createPlan(ContributionDefinition contributionDef, List<Boolean> validity) {
+        ContributionSequencePlan plan = new ContributionSequencePlan();
+        buildSequence(new PlanningSequenceOutput(validity), contributionDef, plan);
+        return plan;
+    }
+
+    private void buildSequence(ContributionSequenceOutput targetSequence, ContributionDefinition contributionDef, @Nullable ContributionSequencePlan plan) {
         BuilderRecord builderRecord = new BuilderRecord();
         BuilderContributionRecord lastContributionRecord = null;
 
@@ -161,6 +192,9 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
             if (processingRecord.processingState == SectionProcessingState.START) {
                 if (processingRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || processingRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                     builderRecord.separatorQueued = true;
+                    if (plan != null) {
+                        plan.queueSeparator();
+                    }
                 }
                 processingRecord.processingState = SectionProcessingState.CONTRIBUTION;
             }
@@ -204,10 +238,17 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
                     }
                     if (contributionMatch.hasFoundMatch()) {
                         int index = contributionMatch.bestMatch();
+                        if (plan != null && contributionMatch.nextMatch == -1 && contributionMatch.positionMatch >= 0
+                                && isHintSensitive(processingRecord, builderRecord, contributionMatch.positionMatch)) {
+                            plan.checkPrevious();
+                        }
                         record = processingRecord.contributions.remove(index);
 
                         if (record.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || record.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                             builderRecord.separatorQueued = true;
+                            if (plan != null) {
+                                plan.queueSeparator();
+                            }
                         }
                         if (record instanceof BuilderGroupRecord) {
                             processing.add((BuilderGroupRecord) record);
@@ -224,10 +265,17 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
                                 targetSequence.add(((BuilderItemContributionRecord) record).contribution);
                                 builderRecord.previousContribution = contributionRecord;
                             }
+                            if (plan != null) {
+                                plan.addItem(contributionRecord.contribution, valid);
+                                builderRecord.selectedContributions.add(contributionRecord);
+                            }
                         }
 
                         if (record.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || record.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                             builderRecord.separatorQueued = true;
+                            if (plan != null) {
+                                plan.queueSeparator();
+                            }
                         }
                         builderRecord.processedContributions.add(record.contributionId);
                     } else {
@@ -243,12 +291,35 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
             if (processingRecord.processingState == SectionProcessingState.END) {
                 if (processingRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || processingRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                     builderRecord.separatorQueued = true;
+                    if (plan != null) {
+                        plan.queueSeparator();
+                    }
                 }
                 processing.remove(processing.size() - 1);
             }
         }
     }
 
+    /**
+     * Checks whether hint match could select different contribution if some
+     * of the previously selected items were not valid.
+     */
+    private static boolean isHintSensitive(BuilderGroupRecord processingRecord, BuilderRecord builderRecord, int positionMatch) {
+        for (int index = positionMatch + 1; index < processingRecord.contributions.size(); index++) {
+            BuilderContributionRecord record = processingRecord.contributions.get(index);
+            if (record.positionHint != processingRecord.processingPosition) {
+                continue;
+            }
+            if (!record.placeAfter.isEmpty() && !builderRecord.processedContributions.containsAll(record.placeAfter)) {
+                continue;
+            }
+            if (record.previousHint == null || builderRecord.selectedContributions.contains(record.previousHint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Nonnull
     private static BuilderGroupRecord createGroup(BuilderRecord builderRecord, @Nullable String groupId) {
         if (groupId == null) {
@@ -273,6 +344,7 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
         BuilderContributionRecord previousContribution = null;
         Map<String, List<String>> afterMap = new HashMap<>();
         Set<String> processedContributions = new HashSet<>();
+        Set<BuilderContributionRecord> selectedContributions = new HashSet<>();
     }
 
     @ParametersAreNonnullByDefault
@@ -319,6 +391,38 @@ public class DefaultContributionSequenceBuilder implements ContributionSequenceB
         final Set<String> placeAfter = new HashSet<>();
     }
 
+    /**
+     * Output used for planning with assumed validity of items.
+     */
+    @ParametersAreNonnullByDefault
+    private static class PlanningSequenceOutput implements ContributionSequenceOutput {
+
+        private final List<Boolean> validity;
+        private int itemIndex = 0;
+
+        public PlanningSequenceOutput(List<Boolean> validity) {
+            this.validity = validity;
+        }
+
+        @Override
+        public boolean initItem(ItemSequenceContribution itemContribution) {
+            return itemIndex >= validity.size() || validity.get(itemIndex++);
+        }
+
+        @Override
+        public void add(ItemSequenceContribution itemContribution) {
+        }
+
+        @Override
+        public void addSeparator() {
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+
     private static class BuilderContributionMatch {
 
         int fallbackMatch = -1;
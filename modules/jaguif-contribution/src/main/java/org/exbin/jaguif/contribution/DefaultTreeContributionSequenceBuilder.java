@@ -16,6 +16,7 @@
 package org.exbin.jaguif.contribution;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -56,6 +57,36 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
             return;
         }
 
+        buildSequence(targetSequence, definitionId, contributionDef, null);
+    }
+
+    /**
+     * Creates plan of contribution sequence for later replay.
+     *
+     * @param contributionDef contribution definition
+     * @return sequence plan
+     */
+    @Nonnull
+    public ContributionSequencePlan createPlan(ContributionDefinition contributionDef) {
+        return createPlan(contributionDef, Collections.emptyList());
+    }
+
+    /**
+     * Creates plan of contribution sequence for later replay.
+     *
+     * @param contributionDef contribution definition
+     * @param validity validity of items in order of initialization, items
+     * beyond are considered valid
+     * @return sequence plan
+     */
+    @Nonnull
+    public ContributionSequencePlan createPlan(ContributionDefinition contributionDef, List<Boolean> validity) {
+        ContributionSequencePlan plan = new ContributionSequencePlan();
+        buildSequence(new PlanningSequenceOutput(validity), "", contributionDef, plan);
+        return plan;
+    }
+
+    private void buildSequence(TreeContributionSequenceOutput targetSequence, String definitionId, ContributionDefinition contributionDef, @Nullable ContributionSequencePlan plan) {
         BuilderRecord builderRecord = new BuilderRecord();
         BuilderContributionRecord lastContributionRecord = null;
 
@@ -170,6 +201,9 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
             if (groupRecord.processingState == SectionProcessingState.START) {
                 if (groupRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || groupRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                     subRecord.separatorQueued = true;
+                    if (plan != null) {
+                        plan.queueSeparator();
+                    }
                 }
                 groupRecord.processingState = SectionProcessingState.CONTRIBUTION;
             }
@@ -213,10 +247,17 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
                     }
                     if (contributionMatch.hasFoundMatch()) {
                         int index = contributionMatch.bestMatch();
+                        if (plan != null && contributionMatch.nextMatch == -1 && contributionMatch.positionMatch >= 0
+                                && isHintSensitive(groupRecord, subRecord, contributionMatch.positionMatch)) {
+                            plan.checkPrevious();
+                        }
                         record = groupRecord.contributions.remove(index);
 
                         if (record.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || record.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                             subRecord.separatorQueued = true;
+                            if (plan != null) {
+                                plan.queueSeparator();
+                            }
                         }
                         if (record instanceof BuilderGroupRecord) {
                             BuilderProcessingRecord groupProcessingRecord = new BuilderProcessingRecord();
@@ -236,9 +277,16 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
                                 subRecord.sequenceOutput.add(contributionRecord.contribution);
                                 subRecord.previousContribution = contributionRecord;
                             }
+                            if (plan != null) {
+                                plan.addItem(contributionRecord.contribution, valid);
+                                subRecord.selectedContributions.add(contributionRecord);
+                            }
                         } else if (record instanceof BuilderSubContributionRecord) {
                             BuilderSubContributionRecord contributionRecord = (BuilderSubContributionRecord) record;
                             boolean valid = subRecord.sequenceOutput.initItem(contributionRecord.contribution, definitionId, subRecord.subId);
+                            if (plan != null) {
+                                subRecord.selectedContributions.add(contributionRecord);
+                            }
                             if (valid) {
                                 BuilderSubRecord subSection = builderRecord.subMap.get(contributionRecord.contributionId);
                                 if (subSection != null) {
@@ -256,6 +304,13 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
 
                         if (record.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || record.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                             subRecord.separatorQueued = true;
+                            if (plan != null) {
+                                plan.queueSeparator();
+                            }
+                        }
+                        if (plan != null && record instanceof BuilderSubContributionRecord) {
+                            // Separators of sub are queued in parent sequence before its section is processed
+                            plan.startSub(((BuilderSubContributionRecord) record).contribution, builderRecord.subMap.containsKey(record.contributionId), subRecord.previousContribution == record);
                         }
                         subRecord.processedContributions.add(record.contributionId);
                     } else {
@@ -271,8 +326,14 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
             if (groupRecord.processingState == SectionProcessingState.END) {
                 if (groupRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || groupRecord.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
                     subRecord.separatorQueued = true;
+                    if (plan != null) {
+                        plan.queueSeparator();
+                    }
                 }
                 processing.remove(processing.size() - 1);
+                if (plan != null && processingRecord.isSubMode) {
+                    plan.endSub();
+                }
                 if (processingRecord.isSubMode && !subRecord.sequenceOutput.isEmpty()) {
                     BuilderSubRecord parentSubRecord = processing.get(processing.size() - 1).sub;
                     if (parentSubRecord.separatorQueued) {
@@ -287,6 +348,26 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
         }
     }
 
+    /**
+     * Checks whether hint match could select different contribution if some
+     * of the previously selected items were not valid.
+     */
+    private static boolean isHintSensitive(BuilderGroupRecord groupRecord, BuilderSubRecord subRecord, int positionMatch) {
+        for (int index = positionMatch + 1; index < groupRecord.contributions.size(); index++) {
+            BuilderContributionRecord record = groupRecord.contributions.get(index);
+            if (record.positionHint != groupRecord.processingPosition) {
+                continue;
+            }
+            if (!record.placeAfter.isEmpty() && !subRecord.processedContributions.containsAll(record.placeAfter)) {
+                continue;
+            }
+            if (record.previousHint == null || subRecord.selectedContributions.contains(record.previousHint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Nonnull
     private static BuilderGroupRecord createGroup(BuilderRecord builderRecord, @Nullable String subId, @Nullable String groupId) {
         if (subId == null) {
@@ -331,6 +412,7 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
         BuilderContributionRecord previousContribution = null;
         Map<String, List<String>> afterMap = new HashMap<>();
         Set<String> processedContributions = new HashSet<>();
+        Set<BuilderContributionRecord> selectedContributions = new HashSet<>();
 
         public BuilderSubRecord(String subId, TreeContributionSequenceOutput sequenceOutput) {
             this.subId = subId;
@@ -395,6 +477,44 @@ public class DefaultTreeContributionSequenceBuilder implements TreeContributionS
         final Set<String> placeAfter = new HashSet<>();
     }
 
+    /**
+     * Output used for planning with assumed validity of items.
+     */
+    @ParametersAreNonnullByDefault
+    private static class PlanningSequenceOutput implements TreeContributionSequenceOutput {
+
+        private final List<Boolean> validity;
+        private int itemIndex = 0;
+
+        public PlanningSequenceOutput(List<Boolean> validity) {
+            this.validity = validity;
+        }
+
+        @Override
+        public boolean initItem(SequenceContribution contribution, String definitionId, String subId) {
+            return itemIndex >= validity.size() || validity.get(itemIndex++);
+        }
+
+        @Override
+        public void add(SequenceContribution contribution) {
+        }
+
+        @Override
+        public void addSeparator() {
+        }
+
+        @Nonnull
+        @Override
+        public TreeContributionSequenceOutput createSubOutput(SubSequenceContribution subContribution) {
+            return this;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+
     private static class BuilderContributionMatch {
 
         int fallbackMatch = -1;
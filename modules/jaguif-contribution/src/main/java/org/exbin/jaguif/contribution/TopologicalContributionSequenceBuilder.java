@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionDefinition;
+import org.exbin.jaguif.contribution.api.ContributionSequenceBuilder;
+import org.exbin.jaguif.contribution.api.ContributionSequenceOutput;
+import org.exbin.jaguif.contribution.api.GroupSequenceContribution;
+import org.exbin.jaguif.contribution.api.GroupSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.ItemSequenceContribution;
+import org.exbin.jaguif.contribution.api.PositionSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.RelativeSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SeparationSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SequenceContribution;
+import org.exbin.jaguif.contribution.api.SequenceContributionRule;
+
+/**
+ * Contribution sequence builder using topological ordering.
+ * <p>
+ * Instead of rescanning remaining contributions for each step, it keeps
+ * count of unprocessed "after" dependencies for each contribution and indexes
+ * contributions ready for placement by position (Kahn's algorithm). Ties are
+ * broken by definition order the same way as {@link DefaultContributionSequenceBuilder}
+ * does, so for definitions without "before" rules both builders produce the
+ * same sequence.
+ * <p>
+ * Sequences differ when "before" rules are used. This builder converts them
+ * to "after" rules of all referenced contributions regardless of definition
+ * order, while default builder can leave them unapplied, for example when
+ * the referenced contribution is defined earlier. Contributions which cannot
+ * be placed because of cyclic or missing dependency are reported with their
+ * identifiers.
+ */
+@ParametersAreNonnullByDefault
+public class TopologicalContributionSequenceBuilder implements ContributionSequenceBuilder {
+
+    private static final PositionSequenceContributionRule.PositionMode[] POSITION_MODES = PositionSequenceContributionRule.PositionMode.values();
+
+    private boolean failOnUnresolved = false;
+
+    public TopologicalContributionSequenceBuilder() {
+    }
+
+    public boolean isFailOnUnresolved() {
+        return failOnUnresolved;
+    }
+
+    /**
+     * Sets whether unresolvable contributions should throw exception instead
+     * of being logged and skipped.
+     *
+     * @param failOnUnresolved true to throw IllegalStateException
+     */
+    public void setFailOnUnresolved(boolean failOnUnresolved) {
+        this.failOnUnresolved = failOnUnresolved;
+    }
+
+    @Override
+    public void buildSequence(ContributionSequenceOutput targetSequence, @Nullable ContributionDefinition contributionDef) {
+        if (contributionDef == null) {
+            return;
+        }
+
+        BuilderRecord builderRecord = new BuilderRecord();
+        BuilderNode lastNode = null;
+        List<String[]> beforeRules = new ArrayList<>();
+
+        // Build contributions tree
+        for (SequenceContribution contribution : contributionDef.getContributions()) {
+            String parentGroupId = null;
+            PositionSequenceContributionRule.PositionMode positionHint = null;
+            SeparationSequenceContributionRule.SeparationMode separationMode = null;
+            List<String> afterIds = new ArrayList<>();
+            List<String> beforeIds = new ArrayList<>();
+            Optional<List<SequenceContributionRule>> rules = contributionDef.getContributionRules(contribution);
+            if (rules.isPresent()) {
+                for (SequenceContributionRule rule : rules.get()) {
+                    if (rule instanceof PositionSequenceContributionRule) {
+                        positionHint = ((PositionSequenceContributionRule) rule).getPositionMode();
+                    } else if (rule instanceof SeparationSequenceContributionRule) {
+                        separationMode = ((SeparationSequenceContributionRule) rule).getSeparationMode();
+                    } else if (rule instanceof RelativeSequenceContributionRule) {
+                        RelativeSequenceContributionRule.NextToMode nextToMode = ((RelativeSequenceContributionRule) rule).getNextToMode();
+                        String contributionId = ((RelativeSequenceContributionRule) rule).getContributionId();
+                        switch (nextToMode) {
+                            case AFTER:
+                                afterIds.add(contributionId);
+                                break;
+                            case BEFORE:
+                                beforeIds.add(contributionId);
+                                break;
+                            default:
+                                throw new AssertionError();
+                        }
+                    } else if (rule instanceof GroupSequenceContributionRule) {
+                        parentGroupId = ((GroupSequenceContributionRule) rule).getGroupId();
+                    }
+                }
+            }
+
+            BuilderGroupNode groupNode = builderRecord.getGroup(parentGroupId == null ? "" : parentGroupId);
+
+            BuilderNode node;
+            if (contribution instanceof GroupSequenceContribution) {
+                node = builderRecord.getGroup(((GroupSequenceContribution) contribution).getGroupId());
+            } else if (contribution instanceof ItemSequenceContribution) {
+                node = new BuilderItemNode((ItemSequenceContribution) contribution);
+            } else {
+                throw new IllegalStateException("Unsupported contribution type: " + (contribution == null ? "null" : contribution.getClass().getName()));
+            }
+
+            node.separationMode = separationMode;
+            node.placeAfter.addAll(afterIds);
+            if (positionHint != null) {
+                node.positionHint = positionHint;
+            }
+            node.previousHint = lastNode;
+            lastNode = node;
+            for (String beforeId : beforeIds) {
+                beforeRules.add(new String[]{node.contributionId, beforeId});
+            }
+
+            groupNode.addEntry(node);
+            builderRecord.registerNode(node);
+        }
+
+        BuilderGroupNode rootNode = builderRecord.groupsMap.get("");
+        if (rootNode == null) {
+            return;
+        }
+
+        // Convert before rules to after rules
+        for (String[] beforeRule : beforeRules) {
+            List<BuilderNode> targetNodes = builderRecord.nodesById.get(beforeRule[1]);
+            if (targetNodes != null) {
+                for (BuilderNode targetNode : targetNodes) {
+                    targetNode.placeAfter.add(beforeRule[0]);
+                }
+            }
+        }
+
+        builderRecord.initDependencies();
+
+        // Generate sequence
+        List<BuilderGroupNode> processing = new ArrayList<>();
+        processing.add(rootNode);
+        while (!processing.isEmpty()) {
+            BuilderGroupNode processingNode = processing.get(processing.size() - 1);
+
+            if (processingNode.processingState == SectionProcessingState.START) {
+                if (processingNode.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || processingNode.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
+                    builderRecord.separatorQueued = true;
+                }
+                processingNode.processingState = SectionProcessingState.CONTRIBUTION;
+            }
+
+            if (processingNode.processingState == SectionProcessingState.CONTRIBUTION) {
+                if (processingNode.remainingCount > 0) {
+                    BuilderEntry entry = selectNext(builderRecord, processingNode);
+                    if (entry != null) {
+                        processingNode.removeEntry(entry);
+                        BuilderNode node = entry.node;
+
+                        if (node.separationMode == SeparationSequenceContributionRule.SeparationMode.ABOVE || node.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
+                            builderRecord.separatorQueued = true;
+                        }
+                        if (node instanceof BuilderGroupNode) {
+                            processing.add((BuilderGroupNode) node);
+                        } else if (node instanceof BuilderItemNode) {
+                            ItemSequenceContribution contribution = ((BuilderItemNode) node).contribution;
+                            boolean valid = targetSequence.initItem(contribution);
+                            if (valid) {
+                                if (builderRecord.separatorQueued) {
+                                    if (!targetSequence.isEmpty()) {
+                                        targetSequence.addSeparator();
+                                    }
+                                    builderRecord.separatorQueued = false;
+                                }
+                                targetSequence.add(contribution);
+                                builderRecord.previousContribution = node;
+                            }
+                        }
+
+                        if (node.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || node.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
+                            builderRecord.separatorQueued = true;
+                        }
+                        builderRecord.markProcessed(node.contributionId);
+                    } else {
+                        reportUnresolved(builderRecord, processingNode);
+                    }
+                    continue;
+                } else {
+                    processingNode.processingState = SectionProcessingState.END;
+                }
+            }
+
+            if (processingNode.processingState == SectionProcessingState.END) {
+                if (processingNode.separationMode == SeparationSequenceContributionRule.SeparationMode.BELOW || processingNode.separationMode == SeparationSequenceContributionRule.SeparationMode.AROUND) {
+                    builderRecord.separatorQueued = true;
+                }
+                processing.remove(processing.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Selects next entry to place using the same priorities as default
+     * builder: ready entry with satisfied "after" rules, ready entry following
+     * previously placed item in definition order, first ready entry for
+     * current position and first ready entry at all as a fallback.
+     *
+     * @param builderRecord builder record
+     * @param groupNode processed group
+     * @return selected entry or null if no entry is ready
+     */
+    @Nullable
+    private static BuilderEntry selectNext(BuilderRecord builderRecord, BuilderGroupNode groupNode) {
+        while (true) {
+            int position = groupNode.processingPosition.ordinal();
+            TreeSet<Integer> readyAtPosition = groupNode.readyByPosition[position];
+            if (!readyAtPosition.isEmpty()) {
+                TreeSet<Integer> readyWithAfter = groupNode.readyWithAfterByPosition[position];
+                if (!readyWithAfter.isEmpty()) {
+                    return groupNode.entries.get(readyWithAfter.first());
+                }
+
+                BuilderEntry hintMatch = null;
+                List<BuilderNode> hintedNodes = builderRecord.hintedBy.get(builderRecord.previousContribution);
+                if (hintedNodes != null) {
+                    for (BuilderNode hintedNode : hintedNodes) {
+                        for (BuilderEntry entry : hintedNode.entries) {
+                            if (entry.group == groupNode && entry.ready && !entry.done && hintedNode.positionHint == groupNode.processingPosition
+                                    && (hintMatch == null || entry.index < hintMatch.index)) {
+                                hintMatch = entry;
+                            }
+                        }
+                    }
+                }
+
+                return hintMatch != null ? hintMatch : groupNode.entries.get(readyAtPosition.first());
+            }
+
+            if (groupNode.processingPosition == PositionSequenceContributionRule.PositionMode.BOTTOM_LAST) {
+                return groupNode.readyEntries.isEmpty() ? null : groupNode.entries.get(groupNode.readyEntries.first());
+            }
+
+            groupNode.processingPosition = POSITION_MODES[position + 1];
+        }
+    }
+
+    private void reportUnresolved(BuilderRecord builderRecord, BuilderGroupNode groupNode) {
+        List<String> unresolvedIds = new ArrayList<>();
+        Set<String> missingIds = new LinkedHashSet<>();
+        for (BuilderEntry entry : groupNode.entries) {
+            if (!entry.done) {
+                unresolvedIds.add(entry.node.contributionId);
+                for (String afterId : entry.node.placeAfter) {
+                    if (!builderRecord.nodesById.containsKey(afterId)) {
+                        missingIds.add(afterId);
+                    }
+                }
+                groupNode.removeEntry(entry);
+            }
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append("Unable to place contributions ").append(unresolvedIds).append(" in group \"").append(groupNode.contributionId).append("\"");
+        List<String> cycle = findCycle(builderRecord, unresolvedIds);
+        if (!cycle.isEmpty()) {
+            message.append(", cyclic dependency: ").append(String.join(" -> ", cycle));
+        }
+        if (!missingIds.isEmpty()) {
+            message.append(", missing dependency: ").append(missingIds);
+        }
+
+        if (failOnUnresolved) {
+            throw new IllegalStateException(message.toString());
+        }
+        Logger.getLogger(TopologicalContributionSequenceBuilder.class.getName()).log(Level.SEVERE, message.toString());
+    }
+
+    /**
+     * Finds dependency cycle starting from one of the given contributions.
+     *
+     * @param builderRecord builder record
+     * @param startIds unresolved contribution identifiers
+     * @return list of identifiers forming cycle with first identifier repeated
+     * at the end or empty list if no cycle found
+     */
+    @Nonnull
+    private static List<String> findCycle(BuilderRecord builderRecord, List<String> startIds) {
+        Set<String> finished = new HashSet<>();
+        for (String startId : startIds) {
+            if (finished.contains(startId)) {
+                continue;
+            }
+
+            // Iterative depth first search over unprocessed "after" dependencies
+            List<String> path = new ArrayList<>();
+            Map<String, Integer> pathIndex = new HashMap<>();
+            List<List<String>> pendingDependencies = new ArrayList<>();
+            path.add(startId);
+            pathIndex.put(startId, 0);
+            pendingDependencies.add(getUnprocessedDependencies(builderRecord, startId));
+            while (!path.isEmpty()) {
+                List<String> dependencies = pendingDependencies.get(pendingDependencies.size() - 1);
+                if (dependencies.isEmpty()) {
+                    String finishedId = path.remove(path.size() - 1);
+                    pathIndex.remove(finishedId);
+                    pendingDependencies.remove(pendingDependencies.size() - 1);
+                    finished.add(finishedId);
+                    continue;
+                }
+
+                String dependencyId = dependencies.remove(dependencies.size() - 1);
+                Integer cycleStart = pathIndex.get(dependencyId);
+                if (cycleStart != null) {
+                    List<String> cycle = new ArrayList<>(path.subList(cycleStart, path.size()));
+                    cycle.add(dependencyId);
+                    return cycle;
+                }
+                if (!finished.contains(dependencyId) && builderRecord.nodesById.containsKey(dependencyId)) {
+                    pathIndex.put(dependencyId, path.size());
+                    path.add(dependencyId);
+                    pendingDependencies.add(getUnprocessedDependencies(builderRecord, dependencyId));
+                }
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    @Nonnull
+    private static List<String> getUnprocessedDependencies(BuilderRecord builderRecord, String contributionId) {
+        List<String> dependencies = new ArrayList<>();
+        List<BuilderNode> nodes = builderRecord.nodesById.get(contributionId);
+        if (nodes != null) {
+            for (BuilderNode node : nodes) {
+                for (String afterId : node.placeAfter) {
+                    if (!builderRecord.processedContributions.contains(afterId)) {
+                        dependencies.add(afterId);
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    private static class BuilderRecord {
+
+        final Map<String, BuilderGroupNode> groupsMap = new HashMap<>();
+        final Map<String, List<BuilderNode>> nodesById = new HashMap<>();
+        final List<BuilderNode> nodes = new ArrayList<>();
+        final Map<String, List<BuilderNode>> waitingNodes = new HashMap<>();
+        final Map<BuilderNode, List<BuilderNode>> hintedBy = new IdentityHashMap<>();
+        final Set<String> processedContributions = new HashSet<>();
+
+        boolean separatorQueued = false;
+        BuilderNode previousContribution = null;
+
+        @Nonnull
+        BuilderGroupNode getGroup(String groupId) {
+            BuilderGroupNode groupNode = groupsMap.get(groupId);
+            if (groupNode == null) {
+                groupNode = new BuilderGroupNode(groupId);
+                groupsMap.put(groupId, groupNode);
+            }
+            return groupNode;
+        }
+
+        void registerNode(BuilderNode node) {
+            if (node.registered) {
+                return;
+            }
+
+            node.registered = true;
+            nodes.add(node);
+            List<BuilderNode> sameIdNodes = nodesById.get(node.contributionId);
+            if (sameIdNodes == null) {
+                sameIdNodes = new ArrayList<>();
+                nodesById.put(node.contributionId, sameIdNodes);
+            }
+            sameIdNodes.add(node);
+        }
+
+        void initDependencies() {
+            for (BuilderNode node : nodes) {
+                List<BuilderNode> hinted = hintedBy.get(node.previousHint);
+                if (hinted == null) {
+                    hinted = new ArrayList<>();
+                    hintedBy.put(node.previousHint, hinted);
+                }
+                hinted.add(node);
+
+                node.pendingCount = node.placeAfter.size();
+                for (String afterId : node.placeAfter) {
+                    List<BuilderNode> waiting = waitingNodes.get(afterId);
+                    if (waiting == null) {
+                        waiting = new ArrayList<>();
+                        waitingNodes.put(afterId, waiting);
+                    }
+                    waiting.add(node);
+                }
+
+                if (node.pendingCount == 0) {
+                    node.markReady();
+                }
+            }
+        }
+
+        void markProcessed(String contributionId) {
+            if (!processedContributions.add(contributionId)) {
+                return;
+            }
+
+            List<BuilderNode> waiting = waitingNodes.remove(contributionId);
+            if (waiting != null) {
+                for (BuilderNode node : waiting) {
+                    node.pendingCount--;
+                    if (node.pendingCount == 0) {
+                        node.markReady();
+                    }
+                }
+            }
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class BuilderGroupNode extends BuilderNode {
+
+        SectionProcessingState processingState = SectionProcessingState.START;
+        PositionSequenceContributionRule.PositionMode processingPosition = PositionSequenceContributionRule.PositionMode.TOP;
+        final List<BuilderEntry> entries = new ArrayList<>();
+        final TreeSet<Integer> readyEntries = new TreeSet<>();
+        final TreeSet<Integer>[] readyByPosition = createPositionSets();
+        final TreeSet<Integer>[] readyWithAfterByPosition = createPositionSets();
+        int remainingCount = 0;
+
+        public BuilderGroupNode(String groupId) {
+            super(groupId);
+        }
+
+        void addEntry(BuilderNode node) {
+            BuilderEntry entry = new BuilderEntry(this, node, entries.size());
+            entries.add(entry);
+            node.entries.add(entry);
+            remainingCount++;
+        }
+
+        void markReady(BuilderEntry entry) {
+            entry.ready = true;
+            int position = entry.node.positionHint.ordinal();
+            readyEntries.add(entry.index);
+            readyByPosition[position].add(entry.index);
+            if (!entry.node.placeAfter.isEmpty()) {
+                readyWithAfterByPosition[position].add(entry.index);
+            }
+        }
+
+        void removeEntry(BuilderEntry entry) {
+            entry.done = true;
+            remainingCount--;
+            if (entry.ready) {
+                int position = entry.node.positionHint.ordinal();
+                readyEntries.remove(entry.index);
+                readyByPosition[position].remove(entry.index);
+                readyWithAfterByPosition[position].remove(entry.index);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nonnull
+        private static TreeSet<Integer>[] createPositionSets() {
+            TreeSet<Integer>[] sets = new TreeSet[POSITION_MODES.length];
+            for (int i = 0; i < sets.length; i++) {
+                sets[i] = new TreeSet<>();
+            }
+            return sets;
+        }
+    }
+
+    private enum SectionProcessingState {
+        START,
+        CONTRIBUTION,
+        END
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class BuilderItemNode extends BuilderNode {
+
+        final ItemSequenceContribution contribution;
+
+        public BuilderItemNode(ItemSequenceContribution contribution) {
+            super(contribution.getContributionId());
+            this.contribution = contribution;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class BuilderNode {
+
+        final String contributionId;
+        final Set<String> placeAfter = new HashSet<>();
+        final List<BuilderEntry> entries = new ArrayList<>();
+
+        SeparationSequenceContributionRule.SeparationMode separationMode;
+        PositionSequenceContributionRule.PositionMode positionHint = PositionSequenceContributionRule.PositionMode.DEFAULT;
+        BuilderNode previousHint = null;
+        boolean registered = false;
+        int pendingCount;
+
+        BuilderNode(String contributionId) {
+            this.contributionId = contributionId;
+        }
+
+        void markReady() {
+            for (BuilderEntry entry : entries) {
+                if (!entry.done) {
+                    entry.group.markReady(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Occurrence of contribution in the group.
+     */
+    @ParametersAreNonnullByDefault
+    private static class BuilderEntry {
+
+        final BuilderGroupNode group;
+        final BuilderNode node;
+        final int index;
+        boolean ready = false;
+        boolean done = false;
+
+        BuilderEntry(BuilderGroupNode group, BuilderNode node, int index) {
+            this.group = group;
+            this.node = node;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionDefinition;
+import org.exbin.jaguif.contribution.api.ContributionSequenceBuilder;
+import org.exbin.jaguif.contribution.api.ContributionSequenceOutput;
+import org.exbin.jaguif.contribution.api.GroupSequenceContribution;
+import org.exbin.jaguif.contribution.api.GroupSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.ItemSequenceContribution;
+import org.exbin.jaguif.contribution.api.PositionSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.RelativeSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SeparationSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SequenceContribution;
+import org.exbin.jaguif.contribution.api.SubSequenceContribution;
+import org.exbin.jaguif.contribution.api.SubSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.TreeContributionSequenceBuilder;
+import org.exbin.jaguif.contribution.api.TreeContributionSequenceOutput;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Parity test for memoized contribution sequence builders.
+ */
+@ParametersAreNonnullByDefault
+public class CachingContributionSequenceBuilderTest {
+
+    private static final int RANDOM_DEFINITIONS_COUNT = 500;
+    private static final int VALIDITY_VARIANTS_COUNT = 4;
+    private static final int REPEATED_BUILDS_COUNT = 2000;
+
+    @Test
+    public void testFlatParity() {
+        Random random = new Random(11);
+        CachingContributionSequenceBuilder cachingBuilder = new CachingContributionSequenceBuilder();
+        for (int i = 0; i < RANDOM_DEFINITIONS_COUNT; i++) {
+            DefaultContributionDefinition definition = createRandomDefinition(random, 5 + random.nextInt(40), false);
+            for (int variant = 0; variant < VALIDITY_VARIANTS_COUNT; variant++) {
+                Set<String> invalidIds = createInvalidIds(random, definition);
+                List<String> expected = build(new DefaultContributionSequenceBuilder(), definition, invalidIds);
+                List<String> actual = build(cachingBuilder, definition, invalidIds);
+                Assert.assertEquals("Definition " + i + ", variant " + variant, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testTreeParity() {
+        Random random = new Random(13);
+        CachingTreeContributionSequenceBuilder cachingBuilder = new CachingTreeContributionSequenceBuilder();
+        for (int i = 0; i < RANDOM_DEFINITIONS_COUNT; i++) {
+            DefaultContributionDefinition definition = createRandomDefinition(random, 5 + random.nextInt(40), true);
+            for (int variant = 0; variant < VALIDITY_VARIANTS_COUNT; variant++) {
+                Set<String> invalidIds = createInvalidIds(random, definition);
+                String expected = buildTree(new DefaultTreeContributionSequenceBuilder(), definition, invalidIds);
+                String actual = buildTree(cachingBuilder, definition, invalidIds);
+                Assert.assertEquals("Definition " + i + ", variant " + variant, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testPlansReusedForRecurringValidity() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        String[] groupIds = {"open", "edit", "view", "exit"};
+        for (int groupIndex = 0; groupIndex < groupIds.length; groupIndex++) {
+            GroupSequenceContribution groupContribution = new GroupSequenceContribution(groupIds[groupIndex]);
+            definition.addContribution(groupContribution);
+            definition.addRule(groupContribution, new SeparationSequenceContributionRule(SeparationSequenceContributionRule.SeparationMode.AROUND));
+            if (groupIndex == 0) {
+                definition.addRule(groupContribution, new PositionSequenceContributionRule(PositionSequenceContributionRule.PositionMode.TOP));
+            } else if (groupIndex == groupIds.length - 1) {
+                definition.addRule(groupContribution, new PositionSequenceContributionRule(PositionSequenceContributionRule.PositionMode.BOTTOM_LAST));
+            }
+        }
+        // Items are contributed by modules in interleaved order
+        for (int i = 0; i < 40; i++) {
+            TestItemContribution itemContribution = new TestItemContribution("item" + i);
+            definition.addContribution(itemContribution);
+            definition.addRule(itemContribution, new GroupSequenceContributionRule(groupIds[(i * 7) % groupIds.length]));
+            if (i % 9 == 0) {
+                definition.addRule(itemContribution, new PositionSequenceContributionRule(PositionSequenceContributionRule.PositionMode.TOP));
+            }
+        }
+
+        AtomicInteger plansCount = new AtomicInteger();
+        CachingContributionSequenceBuilder cachingBuilder = new CachingContributionSequenceBuilder(new DefaultContributionSequenceBuilder() {
+            @Nonnull
+            @Override
+            public ContributionSequencePlan createPlan(ContributionDefinition contributionDef, List<Boolean> validity) {
+                plansCount.incrementAndGet();
+                return super.createPlan(contributionDef, validity);
+            }
+        });
+        List<Set<String>> validityVariants = new ArrayList<>();
+        validityVariants.add(new HashSet<>());
+        validityVariants.add(new HashSet<>(Arrays.asList("item5", "item9", "item13")));
+        validityVariants.add(new HashSet<>(Arrays.asList("item1", "item2")));
+        for (int round = 0; round < 10; round++) {
+            for (Set<String> invalidIds : validityVariants) {
+                List<String> expected = build(new DefaultContributionSequenceBuilder(), definition, invalidIds);
+                Assert.assertEquals(expected, build(cachingBuilder, definition, invalidIds));
+            }
+        }
+        Assert.assertTrue("Plans created: " + plansCount.get(), plansCount.get() <= 1 + 2 * validityVariants.size());
+    }
+
+    @Test
+    public void testRevisionInvalidatesPlan() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        TestItemContribution first = new TestItemContribution("first");
+        TestItemContribution second = new TestItemContribution("second");
+        definition.addContribution(first);
+        definition.addContribution(second);
+        definition.addRule(second, new PositionSequenceContributionRule(PositionSequenceContributionRule.PositionMode.TOP));
+
+        CachingContributionSequenceBuilder builder = new CachingContributionSequenceBuilder();
+        Assert.assertEquals("[second, first]", build(builder, definition, new HashSet<>()).toString());
+
+        long revision = definition.getRevision();
+        definition.addRule(first, new SeparationSequenceContributionRule(SeparationSequenceContributionRule.SeparationMode.ABOVE));
+        Assert.assertNotEquals(revision, definition.getRevision());
+        Assert.assertEquals("[second, -, first]", build(builder, definition, new HashSet<>()).toString());
+
+        definition.removeContribution(second);
+        Assert.assertEquals("[first]", build(builder, definition, new HashSet<>()).toString());
+    }
+
+    @Test
+    public void testInconsistentPlanFallback() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        definition.addContribution(new TestItemContribution("root"));
+        TestSubContribution subContribution = new TestSubContribution("sub");
+        definition.addContribution(subContribution);
+        TestItemContribution subItem = new TestItemContribution("subItem");
+        definition.addContribution(subItem);
+        definition.addRule(subItem, new SubSequenceContributionRule("sub"));
+        definition.addContribution(new TestItemContribution("last"));
+        Set<String> invalidIds = new HashSet<>(Arrays.asList("sub"));
+        String expected = buildTree(new DefaultTreeContributionSequenceBuilder(), definition, invalidIds);
+
+        // Plan recorded for valid sub is provided again when sub is invalid
+        DefaultTreeContributionSequenceBuilder builder = new DefaultTreeContributionSequenceBuilder();
+        ContributionSequencePlan plan = builder.createPlan(definition);
+        TestTreeOutput output = new TestTreeOutput(invalidIds);
+        AtomicInteger directBuilds = new AtomicInteger();
+        plan.replay(output, "test", (validity) -> plan, (directOutput) -> {
+            Assert.assertTrue(output.isEmpty());
+            directBuilds.incrementAndGet();
+            builder.buildSequence(directOutput, "test", definition);
+        });
+        Assert.assertEquals(1, directBuilds.get());
+        Assert.assertEquals(expected, output.toString());
+        Assert.assertEquals(new HashSet<>(output.initializedIds).size(), output.initializedIds.size());
+    }
+
+    @Test
+    public void testDefinitionViewsUnmodifiable() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        TestItemContribution item = new TestItemContribution("item");
+        definition.addContribution(item);
+        definition.addRule(item, new PositionSequenceContributionRule(PositionSequenceContributionRule.PositionMode.TOP));
+        long revision = definition.getRevision();
+        assertUnsupported(() -> definition.getContributions().add(new TestItemContribution("other")));
+        assertUnsupported(() -> definition.getRules().remove(item));
+        assertUnsupported(() -> definition.getRules().get(item).clear());
+        assertUnsupported(() -> definition.getContributionRules(item).get().clear());
+        Assert.assertEquals(revision, definition.getRevision());
+        Assert.assertEquals(1, definition.getContributions().size());
+        Assert.assertEquals(1, definition.getContributionRules(item).get().size());
+    }
+
+    @Test
+    public void testRepeatedBuilds() {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        DefaultContributionDefinition definition = createRandomDefinition(new Random(5), 300, true);
+        Set<String> invalidIds = new HashSet<>();
+        TreeContributionSequenceBuilder defaultBuilder = new DefaultTreeContributionSequenceBuilder();
+        TreeContributionSequenceBuilder cachingBuilder = new CachingTreeContributionSequenceBuilder();
+        String expected = buildTree(defaultBuilder, definition, invalidIds);
+        Assert.assertEquals(expected, buildTree(cachingBuilder, definition, invalidIds));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATED_BUILDS_COUNT; i++) {
+            buildTree(defaultBuilder, definition, invalidIds);
+        }
+        long defaultTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATED_BUILDS_COUNT; i++) {
+            buildTree(cachingBuilder, definition, invalidIds);
+        }
+        long cachingTime = System.nanoTime() - start;
+        System.out.println(REPEATED_BUILDS_COUNT + " builds of unchanged definition, default: " + (defaultTime / 1000000) + " ms, caching: " + (cachingTime / 1000000) + " ms");
+    }
+
+    private static void assertUnsupported(Runnable modification) {
+        try {
+            modification.run();
+            Assert.fail("Modification not rejected");
+        } catch (UnsupportedOperationException ex) {
+            // Expected
+        }
+    }
+
+    @Nonnull
+    private static List<String> build(ContributionSequenceBuilder builder, DefaultContributionDefinition definition, Set<String> invalidIds) {
+        List<String> sequence = new ArrayList<>();
+        builder.buildSequence(new ContributionSequenceOutput() {
+            @Override
+            public boolean initItem(ItemSequenceContribution itemContribution) {
+                return !invalidIds.contains(itemContribution.getContributionId());
+            }
+
+            @Override
+            public void add(ItemSequenceContribution itemContribution) {
+                sequence.add(itemContribution.getContributionId());
+            }
+
+            @Override
+            public void addSeparator() {
+                sequence.add("-");
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return sequence.isEmpty();
+            }
+        }, definition);
+        return sequence;
+    }
+
+    @Nonnull
+    private static String buildTree(TreeContributionSequenceBuilder builder, DefaultContributionDefinition definition, Set<String> invalidIds) {
+        TestTreeOutput output = new TestTreeOutput(invalidIds);
+        builder.buildSequence(output, "test", definition);
+        return output.toString();
+    }
+
+    @Nonnull
+    private static Set<String> createInvalidIds(Random random, DefaultContributionDefinition definition) {
+        Set<String> invalidIds = new HashSet<>();
+        for (SequenceContribution contribution : definition.getContributions()) {
+            if (contribution instanceof ItemSequenceContribution && random.nextInt(5) == 0) {
+                invalidIds.add(((ItemSequenceContribution) contribution).getContributionId());
+            } else if (contribution instanceof SubSequenceContribution && random.nextInt(5) == 0) {
+                invalidIds.add(((SubSequenceContribution) contribution).getContributionId());
+            }
+        }
+        return invalidIds;
+    }
+
+    @Nonnull
+    private static DefaultContributionDefinition createRandomDefinition(Random random, int contributionsCount, boolean withSubs) {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        List<String> subIds = new ArrayList<>();
+        subIds.add("");
+        List<List<String>> subGroupIds = new ArrayList<>();
+        subGroupIds.add(new ArrayList<>());
+        List<String> ids = new ArrayList<>();
+        PositionSequenceContributionRule.PositionMode[] positionModes = PositionSequenceContributionRule.PositionMode.values();
+        SeparationSequenceContributionRule.SeparationMode[] separationModes = SeparationSequenceContributionRule.SeparationMode.values();
+        // Root section must contain at least one contribution
+        definition.addContribution(new TestItemContribution("root"));
+        for (int i = 0; i < contributionsCount; i++) {
+            int subIndex = random.nextInt(subIds.size());
+            String parentSubId = subIds.get(subIndex);
+            List<String> groupIds = subGroupIds.get(subIndex);
+            String parentGroupId = groupIds.isEmpty() || random.nextInt(3) == 0 ? null : groupIds.get(random.nextInt(groupIds.size()));
+            int type = random.nextInt(8);
+            SequenceContribution contribution;
+            String id;
+            if (type == 0) {
+                id = "group" + i;
+                contribution = new GroupSequenceContribution(id);
+                groupIds.add(id);
+            } else if (type == 1 && withSubs) {
+                id = "sub" + i;
+                contribution = new TestSubContribution(id);
+            } else {
+                // Occasionally reuse identifier of existing item
+                id = !ids.isEmpty() && random.nextInt(30) == 0 ? ids.get(random.nextInt(ids.size())) : "item" + i;
+                contribution = new TestItemContribution(id);
+            }
+            definition.addContribution(contribution);
+            if (!parentSubId.isEmpty()) {
+                definition.addRule(contribution, new SubSequenceContributionRule(parentSubId));
+            }
+            if (parentGroupId != null) {
+                definition.addRule(contribution, new GroupSequenceContributionRule(parentGroupId));
+            }
+            if (random.nextInt(3) == 0) {
+                definition.addRule(contribution, new PositionSequenceContributionRule(positionModes[random.nextInt(positionModes.length)]));
+            }
+            if (random.nextInt(4) == 0) {
+                definition.addRule(contribution, new SeparationSequenceContributionRule(separationModes[random.nextInt(separationModes.length)]));
+            }
+            if (random.nextInt(5) == 0) {
+                String targetId = ids.isEmpty() || random.nextInt(10) == 0 ? "missing" : ids.get(random.nextInt(ids.size()));
+                definition.addRule(contribution, new RelativeSequenceContributionRule(RelativeSequenceContributionRule.NextToMode.AFTER, targetId));
+            }
+            ids.add(id);
+
+            if (contribution instanceof SubSequenceContribution && random.nextInt(4) > 0) {
+                // Sub section must contain at least one contribution outside of groups
+                TestItemContribution firstItem = new TestItemContribution(id + "first");
+                definition.addContribution(firstItem);
+                definition.addRule(firstItem, new SubSequenceContributionRule(id));
+                ids.add(firstItem.getContributionId());
+                subIds.add(id);
+                subGroupIds.add(new ArrayList<>());
+            }
+        }
+        return definition;
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class TestTreeOutput implements TreeContributionSequenceOutput {
+
+        private final Set<String> invalidIds;
+        private final List<String> initializedIds;
+        private final List<String> sequence = new ArrayList<>();
+        private final Map<String, TestTreeOutput> subOutputs = new HashMap<>();
+
+        public TestTreeOutput(Set<String> invalidIds) {
+            this(invalidIds, new ArrayList<>());
+        }
+
+        private TestTreeOutput(Set<String> invalidIds, List<String> initializedIds) {
+            this.invalidIds = invalidIds;
+            this.initializedIds = initializedIds;
+        }
+
+        @Override
+        public boolean initItem(SequenceContribution contribution, String definitionId, String subId) {
+            String contributionId = getContributionId(contribution);
+            initializedIds.add(contributionId);
+            return !invalidIds.contains(contributionId);
+        }
+
+        @Override
+        public void add(SequenceContribution contribution) {
+            String contributionId = getContributionId(contribution);
+            TestTreeOutput subOutput = subOutputs.get(contributionId);
+            sequence.add(subOutput == null ? contributionId : contributionId + subOutput.sequence);
+        }
+
+        @Override
+        public void addSeparator() {
+            sequence.add("-");
+        }
+
+        @Nonnull
+        @Override
+        public TreeContributionSequenceOutput createSubOutput(SubSequenceContribution subContribution) {
+            TestTreeOutput subOutput = new TestTreeOutput(invalidIds, initializedIds);
+            subOutputs.put(subContribution.getContributionId(), subOutput);
+            return subOutput;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sequence.isEmpty();
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return sequence.toString();
+        }
+
+        @Nonnull
+        private static String getContributionId(SequenceContribution contribution) {
+            if (contribution instanceof SubSequenceContribution) {
+                return ((SubSequenceContribution) contribution).getContributionId();
+            }
+            return ((ItemSequenceContribution) contribution).getContributionId();
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class TestItemContribution implements ItemSequenceContribution {
+
+        private final String contributionId;
+
+        public TestItemContribution(String contributionId) {
+            this.contributionId = contributionId;
+        }
+
+        @Nonnull
+        @Override
+        public String getContributionId() {
+            return contributionId;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class TestSubContribution implements SubSequenceContribution {
+
+        private final String contributionId;
+
+        public TestSubContribution(String contributionId) {
+            this.contributionId = contributionId;
+        }
+
+        @Nonnull
+        @Override
+        public String getContributionId() {
+            return contributionId;
+        }
+    }
+}
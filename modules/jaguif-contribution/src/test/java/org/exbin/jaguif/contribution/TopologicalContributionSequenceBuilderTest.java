@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.contribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.contribution.api.ContributionSequenceBuilder;
+import org.exbin.jaguif.contribution.api.ContributionSequenceOutput;
+import org.exbin.jaguif.contribution.api.GroupSequenceContribution;
+import org.exbin.jaguif.contribution.api.GroupSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.ItemSequenceContribution;
+import org.exbin.jaguif.contribution.api.PositionSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.RelativeSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SeparationSequenceContributionRule;
+import org.exbin.jaguif.contribution.api.SequenceContribution;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Parity test for topological contribution sequence builder.
+ */
+@ParametersAreNonnullByDefault
+public class TopologicalContributionSequenceBuilderTest {
+
+    private static final int RANDOM_DEFINITIONS_COUNT = 500;
+    private static final int LARGE_DEFINITION_SIZE = 5000;
+
+    @Test
+    public void testParityWithDefaultBuilder() {
+        Random random = new Random(42);
+        for (int i = 0; i < RANDOM_DEFINITIONS_COUNT; i++) {
+            long seed = random.nextLong();
+            DefaultContributionDefinition definition = createRandomDefinition(new Random(seed), 5 + random.nextInt(60));
+            List<String> expected = build(new DefaultContributionSequenceBuilder(), definition, seed);
+            List<String> actual = build(new TopologicalContributionSequenceBuilder(), definition, seed);
+            Assert.assertEquals("Definition seed " + seed, expected, actual);
+        }
+    }
+
+    @Test
+    public void testBeforeRule() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        TestItemContribution first = new TestItemContribution("first");
+        TestItemContribution second = new TestItemContribution("second");
+        definition.addContribution(first);
+        definition.addContribution(second);
+        definition.addRule(second, new RelativeSequenceContributionRule(RelativeSequenceContributionRule.NextToMode.BEFORE, "first"));
+
+        List<String> sequence = build(new TopologicalContributionSequenceBuilder(), definition);
+        Assert.assertEquals("[second, first]", sequence.toString());
+    }
+
+    @Test
+    public void testCycleReported() {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        TestItemContribution itemA = new TestItemContribution("a");
+        TestItemContribution itemB = new TestItemContribution("b");
+        TestItemContribution itemC = new TestItemContribution("c");
+        definition.addContribution(itemA);
+        definition.addContribution(itemB);
+        definition.addContribution(itemC);
+        definition.addRule(itemA, new RelativeSequenceContributionRule(RelativeSequenceContributionRule.NextToMode.AFTER, "b"));
+        definition.addRule(itemB, new RelativeSequenceContributionRule(RelativeSequenceContributionRule.NextToMode.AFTER, "a"));
+
+        TopologicalContributionSequenceBuilder builder = new TopologicalContributionSequenceBuilder();
+        builder.setFailOnUnresolved(true);
+        try {
+            build(builder, definition);
+            Assert.fail("Cycle not detected");
+        } catch (IllegalStateException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("[a, b]"));
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("a -> b -> a"));
+        }
+
+        builder.setFailOnUnresolved(false);
+        Assert.assertEquals("[c]", build(builder, definition).toString());
+    }
+
+    @Test
+    public void testLargeDefinition() {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        DefaultContributionDefinition definition = createRandomDefinition(new Random(7), LARGE_DEFINITION_SIZE);
+        long start = System.nanoTime();
+        List<String> expected = build(new DefaultContributionSequenceBuilder(), definition);
+        long defaultTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<String> actual = build(new TopologicalContributionSequenceBuilder(), definition);
+        long topologicalTime = System.nanoTime() - start;
+        System.out.println("Build of " + LARGE_DEFINITION_SIZE + " contributions, default: " + (defaultTime / 1000000) + " ms, topological: " + (topologicalTime / 1000000) + " ms");
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Nonnull
+    private static List<String> build(ContributionSequenceBuilder builder, DefaultContributionDefinition definition) {
+        return build(builder, definition, null);
+    }
+
+    @Nonnull
+    private static List<String> build(ContributionSequenceBuilder builder, DefaultContributionDefinition definition, @Nullable Long seed) {
+        Random validityRandom = seed == null ? null : new Random(seed);
+        List<String> sequence = new ArrayList<>();
+        builder.buildSequence(new ContributionSequenceOutput() {
+            @Override
+            public boolean initItem(ItemSequenceContribution itemContribution) {
+                // Some items refuse to be initialized
+                return validityRandom == null || validityRandom.nextInt(10) > 0;
+            }
+
+            @Override
+            public void add(ItemSequenceContribution itemContribution) {
+                sequence.add(itemContribution.getContributionId());
+            }
+
+            @Override
+            public void addSeparator() {
+                sequence.add("-");
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return sequence.isEmpty();
+            }
+        }, definition);
+        return sequence;
+    }
+
+    @Nonnull
+    private static DefaultContributionDefinition createRandomDefinition(Random random, int contributionsCount) {
+        DefaultContributionDefinition definition = new DefaultContributionDefinition();
+        List<String> groupIds = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        PositionSequenceContributionRule.PositionMode[] positionModes = PositionSequenceContributionRule.PositionMode.values();
+        SeparationSequenceContributionRule.SeparationMode[] separationModes = SeparationSequenceContributionRule.SeparationMode.values();
+        for (int i = 0; i < contributionsCount; i++) {
+            boolean group = random.nextInt(6) == 0;
+            String parentGroupId = groupIds.isEmpty() || random.nextInt(3) == 0 ? null : groupIds.get(random.nextInt(groupIds.size()));
+            String id;
+            if (group) {
+                id = "group" + i;
+                GroupSequenceContribution groupContribution = new GroupSequenceContribution(id);
+                definition.addContribution(groupContribution);
+                addRandomRules(definition, groupContribution, random, parentGroupId, ids, positionModes, separationModes);
+                groupIds.add(id);
+            } else {
+                // Occasionally reuse identifier of existing item
+                id = !ids.isEmpty() && random.nextInt(30) == 0 ? ids.get(random.nextInt(ids.size())) : "item" + i;
+                TestItemContribution itemContribution = new TestItemContribution(id);
+                definition.addContribution(itemContribution);
+                addRandomRules(definition, itemContribution, random, parentGroupId, ids, positionModes, separationModes);
+            }
+            ids.add(id);
+        }
+        return definition;
+    }
+
+    private static void addRandomRules(DefaultContributionDefinition definition, SequenceContribution contribution, Random random, String parentGroupId, List<String> ids, PositionSequenceContributionRule.PositionMode[] positionModes, SeparationSequenceContributionRule.SeparationMode[] separationModes) {
+        if (parentGroupId != null) {
+            definition.addRule(contribution, new GroupSequenceContributionRule(parentGroupId));
+        }
+        if (random.nextInt(3) == 0) {
+            definition.addRule(contribution, new PositionSequenceContributionRule(positionModes[random.nextInt(positionModes.length)]));
+        }
+        if (random.nextInt(4) == 0) {
+            definition.addRule(contribution, new SeparationSequenceContributionRule(separationModes[random.nextInt(separationModes.length)]));
+        }
+        int relativeCount = random.nextInt(4) == 0 ? 1 + random.nextInt(2) : 0;
+        for (int i = 0; i < relativeCount; i++) {
+            String targetId = ids.isEmpty() || random.nextInt(10) == 0 ? "missing" + random.nextInt(3) : ids.get(random.nextInt(ids.size()));
+            definition.addRule(contribution, new RelativeSequenceContributionRule(RelativeSequenceContributionRule.NextToMode.AFTER, targetId));
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class TestItemContribution implements ItemSequenceContribution {
+
+        private final String contributionId;
+
+        public TestItemContribution(String contributionId) {
+            this.contributionId = contributionId;
+        }
+
+        @Nonnull
+        @Override
+        public String getContributionId() {
+            return contributionId;
+        }
+    }
+}
@@ -32,6 +32,7 @@ public class DocumentSyntaxModule implements Module {
     public static final String MODULE_ID = ModuleUtils.getModuleIdByApi(DocumentSyntaxModule.class);
 
     private ResourceBundle resourceBundle;
+    private SyntaxStyleRegistry syntaxStyleRegistry;
 
     public DocumentSyntaxModule() {
     }
@@ -45,6 +46,20 @@ public class DocumentSyntaxModule implements Module {
         return resourceBundle;
     }
 
+    /**
+     * Returns registry of syntax styles shared by all syntax documents.
+     *
+     * @return syntax style registry
+     */
+    @Nonnull
+    public SyntaxStyleRegistry getSyntaxStyleRegistry() {
+        if (syntaxStyleRegistry == null) {
+            syntaxStyleRegistry = new SyntaxStyleRegistry();
+        }
+
+        return syntaxStyleRegistry;
+    }
+
     public void registerSettings() {
     }
 }
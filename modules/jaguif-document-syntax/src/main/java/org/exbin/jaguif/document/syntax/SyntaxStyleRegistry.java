@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.syntax;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+
+/**
+ * Registry of syntax styles for file names and content.
+ * <p>
+ * Style is detected by file name, file extension and if not known, by
+ * sniffing the start of the content. Registry is thread safe so that
+ * detection can be performed in loading thread.
+ */
+@ParametersAreNonnullByDefault
+public class SyntaxStyleRegistry {
+
+    /**
+     * Length of the content prefix used for content sniffing.
+     */
+    public static final int SNIFF_LENGTH = 1024;
+
+    private final Map<String, String> fileNameStyles = new ConcurrentHashMap<>();
+    private final Map<String, String> extensionStyles = new ConcurrentHashMap<>();
+    private final Map<String, String> interpreterStyles = new ConcurrentHashMap<>();
+
+    public SyntaxStyleRegistry() {
+        init();
+    }
+
+    private void init() {
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_JAVA, "java");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_KOTLIN, "kt", "kts");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_GROOVY, "groovy", "gradle");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_SCALA, "scala");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_C, "c", "h");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_CPLUSPLUS, "cpp", "cc", "cxx", "hpp", "hh", "hxx");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_CSHARP, "cs");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_GO, "go");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_RUST, "rs");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, "js", "mjs", "cjs");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_TYPESCRIPT, "ts");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_JSON, "json");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_XML, "xml", "xsd", "xsl", "xslt", "svg", "pom", "form");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_HTML, "html", "htm", "xhtml");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_CSS, "css");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_JSP, "jsp");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_PHP, "php");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_PYTHON, "py", "pyw");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_RUBY, "rb");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_PERL, "pl", "pm");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_LUA, "lua");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL, "sh", "bash", "zsh");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_WINDOWS_BATCH, "bat", "cmd");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_SQL, "sql");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_PROPERTIES_FILE, "properties");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_INI, "ini", "cfg");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_YAML, "yaml", "yml");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_MARKDOWN, "md", "markdown");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_LATEX, "tex");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_CSV, "csv");
+        registerExtensions(SyntaxConstants.SYNTAX_STYLE_NONE, "txt", "log");
+
+        fileNameStyles.put("makefile", SyntaxConstants.SYNTAX_STYLE_MAKEFILE);
+        fileNameStyles.put("gnumakefile", SyntaxConstants.SYNTAX_STYLE_MAKEFILE);
+        fileNameStyles.put("dockerfile", SyntaxConstants.SYNTAX_STYLE_DOCKERFILE);
+        fileNameStyles.put(".bashrc", SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL);
+        fileNameStyles.put(".profile", SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL);
+
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL, "sh", "bash", "zsh", "ksh", "dash");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_PYTHON, "python", "python2", "python3");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_PERL, "perl");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_RUBY, "ruby");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, "node", "nodejs");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_PHP, "php");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_LUA, "lua");
+        registerInterpreters(SyntaxConstants.SYNTAX_STYLE_GROOVY, "groovy");
+    }
+
+    /**
+     * Registers syntax style for file extensions.
+     *
+     * @param style syntax style
+     * @param extensions file extensions without dot
+     */
+    public void registerExtensions(String style, String... extensions) {
+        for (String extension : extensions) {
+            extensionStyles.put(extension.toLowerCase(Locale.ROOT), style);
+        }
+    }
+
+    /**
+     * Registers syntax style for exact file name like Makefile.
+     *
+     * @param fileName file name
+     * @param style syntax style
+     */
+    public void registerFileName(String fileName, String style) {
+        fileNameStyles.put(fileName.toLowerCase(Locale.ROOT), style);
+    }
+
+    /**
+     * Registers syntax style for interpreter used in shebang line.
+     *
+     * @param style syntax style
+     * @param interpreters interpreter names
+     */
+    public void registerInterpreters(String style, String... interpreters) {
+        for (String interpreter : interpreters) {
+            interpreterStyles.put(interpreter, style);
+        }
+    }
+
+    /**
+     * Detects syntax style for the file.
+     *
+     * @param fileName file name or null if not known
+     * @param contentPrefix start of the content, typically up to
+     * {@link #SNIFF_LENGTH} characters
+     * @return syntax style, SyntaxConstants.SYNTAX_STYLE_NONE if not detected
+     */
+    @Nonnull
+    public String detectStyle(@Nullable String fileName, CharSequence contentPrefix) {
+        String style = fileName == null ? null : getStyleForFileName(fileName);
+        if (style == null) {
+            style = sniffStyle(contentPrefix);
+        }
+        return style == null ? SyntaxConstants.SYNTAX_STYLE_NONE : style;
+    }
+
+    /**
+     * Returns syntax style for file name.
+     *
+     * @param fileName file name
+     * @return syntax style or null if not known
+     */
+    @Nullable
+    public String getStyleForFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        String style = fileNameStyles.get(name);
+        if (style != null) {
+            return style;
+        }
+
+        int extensionStart = name.lastIndexOf('.');
+        return extensionStart < 0 ? null : extensionStyles.get(name.substring(extensionStart + 1));
+    }
+
+    /**
+     * Detects syntax style from the content.
+     *
+     * @param contentPrefix start of the content
+     * @return syntax style or null if not detected
+     */
+    @Nullable
+    public String sniffStyle(CharSequence contentPrefix) {
+        String content = contentPrefix.toString();
+        if (content.startsWith("#!")) {
+            return getInterpreterStyle(content);
+        }
+
+        String trimmed = content.trim();
+        String lowerCase = trimmed.toLowerCase(Locale.ROOT);
+        if (lowerCase.startsWith("<?php")) {
+            return SyntaxConstants.SYNTAX_STYLE_PHP;
+        }
+        if (lowerCase.startsWith("<!doctype html") || lowerCase.startsWith("<html")) {
+            return SyntaxConstants.SYNTAX_STYLE_HTML;
+        }
+        if (lowerCase.startsWith("<?xml") || (lowerCase.startsWith("<") && lowerCase.contains("xmlns"))) {
+            return SyntaxConstants.SYNTAX_STYLE_XML;
+        }
+        if ((trimmed.startsWith("{") && (trimmed.length() == 1 || trimmed.charAt(1) == '"' || Character.isWhitespace(trimmed.charAt(1))))
+                || (trimmed.startsWith("[") && (trimmed.length() == 1 || "{[\"".indexOf(trimmed.charAt(1)) >= 0 || Character.isWhitespace(trimmed.charAt(1))))) {
+            return SyntaxConstants.SYNTAX_STYLE_JSON;
+        }
+        if (content.startsWith("---\n") || content.startsWith("%YAML")) {
+            return SyntaxConstants.SYNTAX_STYLE_YAML;
+        }
+        return null;
+    }
+
+    @Nullable
+    private String getInterpreterStyle(String content) {
+        int lineEnd = content.indexOf('\n');
+        String[] parts = (lineEnd < 0 ? content.substring(2) : content.substring(2, lineEnd)).trim().split("\\s+");
+        if (parts.length == 0 || parts[0].isEmpty()) {
+            return null;
+        }
+
+        String command = parts[0].substring(parts[0].lastIndexOf('/') + 1);
+        if ("env".equals(command)) {
+            // Skip env options like -S
+            command = null;
+            for (int i = 1; i < parts.length; i++) {
+                if (!parts[i].startsWith("-")) {
+                    command = parts[i];
+                    break;
+                }
+            }
+            if (command == null) {
+                return null;
+            }
+        }
+        return interpreterStyles.get(command);
+    }
+}
@@ -15,21 +15,22 @@
  */
 package org.exbin.jaguif.document.syntax;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import org.exbin.jaguif.App;
 import org.exbin.jaguif.operation.undo.api.UndoRedoState;
 import org.exbin.jaguif.action.api.DialogParentComponent;
 import org.exbin.jaguif.operation.undo.api.UndoRedoController;
@@ -41,12 +42,19 @@ import org.exbin.jaguif.document.api.DocumentSource;
 import org.exbin.jaguif.document.api.EditableDocument;
 import org.exbin.jaguif.file.api.FileDocument;
 import org.exbin.jaguif.file.api.FileDocumentSource;
+import org.exbin.jaguif.document.text.api.DocumentStateDebouncer;
+import org.exbin.jaguif.document.text.api.TextDocumentLoader;
+import org.exbin.jaguif.document.text.api.TextDocumentSaver;
+import org.exbin.jaguif.document.text.api.TextUndoManager;
+import org.exbin.jaguif.document.text.api.gui.DocumentLoadingPanel;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+import org.exbin.jaguif.operation.api.OperationStateListener;
 import org.exbin.jaguif.text.encoding.ContextEncoding;
 import org.exbin.jaguif.text.font.TextFontState;
 import org.exbin.jaguif.document.syntax.gui.SyntaxTextPanel;
-import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.exbin.jaguif.utils.UiUtils;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
-import org.fife.ui.rtextarea.RTextScrollPane;
 
 /**
  * Text document.
@@ -54,24 +62,27 @@ import org.fife.ui.rtextarea.RTextScrollPane;
 @ParametersAreNonnullByDefault
 public class SyntaxTextDocument implements ContextDocument, ComponentDocument, FileDocument, EditableDocument {
 
+    private static final String LOADING_THREAD_NAME = "syntaxTextDocumentLoader";
+
     protected final SyntaxTextPanel textPanel = new SyntaxTextPanel();
 
     protected String title;
     protected DocumentSource documentSource = null;
     protected ActiveContextManagement contextManager;
     protected DialogParentComponent dialogParentComponent;
+    protected boolean keepBackup = false;
+    protected boolean byteOrderMark = false;
     protected UndoRedoController undoRedoControl = null;
     protected SyntaxTextPanelComponent textPanelComponent;
+    protected final DocumentStateDebouncer stateDebouncer = new DocumentStateDebouncer();
+    protected SyntaxStyleRegistry styleRegistry;
+
     public SyntaxTextDocument() {
         init();
     }
 
     private void init() {
-        RSyntaxTextArea textArea = new RSyntaxTextArea(20, 60);
-        textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_JAVA);
-        textArea.setCodeFoldingEnabled(true);
-        RTextScrollPane sp = new RTextScrollPane(textArea);        
-
+        styleRegistry = App.getModule(DocumentSyntaxModule.class).getSyntaxStyleRegistry();
         textPanelComponent = new SyntaxTextPanelComponent(textPanel);
         // TODO
 //        textPanel.setUpdateListener(() -> {
@@ -82,7 +93,7 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
     }
 
     public void registerUndoHandler() {
-        TextPanelCompoundUndoManager undoHandler = textPanel.getUndo();
+        TextUndoManager undoHandler = textPanel.getUndo();
         undoRedoControl = new UndoRedoController() {
             @Override
             public boolean canUndo() {
@@ -129,27 +140,142 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
         if (!(documentSource instanceof FileDocumentSource)) {
             throw new UnsupportedOperationException();
         }
-        
-        File file = ((FileDocumentSource) documentSource).getFile();
+
+        FileDocumentSource fileSource = (FileDocumentSource) documentSource;
+        if (SwingUtilities.isEventDispatchThread() && !GraphicsEnvironment.isHeadless()) {
+            loadWithProgress(fileSource);
+            return;
+        }
+
+        // Loading in caller thread is used outside of event dispatch thread and in headless mode
+        TextDocumentLoader loader = createLoader(fileSource);
         try {
-            FileInputStream fileStream = new FileInputStream(file);
-            int gotChars;
-            char[] buffer = new char[32];
-            StringBuilder data = new StringBuilder();
-            BufferedReader rdr = new BufferedReader(new InputStreamReader(fileStream, textPanel.getCharset()));
-            while ((gotChars = rdr.read(buffer)) != -1) {
-                data.append(buffer, 0, gotChars);
-            }
-            textPanel.setText(data.toString());
-            this.documentSource = documentSource;
+            Document document = loader.load();
+            String syntaxStyle = detectSyntaxStyle(fileSource.getFile(), document);
+            UiUtils.runInUiThread(() -> finishLoading(documentSource, loader, document, syntaxStyle));
         } catch (IOException ex) {
             Logger.getLogger(SyntaxTextDocument.class.getName()).log(Level.SEVERE, null, ex);
         }
+    }
 
-        textPanel.setModified(false);
+    /**
+     * Loads document in background thread and shows loading progress instead
+     * of the text area until loading is finished or cancelled.
+     *
+     * @param documentSource document source
+     */
+    private void loadWithProgress(FileDocumentSource documentSource) {
+        DocumentLoadingPanel loadingPanel = new DocumentLoadingPanel();
+        loadingPanel.setFileName(documentSource.getFile().getName());
+        textPanel.setLoadingComponent(loadingPanel);
+        TextDocumentLoader loader = loadFromInBackground(documentSource, loadingPanel, new OperationStateListener() {
+            @Override
+            public void operationStarted() {
+            }
+
+            @Override
+            public void operationFinished() {
+                textPanel.setLoadingComponent(null);
+            }
+
+            @Override
+            public void operationCancelled() {
+                textPanel.setLoadingComponent(null);
+            }
+        });
+        loadingPanel.setOperation(loader);
+    }
+
+    /**
+     * Loads document content in background thread.
+     * <p>
+     * Content is swapped into the text panel in event dispatch thread when
+     * loading is finished and state listener is notified in event dispatch
+     * thread too. Failed loading is reported as cancelled.
+     *
+     * @param documentSource document source
+     * @param progressListener progress listener
+     * @param stateListener state listener
+     * @return loader which can be used to cancel loading
+     */
+    @Nonnull
+    public TextDocumentLoader loadFromInBackground(FileDocumentSource documentSource, @Nullable OperationProgressStateListener progressListener, @Nullable OperationStateListener stateListener) {
+        TextDocumentLoader loader = createLoader(documentSource);
+        loader.setProgressListener(progressListener);
+        Thread loadingThread = new Thread(() -> {
+            try {
+                Document document = loader.load();
+                String syntaxStyle = detectSyntaxStyle(documentSource.getFile(), document);
+                UiUtils.invokeInUiThread(() -> {
+                    if (loader.isCancelled()) {
+                        notifyLoadingCancelled(stateListener);
+                        return;
+                    }
+
+                    finishLoading(documentSource, loader, document, syntaxStyle);
+                    if (stateListener != null) {
+                        stateListener.operationFinished();
+                    }
+                });
+            } catch (CancellationException ex) {
+                UiUtils.invokeInUiThread(() -> notifyLoadingCancelled(stateListener));
+            } catch (IOException ex) {
+                Logger.getLogger(SyntaxTextDocument.class.getName()).log(Level.SEVERE, null, ex);
+                UiUtils.invokeInUiThread(() -> notifyLoadingCancelled(stateListener));
+            }
+        }, LOADING_THREAD_NAME);
+        loadingThread.setDaemon(true);
+        if (stateListener != null) {
+            stateListener.operationStarted();
+        }
+        loadingThread.start();
+        return loader;
+    }
+
+    @Nonnull
+    protected TextDocumentLoader createLoader(FileDocumentSource documentSource) {
+        TextDocumentLoader loader = new TextDocumentLoader(documentSource.getFile(), textPanel.getCharset());
+        // Content is loaded without tokenization, style is set later
+        loader.setDocumentFactory((expectedLength) -> new RSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_NONE));
+        return loader;
+    }
+
+    /**
+     * Detects syntax style from file name and start of the loaded content.
+     *
+     * @param file file
+     * @param document loaded document
+     * @return syntax style
+     */
+    @Nonnull
+    protected String detectSyntaxStyle(File file, Document document) {
+        String contentPrefix;
+        try {
+            contentPrefix = document.getText(0, Math.min(document.getLength(), SyntaxStyleRegistry.SNIFF_LENGTH));
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return styleRegistry.detectStyle(file.getName(), contentPrefix);
+    }
+
+    private void finishLoading(DocumentSource documentSource, TextDocumentLoader loader, Document document, String syntaxStyle) {
+        Charset charset = loader.getCharset();
+        byteOrderMark = loader.isByteOrderMark();
+        if (charset != null && !charset.equals(textPanel.getCharset())) {
+            textPanel.changeCharset(charset);
+        }
+        textPanel.setSyntaxStyle(syntaxStyle);
+        textPanel.setDocument(document);
+        this.documentSource = documentSource;
         notifyUndoChanged();
     }
 
+    private static void notifyLoadingCancelled(@Nullable OperationStateListener stateListener) {
+        if (stateListener != null) {
+            stateListener.operationCancelled();
+        }
+    }
+
     @Override
     public boolean canSave() {
         return textPanelComponent.isEditable();
@@ -162,28 +288,34 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
         }
         
         File file = ((FileDocumentSource) documentSource).getFile();
+        TextDocumentSaver saver = new TextDocumentSaver(textPanel.getDocument(), textPanel.getCharset());
+        saver.setKeepBackup(keepBackup);
+        saver.setByteOrderMark(byteOrderMark);
         try {
-            try (FileOutputStream output = new FileOutputStream(file)) {
-                String text = textPanel.getText();
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, textPanel.getCharset()))) {
-                    int fileLength = text.length();
-                    int offset = 0;
-                    while (offset < fileLength) {
-                        int length = Math.min(1024, fileLength - offset);
-                        writer.write(text, offset, length);
-                        offset += length;
-                    }
-                    this.documentSource = documentSource;
-                }
-            }
+            saver.save(file);
+            this.documentSource = documentSource;
+            textPanel.setModified(false);
         } catch (IOException ex) {
             Logger.getLogger(SyntaxTextDocument.class.getName()).log(Level.SEVERE, null, ex);
         }
 
-        textPanel.setModified(false);
         notifyUndoChanged();
     }
 
+    public boolean isKeepBackup() {
+        return keepBackup;
+    }
+
+    /**
+     * Sets whether previous file content should be kept in backup file when
+     * saving.
+     *
+     * @param keepBackup true to keep backup
+     */
+    public void setKeepBackup(boolean keepBackup) {
+        this.keepBackup = keepBackup;
+    }
+
     @Nonnull
     @Override
     public Optional<URI> getFileUri() {
@@ -222,6 +354,8 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
 
     public void componentActivated(ActiveContextManagement contextManager) {
         this.contextManager = contextManager;
+        // Pending updates of context states are covered by activation
+        stateDebouncer.cancel(UndoRedoState.class);
         contextManager.changeActiveState(ContextComponent.class, textPanelComponent);
         contextManager.changeActiveState(TextFontState.class, textPanelComponent);
         contextManager.changeActiveState(ContextEncoding.class, textPanelComponent);
@@ -231,6 +365,7 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
 
     public void componentDeactivated(ActiveContextManagement contextManager) {
         this.contextManager = null;
+        stateDebouncer.cancel(UndoRedoState.class);
         contextManager.changeActiveState(ContextComponent.class, null);
         contextManager.changeActiveState(TextFontState.class, null);
         contextManager.changeActiveState(ContextEncoding.class, null);
@@ -238,15 +373,31 @@ public class SyntaxTextDocument implements ContextDocument, ComponentDocument, F
         contextManager.changeActiveState(DialogParentComponent.class, dialogParentComponent);
     }
 
+    @Nonnull
+    public SyntaxStyleRegistry getSyntaxStyleRegistry() {
+        return styleRegistry;
+    }
+
+    public void setSyntaxStyleRegistry(SyntaxStyleRegistry styleRegistry) {
+        this.styleRegistry = styleRegistry;
+    }
+
     public void setDialogParentComponent(DialogParentComponent dialogParentComponent) {
         this.dialogParentComponent = dialogParentComponent;
     }
 
+    /**
+     * Notifies change of undo state.
+     * <p>
+     * Notifications are coalesced using state debouncer.
+     */
     public void notifyUndoChanged() {
-        if (undoRedoControl != null) {
-            if (contextManager != null) {
-                contextManager.changeActiveState(UndoRedoState.class, undoRedoControl);
-            }
+        if (undoRedoControl != null && contextManager != null) {
+            stateDebouncer.schedule(UndoRedoState.class, () -> {
+                if (undoRedoControl != null && contextManager != null) {
+                    contextManager.changeActiveState(UndoRedoState.class, undoRedoControl);
+                }
+            });
         }
     }
 }
@@ -77,6 +77,10 @@ public class SyntaxTextPanelComponent implements ContextComponent, TextClipboard
 
     @Override
     public boolean hasSelection() {
+        if (!textPanel.isTextAreaCreated()) {
+            return false;
+        }
+
         JTextArea textArea = textPanel.getTextArea();
         return textArea.getSelectionEnd() > textArea.getSelectionStart();
     }
@@ -88,7 +92,7 @@ public class SyntaxTextPanelComponent implements ContextComponent, TextClipboard
 
     @Override
     public boolean isEditable() {
-        return textPanel.getTextArea().isEditable();
+        return textPanel.isEditable();
     }
 
     @Override
@@ -104,7 +108,7 @@ public class SyntaxTextPanelComponent implements ContextComponent, TextClipboard
 
     @Override
     public boolean canDelete() {
-        return textPanel.getTextArea().isEditable();
+        return textPanel.isEditable();
     }
 
     @Nonnull
@@ -15,6 +15,7 @@
  */
 package org.exbin.jaguif.document.syntax.gui;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Point;
@@ -22,18 +23,25 @@ import java.awt.SystemColor;
 import java.awt.event.FocusListener;
 import java.awt.print.PrinterException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JComponent;
 import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
-import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditEvent;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Document;
@@ -44,25 +52,73 @@ import org.exbin.jaguif.utils.UiUtils;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
 import org.exbin.jaguif.text.encoding.EncodingsManager;
 import org.exbin.jaguif.action.api.clipboard.ClipboardStateListener;
-import org.exbin.jaguif.document.syntax.TextPanelCompoundUndoManager;
+import org.exbin.jaguif.document.text.api.TextLineIndex;
+import org.exbin.jaguif.document.text.api.TextUndoManager;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rtextarea.RTextArea;
+import org.fife.ui.rtextarea.RTextScrollPane;
+import org.fife.ui.rtextarea.RUndoManager;
 
 /**
  * Text editor panel.
+ * <p>
+ * Syntax text area is created when the panel is shown for the first time, so
+ * that documents which were never displayed hold the document only. Syntax
+ * style, appearance settings and listeners are stored and applied when the
+ * text area is created.
+ * <p>
+ * Edits are recorded by text undo manager, undo manager of the text area
+ * delegates to it so that keyboard and undo actions share the same history.
  */
 @ParametersAreNonnullByDefault
 public class SyntaxTextPanel extends javax.swing.JPanel {
 
+    /**
+     * Document length from which the highlighting passes over the whole
+     * document like code folding are disabled.
+     */
+    public static final int DEFERRED_HIGHLIGHTING_THRESHOLD = 1024 * 1024;
+
     private final java.util.ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(SyntaxTextPanel.class);
 
-    private final TextPanelCompoundUndoManager undoManagement = new TextPanelCompoundUndoManager();
+    private final TextUndoManager undoManagement = new TextUndoManager();
+    private RSyntaxDocument document;
+    private RSyntaxTextArea textArea = null;
+    private RTextScrollPane textAreaScrollPane = null;
+    private String syntaxStyle = SyntaxConstants.SYNTAX_STYLE_NONE;
+    private boolean editable = true;
     private boolean modified = false;
     private Object highlight;
     private Color foundTextBackgroundColor;
     private Charset charset;
-    private Font defaultFont;
-    private Color[] defaultColors;
+    private Font currentFont = null;
+    private final Color[] currentColors = new Color[4];
+    private boolean lineWrap = false;
+    private boolean noBorder = false;
+    private JComponent loadingComponent = null;
+    private JPopupMenu popupMenu = null;
+    private final List<ChangeListener> caretListeners = new ArrayList<>();
+    private final List<FocusListener> focusListeners = new ArrayList<>();
     private CharsetChangeListener charsetChangeListener = null;
 //    private TextStatusPanel textStatus = null;
+    private final DocumentListener modificationListener = new DocumentListener() {
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+    };
 
     public SyntaxTextPanel() {
         initComponents();
@@ -73,139 +129,242 @@ public class SyntaxTextPanel extends javax.swing.JPanel {
         highlight = null;
         foundTextBackgroundColor = Color.YELLOW;
         charset = Charset.forName(EncodingsManager.ENCODING_UTF8);
-        defaultFont = textArea.getFont();
-        defaultColors = new Color[5];
-        defaultColors[0] = new Color(textArea.getForeground().getRGB());
-        defaultColors[1] = new Color(SystemColor.text.getRGB()); // Patch on wrong value in textArea.getBackground()
-        defaultColors[2] = new Color(textArea.getSelectedTextColor().getRGB());
-        defaultColors[3] = new Color(textArea.getSelectionColor().getRGB());
-        defaultColors[4] = foundTextBackgroundColor;
+        document = new RSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_NONE);
 
         // if the document is ever edited, assume that it needs to be saved
-        textArea.getDocument().addDocumentListener(new DocumentListener() {
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                setModified(true);
-            }
+        document.addDocumentListener(modificationListener);
+        undoManagement.install(document);
+    }
 
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                setModified(true);
-            }
+    @Override
+    public void addNotify() {
+        initTextArea();
+        super.addNotify();
+    }
+
+    private void initTextArea() {
+        if (textArea != null) {
+            return;
+        }
 
+        textArea = new RSyntaxTextArea(document) {
+            @Nonnull
             @Override
-            public void removeUpdate(DocumentEvent e) {
-                setModified(true);
+            protected RUndoManager createUndoManager() {
+                return new TextAreaUndoManager(this);
             }
-        });
+        };
+        textArea.setName("textArea"); // NOI18N
+        textArea.setSyntaxEditingStyle(syntaxStyle);
+        textArea.setCodeFoldingEnabled(!isDeferredHighlighting());
+        textArea.setEditable(editable);
+        textArea.setLineWrap(lineWrap);
+        if (currentFont != null) {
+            textArea.setFont(currentFont);
+        }
+        applyColors(textArea);
+        textArea.setComponentPopupMenu(popupMenu);
+        for (ChangeListener listener : caretListeners) {
+            textArea.getCaret().addChangeListener(listener);
+        }
+        for (FocusListener listener : focusListeners) {
+            textArea.addFocusListener(listener);
+        }
+        textAreaScrollPane = new RTextScrollPane(textArea);
+        textAreaScrollPane.setName("textAreaScrollPane"); // NOI18N
+        if (noBorder) {
+            textAreaScrollPane.setBorder(null);
+        }
+        if (loadingComponent == null) {
+            add(textAreaScrollPane, BorderLayout.CENTER);
+        }
+    }
+
+    /**
+     * Returns whether syntax text area was already created.
+     *
+     * @return true if created
+     */
+    public boolean isTextAreaCreated() {
+        return textArea != null;
+    }
+
+    @Nonnull
+    public String getSyntaxStyle() {
+        return syntaxStyle;
+    }
+
+    /**
+     * Sets syntax style.
+     * <p>
+     * Style is applied when the text area is created.
+     *
+     * @param syntaxStyle syntax style, see SyntaxConstants
+     */
+    public void setSyntaxStyle(String syntaxStyle) {
+        this.syntaxStyle = syntaxStyle;
+        if (textArea != null) {
+            textArea.setSyntaxEditingStyle(syntaxStyle);
+        }
+    }
 
-        // TODO Selection listener
-//        textArea.getDocument().addUndoableEditListener(undoManagement::undoableEditHappened);
-//        textArea.addCaretListener((e) -> {
-//        });
+    /**
+     * Returns whether highlighting passes over the whole document are
+     * disabled for large document.
+     *
+     * @return true if deferred
+     */
+    public boolean isDeferredHighlighting() {
+        return document.getLength() >= DEFERRED_HIGHLIGHTING_THRESHOLD;
     }
 
     public boolean changeLineWrap() {
-        textArea.setLineWrap(!textArea.getLineWrap());
-        return textArea.getLineWrap();
+        setWordWrapMode(!lineWrap);
+        return lineWrap;
     }
 
     public boolean getWordWrapMode() {
-        return textArea.getLineWrap();
+        return lineWrap;
     }
 
     public void setWordWrapMode(boolean mode) {
-        if (textArea.getLineWrap() != mode) {
-            changeLineWrap();
+        lineWrap = mode;
+        if (textArea != null) {
+            textArea.setLineWrap(mode);
         }
     }
 
     @Nonnull
     public Color[] getCurrentColors() {
-        Color[] colors = new Color[5];
-        colors[0] = textArea.getForeground();
-        colors[1] = textArea.getBackground();
-        colors[2] = textArea.getSelectedTextColor();
-        colors[3] = textArea.getSelectionColor();
+        Color[] colors = getDefaultColors();
+        if (textArea != null) {
+            colors[0] = textArea.getForeground();
+            colors[1] = textArea.getBackground();
+            colors[2] = textArea.getSelectedTextColor();
+            colors[3] = textArea.getSelectionColor();
+        } else {
+            for (int i = 0; i < currentColors.length; i++) {
+                if (currentColors[i] != null) {
+                    colors[i] = currentColors[i];
+                }
+            }
+        }
         colors[4] = getFoundTextBackgroundColor();
         return colors;
     }
 
     @Nonnull
     public Color[] getDefaultColors() {
-        return defaultColors;
+        Color[] colors = Arrays.copyOf(TextAreaDefaults.getInstance().colors, 5);
+        colors[4] = Color.YELLOW;
+        return colors;
     }
 
     public void setCurrentColors(Color[] colors) {
-        if (colors[0] != null) {
-            textArea.setForeground(colors[0]);
-        }
-        if (colors[1] != null) {
-            textArea.setBackground(colors[1]);
-        }
-        if (colors[2] != null) {
-            textArea.setSelectedTextColor(colors[2]);
+        for (int i = 0; i < currentColors.length; i++) {
+            if (colors[i] != null) {
+                currentColors[i] = colors[i];
+            }
         }
-        if (colors[3] != null) {
-            textArea.setSelectionColor(colors[3]);
+        if (textArea != null) {
+            applyColors(textArea);
         }
         if (colors[4] != null) {
             setFoundTextBackgroundColor(colors[4]);
         }
     }
 
+    private void applyColors(RSyntaxTextArea syntaxTextArea) {
+        if (currentColors[0] != null) {
+            syntaxTextArea.setForeground(currentColors[0]);
+        }
+        if (currentColors[1] != null) {
+            syntaxTextArea.setBackground(currentColors[1]);
+        }
+        if (currentColors[2] != null) {
+            syntaxTextArea.setSelectedTextColor(currentColors[2]);
+        }
+        if (currentColors[3] != null) {
+            syntaxTextArea.setSelectionColor(currentColors[3]);
+        }
+    }
+
+    @Nonnull
     public Document getDocument() {
-        return textArea.getDocument();
+        return document;
     }
 
     public int getLineCount() {
-        return textArea.getLineCount();
+        return TextLineIndex.getLineIndex(document).getLinesCount();
     }
 
+    @Nonnull
     public String getText() {
-        return textArea.getText();
+        try {
+            return document.getText(0, document.getLength());
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 
     public void setNoBorder() {
-        textAreaScrollPane.setBorder(null);
+        noBorder = true;
+        if (textAreaScrollPane != null) {
+            textAreaScrollPane.setBorder(null);
+        }
     }
 
     public void gotoLine(int line) {
-        try {
-            textArea.setCaretPosition(textArea.getLineStartOffset(line - 1));
-        } catch (BadLocationException ex) {
-            Logger.getLogger(SyntaxTextPanel.class.getName()).log(Level.SEVERE, null, ex);
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        if (line < 1 || line > lineIndex.getLinesCount()) {
+            Logger.getLogger(SyntaxTextPanel.class.getName()).log(Level.WARNING, "Invalid line: {0}", line);
+            return;
         }
+        getTextArea().setCaretPosition(lineIndex.getLineStartOffset(line - 1));
     }
 
     public void gotoRelative(int charPos) {
-        textArea.setCaretPosition(textArea.getCaretPosition() + charPos - 1);
+        RSyntaxTextArea syntaxTextArea = getTextArea();
+        syntaxTextArea.setCaretPosition(syntaxTextArea.getCaretPosition() + charPos - 1);
     }
 
+    /**
+     * Returns syntax text area, creates it if not created yet.
+     *
+     * @return text area
+     */
     @Nonnull
-    public JTextArea getTextArea() {
+    public RSyntaxTextArea getTextArea() {
+        initTextArea();
         return textArea;
     }
 
     @Nonnull
     public JTextComponent getTextComponent() {
-        return textArea;
+        return getTextArea();
     }
 
     public void printFile() {
         try {
-            textArea.print();
+            getTextArea().print();
         } catch (PrinterException ex) {
             Logger.getLogger(SyntaxTextPanel.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
     public void setCurrentFont(Font font) {
-        textArea.setFont(font);
+        currentFont = font;
+        if (textArea != null) {
+            textArea.setFont(font);
+        }
     }
 
+    @Nonnull
     public Font getCurrentFont() {
-        return textArea.getFont();
+        if (textArea != null) {
+            return textArea.getFont();
+        }
+        return currentFont != null ? currentFont : getDefaultFont();
     }
 
     @Nonnull
@@ -226,26 +385,12 @@ public class SyntaxTextPanel extends javax.swing.JPanel {
     // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
     private void initComponents() {
 
-        textAreaScrollPane = new javax.swing.JScrollPane();
-        textArea = new javax.swing.JTextArea();
-
         setInheritsPopupMenu(true);
         setName("Form"); // NOI18N
         setLayout(new java.awt.BorderLayout());
-
-        textAreaScrollPane.setName("textAreaScrollPane"); // NOI18N
-
-        textArea.setColumns(20);
-        textArea.setRows(5);
-        textArea.setName("textArea"); // NOI18N
-        textAreaScrollPane.setViewportView(textArea);
-
-        add(textAreaScrollPane, java.awt.BorderLayout.CENTER);
     }// </editor-fold>//GEN-END:initComponents
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JTextArea textArea;
-    private javax.swing.JScrollPane textAreaScrollPane;
     // End of variables declaration//GEN-END:variables
 
     public void setModified(boolean modified) {
@@ -260,30 +405,34 @@ public class SyntaxTextPanel extends javax.swing.JPanel {
     }
 
     @Nonnull
-    public TextPanelCompoundUndoManager getUndo() {
+    public TextUndoManager getUndo() {
         return undoManagement;
     }
 
-    public void setPopupMenu(JPopupMenu menu) {
-        textArea.setComponentPopupMenu(menu);
+    public void setPopupMenu(@Nullable JPopupMenu menu) {
+        popupMenu = menu;
+        if (textArea != null) {
+            textArea.setComponentPopupMenu(menu);
+        }
     }
 
     @Nonnull
     public Point getCaretPosition() {
-        int line;
-        int caretPosition = textArea.getCaretPosition();
-        javax.swing.text.Element root = textArea.getDocument().getDefaultRootElement();
-        line = root.getElementIndex(caretPosition);
-        try {
-            return new Point(caretPosition - textArea.getLineStartOffset(line) + 1, line + 1);
-        } catch (BadLocationException ex) {
-            Logger.getLogger(SyntaxTextPanel.class.getName()).log(Level.SEVERE, null, ex);
-            return new Point(0, 0);
+        if (textArea == null) {
+            return new Point(1, 1);
         }
+
+        int caretPosition = textArea.getCaretPosition();
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        int line = lineIndex.getLineIndex(caretPosition);
+        return new Point(caretPosition - lineIndex.getLineStartOffset(line) + 1, line + 1);
     }
 
     public void attachCaretListener(ChangeListener listener) {
-        textArea.getCaret().addChangeListener(listener);
+        caretListeners.add(listener);
+        if (textArea != null) {
+            textArea.getCaret().addChangeListener(listener);
+        }
     }
 
     @Nonnull
@@ -297,11 +446,47 @@ public class SyntaxTextPanel extends javax.swing.JPanel {
 
     @Nonnull
     public Font getDefaultFont() {
-        return defaultFont;
+        return TextAreaDefaults.getInstance().font;
     }
 
     public void setText(String text) {
-        textArea.setText(text);
+        try {
+            document.replace(0, document.getLength(), text, null);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Replaces document of the text area.
+     * <p>
+     * Intended for documents prepared outside of the event dispatch thread,
+     * document is considered not modified.
+     *
+     * @param document syntax document
+     */
+    public void setDocument(Document document) {
+        if (!(document instanceof RSyntaxDocument)) {
+            throw new IllegalStateException("Syntax document expected: " + document.getClass().getName());
+        }
+
+        this.document.removeDocumentListener(modificationListener);
+        undoManagement.uninstall();
+        this.document = (RSyntaxDocument) document;
+        if (textArea != null) {
+            if (highlight != null) {
+                textArea.getHighlighter().removeHighlight(highlight);
+                highlight = null;
+            }
+            textArea.setDocument(document);
+            textArea.setSyntaxEditingStyle(syntaxStyle);
+            textArea.setCodeFoldingEnabled(!isDeferredHighlighting());
+            textArea.setCaretPosition(0);
+        }
+        document.addDocumentListener(modificationListener);
+        undoManagement.install(document);
+        undoManagement.clear();
+        setModified(false);
     }
 
     public void setCharsetChangeListener(CharsetChangeListener charsetChangeListener) {
@@ -328,19 +513,138 @@ public class SyntaxTextPanel extends javax.swing.JPanel {
     } */
 
     public void addTextAreaFocusListener(FocusListener focusListener) {
-        textArea.addFocusListener(focusListener);
+        focusListeners.add(focusListener);
+        if (textArea != null) {
+            textArea.addFocusListener(focusListener);
+        }
     }
 
     public void removeTextAreaFocusListener(FocusListener focusListener) {
-        textArea.removeFocusListener(focusListener);
+        focusListeners.remove(focusListener);
+        if (textArea != null) {
+            textArea.removeFocusListener(focusListener);
+        }
     }
 
     public boolean isModified() {
         return modified;
     }
 
+    /**
+     * Shows given component instead of the text area, for example while
+     * document is loading.
+     *
+     * @param loadingComponent component or null to show text area again
+     */
+    public void setLoadingComponent(@Nullable JComponent loadingComponent) {
+        if (this.loadingComponent != null) {
+            remove(this.loadingComponent);
+        } else if (textAreaScrollPane != null) {
+            remove(textAreaScrollPane);
+        }
+        this.loadingComponent = loadingComponent;
+        if (loadingComponent != null) {
+            add(loadingComponent, BorderLayout.CENTER);
+        } else if (textAreaScrollPane != null) {
+            add(textAreaScrollPane, BorderLayout.CENTER);
+        }
+        revalidate();
+        repaint();
+    }
+
+    public boolean isEditable() {
+        return editable;
+    }
+
     public void setEditable(boolean editable) {
-        textArea.setEditable(editable);
+        this.editable = editable;
+        if (textArea != null) {
+            textArea.setEditable(editable);
+        }
+    }
+
+    /**
+     * Undo manager of the text area delegating to text undo manager.
+     * <p>
+     * Edits are recorded by text undo manager only, undo and redo actions of
+     * the text area are enabled according to its state.
+     */
+    private class TextAreaUndoManager extends RUndoManager {
+
+        public TextAreaUndoManager(RTextArea textArea) {
+            super(textArea);
+        }
+
+        @Override
+        public void undoableEditHappened(UndoableEditEvent e) {
+            // Text undo manager might be notified after this listener
+            SwingUtilities.invokeLater(this::updateActions);
+        }
+
+        @Override
+        public boolean canUndo() {
+            return undoManagement.canUndo();
+        }
+
+        @Override
+        public boolean canRedo() {
+            return undoManagement.canRedo();
+        }
+
+        @Override
+        public void undo() {
+            undoManagement.undo();
+            updateActions();
+        }
+
+        @Override
+        public void redo() {
+            undoManagement.redo();
+            updateActions();
+        }
+
+        @Nonnull
+        @Override
+        public String getUndoPresentationName() {
+            return UIManager.getString("AbstractUndoableEdit.undoText");
+        }
+
+        @Nonnull
+        @Override
+        public String getRedoPresentationName() {
+            return UIManager.getString("AbstractUndoableEdit.redoText");
+        }
+    }
+
+    /**
+     * Default appearance of the syntax text area.
+     * <p>
+     * Values are taken from single text area, so that they are available
+     * before text area of the panel is created.
+     */
+    private static final class TextAreaDefaults {
+
+        private static TextAreaDefaults instance = null;
+
+        private final Font font;
+        private final Color[] colors = new Color[4];
+
+        private TextAreaDefaults() {
+            RSyntaxTextArea textArea = new RSyntaxTextArea();
+            font = textArea.getFont();
+            colors[0] = new Color(textArea.getForeground().getRGB());
+            colors[1] = new Color(SystemColor.text.getRGB()); // Patch on wrong value in textArea.getBackground()
+            colors[2] = new Color(textArea.getSelectedTextColor().getRGB());
+            colors[3] = new Color(textArea.getSelectionColor().getRGB());
+        }
+
+        @Nonnull
+        private static TextAreaDefaults getInstance() {
+            if (instance == null) {
+                instance = new TextAreaDefaults();
+            }
+            return instance;
+        }
     }
 
     public interface CharsetChangeListener {
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.syntax;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.Module;
+import org.exbin.jaguif.ModuleProvider;
+import org.exbin.jaguif.document.syntax.gui.SyntaxTextPanel;
+import org.exbin.jaguif.language.LanguageModule;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests lazy creation of syntax text area and measures footprint of syntax
+ * documents before and after first display.
+ */
+@ParametersAreNonnullByDefault
+public class SyntaxDocumentFootprintTest {
+
+    private static final int DOCUMENTS_COUNT = 200;
+    private static final String CONTENT;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("    public int method").append(i).append("() { return ").append(i).append("; } // comment\n");
+        }
+        CONTENT = builder.toString();
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        Map<Class<?>, Module> modules = new HashMap<>();
+        modules.put(LanguageModuleApi.class, new LanguageModule());
+        modules.put(DocumentSyntaxModule.class, new DocumentSyntaxModule());
+        App.setModuleProvider(new TestModuleProvider(modules));
+    }
+
+    @Test
+    public void testTextAreaCreatedOnFirstDisplay() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            SyntaxTextDocument document = createDocument(0);
+            SyntaxTextPanel textPanel = document.getComponent();
+            Assert.assertFalse(textPanel.isTextAreaCreated());
+            Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JAVA, textPanel.getSyntaxStyle());
+
+            textPanel.addNotify();
+            Assert.assertTrue(textPanel.isTextAreaCreated());
+            Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JAVA, textPanel.getTextArea().getSyntaxEditingStyle());
+            Assert.assertEquals(CONTENT, textPanel.getText());
+            textPanel.removeNotify();
+        });
+    }
+
+    @Test
+    public void testSettingsAppliedOnFirstDisplay() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            SyntaxTextDocument document = createDocument(0);
+            SyntaxTextPanel textPanel = document.getComponent();
+            Font font = textPanel.getDefaultFont().deriveFont(20f);
+            textPanel.setCurrentFont(font);
+            textPanel.setWordWrapMode(true);
+            textPanel.setCurrentColors(new Color[]{Color.RED, null, null, null, null});
+            List<ChangeEvent> caretEvents = new ArrayList<>();
+            textPanel.attachCaretListener(caretEvents::add);
+            Assert.assertFalse(textPanel.isTextAreaCreated());
+            Assert.assertEquals(font, textPanel.getCurrentFont());
+            Assert.assertTrue(textPanel.getWordWrapMode());
+            Assert.assertEquals(Color.RED, textPanel.getCurrentColors()[0]);
+
+            textPanel.addNotify();
+            Assert.assertEquals(font, textPanel.getTextArea().getFont());
+            Assert.assertTrue(textPanel.getTextArea().getLineWrap());
+            Assert.assertEquals(Color.RED, textPanel.getTextArea().getForeground());
+            textPanel.getTextArea().setCaretPosition(10);
+            Assert.assertFalse(caretEvents.isEmpty());
+            textPanel.removeNotify();
+        });
+    }
+
+    @Test
+    public void testTextAreaUndoSharesHistory() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            SyntaxTextDocument document = createDocument(0);
+            SyntaxTextPanel textPanel = document.getComponent();
+            textPanel.addNotify();
+            RSyntaxTextArea textArea = textPanel.getTextArea();
+            textPanel.getUndo().clear();
+            Assert.assertFalse(textPanel.getUndo().canUndo());
+            Assert.assertFalse(textArea.canUndo());
+
+            textArea.insert("x", 0);
+            Assert.assertTrue(textPanel.getUndo().canUndo());
+            Assert.assertTrue(textArea.canUndo());
+
+            textArea.undoLastAction();
+            Assert.assertEquals(CONTENT, textPanel.getText());
+            Assert.assertFalse(textPanel.getUndo().canUndo());
+            Assert.assertTrue(textPanel.getUndo().canRedo());
+            textPanel.removeNotify();
+        });
+    }
+
+    @Test
+    public void testFootprint() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        List<SyntaxTextDocument> documents = new ArrayList<>();
+        long[] results = new long[4];
+        SwingUtilities.invokeAndWait(() -> {
+            long usedBefore = getUsedMemory();
+            long start = System.nanoTime();
+            for (int i = 0; i < DOCUMENTS_COUNT; i++) {
+                documents.add(createDocument(i));
+            }
+            results[0] = System.nanoTime() - start;
+            results[1] = getUsedMemory() - usedBefore;
+
+            usedBefore = getUsedMemory();
+            start = System.nanoTime();
+            for (SyntaxTextDocument document : documents) {
+                document.getComponent().addNotify();
+            }
+            results[2] = System.nanoTime() - start;
+            results[3] = getUsedMemory() - usedBefore;
+        });
+
+        // Heap numbers are approximate as they depend on garbage collection
+        System.out.println(DOCUMENTS_COUNT + " syntax documents before first display: created in " + (results[0] / 1000000) + " ms, "
+                + (results[1] / DOCUMENTS_COUNT / 1024) + " kB per document");
+        System.out.println("  first display: " + (results[2] / 1000000) + " ms, additional "
+                + (results[3] / DOCUMENTS_COUNT / 1024) + " kB per document");
+    }
+
+    @Nonnull
+    private static SyntaxTextDocument createDocument(int index) {
+        SyntaxTextDocument document = new SyntaxTextDocument();
+        SyntaxTextPanel textPanel = document.getComponent();
+        textPanel.setText(CONTENT);
+        textPanel.setSyntaxStyle(document.getSyntaxStyleRegistry().detectStyle("Sample" + index + ".java", CONTENT));
+        return document;
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class TestModuleProvider implements ModuleProvider {
+
+        private final Map<Class<?>, Module> modules;
+
+        public TestModuleProvider(Map<Class<?>, Module> modules) {
+            this.modules = modules;
+        }
+
+        @Nonnull
+        @Override
+        public Class getManifestClass() {
+            return SyntaxDocumentFootprintTest.class;
+        }
+
+        @Override
+        public void launch(String launcherModuleId, String[] args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void launch(Runnable runnable) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public <T extends Module> T getModule(Class<T> interfaceClass) {
+            Module module = modules.get(interfaceClass);
+            if (module == null) {
+                throw new IllegalStateException("Module not available: " + interfaceClass.getName());
+            }
+            return interfaceClass.cast(module);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.syntax;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for syntax style detection.
+ */
+@ParametersAreNonnullByDefault
+public class SyntaxStyleRegistryTest {
+
+    @Test
+    public void testFileNames() {
+        SyntaxStyleRegistry registry = new SyntaxStyleRegistry();
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JAVA, registry.detectStyle("Sample.java", ""));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_XML, registry.detectStyle("POM.XML", ""));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_MAKEFILE, registry.detectStyle("Makefile", ""));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_NONE, registry.detectStyle("notes.txt", "{\"a\": 1}"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_NONE, registry.detectStyle("unknown.abc", "plain text"));
+
+        registry.registerExtensions(SyntaxConstants.SYNTAX_STYLE_JSON, "abc");
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JSON, registry.detectStyle("unknown.abc", "plain text"));
+    }
+
+    @Test
+    public void testContentSniffing() {
+        SyntaxStyleRegistry registry = new SyntaxStyleRegistry();
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL, registry.detectStyle("run", "#!/bin/bash\necho test\n"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_PYTHON, registry.detectStyle("tool", "#!/usr/bin/env python3\nprint()\n"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT, registry.detectStyle(null, "#!/usr/bin/env -S node --harmony\n"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_XML, registry.detectStyle(null, "<?xml version=\"1.0\"?>\n<a/>"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_HTML, registry.detectStyle(null, "  <!DOCTYPE html>\n<html>"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_PHP, registry.detectStyle(null, "<?php echo 1;"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JSON, registry.detectStyle(null, "{\n  \"key\": [1, 2]\n}"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_JSON, registry.detectStyle(null, "[{\"key\": 1}]"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_YAML, registry.detectStyle(null, "---\nkey: value\n"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_NONE, registry.detectStyle(null, "[section]\nkey=value"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_NONE, registry.detectStyle(null, "#!\n"));
+        Assert.assertEquals(SyntaxConstants.SYNTAX_STYLE_NONE, registry.detectStyle(null, ""));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Debouncer of updates of document derived states.
+ * <p>
+ * Updates scheduled for the same state are coalesced, only the last one is
+ * performed. Pending updates are performed in event dispatch thread when the
+ * latency since the first scheduled update elapses, so that continuous burst
+ * of changes still updates the state at least once per latency.
+ */
+@ParametersAreNonnullByDefault
+public class DocumentStateDebouncer {
+
+    /**
+     * Default latency in milliseconds, roughly single frame.
+     */
+    public static final int DEFAULT_LATENCY = 16;
+
+    private final Map<Object, Runnable> pendingUpdates = new LinkedHashMap<>();
+    private final Timer timer;
+    private int latency = DEFAULT_LATENCY;
+
+    public DocumentStateDebouncer() {
+        timer = new Timer(latency, (event) -> flush());
+        timer.setRepeats(false);
+    }
+
+    public int getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets maximum delay of the update.
+     *
+     * @param latency latency in milliseconds, 0 for immediate updates
+     */
+    public void setLatency(int latency) {
+        if (latency < 0) {
+            throw new IllegalStateException("Invalid latency: " + latency);
+        }
+        this.latency = latency;
+        timer.setInitialDelay(latency);
+    }
+
+    /**
+     * Schedules update of the state replacing pending update of the same
+     * state.
+     *
+     * @param stateKey key of the state, typically state class
+     * @param update update to perform
+     */
+    public void schedule(Object stateKey, Runnable update) {
+        if (latency == 0 && SwingUtilities.isEventDispatchThread()) {
+            synchronized (pendingUpdates) {
+                pendingUpdates.remove(stateKey);
+            }
+            update.run();
+            return;
+        }
+
+        synchronized (pendingUpdates) {
+            pendingUpdates.put(stateKey, update);
+        }
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Performs all pending updates immediately.
+     * <p>
+     * Should be called from event dispatch thread.
+     */
+    public void flush() {
+        timer.stop();
+        List<Runnable> updates;
+        synchronized (pendingUpdates) {
+            if (pendingUpdates.isEmpty()) {
+                return;
+            }
+            updates = new ArrayList<>(pendingUpdates.values());
+            pendingUpdates.clear();
+        }
+        for (Runnable update : updates) {
+            update.run();
+        }
+    }
+
+    /**
+     * Discards pending update of the state.
+     *
+     * @param stateKey key of the state
+     */
+    public void cancel(Object stateKey) {
+        synchronized (pendingUpdates) {
+            pendingUpdates.remove(stateKey);
+            if (!pendingUpdates.isEmpty()) {
+                return;
+            }
+        }
+        timer.stop();
+    }
+
+    /**
+     * Discards all pending updates.
+     */
+    public void cancel() {
+        timer.stop();
+        synchronized (pendingUpdates) {
+            pendingUpdates.clear();
+        }
+    }
+
+    public boolean isPending() {
+        synchronized (pendingUpdates) {
+            return !pendingUpdates.isEmpty();
+        }
+    }
+}
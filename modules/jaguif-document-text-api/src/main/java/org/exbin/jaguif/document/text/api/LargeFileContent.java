@@ -0,0 +1,566 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+
+/**
+ * Read-only document content backed by memory mapped file.
+ * <p>
+ * File is split into pages of roughly given size ending at line ends. Index
+ * of pages with their byte and character offsets and count of preceding
+ * lines is built by single pass over the file and pages are decoded on
+ * demand and kept in small LRU cache.
+ * <p>
+ * Only UTF-8 and single byte charsets are supported, as line ends and page
+ * boundaries are detected on raw bytes. File must not be modified while
+ * mapped.
+ */
+@ParametersAreNonnullByDefault
+public class LargeFileContent implements AbstractDocument.Content, CancellableOperation {
+
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+    public static final int DEFAULT_CACHED_PAGES = 64;
+    private static final long MAPPING_SEGMENT_SIZE = 1L << 30;
+    private static final int MAX_PAGE_SIZE_FACTOR = 16;
+    private static final int INITIAL_PAGES_CAPACITY = 1024;
+    private static final char[] LINE_END = {'\n'};
+
+    private final File file;
+    private final Charset charset;
+    private final long dataStart;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private OperationProgressStateListener progressListener = null;
+    private volatile boolean cancelled = false;
+
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long fileSize;
+    private int pagesCount = 0;
+    private long[] pageByteOffsets = new long[INITIAL_PAGES_CAPACITY];
+    private int[] pageCharOffsets = new int[INITIAL_PAGES_CAPACITY];
+    private int[] pageLineStarts = new int[INITIAL_PAGES_CAPACITY];
+    private int charCount = 0;
+    private int linesCount = 1;
+    private int lineStartsCount = 0;
+    private int longestLineLength = 0;
+    private final PageCache pageCache = new PageCache(DEFAULT_CACHED_PAGES);
+
+    /**
+     * Creates content for given file.
+     *
+     * @param file file
+     * @param charset charset, must be supported
+     * @param dataStart offset of the first byte of text, for example after
+     * byte order mark
+     */
+    public LargeFileContent(File file, Charset charset, long dataStart) {
+        if (!isSupportedCharset(charset)) {
+            throw new IllegalArgumentException("Unsupported charset " + charset.name());
+        }
+        this.file = file;
+        this.charset = charset;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * Returns true if given charset can be used for large file content.
+     *
+     * @param charset charset
+     * @return true if supported
+     */
+    public static boolean isSupportedCharset(Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return true;
+        }
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        CharsetEncoder encoder = charset.newEncoder();
+        if (encoder.maxBytesPerChar() != 1.0f) {
+            return false;
+        }
+        try {
+            ByteBuffer lineEnd = encoder.encode(CharBuffer.wrap(LINE_END));
+            return lineEnd.remaining() == 1 && lineEnd.get(0) == '\n';
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Nonnull
+    public File getFile() {
+        return file;
+    }
+
+    @Nonnull
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(pageSize, 1);
+    }
+
+    public void setCachedPagesCount(int cachedPagesCount) {
+        pageCache.setCapacity(cachedPagesCount);
+    }
+
+    public void setProgressListener(@Nullable OperationProgressStateListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Maps file to memory and builds index of pages.
+     * <p>
+     * Can be called from any thread before content is used by document.
+     *
+     * @throws IOException on read failure or when file is too large
+     * @throws CancellationException if indexing was cancelled
+     */
+    public void buildIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            int segmentsCount = (int) ((fileSize + MAPPING_SEGMENT_SIZE - 1) / MAPPING_SEGMENT_SIZE);
+            segments = new MappedByteBuffer[segmentsCount];
+            for (int i = 0; i < segmentsCount; i++) {
+                long position = i * MAPPING_SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_SEGMENT_SIZE, fileSize - position));
+            }
+        }
+
+        CharsetDecoder decoder = createDecoder();
+        long maxPageSize = (long) pageSize * MAX_PAGE_SIZE_FACTOR;
+        long pageStart = Math.min(dataStart, fileSize);
+        long chars = 0;
+        int currentLineLength = 0;
+        int lastPercent = -1;
+        boolean lineStart = true;
+        byte[] bytes = new byte[0];
+        CharBuffer charBuffer = CharBuffer.allocate(0);
+        while (pageStart < fileSize) {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+
+            long pageEnd = findPageEnd(pageStart, maxPageSize);
+            int length = (int) (pageEnd - pageStart);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+                charBuffer = CharBuffer.allocate((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+            }
+            readBytes(pageStart, bytes, length);
+            charBuffer.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(bytes, 0, length), charBuffer, true);
+            decoder.flush(charBuffer);
+
+            addPage(pageStart, (int) chars, lineStartsCount);
+            char[] pageChars = charBuffer.array();
+            int pageCharsCount = charBuffer.position();
+            if (lineStart) {
+                lineStartsCount++;
+            }
+            for (int i = 0; i < pageCharsCount; i++) {
+                if (pageChars[i] == '\n') {
+                    longestLineLength = Math.max(longestLineLength, currentLineLength);
+                    currentLineLength = 0;
+                    if (i < pageCharsCount - 1) {
+                        lineStartsCount++;
+                    }
+                } else {
+                    currentLineLength++;
+                }
+            }
+            lineStart = pageCharsCount > 0 && pageChars[pageCharsCount - 1] == '\n';
+
+            chars += pageCharsCount;
+            if (chars >= Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be viewed as text: " + file.getPath());
+            }
+            pageStart = pageEnd;
+
+            int percent = (int) (pageStart * 100 / fileSize);
+            if (progressListener != null && percent != lastPercent) {
+                progressListener.operationInProgress(percent);
+                lastPercent = percent;
+            }
+        }
+        longestLineLength = Math.max(longestLineLength, currentLineLength);
+        charCount = (int) chars;
+        linesCount = lineStart ? lineStartsCount + 1 : lineStartsCount;
+        if (pagesCount + 1 < pageByteOffsets.length) {
+            pageByteOffsets = Arrays.copyOf(pageByteOffsets, pagesCount + 1);
+            pageCharOffsets = Arrays.copyOf(pageCharOffsets, pagesCount + 1);
+            pageLineStarts = Arrays.copyOf(pageLineStarts, pagesCount + 1);
+        }
+        pageByteOffsets[pagesCount] = fileSize;
+        pageCharOffsets[pagesCount] = charCount;
+        pageLineStarts[pagesCount] = lineStartsCount;
+    }
+
+    @Override
+    public void cancelOperation() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getLinesCount() {
+        return linesCount;
+    }
+
+    public int getPagesCount() {
+        return pagesCount;
+    }
+
+    /**
+     * Returns length of the longest line in characters.
+     *
+     * @return length of the longest line
+     */
+    public int getLongestLineLength() {
+        return longestLineLength;
+    }
+
+    /**
+     * Returns index of line containing given offset.
+     *
+     * @param offset character offset
+     * @return line index
+     */
+    public int getLineIndex(int offset) {
+        if (offset >= charCount) {
+            return linesCount - 1;
+        }
+        if (offset <= 0) {
+            return 0;
+        }
+
+        int pageIndex = findPage(offset);
+        Page page = getPage(pageIndex);
+        int position = Arrays.binarySearch(page.lineStarts, offset - pageCharOffsets[pageIndex]);
+        int pageStartsBefore = position >= 0 ? position + 1 : -position - 1;
+        return pageLineStarts[pageIndex] + pageStartsBefore - 1;
+    }
+
+    /**
+     * Returns character offset of the start of given line.
+     *
+     * @param line line index
+     * @return character offset
+     */
+    public int getLineStartOffset(int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        if (line >= lineStartsCount) {
+            // Empty line after the last line end
+            return charCount;
+        }
+
+        int pageIndex = findPageForLine(line);
+        Page page = getPage(pageIndex);
+        return pageCharOffsets[pageIndex] + page.lineStarts[line - pageLineStarts[pageIndex]];
+    }
+
+    /**
+     * Returns character offset after the end of given line including line
+     * end.
+     *
+     * @param line line index
+     * @return character offset
+     */
+    public int getLineEndOffset(int line) {
+        return line >= linesCount - 1 ? charCount + 1 : getLineStartOffset(line + 1);
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        return () -> offset;
+    }
+
+    @Override
+    public int length() {
+        // Content includes implied line end
+        return charCount + 1;
+    }
+
+    @Nonnull
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        throw new BadLocationException("Content is read-only", where);
+    }
+
+    @Nonnull
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        throw new BadLocationException("Content is read-only", where);
+    }
+
+    @Nonnull
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment segment = new Segment();
+        getChars(where, len, segment);
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid range", where + len);
+        }
+        if (len == 0) {
+            txt.array = LINE_END;
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        if (where == charCount) {
+            txt.array = LINE_END;
+            txt.offset = 0;
+            txt.count = 1;
+            return;
+        }
+
+        int pageIndex = findPage(where);
+        Page page = getPage(pageIndex);
+        int pageOffset = where - pageCharOffsets[pageIndex];
+        int available = page.chars.length - pageOffset;
+        if (len <= available || txt.isPartialReturn()) {
+            txt.array = page.chars;
+            txt.offset = pageOffset;
+            txt.count = Math.min(len, available);
+            return;
+        }
+
+        char[] chars = new char[len];
+        int position = 0;
+        while (position < len) {
+            int offset = where + position;
+            if (offset == charCount) {
+                chars[position++] = '\n';
+                break;
+            }
+            pageIndex = findPage(offset);
+            page = getPage(pageIndex);
+            pageOffset = offset - pageCharOffsets[pageIndex];
+            int count = Math.min(len - position, page.chars.length - pageOffset);
+            System.arraycopy(page.chars, pageOffset, chars, position, count);
+            position += count;
+        }
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private void addPage(long byteOffset, int charOffset, int lineStartsBefore) {
+        if (pagesCount + 1 >= pageByteOffsets.length) {
+            int capacity = pageByteOffsets.length * 2;
+            pageByteOffsets = Arrays.copyOf(pageByteOffsets, capacity);
+            pageCharOffsets = Arrays.copyOf(pageCharOffsets, capacity);
+            pageLineStarts = Arrays.copyOf(pageLineStarts, capacity);
+        }
+        pageByteOffsets[pagesCount] = byteOffset;
+        pageCharOffsets[pagesCount] = charOffset;
+        pageLineStarts[pagesCount] = lineStartsBefore;
+        pagesCount++;
+    }
+
+    /**
+     * Finds end of the page starting at given position.
+     * <p>
+     * Page ends after first line end past page size. Page containing part of
+     * too long line ends at character boundary instead.
+     */
+    private long findPageEnd(long pageStart, long maxPageSize) {
+        long position = pageStart + pageSize - 1;
+        long limit = Math.min(fileSize, pageStart + maxPageSize);
+        while (position < limit) {
+            if (getByte(position) == '\n') {
+                return position + 1;
+            }
+            position++;
+        }
+        if (limit == fileSize) {
+            return fileSize;
+        }
+
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            // Do not split multibyte sequence
+            while (limit > pageStart + 1 && (getByte(limit) & 0xC0) == 0x80) {
+                limit--;
+            }
+        }
+        return limit;
+    }
+
+    private int findPage(int offset) {
+        return findFloor(pageCharOffsets, pagesCount, offset);
+    }
+
+    private int findPageForLine(int line) {
+        // Pages consisting of part of long line share the count of preceding line starts
+        return findFloor(pageLineStarts, pagesCount, line);
+    }
+
+    /**
+     * Returns last index of sorted values not exceeding given key.
+     */
+    private static int findFloor(int[] values, int count, int key) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (values[middle] <= key) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    @Nonnull
+    private Page getPage(int pageIndex) {
+        synchronized (pageCache) {
+            Page page = pageCache.get(pageIndex);
+            if (page == null) {
+                page = decodePage(pageIndex);
+                pageCache.put(pageIndex, page);
+            }
+            return page;
+        }
+    }
+
+    @Nonnull
+    private Page decodePage(int pageIndex) {
+        long pageStart = pageByteOffsets[pageIndex];
+        int length = (int) (pageByteOffsets[pageIndex + 1] - pageStart);
+        byte[] bytes = new byte[length];
+        readBytes(pageStart, bytes, length);
+        char[] chars = new char[pageCharOffsets[pageIndex + 1] - pageCharOffsets[pageIndex]];
+        CharBuffer charBuffer = CharBuffer.wrap(chars);
+        CharsetDecoder decoder = createDecoder();
+        decoder.decode(ByteBuffer.wrap(bytes), charBuffer, true);
+        decoder.flush(charBuffer);
+
+        boolean lineStart = pageIndex == 0 || getByte(pageStart - 1) == '\n';
+        int lineStartsCount = pageLineStarts[pageIndex + 1] - pageLineStarts[pageIndex];
+        int[] lineStarts = new int[lineStartsCount];
+        int position = 0;
+        if (lineStart && lineStartsCount > 0) {
+            lineStarts[position++] = 0;
+        }
+        for (int i = 0; i < chars.length - 1 && position < lineStartsCount; i++) {
+            if (chars[i] == '\n') {
+                lineStarts[position++] = i + 1;
+            }
+        }
+        return new Page(chars, lineStarts);
+    }
+
+    @Nonnull
+    private CharsetDecoder createDecoder() {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private byte getByte(long position) {
+        return segments[(int) (position / MAPPING_SEGMENT_SIZE)].get((int) (position % MAPPING_SEGMENT_SIZE));
+    }
+
+    private void readBytes(long position, byte[] target, int length) {
+        int targetOffset = 0;
+        while (targetOffset < length) {
+            int segmentIndex = (int) (position / MAPPING_SEGMENT_SIZE);
+            int segmentOffset = (int) (position % MAPPING_SEGMENT_SIZE);
+            ByteBuffer segment = segments[segmentIndex].duplicate();
+            int count = Math.min(length - targetOffset, segment.limit() - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(target, targetOffset, count);
+            targetOffset += count;
+            position += count;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class Page {
+
+        final char[] chars;
+        /**
+         * Offsets of lines starting in this page relative to the page start.
+         */
+        final int[] lineStarts;
+
+        Page(char[] chars, int[] lineStarts) {
+            this.chars = chars;
+            this.lineStarts = lineStarts;
+        }
+    }
+
+    private static final class PageCache extends LinkedHashMap<Integer, Page> {
+
+        private int capacity;
+
+        PageCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        void setCapacity(int capacity) {
+            this.capacity = Math.max(capacity, 1);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+
+/**
+ * Read-only document for viewing of large files.
+ * <p>
+ * Line elements are not stored, but created on request from the line index
+ * of the large file content.
+ */
+@ParametersAreNonnullByDefault
+public class LargeFileDocument extends AbstractDocument {
+
+    private static final int DEFAULT_TAB_SIZE = 8;
+
+    private final LargeFileContent content;
+    private final LinesElement rootElement = new LinesElement();
+
+    public LargeFileDocument(LargeFileContent content) {
+        super(content);
+        this.content = content;
+        putProperty(PlainDocument.tabSizeAttribute, DEFAULT_TAB_SIZE);
+    }
+
+    @Nonnull
+    public LargeFileContent getLargeFileContent() {
+        return content;
+    }
+
+    @Nonnull
+    @Override
+    public Element getDefaultRootElement() {
+        return rootElement;
+    }
+
+    @Nonnull
+    @Override
+    public Element getParagraphElement(int pos) {
+        return rootElement.getElement(rootElement.getElementIndex(pos));
+    }
+
+    @ParametersAreNonnullByDefault
+    private class LinesElement implements Element {
+
+        @Nonnull
+        @Override
+        public Document getDocument() {
+            return LargeFileDocument.this;
+        }
+
+        @Nullable
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return SectionElementName;
+        }
+
+        @Nonnull
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return content.length();
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return content.getLineIndex(offset);
+        }
+
+        @Override
+        public int getElementCount() {
+            return content.getLinesCount();
+        }
+
+        @Nonnull
+        @Override
+        public Element getElement(int index) {
+            return new LineElement(index);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private class LineElement implements Element {
+
+        private final int line;
+
+        LineElement(int line) {
+            this.line = line;
+        }
+
+        @Nonnull
+        @Override
+        public Document getDocument() {
+            return LargeFileDocument.this;
+        }
+
+        @Nonnull
+        @Override
+        public Element getParentElement() {
+            return rootElement;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Nonnull
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return content.getLineStartOffset(line);
+        }
+
+        @Override
+        public int getEndOffset() {
+            return content.getLineEndOffset(line);
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Nullable
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return line;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LineElement && ((LineElement) obj).line == line && ((LineElement) obj).getDocument() == getDocument();
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+import org.exbin.jaguif.operation.api.ProgressOperation;
+
+/**
+ * Streaming loader of text files.
+ * <p>
+ * File is read in large blocks and decoded directly into new document which
+ * is not attached to any component yet, so that loading can run outside of
+ * event dispatch thread and content is not held twice. Charset is detected
+ * from byte order mark or from valid UTF-8 sequences in the first block.
+ * <p>
+ * Files exceeding large file threshold are not loaded, but provided as
+ * read-only large file document instead.
+ */
+@ParametersAreNonnullByDefault
+public class TextDocumentLoader implements CancellableOperation, ProgressOperation {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private final File file;
+    private final Charset defaultCharset;
+    private DocumentFactory documentFactory = TextDocumentLoader::createPlainDocument;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean detectCharset = true;
+    private OperationProgressStateListener progressListener = null;
+    private long largeFileThreshold = Long.MAX_VALUE;
+
+    private volatile boolean cancelled = false;
+    private volatile LargeFileContent largeFileContent = null;
+    private volatile int progress = -1;
+    private volatile Charset charset = null;
+    private volatile boolean byteOrderMark = false;
+
+    public TextDocumentLoader(File file, Charset defaultCharset) {
+        this.file = file;
+        this.defaultCharset = defaultCharset;
+    }
+
+    @Nonnull
+    public File getFile() {
+        return file;
+    }
+
+    public void setDocumentFactory(DocumentFactory documentFactory) {
+        this.documentFactory = documentFactory;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+    }
+
+    public boolean isDetectCharset() {
+        return detectCharset;
+    }
+
+    /**
+     * Sets whether charset should be detected from file content or default
+     * charset should be always used.
+     *
+     * @param detectCharset true to detect charset
+     */
+    public void setDetectCharset(boolean detectCharset) {
+        this.detectCharset = detectCharset;
+    }
+
+    public void setProgressListener(@Nullable OperationProgressStateListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public long getLargeFileThreshold() {
+        return largeFileThreshold;
+    }
+
+    /**
+     * Sets file size from which read-only large file document backed by
+     * memory mapped file is created instead of loading whole content.
+     *
+     * @param largeFileThreshold file size in bytes
+     */
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
+    /**
+     * Returns charset used for decoding of the file.
+     *
+     * @return charset or null if loading was not started yet
+     */
+    @Nullable
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns whether file content started with byte order mark, which is
+     * not part of the loaded document.
+     *
+     * @return true if byte order mark was present
+     */
+    public boolean isByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    /**
+     * Loads file content into new document.
+     * <p>
+     * Can be called from any thread, returned document is not shared with
+     * any component.
+     *
+     * @return document with file content
+     * @throws IOException on read failure
+     * @throws CancellationException if loading was cancelled
+     */
+    @Nonnull
+    public Document load() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer byteBuffer = ByteBuffer.allocate((int) Math.max(Math.min(bufferSize, fileSize), MIN_BUFFER_SIZE));
+            long bytesRead = 0;
+            while (byteBuffer.hasRemaining()) {
+                int read = channel.read(byteBuffer);
+                if (read < 0) {
+                    break;
+                }
+                bytesRead += read;
+            }
+
+            byteBuffer.flip();
+            Charset fileCharset = detectCharset ? detectCharset(byteBuffer, defaultCharset) : defaultCharset;
+            int bomLength = getBomLength(byteBuffer, fileCharset);
+            byteBuffer.position(bomLength);
+            charset = fileCharset;
+            byteOrderMark = bomLength > 0;
+            if (fileSize >= largeFileThreshold && LargeFileContent.isSupportedCharset(fileCharset)) {
+                return loadLargeFile(fileCharset, bomLength);
+            }
+
+            long expectedLength = getExpectedLength(fileSize, fileCharset);
+            if (expectedLength >= Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be loaded as text: " + file.getPath());
+            }
+
+            Document document = documentFactory.createDocument((int) expectedLength);
+            CharsetDecoder decoder = fileCharset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer charBuffer = CharBuffer.allocate(byteBuffer.capacity());
+            boolean endOfInput = bytesRead == fileSize;
+            reportProgress(bytesRead, fileSize);
+            while (true) {
+                CoderResult result;
+                do {
+                    result = decoder.decode(byteBuffer, charBuffer, endOfInput);
+                    if (result.isOverflow()) {
+                        appendChars(document, charBuffer);
+                    }
+                } while (result.isOverflow());
+                appendChars(document, charBuffer);
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                if (endOfInput) {
+                    break;
+                }
+
+                byteBuffer.compact();
+                int read = channel.read(byteBuffer);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += read;
+                    reportProgress(bytesRead, fileSize);
+                }
+                byteBuffer.flip();
+            }
+
+            while (decoder.flush(charBuffer).isOverflow()) {
+                appendChars(document, charBuffer);
+            }
+            appendChars(document, charBuffer);
+            // Line index is built while document is not shared yet
+            TextLineIndex.getLineIndex(document);
+            progress = 1000;
+            return document;
+        }
+    }
+
+    @Nonnull
+    private Document loadLargeFile(Charset fileCharset, int bomLength) throws IOException {
+        LargeFileContent content = new LargeFileContent(file, fileCharset, bomLength);
+        content.setProgressListener((percent) -> {
+            progress = percent * 10;
+            if (progressListener != null) {
+                progressListener.operationInProgress(percent);
+            }
+        });
+        largeFileContent = content;
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        content.buildIndex();
+        progress = 1000;
+        LargeFileDocument document = new LargeFileDocument(content);
+        TextLineIndex.getLineIndex(document);
+        return document;
+    }
+
+    @Override
+    public void cancelOperation() {
+        cancelled = true;
+        LargeFileContent content = largeFileContent;
+        if (content != null) {
+            content.cancelOperation();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public int getOperationProgress() {
+        return progress;
+    }
+
+    /**
+     * Detects charset of given sample of file content.
+     * <p>
+     * Byte order mark takes precedence, otherwise UTF-8 is used when sample
+     * contains non-ASCII characters forming valid UTF-8 sequences.
+     *
+     * @param sample sample from the beginning of the file, position is not
+     * changed
+     * @param defaultCharset charset to use when nothing is detected
+     * @return charset
+     */
+    @Nonnull
+    public static Charset detectCharset(ByteBuffer sample, Charset defaultCharset) {
+        if (startsWith(sample, UTF8_BOM)) {
+            return StandardCharsets.UTF_8;
+        }
+        if (startsWith(sample, UTF16BE_BOM)) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (startsWith(sample, UTF16LE_BOM)) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (StandardCharsets.UTF_16.equals(defaultCharset) || StandardCharsets.UTF_16BE.equals(defaultCharset) || StandardCharsets.UTF_16LE.equals(defaultCharset)) {
+            return defaultCharset;
+        }
+
+        return isUtf8WithNonAscii(sample) ? StandardCharsets.UTF_8 : defaultCharset;
+    }
+
+    private static int getBomLength(ByteBuffer sample, Charset charset) {
+        byte[] bom = getByteOrderMark(charset);
+        return bom != null && startsWith(sample, bom) ? bom.length : 0;
+    }
+
+    /**
+     * Returns byte order mark for given charset.
+     *
+     * @param charset charset
+     * @return byte order mark or null if charset has none which is not written
+     * by its encoder
+     */
+    @Nullable
+    static byte[] getByteOrderMark(Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return UTF8_BOM;
+        }
+        if (StandardCharsets.UTF_16BE.equals(charset)) {
+            return UTF16BE_BOM;
+        }
+        if (StandardCharsets.UTF_16LE.equals(charset)) {
+            return UTF16LE_BOM;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer sample, byte[] prefix) {
+        if (sample.remaining() < prefix.length) {
+            return false;
+        }
+        int position = sample.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (sample.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUtf8WithNonAscii(ByteBuffer sample) {
+        boolean nonAscii = false;
+        int position = sample.position();
+        int limit = sample.limit();
+        while (position < limit) {
+            int value = sample.get(position) & 0xFF;
+            int sequenceLength;
+            if (value < 0x80) {
+                position++;
+                continue;
+            } else if (value >= 0xC2 && value <= 0xDF) {
+                sequenceLength = 2;
+            } else if (value >= 0xE0 && value <= 0xEF) {
+                sequenceLength = 3;
+            } else if (value >= 0xF0 && value <= 0xF4) {
+                sequenceLength = 4;
+            } else {
+                return false;
+            }
+
+            for (int i = 1; i < sequenceLength; i++) {
+                if (position + i == limit) {
+                    // Sequence is cut by the end of the sample
+                    return nonAscii;
+                }
+                if ((sample.get(position + i) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            nonAscii = true;
+            position += sequenceLength;
+        }
+        return nonAscii;
+    }
+
+    private static long getExpectedLength(long fileSize, Charset charset) {
+        if (StandardCharsets.UTF_16.equals(charset) || StandardCharsets.UTF_16BE.equals(charset) || StandardCharsets.UTF_16LE.equals(charset)) {
+            return fileSize / 2;
+        }
+        return (long) Math.ceil(fileSize * (double) charset.newDecoder().maxCharsPerByte());
+    }
+
+    private void reportProgress(long bytesRead, long fileSize) {
+        int newProgress = fileSize == 0 ? 1000 : (int) (bytesRead * 1000 / fileSize);
+        int oldPercent = progress < 0 ? -1 : progress / 10;
+        progress = newProgress;
+        if (progressListener != null && newProgress / 10 != oldPercent) {
+            progressListener.operationInProgress(newProgress / 10);
+        }
+    }
+
+    private static void appendChars(Document document, CharBuffer charBuffer) {
+        if (charBuffer.position() == 0) {
+            return;
+        }
+
+        charBuffer.flip();
+        try {
+            document.insertString(document.getLength(), charBuffer.toString(), null);
+        } catch (BadLocationException ex) {
+            Logger.getLogger(TextDocumentLoader.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException(ex);
+        }
+        charBuffer.clear();
+    }
+
+    @Nonnull
+    private static Document createPlainDocument(int expectedLength) {
+        return new PlainDocument(new GapContent(expectedLength + 1));
+    }
+
+    /**
+     * Factory for document to load content into.
+     */
+    public interface DocumentFactory {
+
+        /**
+         * Creates new empty document.
+         *
+         * @param expectedLength expected length of content in characters
+         * @return document
+         */
+        @Nonnull
+        Document createDocument(int expectedLength);
+    }
+}
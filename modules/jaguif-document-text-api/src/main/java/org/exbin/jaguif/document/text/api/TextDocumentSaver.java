@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Atomic streaming saver of text documents.
+ * <p>
+ * Content is encoded directly from document segments into temporary file in
+ * the target directory, which is synced to disk and then moved over the
+ * target file. Target file is left untouched when saving fails.
+ */
+@ParametersAreNonnullByDefault
+public class TextDocumentSaver {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final String BACKUP_FILE_SUFFIX = "~";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private final Document document;
+    private final Charset charset;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean keepBackup = false;
+    private boolean byteOrderMark = false;
+
+    public TextDocumentSaver(Document document, Charset charset) {
+        this.document = document;
+        this.charset = charset;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+    }
+
+    public boolean isKeepBackup() {
+        return keepBackup;
+    }
+
+    /**
+     * Sets whether previous content of the target file should be kept in
+     * backup file.
+     *
+     * @param keepBackup true to keep backup
+     */
+    public void setKeepBackup(boolean keepBackup) {
+        this.keepBackup = keepBackup;
+    }
+
+    public boolean isByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    /**
+     * Sets whether byte order mark should be written before the content.
+     * <p>
+     * Applies to UTF-8 and UTF-16 charsets with explicit byte order only.
+     *
+     * @param byteOrderMark true to write byte order mark
+     */
+    public void setByteOrderMark(boolean byteOrderMark) {
+        this.byteOrderMark = byteOrderMark;
+    }
+
+    /**
+     * Returns backup file for given target file.
+     *
+     * @param file target file
+     * @return backup file
+     */
+    @Nonnull
+    public static File getBackupFile(File file) {
+        return new File(file.getPath() + BACKUP_FILE_SUFFIX);
+    }
+
+    /**
+     * Saves document content to given file.
+     * <p>
+     * Document is read locked while saving.
+     *
+     * @param file target file
+     * @throws IOException on write failure, target file is not modified
+     */
+    public void save(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        if (Files.isSymbolicLink(target)) {
+            // Replace file the link points to instead of the link itself
+            target = target.toRealPath();
+        }
+        Path directory = target.getParent();
+        Path tempFile = Files.createTempFile(directory, "." + target.getFileName() + ".", TEMP_FILE_SUFFIX);
+        boolean success = false;
+        try {
+            boolean targetExists = Files.exists(target);
+            if (targetExists) {
+                copyPermissions(target, tempFile);
+            }
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeDocument(channel);
+                channel.force(true);
+            }
+
+            if (keepBackup && targetExists) {
+                createBackup(target, getBackupFile(target.toFile()).toPath());
+            }
+            moveFile(tempFile, target);
+            syncDirectory(directory);
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ex) {
+                    Logger.getLogger(TextDocumentSaver.class.getName()).log(Level.WARNING, "Unable to delete temporary file " + tempFile, ex);
+                }
+            }
+        }
+    }
+
+    private void writeDocument(FileChannel channel) throws IOException {
+        IOException[] failure = new IOException[1];
+        document.render(() -> {
+            try {
+                encodeDocument(channel);
+            } catch (IOException ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private void encodeDocument(FileChannel channel) throws IOException {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer byteBuffer = ByteBuffer.allocate((int) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar()));
+        if (byteOrderMark) {
+            byte[] bom = TextDocumentLoader.getByteOrderMark(charset);
+            if (bom != null) {
+                byteBuffer.put(bom);
+            }
+        }
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int length = document.getLength();
+        int offset = 0;
+        while (offset < length) {
+            try {
+                document.getText(offset, Math.min(bufferSize, length - offset), segment);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+
+            int count = segment.count;
+            if (count > 1 && offset + count < length && Character.isHighSurrogate(segment.array[segment.offset + count - 1])) {
+                // Keep surrogate pair together for the next segment
+                count--;
+            }
+            offset += count;
+            CharBuffer charBuffer = CharBuffer.wrap(segment.array, segment.offset, count);
+            CoderResult result;
+            do {
+                result = encoder.encode(charBuffer, byteBuffer, offset == length);
+                writeBuffer(channel, byteBuffer);
+            } while (result.isOverflow());
+        }
+
+        CharBuffer emptyBuffer = CharBuffer.allocate(0);
+        while (encoder.encode(emptyBuffer, byteBuffer, true).isOverflow()) {
+            writeBuffer(channel, byteBuffer);
+        }
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            writeBuffer(channel, byteBuffer);
+        }
+        writeBuffer(channel, byteBuffer);
+    }
+
+    private void writeBuffer(FileChannel channel, ByteBuffer byteBuffer) throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            write(channel, byteBuffer);
+        }
+        byteBuffer.clear();
+    }
+
+    /**
+     * Writes buffer content into temporary file channel.
+     *
+     * @param channel channel
+     * @param buffer buffer
+     * @throws IOException on write failure
+     */
+    protected void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        channel.write(buffer);
+    }
+
+    private static void copyPermissions(Path source, Path target) {
+        try {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+        } catch (UnsupportedOperationException | IOException ex) {
+            // Permissions are kept as created on systems without POSIX permissions
+        }
+    }
+
+    private static void createBackup(Path target, Path backup) throws IOException {
+        Files.deleteIfExists(backup);
+        try {
+            Files.createLink(backup, target);
+        } catch (UnsupportedOperationException | IOException ex) {
+            Files.copy(target, backup, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        // Makes rename durable, not supported on all platforms
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Index of line starts of the text document.
+ * <p>
+ * Line starts are stored in gap buffer placed at the last edited line. Starts
+ * of the lines after the gap are stored relative to the end of the document,
+ * so that edits only update lines around the gap. Offset to line lookup is
+ * binary search, line to offset lookup and lines count take constant time.
+ * <p>
+ * Index is updated by document listener. Document listeners added later are
+ * notified before the index listener, so when index is queried from such
+ * listener it is rebuilt and its listener is registered again to be notified
+ * first for the following changes. Index of large file document uses line
+ * index of its content. Caller is responsible for locking of the document when
+ * accessed outside of event dispatch thread.
+ */
+@ParametersAreNonnullByDefault
+public class TextLineIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SCAN_CHUNK_SIZE = 65536;
+
+    private final Document document;
+    private final LargeFileContent largeFileContent;
+    private int[] lineStarts;
+    private int gapStart;
+    private int gapEnd;
+    private int length;
+    private boolean attached;
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            // Change was already included by rebuild when index was queried before
+            if (length != document.getLength()) {
+                insert(e.getOffset(), e.getLength());
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            if (length != document.getLength()) {
+                remove(e.getOffset(), e.getLength());
+            }
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+
+    private TextLineIndex(Document document) {
+        this.document = document;
+        if (document instanceof LargeFileDocument) {
+            largeFileContent = ((LargeFileDocument) document).getLargeFileContent();
+            return;
+        }
+
+        largeFileContent = null;
+        build();
+        document.addDocumentListener(documentListener);
+        attached = true;
+    }
+
+    /**
+     * Returns line index shared for given document.
+     * <p>
+     * Index is created and stored in document property when not available yet.
+     *
+     * @param document document
+     * @return line index
+     */
+    @Nonnull
+    public static TextLineIndex getLineIndex(Document document) {
+        Object property = document.getProperty(TextLineIndex.class);
+        if (property instanceof TextLineIndex) {
+            return (TextLineIndex) property;
+        }
+
+        TextLineIndex lineIndex = new TextLineIndex(document);
+        document.putProperty(TextLineIndex.class, lineIndex);
+        return lineIndex;
+    }
+
+    /**
+     * Removes line index from given document.
+     *
+     * @param document document
+     */
+    public static void removeLineIndex(Document document) {
+        Object property = document.getProperty(TextLineIndex.class);
+        if (property instanceof TextLineIndex) {
+            TextLineIndex lineIndex = (TextLineIndex) property;
+            lineIndex.attached = false;
+            document.removeDocumentListener(lineIndex.documentListener);
+            document.putProperty(TextLineIndex.class, null);
+        }
+    }
+
+    @Nonnull
+    public Document getDocument() {
+        return document;
+    }
+
+    public int getLinesCount() {
+        if (largeFileContent != null) {
+            return largeFileContent.getLinesCount();
+        }
+
+        validate();
+        return linesCount();
+    }
+
+    /**
+     * Returns index of the line containing given offset.
+     *
+     * @param offset character offset
+     * @return line index
+     */
+    public int getLineIndex(int offset) {
+        if (largeFileContent != null) {
+            return largeFileContent.getLineIndex(offset);
+        }
+
+        validate();
+        return findLine(offset);
+    }
+
+    /**
+     * Returns offset of the start of the line.
+     *
+     * @param line line index
+     * @return character offset
+     */
+    public int getLineStartOffset(int line) {
+        if (largeFileContent != null) {
+            return largeFileContent.getLineStartOffset(line);
+        }
+
+        validate();
+        return lineStart(line);
+    }
+
+    /**
+     * Returns offset after the end of the line including line end.
+     * <p>
+     * End of the last line is after the implied line end, the same way as
+     * for document elements.
+     *
+     * @param line line index
+     * @return character offset
+     */
+    public int getLineEndOffset(int line) {
+        if (largeFileContent != null) {
+            return largeFileContent.getLineEndOffset(line);
+        }
+
+        validate();
+        return line == linesCount() - 1 ? length + 1 : lineStart(line + 1);
+    }
+
+    /**
+     * Rebuilds index if document was changed and index listener was not
+     * notified yet.
+     */
+    private void validate() {
+        if (!attached || length == document.getLength()) {
+            return;
+        }
+
+        build();
+        document.removeDocumentListener(documentListener);
+        document.addDocumentListener(documentListener);
+    }
+
+    private void build() {
+        lineStarts = new int[INITIAL_CAPACITY];
+        gapStart = 1;
+        gapEnd = lineStarts.length;
+        length = 0;
+        insert(0, document.getLength());
+    }
+
+    private int linesCount() {
+        return lineStarts.length - (gapEnd - gapStart);
+    }
+
+    private int findLine(int offset) {
+        int low = 0;
+        int high = linesCount() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStart(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int lineStart(int line) {
+        if (line < 0 || line >= linesCount()) {
+            throw new IllegalStateException("Invalid line index: " + line);
+        }
+        return line < gapStart ? lineStarts[line] : length - lineStarts[line + gapEnd - gapStart];
+    }
+
+    private void insert(int offset, int insertedLength) {
+        moveGap(findLine(offset) + 1);
+        length += insertedLength;
+
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int position = offset;
+        int end = offset + insertedLength;
+        try {
+            while (position < end) {
+                document.getText(position, Math.min(end - position, SCAN_CHUNK_SIZE), segment);
+                char[] chars = segment.array;
+                int segmentEnd = segment.offset + segment.count;
+                for (int i = segment.offset; i < segmentEnd; i++) {
+                    if (chars[i] == '\n') {
+                        addLineStart(position + i - segment.offset + 1);
+                    }
+                }
+                position += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void remove(int offset, int removedLength) {
+        moveGap(findLine(offset) + 1);
+        // Line starts after removed line ends
+        int removedEnd = offset + removedLength;
+        while (gapEnd < lineStarts.length && length - lineStarts[gapEnd] <= removedEnd) {
+            gapEnd++;
+        }
+        length -= removedLength;
+    }
+
+    private void moveGap(int line) {
+        int gapSize = gapEnd - gapStart;
+        if (line < gapStart) {
+            for (int i = gapStart - 1; i >= line; i--) {
+                lineStarts[i + gapSize] = length - lineStarts[i];
+            }
+        } else {
+            for (int i = gapStart; i < line; i++) {
+                lineStarts[i] = length - lineStarts[i + gapSize];
+            }
+        }
+        gapStart = line;
+        gapEnd = line + gapSize;
+    }
+
+    private void addLineStart(int lineStart) {
+        if (gapStart == gapEnd) {
+            int[] newLineStarts = new int[lineStarts.length * 2];
+            int tailSize = lineStarts.length - gapEnd;
+            System.arraycopy(lineStarts, 0, newLineStarts, 0, gapStart);
+            System.arraycopy(lineStarts, gapEnd, newLineStarts, newLineStarts.length - tailSize, tailSize);
+            gapEnd = newLineStarts.length - tailSize;
+            lineStarts = newLineStarts;
+        }
+        lineStarts[gapStart] = lineStart;
+        gapStart++;
+    }
+}
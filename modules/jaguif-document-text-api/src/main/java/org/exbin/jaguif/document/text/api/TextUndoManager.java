@@ -0,0 +1,775 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.DocumentFilter;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import org.exbin.jaguif.operation.undo.api.UndoRedoChangeListener;
+
+/**
+ * Undo manager for text documents with limited memory usage.
+ * <p>
+ * Edits are recorded as offset and text, so they don't keep references to the
+ * document. Typing is merged into single undo step until pause longer than
+ * merge interval or start of a new word. When size of the steps exceeds
+ * memory limit, the oldest steps are moved to journal file in temporary
+ * directory, and when count of the steps exceeds the limit, the oldest steps
+ * are discarded.
+ * <p>
+ * Removed text is captured by document filter, which is installed for
+ * documents extending {@link AbstractDocument}. For other documents, undo
+ * history is cleared on removal.
+ */
+@ParametersAreNonnullByDefault
+public class TextUndoManager implements UndoableEditListener {
+
+    public static final int DEFAULT_MAX_STEPS_COUNT = 10000;
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_MERGE_INTERVAL = 1000;
+
+    private static final int STEP_SIZE_OVERHEAD = 48;
+    private static final int EDIT_SIZE_OVERHEAD = 64;
+    private static final long JOURNAL_COMPACT_THRESHOLD = 1024 * 1024;
+
+    private int maxStepsCount = DEFAULT_MAX_STEPS_COUNT;
+    private long maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+    private long mergeInterval = DEFAULT_MERGE_INTERVAL;
+    private boolean journalEnabled = true;
+    private File journalDirectory = null;
+
+    private Document document = null;
+    private CapturingFilter capturingFilter = null;
+    private UndoRedoChangeListener undoRedoChangeListener;
+
+    private final List<UndoStep> memorySteps = new ArrayList<>();
+    private long memorySize = 0;
+    private final UndoJournal journal = new UndoJournal();
+    // Count of steps which are applied, steps after are available for redo
+    private int position = 0;
+    private boolean mergeAllowed = false;
+    private long lastEditTime;
+    private boolean applyingStep = false;
+
+    public TextUndoManager() {
+    }
+
+    /**
+     * Starts recording of edits of given document.
+     *
+     * @param document document
+     */
+    public void install(Document document) {
+        if (this.document != null) {
+            uninstall();
+        }
+        this.document = document;
+        if (document instanceof AbstractDocument) {
+            capturingFilter = new CapturingFilter(((AbstractDocument) document).getDocumentFilter());
+            ((AbstractDocument) document).setDocumentFilter(capturingFilter);
+        }
+        document.addUndoableEditListener(this);
+    }
+
+    /**
+     * Stops recording of edits of current document.
+     */
+    public void uninstall() {
+        if (document == null) {
+            return;
+        }
+
+        document.removeUndoableEditListener(this);
+        if (document instanceof AbstractDocument && ((AbstractDocument) document).getDocumentFilter() == capturingFilter) {
+            ((AbstractDocument) document).setDocumentFilter(capturingFilter.delegate);
+        }
+        capturingFilter = null;
+        document = null;
+    }
+
+    public int getMaxStepsCount() {
+        return maxStepsCount;
+    }
+
+    public void setMaxStepsCount(int maxStepsCount) {
+        this.maxStepsCount = maxStepsCount;
+        applyLimits();
+    }
+
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     * Sets limit for estimated size of undo steps kept in memory.
+     *
+     * @param maxMemorySize size in bytes
+     */
+    public void setMaxMemorySize(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+        applyLimits();
+    }
+
+    public long getMergeInterval() {
+        return mergeInterval;
+    }
+
+    /**
+     * Sets maximum pause between typed characters merged into single step.
+     *
+     * @param mergeInterval interval in milliseconds, zero disables merging
+     */
+    public void setMergeInterval(long mergeInterval) {
+        this.mergeInterval = mergeInterval;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    /**
+     * Sets whether steps over memory limit are moved to journal file or
+     * discarded.
+     *
+     * @param journalEnabled true to enable journal
+     */
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    /**
+     * Sets directory for journal file.
+     *
+     * @param journalDirectory directory or null for default temporary
+     * directory
+     */
+    public void setJournalDirectory(@Nullable File journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+        if (applyingStep || !(e.getEdit() instanceof DocumentEvent)) {
+            return;
+        }
+
+        DocumentEvent event = (DocumentEvent) e.getEdit();
+        DocumentEvent.EventType eventType = event.getType();
+        TextEdit edit;
+        if (eventType == DocumentEvent.EventType.INSERT) {
+            try {
+                edit = new TextEdit(true, event.getOffset(), event.getDocument().getText(event.getOffset(), event.getLength()));
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else if (eventType == DocumentEvent.EventType.REMOVE) {
+            String removedText = capturingFilter == null ? null : capturingFilter.takeRemovedText(event.getOffset(), event.getLength());
+            if (removedText == null) {
+                // Removed text is not known, history can't be restored
+                clear();
+                return;
+            }
+            edit = new TextEdit(false, event.getOffset(), removedText);
+        } else {
+            return;
+        }
+
+        addEdit(edit);
+        notifyModified();
+    }
+
+    private void addEdit(TextEdit edit) {
+        discardRedoSteps();
+        long time = getCurrentTime();
+        UndoStep lastStep = mergeAllowed && !memorySteps.isEmpty() ? memorySteps.get(memorySteps.size() - 1) : null;
+        if (capturingFilter != null && capturingFilter.replacing) {
+            // Replacement forms single step
+            if (capturingFilter.replaceEditsCount++ == 0) {
+                lastStep = null;
+            }
+        } else if (lastStep != null && !canMerge(lastStep.getLastEdit(), edit, time)) {
+            lastStep = null;
+        }
+
+        if (lastStep != null) {
+            memorySize -= lastStep.getSize();
+            lastStep.addEdit(edit);
+            memorySize += lastStep.getSize();
+        } else {
+            UndoStep step = new UndoStep(edit);
+            memorySteps.add(step);
+            memorySize += step.getSize();
+            position++;
+        }
+        lastEditTime = time;
+        mergeAllowed = true;
+        applyLimits();
+    }
+
+    private boolean canMerge(TextEdit lastEdit, TextEdit edit, long time) {
+        if (mergeInterval <= 0 || time - lastEditTime > mergeInterval) {
+            return false;
+        }
+        if (lastEdit.insert != edit.insert || edit.text.length() != 1 || lastEdit.text.isEmpty()) {
+            return false;
+        }
+
+        char lastChar;
+        if (edit.insert) {
+            // Typing continues after previous character
+            if (edit.offset != lastEdit.offset + lastEdit.text.length()) {
+                return false;
+            }
+            lastChar = lastEdit.text.charAt(lastEdit.text.length() - 1);
+        } else if (edit.offset + 1 == lastEdit.offset) {
+            // Backspace
+            lastChar = lastEdit.text.charAt(0);
+        } else if (edit.offset == lastEdit.offset) {
+            // Delete
+            lastChar = lastEdit.text.charAt(lastEdit.text.length() - 1);
+        } else {
+            return false;
+        }
+
+        // New step starts at word start
+        char ch = edit.text.charAt(0);
+        return !isWordCharacter(ch) || isWordCharacter(lastChar);
+    }
+
+    private static boolean isWordCharacter(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+
+    /**
+     * Ends current undo step, so that next edit starts new step.
+     */
+    public void endStep() {
+        mergeAllowed = false;
+    }
+
+    public void undo() throws CannotUndoException {
+        if (!canUndo()) {
+            throw new CannotUndoException();
+        }
+
+        UndoStep step = getStep(position - 1);
+        if (step == null) {
+            throw new CannotUndoException();
+        }
+        applyingStep = true;
+        try {
+            step.undo(document);
+        } finally {
+            applyingStep = false;
+        }
+        position--;
+        mergeAllowed = false;
+        notifyModified();
+    }
+
+    public void redo() throws CannotRedoException {
+        if (!canRedo()) {
+            throw new CannotRedoException();
+        }
+
+        UndoStep step = getStep(position);
+        if (step == null) {
+            throw new CannotRedoException();
+        }
+        applyingStep = true;
+        try {
+            step.redo(document);
+        } finally {
+            applyingStep = false;
+        }
+        position++;
+        mergeAllowed = false;
+        notifyModified();
+    }
+
+    public boolean canUndo() {
+        return document != null && position > 0;
+    }
+
+    public boolean canRedo() {
+        return document != null && position < getStepsCount();
+    }
+
+    /**
+     * Discards all undo and redo steps.
+     */
+    public void clear() {
+        memorySteps.clear();
+        memorySize = 0;
+        journal.clear();
+        position = 0;
+        mergeAllowed = false;
+        notifyModified();
+    }
+
+    /**
+     * Returns count of undo and redo steps.
+     *
+     * @return count of steps
+     */
+    public int getStepsCount() {
+        return journal.getStepsCount() + memorySteps.size();
+    }
+
+    /**
+     * Returns count of steps which can be undone.
+     *
+     * @return count of steps
+     */
+    public int getUndoStepsCount() {
+        return position;
+    }
+
+    /**
+     * Returns count of steps stored in journal file.
+     *
+     * @return count of steps
+     */
+    public int getJournalStepsCount() {
+        return journal.getStepsCount();
+    }
+
+    /**
+     * Returns estimated size of steps kept in memory.
+     *
+     * @return size in bytes
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public void setUndoRedoChangeListener(UndoRedoChangeListener undoRedoChangeListener) {
+        this.undoRedoChangeListener = undoRedoChangeListener;
+    }
+
+    public void notifyModified() {
+        if (undoRedoChangeListener != null) {
+            undoRedoChangeListener.undoChanged();
+        }
+    }
+
+    /**
+     * Returns current time used for merging of typed characters.
+     *
+     * @return time in milliseconds
+     */
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    @Nullable
+    private UndoStep getStep(int index) {
+        int journalStepsCount = journal.getStepsCount();
+        if (index >= journalStepsCount) {
+            return memorySteps.get(index - journalStepsCount);
+        }
+
+        try {
+            return journal.readStep(index);
+        } catch (IOException ex) {
+            Logger.getLogger(TextUndoManager.class.getName()).log(Level.SEVERE, null, ex);
+            clear();
+            return null;
+        }
+    }
+
+    private void discardRedoSteps() {
+        int journalStepsCount = journal.getStepsCount();
+        if (position >= getStepsCount()) {
+            return;
+        }
+
+        if (position < journalStepsCount) {
+            memorySteps.clear();
+            memorySize = 0;
+            try {
+                journal.truncate(position);
+            } catch (IOException ex) {
+                Logger.getLogger(TextUndoManager.class.getName()).log(Level.SEVERE, null, ex);
+                journal.clear();
+                position = 0;
+            }
+        } else {
+            while (memorySteps.size() > position - journalStepsCount) {
+                memorySize -= memorySteps.remove(memorySteps.size() - 1).getSize();
+            }
+        }
+        mergeAllowed = false;
+    }
+
+    private void applyLimits() {
+        while (getStepsCount() > maxStepsCount && position > 0) {
+            if (journal.getStepsCount() > 0) {
+                journal.removeFirstStep();
+            } else {
+                memorySize -= memorySteps.remove(0).getSize();
+            }
+            position--;
+        }
+        if (journal.getStepsCount() == 0) {
+            journal.clear();
+        }
+
+        // Last step is always kept in memory, steps for redo are not moved
+        while (memorySize > maxMemorySize && memorySteps.size() > 1 && journal.getStepsCount() < position) {
+            UndoStep step = memorySteps.remove(0);
+            memorySize -= step.getSize();
+            boolean stored = false;
+            if (journalEnabled) {
+                try {
+                    journal.appendStep(step, journalDirectory);
+                    stored = true;
+                } catch (IOException ex) {
+                    Logger.getLogger(TextUndoManager.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            if (!stored) {
+                // Older steps are not reachable without this step
+                position -= journal.getStepsCount() + 1;
+                journal.clear();
+            }
+        }
+    }
+
+    /**
+     * Single insertion or removal of text.
+     */
+    @ParametersAreNonnullByDefault
+    private static class TextEdit {
+
+        private final boolean insert;
+        private final int offset;
+        private final String text;
+
+        TextEdit(boolean insert, int offset, String text) {
+            this.insert = insert;
+            this.offset = offset;
+            this.text = text;
+        }
+
+        void apply(Document document, boolean undo) {
+            try {
+                if (insert == undo) {
+                    document.remove(offset, text.length());
+                } else {
+                    document.insertString(offset, text, null);
+                }
+            } catch (BadLocationException ex) {
+                throw new CannotUndoException();
+            }
+        }
+
+        long getSize() {
+            return EDIT_SIZE_OVERHEAD + 2L * text.length();
+        }
+    }
+
+    /**
+     * Undo step formed by sequence of edits.
+     */
+    @ParametersAreNonnullByDefault
+    private static class UndoStep {
+
+        private TextEdit[] edits;
+        private int editsCount;
+
+        UndoStep(TextEdit edit) {
+            edits = new TextEdit[]{edit};
+            editsCount = 1;
+        }
+
+        UndoStep(TextEdit[] edits) {
+            this.edits = edits;
+            editsCount = edits.length;
+        }
+
+        void addEdit(TextEdit edit) {
+            TextEdit lastEdit = edits[editsCount - 1];
+            if (lastEdit.insert == edit.insert) {
+                // Continuous typing is joined into single edit
+                if (edit.insert && edit.offset == lastEdit.offset + lastEdit.text.length()) {
+                    edits[editsCount - 1] = new TextEdit(true, lastEdit.offset, lastEdit.text + edit.text);
+                    return;
+                }
+                if (!edit.insert && edit.offset + edit.text.length() == lastEdit.offset) {
+                    edits[editsCount - 1] = new TextEdit(false, edit.offset, edit.text + lastEdit.text);
+                    return;
+                }
+                if (!edit.insert && edit.offset == lastEdit.offset) {
+                    edits[editsCount - 1] = new TextEdit(false, edit.offset, lastEdit.text + edit.text);
+                    return;
+                }
+            }
+
+            if (editsCount == edits.length) {
+                edits = Arrays.copyOf(edits, editsCount * 2);
+            }
+            edits[editsCount++] = edit;
+        }
+
+        @Nonnull
+        TextEdit getLastEdit() {
+            return edits[editsCount - 1];
+        }
+
+        void undo(Document document) {
+            for (int i = editsCount - 1; i >= 0; i--) {
+                edits[i].apply(document, true);
+            }
+        }
+
+        void redo(Document document) {
+            for (int i = 0; i < editsCount; i++) {
+                edits[i].apply(document, false);
+            }
+        }
+
+        long getSize() {
+            long size = STEP_SIZE_OVERHEAD;
+            for (int i = 0; i < editsCount; i++) {
+                size += edits[i].getSize();
+            }
+            return size;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeInt(editsCount);
+            for (int i = 0; i < editsCount; i++) {
+                TextEdit edit = edits[i];
+                byte[] data = edit.text.getBytes(StandardCharsets.UTF_8);
+                output.writeBoolean(edit.insert);
+                output.writeInt(edit.offset);
+                output.writeInt(data.length);
+                output.write(data);
+            }
+        }
+
+        @Nonnull
+        static UndoStep read(DataInputStream input) throws IOException {
+            TextEdit[] edits = new TextEdit[input.readInt()];
+            for (int i = 0; i < edits.length; i++) {
+                boolean insert = input.readBoolean();
+                int offset = input.readInt();
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                edits[i] = new TextEdit(insert, offset, new String(data, StandardCharsets.UTF_8));
+            }
+            return new UndoStep(edits);
+        }
+    }
+
+    /**
+     * Journal file of the oldest undo steps.
+     */
+    @ParametersAreNonnullByDefault
+    private static class UndoJournal {
+
+        private File file = null;
+        private RandomAccessFile randomAccessFile = null;
+        // Start positions of steps with end position of the last step
+        private long[] positions = new long[16];
+        private int firstStep = 0;
+        private int endStep = 0;
+
+        int getStepsCount() {
+            return endStep - firstStep;
+        }
+
+        void appendStep(UndoStep step, @Nullable File directory) throws IOException {
+            if (randomAccessFile == null) {
+                file = File.createTempFile("textUndo", ".journal", directory);
+                file.deleteOnExit();
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                positions[0] = 0;
+                firstStep = 0;
+                endStep = 0;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            step.write(new DataOutputStream(buffer));
+            long position = positions[endStep];
+            randomAccessFile.seek(position);
+            randomAccessFile.write(buffer.toByteArray());
+            if (endStep + 2 > positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            endStep++;
+            positions[endStep] = position + buffer.size();
+        }
+
+        @Nonnull
+        UndoStep readStep(int index) throws IOException {
+            int step = firstStep + index;
+            byte[] data = new byte[(int) (positions[step + 1] - positions[step])];
+            randomAccessFile.seek(positions[step]);
+            randomAccessFile.readFully(data);
+            return UndoStep.read(new DataInputStream(new ByteArrayInputStream(data)));
+        }
+
+        void removeFirstStep() {
+            firstStep++;
+            long removedSize = positions[firstStep];
+            if (removedSize > JOURNAL_COMPACT_THRESHOLD && removedSize > positions[endStep] - removedSize) {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    Logger.getLogger(TextUndoManager.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+
+        void truncate(int stepsCount) throws IOException {
+            endStep = firstStep + stepsCount;
+            randomAccessFile.setLength(positions[endStep]);
+        }
+
+        void clear() {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(TextUndoManager.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                randomAccessFile = null;
+                file.delete();
+                file = null;
+            }
+            positions = new long[16];
+            firstStep = 0;
+            endStep = 0;
+        }
+
+        /**
+         * Moves remaining steps to the start of the file.
+         */
+        private void compact() throws IOException {
+            long offset = positions[firstStep];
+            long size = positions[endStep] - offset;
+            byte[] buffer = new byte[65536];
+            long copied = 0;
+            while (copied < size) {
+                int length = (int) Math.min(buffer.length, size - copied);
+                randomAccessFile.seek(offset + copied);
+                randomAccessFile.readFully(buffer, 0, length);
+                randomAccessFile.seek(copied);
+                randomAccessFile.write(buffer, 0, length);
+                copied += length;
+            }
+            randomAccessFile.setLength(size);
+
+            int stepsCount = endStep - firstStep;
+            long[] newPositions = new long[Math.max(16, stepsCount * 2 + 1)];
+            for (int i = 0; i <= stepsCount; i++) {
+                newPositions[i] = positions[firstStep + i] - offset;
+            }
+            positions = newPositions;
+            firstStep = 0;
+            endStep = stepsCount;
+        }
+    }
+
+    /**
+     * Document filter capturing text before removal.
+     */
+    @ParametersAreNonnullByDefault
+    private static class CapturingFilter extends DocumentFilter {
+
+        private final DocumentFilter delegate;
+        private String removedText = null;
+        private int removedOffset;
+        private boolean replacing = false;
+        private int replaceEditsCount;
+
+        CapturingFilter(@Nullable DocumentFilter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void remove(DocumentFilter.FilterBypass fb, int offset, int length) throws BadLocationException {
+            capture(fb.getDocument(), offset, length);
+            if (delegate != null) {
+                delegate.remove(fb, offset, length);
+            } else {
+                fb.remove(offset, length);
+            }
+        }
+
+        @Override
+        public void insertString(DocumentFilter.FilterBypass fb, int offset, String string, @Nullable AttributeSet attr) throws BadLocationException {
+            if (delegate != null) {
+                delegate.insertString(fb, offset, string, attr);
+            } else {
+                fb.insertString(offset, string, attr);
+            }
+        }
+
+        @Override
+        public void replace(DocumentFilter.FilterBypass fb, int offset, int length, @Nullable String text, @Nullable AttributeSet attrs) throws BadLocationException {
+            capture(fb.getDocument(), offset, length);
+            replacing = length > 0;
+            replaceEditsCount = 0;
+            try {
+                if (delegate != null) {
+                    delegate.replace(fb, offset, length, text, attrs);
+                } else {
+                    fb.replace(offset, length, text, attrs);
+                }
+            } finally {
+                replacing = false;
+            }
+        }
+
+        private void capture(Document document, int offset, int length) throws BadLocationException {
+            removedText = length > 0 ? document.getText(offset, length) : null;
+            removedOffset = offset;
+        }
+
+        @Nullable
+        String takeRemovedText(int offset, int length) {
+            String text = removedText;
+            removedText = null;
+            return text != null && removedOffset == offset && text.length() == length ? text : null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api.gui;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JProgressBar;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+import org.exbin.jaguif.utils.UiUtils;
+
+/**
+ * Panel shown instead of document content while document is loading.
+ * <p>
+ * Progress can be reported from any thread.
+ */
+@ParametersAreNonnullByDefault
+public class DocumentLoadingPanel extends javax.swing.JPanel implements OperationProgressStateListener {
+
+    private final ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(DocumentLoadingPanel.class);
+
+    private final JLabel loadingLabel = new JLabel();
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton();
+    private CancellableOperation operation = null;
+
+    public DocumentLoadingPanel() {
+        initComponents();
+    }
+
+    private void initComponents() {
+        setName("Form"); // NOI18N
+        setLayout(new GridBagLayout());
+
+        loadingLabel.setName("loadingLabel"); // NOI18N
+        progressBar.setIndeterminate(true);
+        progressBar.setName("progressBar"); // NOI18N
+        cancelButton.setText(resourceBundle.getString("cancelButton.text")); // NOI18N
+        cancelButton.setName("cancelButton"); // NOI18N
+        cancelButton.addActionListener((evt) -> {
+            cancelButton.setEnabled(false);
+            if (operation != null) {
+                operation.cancelOperation();
+            }
+        });
+
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridx = 0;
+        constraints.insets = new Insets(5, 5, 5, 5);
+        add(loadingLabel, constraints);
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        add(progressBar, constraints);
+        constraints.fill = GridBagConstraints.NONE;
+        add(cancelButton, constraints);
+    }
+
+    public void setFileName(String fileName) {
+        loadingLabel.setText(MessageFormat.format(resourceBundle.getString("loadingLabel.text"), fileName));
+    }
+
+    /**
+     * Sets operation to cancel when cancel button is pressed.
+     *
+     * @param operation loading operation
+     */
+    public void setOperation(@Nullable CancellableOperation operation) {
+        this.operation = operation;
+        cancelButton.setEnabled(operation != null && !operation.isCancelled());
+    }
+
+    @Override
+    public void operationInProgress(int progress) {
+        UiUtils.invokeInUiThread(() -> {
+            progressBar.setIndeterminate(progress < 0);
+            if (progress >= 0) {
+                progressBar.setValue(progress);
+            }
+        });
+    }
+}
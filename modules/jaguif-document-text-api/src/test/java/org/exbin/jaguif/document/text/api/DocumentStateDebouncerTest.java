@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.util.Random;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for debouncing of document state updates.
+ */
+@ParametersAreNonnullByDefault
+public class DocumentStateDebouncerTest {
+
+    private static final int FRAMES_COUNT = 50;
+    private static final int EDITS_PER_FRAME = 100;
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testCoalescing() throws Exception {
+        DocumentStateDebouncer debouncer = new DocumentStateDebouncer();
+        int[] counts = new int[3];
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 1000; i++) {
+                debouncer.schedule(String.class, () -> counts[0]++);
+                debouncer.schedule(Integer.class, () -> counts[1]++);
+            }
+            Assert.assertTrue(debouncer.isPending());
+            Assert.assertEquals(0, counts[0]);
+        });
+        waitForUpdates(debouncer);
+        Assert.assertEquals(1, counts[0]);
+        Assert.assertEquals(1, counts[1]);
+
+        SwingUtilities.invokeAndWait(() -> {
+            debouncer.schedule(String.class, () -> counts[0]++);
+            debouncer.flush();
+            Assert.assertEquals(2, counts[0]);
+            debouncer.schedule(String.class, () -> counts[0]++);
+            debouncer.cancel();
+            Assert.assertFalse(debouncer.isPending());
+
+            debouncer.setLatency(0);
+            debouncer.schedule(Long.class, () -> counts[2]++);
+            debouncer.schedule(Long.class, () -> counts[2]++);
+            Assert.assertEquals(2, counts[2]);
+        });
+        Assert.assertEquals(2, counts[0]);
+    }
+
+    @Test
+    public void testCancelOfSingleState() throws Exception {
+        DocumentStateDebouncer debouncer = new DocumentStateDebouncer();
+        int[] counts = new int[2];
+        SwingUtilities.invokeAndWait(() -> {
+            debouncer.schedule(UndoRedoStateKey.class, () -> counts[0]++);
+            debouncer.schedule(CaretPositionKey.class, () -> counts[1]++);
+            debouncer.cancel(UndoRedoStateKey.class);
+            Assert.assertTrue(debouncer.isPending());
+        });
+        waitForUpdates(debouncer);
+        Assert.assertEquals(0, counts[0]);
+        Assert.assertEquals(1, counts[1]);
+
+        SwingUtilities.invokeAndWait(() -> {
+            debouncer.schedule(UndoRedoStateKey.class, () -> counts[0]++);
+            debouncer.cancel(UndoRedoStateKey.class);
+            Assert.assertFalse(debouncer.isPending());
+        });
+    }
+
+    @Test
+    public void testSyntheticEdits() throws Exception {
+        Random random = new Random(13);
+        DocumentStateDebouncer debouncer = new DocumentStateDebouncer();
+        EditHarness harness = new EditHarness(debouncer);
+        for (int frame = 0; frame < FRAMES_COUNT; frame++) {
+            SwingUtilities.invokeAndWait(() -> {
+                for (int i = 0; i < EDITS_PER_FRAME; i++) {
+                    harness.randomEdit(random);
+                }
+            });
+            waitForUpdates(debouncer);
+        }
+
+        Assert.assertTrue(harness.undoEvents > 10 * FRAMES_COUNT);
+        Assert.assertTrue(harness.caretEvents > 10 * FRAMES_COUNT);
+        Assert.assertEquals(FRAMES_COUNT, harness.undoNotifications);
+        Assert.assertEquals(FRAMES_COUNT, harness.caretNotifications);
+        Assert.assertTrue(harness.selectionNotifications <= FRAMES_COUNT);
+
+        // Immediate updates for comparison
+        debouncer.setLatency(0);
+        EditHarness immediateHarness = new EditHarness(debouncer);
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < EDITS_PER_FRAME; i++) {
+                immediateHarness.randomEdit(random);
+            }
+        });
+        Assert.assertEquals(immediateHarness.undoEvents, immediateHarness.undoNotifications);
+        Assert.assertEquals(immediateHarness.caretEvents, immediateHarness.caretNotifications);
+    }
+
+    private static void waitForUpdates(DocumentStateDebouncer debouncer) throws Exception {
+        long start = System.currentTimeMillis();
+        while (debouncer.isPending()) {
+            Assert.assertTrue("Update timeout", System.currentTimeMillis() - start < TIMEOUT);
+            Thread.sleep(1);
+        }
+        // Let the timer task finish
+        SwingUtilities.invokeAndWait(() -> {
+        });
+    }
+
+    /**
+     * Text area with state notifications wired in the same way as in text
+     * document.
+     */
+    private static class EditHarness {
+
+        private final JTextArea textArea = new JTextArea(new PlainDocument());
+        private final TextUndoManager undoManager = new TextUndoManager();
+        private int undoEvents = 0;
+        private int caretEvents = 0;
+        private int selectionEvents = 0;
+        private int undoNotifications = 0;
+        private int caretNotifications = 0;
+        private int selectionNotifications = 0;
+        private boolean selection = false;
+
+        public EditHarness(DocumentStateDebouncer debouncer) {
+            undoManager.install(textArea.getDocument());
+            undoManager.setUndoRedoChangeListener(() -> {
+                undoEvents++;
+                debouncer.schedule(UndoRedoStateKey.class, () -> undoNotifications++);
+            });
+            textArea.addCaretListener((e) -> {
+                caretEvents++;
+                debouncer.schedule(CaretPositionKey.class, () -> caretNotifications++);
+                boolean hasSelection = e.getDot() != e.getMark();
+                if (selection != hasSelection) {
+                    selection = hasSelection;
+                    selectionEvents++;
+                    debouncer.schedule(SelectionKey.class, () -> selectionNotifications++);
+                }
+            });
+        }
+
+        public void randomEdit(Random random) {
+            try {
+                int length = textArea.getDocument().getLength();
+                int action = random.nextInt(10);
+                if (action < 6) {
+                    textArea.setCaretPosition(random.nextInt(length + 1));
+                    textArea.replaceSelection(String.valueOf((char) ('a' + random.nextInt(26))));
+                } else if (action < 8 && length > 0) {
+                    int offset = random.nextInt(length);
+                    textArea.getDocument().remove(offset, 1);
+                } else if (length > 0) {
+                    int start = random.nextInt(length);
+                    textArea.select(start, start + random.nextInt(length - start + 1));
+                } else {
+                    textArea.insert("x", 0);
+                }
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private static class UndoRedoStateKey {
+    }
+
+    private static class CaretPositionKey {
+    }
+
+    private static class SelectionKey {
+    }
+}
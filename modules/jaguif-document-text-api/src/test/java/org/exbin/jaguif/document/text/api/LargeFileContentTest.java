@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import org.exbin.jaguif.document.text.gui.LargeFileTextAreaUI;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for memory mapped large file content.
+ */
+@ParametersAreNonnullByDefault
+public class LargeFileContentTest {
+
+    private static final long LARGE_FILE_SIZE = 1024L * 1024 * 1024;
+    private static final int RANDOM_ACCESS_COUNT = 10000;
+    private static final String LINE = "2024-01-01 12:00:00.000 INFO  [worker-1] org.exbin.Sample - Processing request number ";
+
+    @Test
+    public void testMatchesPlainDocument() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longLine.append("long€line").append(i);
+        }
+        String[] texts = {
+            "",
+            "\n",
+            "\n\n\n",
+            "single line",
+            "first\nsecond\nthird\n",
+            "first\nsecond\nthird",
+            "\nleading\n\nempty\n\n",
+            "příliš\nžluťoučký kůň 😀\núpěl\n\nďábelské ódy",
+            "short\n" + longLine + "\nshort\n" + longLine,
+            longLine.toString()
+        };
+        int[] pageSizes = {1, 3, 7, 64, LargeFileContent.DEFAULT_PAGE_SIZE};
+        for (String text : texts) {
+            for (int pageSize : pageSizes) {
+                assertMatches(text, StandardCharsets.UTF_8, pageSize);
+            }
+        }
+        assertMatches("příliš\nžluťoučký\r\nkůň", Charset.forName("ISO-8859-2"), 4);
+    }
+
+    @Test
+    public void testSupportedCharsets() {
+        Assert.assertTrue(LargeFileContent.isSupportedCharset(StandardCharsets.UTF_8));
+        Assert.assertTrue(LargeFileContent.isSupportedCharset(StandardCharsets.ISO_8859_1));
+        Assert.assertTrue(LargeFileContent.isSupportedCharset(StandardCharsets.US_ASCII));
+        Assert.assertFalse(LargeFileContent.isSupportedCharset(StandardCharsets.UTF_16));
+        Assert.assertFalse(LargeFileContent.isSupportedCharset(StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    public void testLoaderCreatesLargeFileDocument() throws Exception {
+        File file = File.createTempFile("largeFile", ".txt");
+        try {
+            byte[] content = "line 1\nline 2 €\n".getBytes(StandardCharsets.UTF_8);
+            byte[] data = new byte[content.length + 3];
+            data[0] = (byte) 0xEF;
+            data[1] = (byte) 0xBB;
+            data[2] = (byte) 0xBF;
+            System.arraycopy(content, 0, data, 3, content.length);
+            Files.write(file.toPath(), data);
+
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.ISO_8859_1);
+            loader.setLargeFileThreshold(0);
+            Document document = loader.load();
+            Assert.assertTrue(document instanceof LargeFileDocument);
+            Assert.assertEquals(StandardCharsets.UTF_8, loader.getCharset());
+            Assert.assertEquals("line 1\nline 2 €\n", document.getText(0, document.getLength()));
+            Assert.assertEquals(1000, loader.getOperationProgress());
+
+            try {
+                document.insertString(0, "text", null);
+                Assert.fail("Content is not read-only");
+            } catch (BadLocationException ex) {
+                // Expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTextAreaView() throws Exception {
+        File file = File.createTempFile("largeFile", ".txt");
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                builder.append(LINE).append(i).append(i % 10 == 0 ? "\tindented\n" : "\n");
+            }
+            String text = builder.toString();
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            LargeFileDocument document = createDocument(file, StandardCharsets.UTF_8, 256);
+
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    JTextArea textArea = new JTextArea();
+                    textArea.setUI(new LargeFileTextAreaUI());
+                    textArea.setDocument(document);
+                    textArea.setSize(textArea.getPreferredSize());
+                    Assert.assertEquals(1001, textArea.getLineCount());
+                    Assert.assertEquals(text.indexOf("\n" + LINE + "500") + 1, textArea.getLineStartOffset(500));
+
+                    int offset = textArea.getLineStartOffset(700) + 5;
+                    Rectangle position = textArea.modelToView(offset);
+                    Assert.assertEquals(offset, textArea.viewToModel(position.getLocation()));
+                    Assert.assertTrue(textArea.getPreferredSize().width >= textArea.getFontMetrics(textArea.getFont()).charWidth('m') * (LINE.length() + 3));
+                } catch (BadLocationException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeFile() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        File file = File.createTempFile("largeFile", ".log");
+        try {
+            Assume.assumeTrue(file.getParentFile().getUsableSpace() > LARGE_FILE_SIZE * 4);
+            writeLines(file, LARGE_FILE_SIZE);
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+
+            long start = System.nanoTime();
+            LargeFileDocument document = createDocument(file, StandardCharsets.UTF_8, LargeFileContent.DEFAULT_PAGE_SIZE);
+            long indexTime = System.nanoTime() - start;
+            LargeFileContent content = document.getLargeFileContent();
+            Element root = document.getDefaultRootElement();
+            int linesCount = root.getElementCount();
+
+            Random random = new Random(1);
+            Segment segment = new Segment();
+            start = System.nanoTime();
+            for (int i = 0; i < RANDOM_ACCESS_COUNT; i++) {
+                Element line = root.getElement(random.nextInt(linesCount - 1));
+                document.getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset(), segment);
+                Assert.assertEquals('\n', segment.array[segment.offset + segment.count - 1]);
+            }
+            long accessTime = System.nanoTime() - start;
+
+            System.gc();
+            long retained = runtime.totalMemory() - runtime.freeMemory() - usedBefore;
+            System.out.println("Indexed " + (LARGE_FILE_SIZE / (1024 * 1024)) + " MB, " + linesCount + " lines in " + content.getPagesCount() + " pages: " + (indexTime / 1000000) + " ms");
+            System.out.println("  " + RANDOM_ACCESS_COUNT + " random line reads: " + (accessTime / 1000000) + " ms, retained heap: " + (retained / (1024 * 1024)) + " MB");
+
+            Assert.assertEquals(LARGE_FILE_SIZE, document.getLength());
+            Assert.assertEquals(LINE + "12345\n", document.getText(root.getElement(12345).getStartOffset(), LINE.length() + 6));
+            Assert.assertTrue("Retained heap " + retained, retained < 64 * 1024 * 1024);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertMatches(String text, Charset charset, int pageSize) throws IOException, BadLocationException {
+        File file = File.createTempFile("largeFile", ".txt");
+        try {
+            Files.write(file.toPath(), text.getBytes(charset));
+            LargeFileDocument document = createDocument(file, charset, pageSize);
+            PlainDocument expected = new PlainDocument();
+            expected.insertString(0, new String(text.getBytes(charset), charset), null);
+            String description = "Text \"" + text + "\", page size " + pageSize;
+
+            Assert.assertEquals(description, expected.getLength(), document.getLength());
+            Assert.assertEquals(description, expected.getText(0, expected.getLength()), document.getText(0, document.getLength()));
+            Element expectedRoot = expected.getDefaultRootElement();
+            Element root = document.getDefaultRootElement();
+            Assert.assertEquals(description, expectedRoot.getElementCount(), root.getElementCount());
+            Assert.assertEquals(description, expectedRoot.getEndOffset(), root.getEndOffset());
+            for (int line = 0; line < expectedRoot.getElementCount(); line++) {
+                Assert.assertEquals(description + ", line " + line, expectedRoot.getElement(line).getStartOffset(), root.getElement(line).getStartOffset());
+                Assert.assertEquals(description + ", line " + line, expectedRoot.getElement(line).getEndOffset(), root.getElement(line).getEndOffset());
+            }
+            for (int offset = 0; offset <= expected.getLength(); offset++) {
+                Assert.assertEquals(description + ", offset " + offset, expectedRoot.getElementIndex(offset), root.getElementIndex(offset));
+                Assert.assertEquals(description + ", offset " + offset, expected.getText(offset, expected.getLength() - offset), document.getText(offset, document.getLength() - offset));
+            }
+
+            // Partial return provides text up to the end of the page
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            int offset = 0;
+            StringBuilder builder = new StringBuilder();
+            while (offset < document.getLength()) {
+                document.getText(offset, document.getLength() - offset, segment);
+                Assert.assertTrue(segment.count > 0);
+                builder.append(segment.array, segment.offset, segment.count);
+                offset += segment.count;
+            }
+            Assert.assertEquals(description, expected.getText(0, expected.getLength()), builder.toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Nonnull
+    private static LargeFileDocument createDocument(File file, Charset charset, int pageSize) throws IOException {
+        LargeFileContent content = new LargeFileContent(file, charset, 0);
+        content.setPageSize(pageSize);
+        content.setCachedPagesCount(4);
+        content.buildIndex();
+        return new LargeFileDocument(content);
+    }
+
+    private static void writeLines(File file, long size) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 65536)) {
+            long written = 0;
+            int lineNumber = 0;
+            while (written < size) {
+                byte[] line = (LINE + lineNumber + "\n").getBytes(StandardCharsets.US_ASCII);
+                int length = (int) Math.min(line.length, size - written);
+                output.write(line, 0, length);
+                written += length;
+                lineNumber++;
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for streaming text document loader.
+ */
+@ParametersAreNonnullByDefault
+public class TextDocumentLoaderTest {
+
+    private static final long LARGE_FILE_SIZE = 100L * 1024 * 1024;
+    private static final String LINE = "2024-01-01 12:00:00.000 INFO  [worker-1] org.exbin.Sample - Processing request number ";
+    private static final int EDT_PROBE_INTERVAL = 5;
+
+    @Test
+    public void testCharsetDetection() {
+        Charset latin = StandardCharsets.ISO_8859_1;
+        Assert.assertEquals(StandardCharsets.UTF_8, TextDocumentLoader.detectCharset(ByteBuffer.wrap(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a'}), latin));
+        Assert.assertEquals(StandardCharsets.UTF_16BE, TextDocumentLoader.detectCharset(ByteBuffer.wrap(new byte[]{(byte) 0xFE, (byte) 0xFF, 0, 'a'}), latin));
+        Assert.assertEquals(StandardCharsets.UTF_16LE, TextDocumentLoader.detectCharset(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFE, 'a', 0}), latin));
+        Assert.assertEquals(latin, TextDocumentLoader.detectCharset(ByteBuffer.wrap("plain ascii".getBytes(StandardCharsets.US_ASCII)), latin));
+        Assert.assertEquals(StandardCharsets.UTF_8, TextDocumentLoader.detectCharset(ByteBuffer.wrap("příliš žluťoučký".getBytes(StandardCharsets.UTF_8)), latin));
+        Assert.assertEquals(latin, TextDocumentLoader.detectCharset(ByteBuffer.wrap("příliš".getBytes(latin)), latin));
+
+        // Multibyte sequence cut by the end of the sample
+        byte[] data = "€ab€".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(StandardCharsets.UTF_8, TextDocumentLoader.detectCharset(ByteBuffer.wrap(data, 0, data.length - 1), latin));
+    }
+
+    @Test
+    public void testLoadAcrossBufferBoundaries() throws IOException, BadLocationException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("line ").append(i).append(" € ž 😀\n");
+        }
+        String text = builder.toString();
+        File file = File.createTempFile("textLoader", ".txt");
+        try {
+            ByteBuffer bom = ByteBuffer.wrap(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+            byte[] content = text.getBytes(StandardCharsets.UTF_8);
+            byte[] data = new byte[bom.capacity() + content.length];
+            bom.get(data, 0, bom.capacity());
+            System.arraycopy(content, 0, data, bom.capacity(), content.length);
+            Files.write(file.toPath(), data);
+
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.ISO_8859_1);
+            // Small odd buffer splits multibyte sequences
+            loader.setBufferSize(17);
+            Document document = loader.load();
+            Assert.assertEquals(StandardCharsets.UTF_8, loader.getCharset());
+            Assert.assertEquals(text, document.getText(0, document.getLength()));
+            Assert.assertEquals(1000, loader.getOperationProgress());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        File file = File.createTempFile("textLoader", ".txt");
+        try {
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.UTF_8);
+            Assert.assertEquals(0, loader.load().getLength());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCancellation() throws IOException {
+        File file = File.createTempFile("textLoader", ".txt");
+        try {
+            writeLines(file, 1024 * 1024);
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.UTF_8);
+            loader.setBufferSize(4096);
+            loader.setProgressListener((progress) -> {
+                if (progress >= 10) {
+                    loader.cancelOperation();
+                }
+            });
+            try {
+                loader.load();
+                Assert.fail("Loading not cancelled");
+            } catch (CancellationException ex) {
+                Assert.assertTrue(loader.isCancelled());
+                Assert.assertTrue(loader.getOperationProgress() < 1000);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeFileLoading() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        // Content is stored as UTF-16 in document, so there must be room for it
+        Assume.assumeTrue(Runtime.getRuntime().maxMemory() >= LARGE_FILE_SIZE * 8);
+        File file = File.createTempFile("textLoader", ".log");
+        try {
+            writeLines(file, LARGE_FILE_SIZE);
+            JTextArea[] textArea = new JTextArea[1];
+            SwingUtilities.invokeAndWait(() -> textArea[0] = new JTextArea());
+
+            System.gc();
+            long baseline = getUsedHeap();
+            resetPeakHeap();
+            AtomicLong maxEdtDelay = new AtomicLong();
+            EdtProbe probe = new EdtProbe(maxEdtDelay);
+            probe.start();
+
+            long start = System.nanoTime();
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.UTF_8);
+            Document document = loader.load();
+            long loadTime = System.nanoTime() - start;
+            long swapStart = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> textArea[0].setDocument(document));
+            long swapTime = System.nanoTime() - swapStart;
+            probe.finish();
+
+            long peakHeap = getPeakHeap() - baseline;
+            System.gc();
+            long retainedHeap = getUsedHeap() - baseline;
+            long contentSize = document.getLength() * 2L;
+            System.out.println("Loaded " + describe(file.length()) + " in " + (loadTime / 1000000) + " ms, swap " + (swapTime / 1000000) + " ms");
+            System.out.println("  heap growth for " + describe(contentSize) + " of characters, peak: " + describe(peakHeap) + ", retained: " + describe(retainedHeap));
+            System.out.println("  max EDT delay: " + maxEdtDelay.get() + " ms");
+
+            Assert.assertEquals(file.length(), document.getLength());
+            Assert.assertTrue(document.getText(0, LINE.length()).startsWith(LINE));
+            // Content must not be held twice, the rest is line structure of the document
+            Assert.assertTrue("Retained heap growth " + retainedHeap, retainedHeap < contentSize * 2);
+            Assert.assertTrue("Peak heap growth " + peakHeap, peakHeap < contentSize * 4);
+            Assert.assertTrue("EDT blocked for " + maxEdtDelay.get() + " ms", maxEdtDelay.get() < 1000);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void writeLines(File file, long size) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 65536)) {
+            long written = 0;
+            int lineNumber = 0;
+            while (written < size) {
+                byte[] line = (LINE + lineNumber + "\n").getBytes(StandardCharsets.US_ASCII);
+                int length = (int) Math.min(line.length, size - written);
+                output.write(line, 0, length);
+                written += length;
+                lineNumber++;
+            }
+        }
+    }
+
+    private static long getUsedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Measures how long event dispatch thread takes to respond.
+     */
+    @ParametersAreNonnullByDefault
+    private static class EdtProbe extends Thread {
+
+        private final AtomicLong maxDelay;
+        private volatile boolean running = true;
+
+        public EdtProbe(AtomicLong maxDelay) {
+            this.maxDelay = maxDelay;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long posted = System.nanoTime();
+                try {
+                    SwingUtilities.invokeAndWait(() -> {
+                        long delay = (System.nanoTime() - posted) / 1000000;
+                        maxDelay.accumulateAndGet(delay, Math::max);
+                    });
+                    Thread.sleep(EDT_PROBE_INTERVAL);
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+
+        public void finish() throws InterruptedException {
+            running = false;
+            join();
+        }
+    }
+
+    @Nonnull
+    private static String describe(long bytes) {
+        return (bytes / (1024 * 1024)) + " MB";
+    }
+}
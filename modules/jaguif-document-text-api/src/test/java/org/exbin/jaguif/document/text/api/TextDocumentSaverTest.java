@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for atomic streaming text document saver.
+ */
+@ParametersAreNonnullByDefault
+public class TextDocumentSaverTest {
+
+    private static final int THROUGHPUT_DOCUMENT_SIZE = 50 * 1024 * 1024;
+    private static final String ORIGINAL_CONTENT = "original content\n";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("textSaver").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSaveAcrossSegmentBoundaries() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("line ").append(i).append(" € ž 😀\n");
+        }
+        String text = builder.toString();
+        File file = new File(directory, "sample.txt");
+
+        TextDocumentSaver saver = new TextDocumentSaver(createDocument(text), StandardCharsets.UTF_8);
+        // Small odd buffer splits surrogate pairs
+        saver.setBufferSize(17);
+        saver.save(file);
+        Assert.assertEquals(text, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+        saver = new TextDocumentSaver(createDocument(text), StandardCharsets.UTF_16LE);
+        saver.save(file);
+        Assert.assertEquals(text, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_16LE));
+        Assert.assertArrayEquals(new String[]{"sample.txt"}, directory.list());
+    }
+
+    @Test
+    public void testEmptyDocument() throws Exception {
+        File file = new File(directory, "empty.txt");
+        writeOriginal(file);
+        new TextDocumentSaver(new PlainDocument(), StandardCharsets.UTF_8).save(file);
+        Assert.assertEquals(0, file.length());
+    }
+
+    @Test
+    public void testByteOrderMarkRoundTrip() throws Exception {
+        String text = "first € line\nsecond ž line\n";
+        byte[][] boms = {{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, {(byte) 0xFE, (byte) 0xFF}, {(byte) 0xFF, (byte) 0xFE}};
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE};
+        File file = new File(directory, "bom.txt");
+        for (int i = 0; i < charsets.length; i++) {
+            byte[] content = text.getBytes(charsets[i]);
+            byte[] original = new byte[boms[i].length + content.length];
+            System.arraycopy(boms[i], 0, original, 0, boms[i].length);
+            System.arraycopy(content, 0, original, boms[i].length, content.length);
+            Files.write(file.toPath(), original);
+
+            TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.ISO_8859_1);
+            Document document = loader.load();
+            Assert.assertEquals(charsets[i], loader.getCharset());
+            Assert.assertTrue(loader.isByteOrderMark());
+            Assert.assertEquals(text, document.getText(0, document.getLength()));
+
+            TextDocumentSaver saver = new TextDocumentSaver(document, loader.getCharset());
+            saver.setByteOrderMark(loader.isByteOrderMark());
+            saver.save(file);
+            Assert.assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        }
+
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        TextDocumentLoader loader = new TextDocumentLoader(file, StandardCharsets.ISO_8859_1);
+        Document document = loader.load();
+        Assert.assertFalse(loader.isByteOrderMark());
+        TextDocumentSaver saver = new TextDocumentSaver(document, loader.getCharset());
+        saver.setByteOrderMark(loader.isByteOrderMark());
+        saver.save(file);
+        Assert.assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testFailingWriterKeepsTarget() throws Exception {
+        File file = new File(directory, "target.txt");
+        writeOriginal(file);
+        Document document = createDocument(createContent(1024 * 1024));
+
+        FailingSaver saver = new FailingSaver(document, StandardCharsets.UTF_8, 100000);
+        saver.setBufferSize(4096);
+        try {
+            saver.save(file);
+            Assert.fail("Failure not reported");
+        } catch (IOException ex) {
+            Assert.assertEquals(FailingSaver.FAILURE_MESSAGE, ex.getMessage());
+        }
+
+        Assert.assertTrue(saver.getWrittenBytes() > 0);
+        Assert.assertEquals(ORIGINAL_CONTENT, readFile(file));
+        Assert.assertArrayEquals("Temporary file left behind", new String[]{"target.txt"}, directory.list());
+
+        // Unmodified target is written after failure is resolved
+        new TextDocumentSaver(document, StandardCharsets.UTF_8).save(file);
+        Assert.assertEquals(document.getLength(), file.length());
+    }
+
+    @Test
+    public void testFailingWriterWithoutTarget() throws Exception {
+        File file = new File(directory, "new.txt");
+        FailingSaver saver = new FailingSaver(createDocument(createContent(65536)), StandardCharsets.UTF_8, 0);
+        try {
+            saver.save(file);
+            Assert.fail("Failure not reported");
+        } catch (IOException ex) {
+            // Expected
+        }
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testBackup() throws Exception {
+        File file = new File(directory, "backup.txt");
+        writeOriginal(file);
+        TextDocumentSaver saver = new TextDocumentSaver(createDocument("new content"), StandardCharsets.UTF_8);
+        saver.setKeepBackup(true);
+        saver.save(file);
+
+        Assert.assertEquals("new content", readFile(file));
+        Assert.assertEquals(ORIGINAL_CONTENT, readFile(TextDocumentSaver.getBackupFile(file)));
+
+        saver = new TextDocumentSaver(createDocument("newer content"), StandardCharsets.UTF_8);
+        saver.setKeepBackup(true);
+        saver.save(file);
+        Assert.assertEquals("newer content", readFile(file));
+        Assert.assertEquals("new content", readFile(TextDocumentSaver.getBackupFile(file)));
+    }
+
+    @Test
+    public void testPermissionsPreserved() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File file = new File(directory, "script.sh");
+        writeOriginal(file);
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+        Files.setPosixFilePermissions(file.toPath(), permissions);
+
+        new TextDocumentSaver(createDocument("#!/bin/sh\n"), StandardCharsets.UTF_8).save(file);
+        Assert.assertEquals(permissions, Files.getPosixFilePermissions(file.toPath()));
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        String content = createContent(THROUGHPUT_DOCUMENT_SIZE);
+        Document document = createDocument(content);
+        content = null;
+        File file = new File(directory, "large.txt");
+        File legacyFile = new File(directory, "legacy.txt");
+
+        long start = System.nanoTime();
+        saveLegacy(document, legacyFile, StandardCharsets.UTF_8);
+        long legacyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        new TextDocumentSaver(document, StandardCharsets.UTF_8).save(file);
+        long streamedTime = System.nanoTime() - start;
+
+        System.out.println("Save of " + (THROUGHPUT_DOCUMENT_SIZE / (1024 * 1024)) + " MB, full text copy: " + (legacyTime / 1000000) + " ms, streamed with sync: " + (streamedTime / 1000000) + " ms ("
+                + (THROUGHPUT_DOCUMENT_SIZE / (1024L * 1024) * 1000000000L / Math.max(streamedTime, 1)) + " MB/s)");
+        Assert.assertEquals(THROUGHPUT_DOCUMENT_SIZE, file.length());
+        Assert.assertEquals(legacyFile.length(), file.length());
+    }
+
+    /**
+     * Original way of saving which copies whole text first.
+     */
+    private static void saveLegacy(Document document, File file, Charset charset) throws IOException, BadLocationException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset))) {
+            String text = document.getText(0, document.getLength());
+            int offset = 0;
+            while (offset < text.length()) {
+                int length = Math.min(1024, text.length() - offset);
+                writer.write(text, offset, length);
+                offset += length;
+            }
+        }
+    }
+
+    @Nonnull
+    private static Document createDocument(String text) throws BadLocationException {
+        PlainDocument document = new PlainDocument(new GapContent(text.length() + 1));
+        document.insertString(0, text, null);
+        return document;
+    }
+
+    @Nonnull
+    private static String createContent(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        int lineNumber = 0;
+        while (builder.length() < size) {
+            builder.append("Sample line of text document number ").append(lineNumber++).append('\n');
+        }
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    private static void writeOriginal(File file) throws IOException {
+        Files.write(file.toPath(), ORIGINAL_CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nonnull
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Saver simulating failure of the disk after given amount of bytes.
+     */
+    @ParametersAreNonnullByDefault
+    private static class FailingSaver extends TextDocumentSaver {
+
+        static final String FAILURE_MESSAGE = "No space left on device";
+
+        private final long failAfter;
+        private long writtenBytes = 0;
+
+        public FailingSaver(Document document, Charset charset, long failAfter) {
+            super(document, charset);
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        protected void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            if (writtenBytes + buffer.remaining() > failAfter) {
+                throw new IOException(FAILURE_MESSAGE);
+            }
+            writtenBytes += channel.write(buffer);
+        }
+
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+    }
+}
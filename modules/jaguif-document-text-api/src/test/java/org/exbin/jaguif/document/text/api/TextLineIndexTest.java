@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for line index of the text document.
+ */
+@ParametersAreNonnullByDefault
+public class TextLineIndexTest {
+
+    private static final int LARGE_LINES_COUNT = 1000000;
+    private static final int QUERIES_COUNT = 1000000;
+
+    @Test
+    public void testBasicEdits() throws BadLocationException {
+        PlainDocument document = new PlainDocument();
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        Assert.assertSame(lineIndex, TextLineIndex.getLineIndex(document));
+        Assert.assertEquals(1, lineIndex.getLinesCount());
+        Assert.assertEquals(1, lineIndex.getLineEndOffset(0));
+
+        document.insertString(0, "first\nsecond\n\nlast", null);
+        assertMatches(document, lineIndex);
+        Assert.assertEquals(4, lineIndex.getLinesCount());
+        Assert.assertEquals(6, lineIndex.getLineStartOffset(1));
+        Assert.assertEquals(2, lineIndex.getLineIndex(13));
+
+        document.remove(3, 10);
+        assertMatches(document, lineIndex);
+        Assert.assertEquals(2, lineIndex.getLinesCount());
+
+        TextLineIndex.removeLineIndex(document);
+        document.insertString(0, "\n\n", null);
+        Assert.assertEquals(2, lineIndex.getLinesCount());
+        Assert.assertEquals(4, TextLineIndex.getLineIndex(document).getLinesCount());
+    }
+
+    @Test
+    public void testQueriedFromLaterListener() throws BadLocationException {
+        PlainDocument document = new PlainDocument();
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        List<Integer> linesCounts = new ArrayList<>();
+        // Listener added after index is notified before index listener
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                assertMatches(document, lineIndex);
+                linesCounts.add(lineIndex.getLinesCount());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                assertMatches(document, lineIndex);
+                linesCounts.add(lineIndex.getLinesCount());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        document.insertString(0, "first\nsecond\n", null);
+        assertMatches(document, lineIndex);
+        document.insertString(6, "inserted\n\n", null);
+        assertMatches(document, lineIndex);
+        document.remove(0, 12);
+        assertMatches(document, lineIndex);
+        Assert.assertEquals(Arrays.asList(3, 5, 4), linesCounts);
+    }
+
+    @Test
+    public void testRandomEdits() throws BadLocationException {
+        Random random = new Random(17);
+        PlainDocument document = new PlainDocument();
+        document.insertString(0, "initial\ntext\n", null);
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        for (int i = 0; i < 2000; i++) {
+            int length = document.getLength();
+            if (length > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(length);
+                document.remove(offset, 1 + random.nextInt(Math.min(length - offset, 50)));
+            } else {
+                StringBuilder builder = new StringBuilder();
+                int insertedLength = 1 + random.nextInt(40);
+                for (int j = 0; j < insertedLength; j++) {
+                    builder.append(random.nextInt(5) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+                }
+                document.insertString(random.nextInt(length + 1), builder.toString(), null);
+            }
+            assertMatches(document, lineIndex);
+        }
+    }
+
+    @Test
+    public void testLargeDocument() throws BadLocationException {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LARGE_LINES_COUNT; i++) {
+            builder.append("Line number ").append(i).append('\n');
+        }
+        PlainDocument document = new PlainDocument();
+        document.insertString(0, builder.toString(), null);
+
+        long start = System.nanoTime();
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(document);
+        long buildTime = System.nanoTime() - start;
+        Assert.assertEquals(LARGE_LINES_COUNT + 1, lineIndex.getLinesCount());
+
+        Random random = new Random(3);
+        int length = document.getLength();
+        Element root = document.getDefaultRootElement();
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < QUERIES_COUNT; i++) {
+            checksum += lineIndex.getLineIndex(random.nextInt(length));
+        }
+        long indexQueriesTime = System.nanoTime() - start;
+        random = new Random(3);
+        start = System.nanoTime();
+        long expectedChecksum = 0;
+        for (int i = 0; i < QUERIES_COUNT; i++) {
+            expectedChecksum += root.getElementIndex(random.nextInt(length));
+        }
+        long elementQueriesTime = System.nanoTime() - start;
+        Assert.assertEquals(expectedChecksum, checksum);
+
+        // Typing at the start of the document shifts all line starts
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            document.insertString(i, i % 10 == 0 ? "\n" : "x", null);
+        }
+        long editsTime = System.nanoTime() - start;
+        assertMatches(document, lineIndex);
+
+        System.out.println(LARGE_LINES_COUNT + " lines index: build " + (buildTime / 1000000) + " ms, 1000 edits " + (editsTime / 1000000) + " ms");
+        System.out.println("  " + QUERIES_COUNT + " offset to line queries: index " + (indexQueriesTime / 1000000) + " ms, elements " + (elementQueriesTime / 1000000) + " ms");
+    }
+
+    private static void assertMatches(PlainDocument document, TextLineIndex lineIndex) {
+        Element root = document.getDefaultRootElement();
+        Assert.assertEquals(root.getElementCount(), lineIndex.getLinesCount());
+        for (int line = 0; line < root.getElementCount(); line++) {
+            Element element = root.getElement(line);
+            Assert.assertEquals(element.getStartOffset(), lineIndex.getLineStartOffset(line));
+            Assert.assertEquals(element.getEndOffset(), lineIndex.getLineEndOffset(line));
+        }
+        for (int offset = 0; offset <= document.getLength(); offset++) {
+            Assert.assertEquals(root.getElementIndex(offset), lineIndex.getLineIndex(offset));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.api;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for text undo manager.
+ */
+@ParametersAreNonnullByDefault
+public class TextUndoManagerTest {
+
+    @Test
+    public void testTypingMerge() throws Exception {
+        PlainDocument document = new PlainDocument();
+        TestUndoManager undoManager = new TestUndoManager();
+        undoManager.install(document);
+
+        type(document, undoManager, 0, "hello world");
+        Assert.assertEquals(2, undoManager.getStepsCount());
+        undoManager.time += TextUndoManager.DEFAULT_MERGE_INTERVAL + 1;
+        type(document, undoManager, document.getLength(), "!!");
+        Assert.assertEquals(3, undoManager.getStepsCount());
+
+        // Backspace
+        for (int i = 0; i < 4; i++) {
+            undoManager.time += 10;
+            document.remove(document.getLength() - 1, 1);
+        }
+        Assert.assertEquals("hello wor", getText(document));
+        Assert.assertEquals(5, undoManager.getStepsCount());
+
+        undoManager.undo();
+        Assert.assertEquals("hello world", getText(document));
+        undoManager.undo();
+        Assert.assertEquals("hello world!!", getText(document));
+        undoManager.undo();
+        Assert.assertEquals("hello world", getText(document));
+        undoManager.undo();
+        Assert.assertEquals("hello ", getText(document));
+        undoManager.redo();
+        Assert.assertEquals("hello world", getText(document));
+        undoManager.undo();
+        undoManager.undo();
+        Assert.assertEquals("", getText(document));
+        Assert.assertFalse(undoManager.canUndo());
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        PlainDocument document = new PlainDocument();
+        TextUndoManager undoManager = new TextUndoManager();
+        undoManager.install(document);
+        document.insertString(0, "one two three", null);
+        document.replace(4, 3, "2", null);
+        Assert.assertEquals("one 2 three", getText(document));
+        Assert.assertEquals(2, undoManager.getStepsCount());
+        undoManager.undo();
+        Assert.assertEquals("one two three", getText(document));
+        undoManager.redo();
+        Assert.assertEquals("one 2 three", getText(document));
+
+        undoManager.uninstall();
+        Assert.assertNull(document.getDocumentFilter());
+    }
+
+    @Test
+    public void testUndoRedoWithJournal() throws Exception {
+        File directory = Files.createTempDirectory("undoJournal").toFile();
+        try {
+            Random random = new Random(3);
+            PlainDocument document = new PlainDocument();
+            TextUndoManager undoManager = new TextUndoManager();
+            undoManager.setMergeInterval(0);
+            undoManager.setMaxMemorySize(4096);
+            undoManager.setJournalDirectory(directory);
+            undoManager.install(document);
+
+            List<String> states = new ArrayList<>();
+            states.add(getText(document));
+            for (int i = 0; i < 2000; i++) {
+                randomEdit(document, random);
+                states.add(getText(document));
+            }
+            Assert.assertEquals(2000, undoManager.getStepsCount());
+            Assert.assertTrue(undoManager.getJournalStepsCount() > 1000);
+            Assert.assertTrue(undoManager.getMemorySize() <= 4096);
+            Assert.assertEquals(1, directory.list().length);
+
+            for (int i = 1999; i >= 0; i--) {
+                undoManager.undo();
+                Assert.assertEquals(states.get(i), getText(document));
+            }
+            Assert.assertFalse(undoManager.canUndo());
+            for (int i = 1; i <= 1000; i++) {
+                undoManager.redo();
+                Assert.assertEquals(states.get(i), getText(document));
+            }
+
+            // New edit discards redo steps stored in journal
+            randomEdit(document, random);
+            String lastState = getText(document);
+            Assert.assertFalse(undoManager.canRedo());
+            Assert.assertEquals(1001, undoManager.getStepsCount());
+            undoManager.undo();
+            Assert.assertEquals(states.get(1000), getText(document));
+            for (int i = 999; i >= 0; i--) {
+                undoManager.undo();
+                Assert.assertEquals(states.get(i), getText(document));
+            }
+            for (int i = 0; i < 1001; i++) {
+                undoManager.redo();
+            }
+            Assert.assertEquals(lastState, getText(document));
+
+            undoManager.clear();
+            Assert.assertEquals(0, directory.list().length);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testStepsCountLimit() throws Exception {
+        Random random = new Random(5);
+        PlainDocument document = new PlainDocument();
+        TextUndoManager undoManager = new TextUndoManager();
+        undoManager.setMergeInterval(0);
+        undoManager.setMaxStepsCount(100);
+        undoManager.setMaxMemorySize(2048);
+        undoManager.install(document);
+
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            states.add(getText(document));
+            randomEdit(document, random);
+        }
+        Assert.assertEquals(100, undoManager.getStepsCount());
+        for (int i = 0; i < 100; i++) {
+            undoManager.undo();
+        }
+        Assert.assertFalse(undoManager.canUndo());
+        Assert.assertEquals(states.get(400), getText(document));
+        undoManager.clear();
+    }
+
+    @Test
+    public void testHeapCeiling() throws Exception {
+        int pastesCount = 400;
+        int pasteLength = 100000;
+        long maxMemorySize = 1024 * 1024;
+        Random random = new Random(9);
+        PlainDocument document = new PlainDocument();
+        TextUndoManager undoManager = new TextUndoManager();
+        undoManager.setMaxMemorySize(maxMemorySize);
+        undoManager.install(document);
+        char[] paste = new char[pasteLength];
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; i < pastesCount; i++) {
+            for (int j = 0; j < pasteLength; j++) {
+                paste[j] = (char) ('a' + random.nextInt(26));
+            }
+            document.insertString(random.nextInt(document.getLength() + 1), new String(paste), null);
+            if (document.getLength() > pasteLength * 4) {
+                document.remove(random.nextInt(document.getLength() - pasteLength), pasteLength);
+            }
+            Assert.assertTrue(undoManager.getMemorySize() <= maxMemorySize + pasteLength * 2 + 1024);
+        }
+        System.gc();
+        long retained = runtime.totalMemory() - runtime.freeMemory() - usedBefore;
+
+        while (undoManager.canUndo()) {
+            undoManager.undo();
+        }
+        Assert.assertEquals(0, document.getLength());
+        Assert.assertTrue("Retained heap " + retained, retained < 16 * 1024 * 1024);
+        undoManager.clear();
+    }
+
+    private static void type(Document document, TestUndoManager undoManager, int offset, String text) throws BadLocationException {
+        for (int i = 0; i < text.length(); i++) {
+            undoManager.time += 10;
+            document.insertString(offset + i, text.substring(i, i + 1), null);
+        }
+    }
+
+    private static void randomEdit(PlainDocument document, Random random) throws BadLocationException {
+        int length = document.getLength();
+        if (length > 0 && random.nextInt(3) == 0) {
+            int offset = random.nextInt(length);
+            document.remove(offset, Math.min(random.nextInt(20) + 1, length - offset));
+        } else if (length > 0 && random.nextInt(4) == 0) {
+            int offset = random.nextInt(length);
+            document.replace(offset, Math.min(random.nextInt(5), length - offset), "řeplaced\n", null);
+        } else {
+            StringBuilder builder = new StringBuilder();
+            int count = random.nextInt(30) + 1;
+            for (int i = 0; i < count; i++) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+            document.insertString(random.nextInt(length + 1), builder.toString(), null);
+        }
+    }
+
+    @Nonnull
+    private static String getText(Document document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    private static class TestUndoManager extends TextUndoManager {
+
+        private long time = 0;
+
+        @Override
+        protected long getCurrentTime() {
+            return time;
+        }
+    }
+}
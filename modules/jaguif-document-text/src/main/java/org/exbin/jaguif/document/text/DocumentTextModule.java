@@ -31,7 +31,7 @@ import javax.swing.Action;
 import javax.swing.JPopupMenu;
 import javax.swing.filechooser.FileFilter;
 import org.exbin.jaguif.App;
-import org.exbin.jaguif.Module;
+import org.exbin.jaguif.document.text.api.DocumentTextModuleApi;
 import org.exbin.jaguif.ModuleUtils;
 import org.exbin.jaguif.action.api.ActionModuleApi;
 import org.exbin.jaguif.context.api.ContextComponent;
@@ -81,7 +81,7 @@ import org.exbin.jaguif.toolbar.api.ToolBarDefinitionManagement;
  * Text editor module.
  */
 @ParametersAreNonnullByDefault
-public class DocumentTextModule implements Module {
+public class DocumentTextModule implements DocumentTextModuleApi {
 
     public static final String MODULE_ID = ModuleUtils.getModuleIdByApi(DocumentTextModule.class);
 
@@ -15,24 +15,31 @@
  */
 package org.exbin.jaguif.document.text;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
 import org.exbin.jaguif.document.text.gui.TextPanel;
+import org.exbin.jaguif.document.text.api.DocumentStateDebouncer;
+import org.exbin.jaguif.document.text.api.LargeFileDocument;
+import org.exbin.jaguif.document.text.api.TextDocumentLoader;
+import org.exbin.jaguif.document.text.api.TextDocumentSaver;
+import org.exbin.jaguif.document.text.api.TextUndoManager;
+import org.exbin.jaguif.document.text.api.gui.DocumentLoadingPanel;
 import org.exbin.jaguif.operation.undo.api.UndoRedoState;
 import org.exbin.jaguif.action.api.DialogParentComponent;
+import org.exbin.jaguif.action.api.clipboard.ClipboardController;
 import org.exbin.jaguif.operation.undo.api.UndoRedoController;
 import org.exbin.jaguif.context.api.ActiveContextManagement;
 import org.exbin.jaguif.context.api.ContextComponent;
@@ -43,9 +50,13 @@ import org.exbin.jaguif.document.api.EditableDocument;
 import org.exbin.jaguif.document.api.NamedDocument;
 import org.exbin.jaguif.file.api.FileDocument;
 import org.exbin.jaguif.file.api.FileDocumentSource;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+import org.exbin.jaguif.operation.api.OperationStateListener;
+import org.exbin.jaguif.text.encoding.CharsetEncodingState;
 import org.exbin.jaguif.text.encoding.ContextEncoding;
 import org.exbin.jaguif.text.font.TextFontState;
 import org.exbin.jaguif.document.api.EmptyDocumentSource;
+import org.exbin.jaguif.utils.UiUtils;
 
 /**
  * Text document.
@@ -53,12 +64,18 @@ import org.exbin.jaguif.document.api.EmptyDocumentSource;
 @ParametersAreNonnullByDefault
 public class TextDocument implements NamedDocument, ContextDocument, ComponentDocument, FileDocument, EditableDocument {
 
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 64L * 1024 * 1024;
+    private static final String LOADING_THREAD_NAME = "textDocumentLoader";
+
     protected final TextPanel textPanel = new TextPanel();
 
     protected DocumentSource documentSource = null;
     protected String title;
     protected ActiveContextManagement contextManager;
     protected DialogParentComponent dialogParentComponent;
+    protected boolean keepBackup = false;
+    protected boolean byteOrderMark = false;
+    protected long largeFileThreshold = DEFAULT_LARGE_FILE_THRESHOLD;
     protected UndoRedoController undoRedoControl = null;
     protected EditorTextPanelComponent textPanelComponent;
     public TextDocument() {
@@ -67,10 +84,11 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
 
     private void init() {
         textPanelComponent = new EditorTextPanelComponent(textPanel);
+        textPanel.setSelectionChangeListener(this::notifySelectionChanged);
     }
 
     public void registerUndoHandler() {
-        TextPanelCompoundUndoManager undoHandler = textPanel.getUndo();
+        TextUndoManager undoHandler = textPanel.getUndo();
         undoRedoControl = new UndoRedoController() {
             @Override
             public boolean canUndo() {
@@ -117,27 +135,121 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
         if (documentSource instanceof EmptyDocumentSource) {
             return;
         }
-        
-        File file = ((FileDocumentSource) documentSource).getFile();
+
+        FileDocumentSource fileSource = (FileDocumentSource) documentSource;
+        if (SwingUtilities.isEventDispatchThread() && !GraphicsEnvironment.isHeadless()) {
+            loadWithProgress(fileSource);
+            return;
+        }
+
+        // Loading in caller thread is used outside of event dispatch thread and in headless mode
+        TextDocumentLoader loader = createLoader(fileSource);
         try {
-            FileInputStream fileStream = new FileInputStream(file);
-            int gotChars;
-            char[] buffer = new char[32];
-            StringBuilder data = new StringBuilder();
-            BufferedReader rdr = new BufferedReader(new InputStreamReader(fileStream, textPanel.getCharset()));
-            while ((gotChars = rdr.read(buffer)) != -1) {
-                data.append(buffer, 0, gotChars);
-            }
-            textPanel.setText(data.toString());
-            this.documentSource = documentSource;
+            Document document = loader.load();
+            UiUtils.runInUiThread(() -> finishLoading(documentSource, loader, document));
         } catch (IOException ex) {
             Logger.getLogger(TextDocument.class.getName()).log(Level.SEVERE, null, ex);
         }
+    }
 
-        textPanel.setModified(false);
+    /**
+     * Loads document in background thread and shows loading progress instead
+     * of the text area until loading is finished or cancelled.
+     *
+     * @param documentSource document source
+     */
+    private void loadWithProgress(FileDocumentSource documentSource) {
+        DocumentLoadingPanel loadingPanel = new DocumentLoadingPanel();
+        loadingPanel.setFileName(documentSource.getFile().getName());
+        textPanel.setLoadingComponent(loadingPanel);
+        TextDocumentLoader loader = loadFromInBackground(documentSource, loadingPanel, new OperationStateListener() {
+            @Override
+            public void operationStarted() {
+            }
+
+            @Override
+            public void operationFinished() {
+                textPanel.setLoadingComponent(null);
+            }
+
+            @Override
+            public void operationCancelled() {
+                textPanel.setLoadingComponent(null);
+            }
+        });
+        loadingPanel.setOperation(loader);
+    }
+
+    /**
+     * Loads document content in background thread.
+     * <p>
+     * Content is swapped into the text panel in event dispatch thread when
+     * loading is finished and state listener is notified in event dispatch
+     * thread too. Failed loading is reported as cancelled.
+     *
+     * @param documentSource document source
+     * @param progressListener progress listener
+     * @param stateListener state listener
+     * @return loader which can be used to cancel loading
+     */
+    @Nonnull
+    public TextDocumentLoader loadFromInBackground(FileDocumentSource documentSource, @Nullable OperationProgressStateListener progressListener, @Nullable OperationStateListener stateListener) {
+        TextDocumentLoader loader = createLoader(documentSource);
+        loader.setProgressListener(progressListener);
+        Thread loadingThread = new Thread(() -> {
+            try {
+                Document document = loader.load();
+                UiUtils.invokeInUiThread(() -> {
+                    if (loader.isCancelled()) {
+                        notifyLoadingCancelled(stateListener);
+                        return;
+                    }
+
+                    finishLoading(documentSource, loader, document);
+                    if (stateListener != null) {
+                        stateListener.operationFinished();
+                    }
+                });
+            } catch (CancellationException ex) {
+                UiUtils.invokeInUiThread(() -> notifyLoadingCancelled(stateListener));
+            } catch (IOException ex) {
+                Logger.getLogger(TextDocument.class.getName()).log(Level.SEVERE, null, ex);
+                UiUtils.invokeInUiThread(() -> notifyLoadingCancelled(stateListener));
+            }
+        }, LOADING_THREAD_NAME);
+        loadingThread.setDaemon(true);
+        if (stateListener != null) {
+            stateListener.operationStarted();
+        }
+        loadingThread.start();
+        return loader;
+    }
+
+    @Nonnull
+    protected TextDocumentLoader createLoader(FileDocumentSource documentSource) {
+        TextDocumentLoader loader = new TextDocumentLoader(documentSource.getFile(), textPanel.getCharset());
+        loader.setLargeFileThreshold(largeFileThreshold);
+        return loader;
+    }
+
+    private void finishLoading(DocumentSource documentSource, TextDocumentLoader loader, Document document) {
+        Charset charset = loader.getCharset();
+        byteOrderMark = loader.isByteOrderMark();
+        if (charset != null && !charset.equals(textPanel.getCharset())) {
+            textPanel.changeCharset(charset);
+            notifyEncodingChanged();
+        }
+        textPanel.setDocument(document);
+        this.documentSource = documentSource;
         notifyUndoChanged();
     }
 
+    private static void notifyLoadingCancelled(@Nullable OperationStateListener stateListener) {
+        if (stateListener != null) {
+            stateListener.operationCancelled();
+        }
+    }
+
     @Override
     public boolean canSave() {
         return textPanelComponent.isEditable();
@@ -150,28 +262,47 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
         }
         
         File file = ((FileDocumentSource) documentSource).getFile();
+        TextDocumentSaver saver = new TextDocumentSaver(textPanel.getDocument(), textPanel.getCharset());
+        saver.setKeepBackup(keepBackup);
+        saver.setByteOrderMark(byteOrderMark);
         try {
-            try (FileOutputStream output = new FileOutputStream(file)) {
-                String text = textPanel.getText();
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, textPanel.getCharset()))) {
-                    int fileLength = text.length();
-                    int offset = 0;
-                    while (offset < fileLength) {
-                        int length = Math.min(1024, fileLength - offset);
-                        writer.write(text, offset, length);
-                        offset += length;
-                    }
-                    this.documentSource = documentSource;
-                }
-            }
+            saver.save(file);
+            this.documentSource = documentSource;
+            textPanel.setModified(false);
         } catch (IOException ex) {
             Logger.getLogger(TextDocument.class.getName()).log(Level.SEVERE, null, ex);
         }
 
-        textPanel.setModified(false);
         notifyUndoChanged();
     }
 
+    public boolean isKeepBackup() {
+        return keepBackup;
+    }
+
+    /**
+     * Sets whether previous file content should be kept in backup file when
+     * saving.
+     *
+     * @param keepBackup true to keep backup
+     */
+    public void setKeepBackup(boolean keepBackup) {
+        this.keepBackup = keepBackup;
+    }
+
+    public long getLargeFileThreshold() {
+        return largeFileThreshold;
+    }
+
+    /**
+     * Sets file size from which file is opened in read-only large file mode.
+     *
+     * @param largeFileThreshold file size in bytes
+     */
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
     @Nonnull
     @Override
     public Optional<URI> getFileUri() {
@@ -204,7 +335,11 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
 
     @Override
     public void clearFile() {
-        textPanel.setText("");
+        if (textPanel.getDocument() instanceof LargeFileDocument) {
+            textPanel.setDocument(new PlainDocument());
+        } else {
+            textPanel.setText("");
+        }
         textPanel.setModified(false);
         notifyUndoChanged();
     }
@@ -216,6 +351,8 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
 
     public void componentActivated(ActiveContextManagement contextManager) {
         this.contextManager = contextManager;
+        // Pending updates of context states are covered by activation
+        cancelContextStateUpdates();
         contextManager.changeActiveState(ContextComponent.class, textPanelComponent);
         contextManager.changeActiveState(TextFontState.class, textPanelComponent);
         contextManager.changeActiveState(ContextEncoding.class, textPanelComponent);
@@ -225,6 +362,7 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
 
     public void componentDeactivated(ActiveContextManagement contextManager) {
         this.contextManager = null;
+        cancelContextStateUpdates();
         contextManager.changeActiveState(ContextComponent.class, null);
         contextManager.changeActiveState(TextFontState.class, null);
         contextManager.changeActiveState(ContextEncoding.class, null);
@@ -232,15 +370,55 @@ public class TextDocument implements NamedDocument, ContextDocument, ComponentDo
         contextManager.changeActiveState(DialogParentComponent.class, dialogParentComponent);
     }
 
+    private void cancelContextStateUpdates() {
+        DocumentStateDebouncer stateDebouncer = textPanel.getStateDebouncer();
+        stateDebouncer.cancel(UndoRedoState.class);
+        stateDebouncer.cancel(ContextComponent.class);
+        stateDebouncer.cancel(ContextEncoding.class);
+    }
+
     public void setDialogParentComponent(DialogParentComponent dialogParentComponent) {
         this.dialogParentComponent = dialogParentComponent;
     }
 
+    /**
+     * Notifies change of undo state.
+     * <p>
+     * Notifications are coalesced using state debouncer of the text panel.
+     */
     public void notifyUndoChanged() {
-        if (undoRedoControl != null) {
-            if (contextManager != null) {
-                contextManager.changeActiveState(UndoRedoState.class, undoRedoControl);
-            }
+        if (undoRedoControl != null && contextManager != null) {
+            textPanel.getStateDebouncer().schedule(UndoRedoState.class, () -> {
+                if (undoRedoControl != null && contextManager != null) {
+                    contextManager.changeActiveState(UndoRedoState.class, undoRedoControl);
+                }
+            });
+        }
+    }
+
+    /**
+     * Notifies change of the presence of the selection.
+     */
+    public void notifySelectionChanged() {
+        if (contextManager != null) {
+            textPanel.getStateDebouncer().schedule(ContextComponent.class, () -> {
+                if (contextManager != null) {
+                    contextManager.updateActiveState(ContextComponent.class, textPanelComponent, ClipboardController.UpdateType.CONTENT_STATE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Notifies change of the encoding.
+     */
+    public void notifyEncodingChanged() {
+        if (contextManager != null) {
+            textPanel.getStateDebouncer().schedule(ContextEncoding.class, () -> {
+                if (contextManager != null) {
+                    contextManager.updateActiveState(ContextEncoding.class, textPanelComponent, CharsetEncodingState.UpdateType.ENCODING);
+                }
+            });
         }
     }
 }
@@ -67,6 +67,9 @@ public class FindReplaceActions {
                 TextSearchService.FindTextParameters findTextParameters = new TextSearchService.FindTextParameters();
                 findTextParameters.setFindText(findPanel.getFindText());
                 findTextParameters.setSearchFromStart(findPanel.isSearchFromStart());
+                findTextParameters.setMatchCase(findPanel.isMatchCase());
+                findTextParameters.setWholeWords(findPanel.isWholeWords());
+                findTextParameters.setRegularExpression(findPanel.isRegularExpression());
                 findTextParameters.setShallReplace(findPanel.isShallReplace());
                 findTextParameters.setReplaceText(findPanel.getReplaceText());
 
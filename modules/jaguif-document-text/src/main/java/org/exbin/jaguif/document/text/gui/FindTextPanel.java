@@ -52,6 +52,8 @@ public class FindTextPanel extends javax.swing.JPanel {
         textToFindTextField = new javax.swing.JTextField();
         searchFromCursorCheckBox = new javax.swing.JCheckBox();
         matchCaseCheckBox = new javax.swing.JCheckBox();
+        wholeWordsCheckBox = new javax.swing.JCheckBox();
+        regularExpressionCheckBox = new javax.swing.JCheckBox();
         replacePanel = new javax.swing.JPanel();
         performReplaceCheckBox = new javax.swing.JCheckBox();
         textToReplaceLabel = new javax.swing.JLabel();
@@ -67,8 +69,12 @@ public class FindTextPanel extends javax.swing.JPanel {
         searchFromCursorCheckBox.setSelected(true);
         searchFromCursorCheckBox.setText(resourceBundle.getString("searchFromCursorCheckBox.text")); // NOI18N
 
+        matchCaseCheckBox.setSelected(true);
         matchCaseCheckBox.setText(resourceBundle.getString("matchCaseCheckBox.text")); // NOI18N
-        matchCaseCheckBox.setEnabled(false);
+
+        wholeWordsCheckBox.setText(resourceBundle.getString("wholeWordsCheckBox.text")); // NOI18N
+
+        regularExpressionCheckBox.setText(resourceBundle.getString("regularExpressionCheckBox.text")); // NOI18N
 
         javax.swing.GroupLayout findPanelLayout = new javax.swing.GroupLayout(findPanel);
         findPanel.setLayout(findPanelLayout);
@@ -78,6 +84,8 @@ public class FindTextPanel extends javax.swing.JPanel {
                 .addContainerGap()
                 .addGroup(findPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(matchCaseCheckBox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(wholeWordsCheckBox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(regularExpressionCheckBox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(searchFromCursorCheckBox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(textToFindLabel)
                     .addComponent(textToFindTextField))
@@ -93,6 +101,10 @@ public class FindTextPanel extends javax.swing.JPanel {
                 .addComponent(searchFromCursorCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(matchCaseCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(wholeWordsCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(regularExpressionCheckBox)
                 .addContainerGap(8, Short.MAX_VALUE))
         );
 
@@ -152,6 +164,7 @@ public class FindTextPanel extends javax.swing.JPanel {
     private javax.swing.JPanel findPanel;
     private javax.swing.JCheckBox matchCaseCheckBox;
     private javax.swing.JCheckBox performReplaceCheckBox;
+    private javax.swing.JCheckBox regularExpressionCheckBox;
     private javax.swing.JCheckBox replaceAllMatchesCheckBox;
     private javax.swing.JPanel replacePanel;
     private javax.swing.JCheckBox searchFromCursorCheckBox;
@@ -159,12 +172,37 @@ public class FindTextPanel extends javax.swing.JPanel {
     private javax.swing.JTextField textToFindTextField;
     private javax.swing.JLabel textToReplaceLabel;
     private javax.swing.JTextField textToReplaceTextField;
+    private javax.swing.JCheckBox wholeWordsCheckBox;
     // End of variables declaration//GEN-END:variables
 
     public boolean isSearchFromStart() {
         return !searchFromCursorCheckBox.isSelected();
     }
 
+    public boolean isMatchCase() {
+        return matchCaseCheckBox.isSelected();
+    }
+
+    public void setMatchCase(boolean matchCase) {
+        matchCaseCheckBox.setSelected(matchCase);
+    }
+
+    public boolean isWholeWords() {
+        return wholeWordsCheckBox.isSelected();
+    }
+
+    public void setWholeWords(boolean wholeWords) {
+        wholeWordsCheckBox.setSelected(wholeWords);
+    }
+
+    public boolean isRegularExpression() {
+        return regularExpressionCheckBox.isSelected();
+    }
+
+    public void setRegularExpression(boolean regularExpression) {
+        regularExpressionCheckBox.setSelected(regularExpression);
+    }
+
     public void setSelected() {
         textToFindTextField.requestFocusInWindow();
         textToFindTextField.selectAll();
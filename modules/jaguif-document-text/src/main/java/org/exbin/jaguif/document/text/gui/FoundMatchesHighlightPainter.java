@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.gui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import org.exbin.jaguif.document.text.api.TextLineIndex;
+import org.exbin.jaguif.document.text.search.FoundMatches;
+
+/**
+ * Highlight painter for all found matches.
+ * <p>
+ * Single highlight is used for all matches and only matches in visible area
+ * are painted.
+ */
+@ParametersAreNonnullByDefault
+public class FoundMatchesHighlightPainter implements Highlighter.HighlightPainter {
+
+    private final FoundMatches matches;
+    private Color color;
+
+    public FoundMatchesHighlightPainter(FoundMatches matches, Color color) {
+        this.matches = matches;
+        this.color = color;
+    }
+
+    @Nonnull
+    public Color getColor() {
+        return color;
+    }
+
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    @Override
+    public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent component) {
+        Rectangle clip = g.getClipBounds();
+        Rectangle alloc = bounds.getBounds();
+        if (clip == null) {
+            clip = alloc;
+        }
+
+        TextLineIndex lineIndex = TextLineIndex.getLineIndex(component.getDocument());
+        int startOffset = component.viewToModel(new Point(alloc.x, clip.y));
+        int endOffset = component.viewToModel(new Point(alloc.x + alloc.width, clip.y + clip.height));
+        startOffset = lineIndex.getLineStartOffset(lineIndex.getLineIndex(startOffset));
+        endOffset = lineIndex.getLineEndOffset(lineIndex.getLineIndex(endOffset));
+
+        g.setColor(color);
+        matches.forEachMatch(startOffset, endOffset, (matchStart, matchEnd) -> {
+            try {
+                paintMatch(g, matchStart, matchEnd, alloc, component);
+            } catch (BadLocationException ex) {
+                // Matches are updated later than the document
+                return false;
+            }
+            return true;
+        });
+    }
+
+    private static void paintMatch(Graphics g, int startOffset, int endOffset, Rectangle alloc, JTextComponent component) throws BadLocationException {
+        Rectangle start = component.modelToView(startOffset);
+        Rectangle end = component.modelToView(endOffset);
+        if (start == null || end == null) {
+            return;
+        }
+        if (start.y == end.y) {
+            g.fillRect(start.x, start.y, Math.max(end.x - start.x, 1), start.height);
+            return;
+        }
+
+        int startLineEnd = start.y + start.height;
+        g.fillRect(start.x, start.y, alloc.x + alloc.width - start.x, start.height);
+        if (startLineEnd < end.y) {
+            g.fillRect(alloc.x, startLineEnd, alloc.width, end.y - startLineEnd);
+        }
+        g.fillRect(alloc.x, end.y, end.x - alloc.x, end.height);
+    }
+}
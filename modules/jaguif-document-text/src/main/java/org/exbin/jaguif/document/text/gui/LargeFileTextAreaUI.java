@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.gui;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import org.exbin.jaguif.document.text.api.LargeFileDocument;
+
+/**
+ * Text area UI using large file view for large file documents.
+ */
+@ParametersAreNonnullByDefault
+public class LargeFileTextAreaUI extends BasicTextAreaUI {
+
+    @Nonnull
+    @Override
+    public View create(Element element) {
+        if (element.getDocument() instanceof LargeFileDocument) {
+            return new LargeFileView(element);
+        }
+        return super.create(element);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.gui;
+
+import java.awt.Container;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import org.exbin.jaguif.document.text.api.LargeFileDocument;
+
+/**
+ * View of large file document.
+ * <p>
+ * Unlike plain view, it doesn't measure all lines to find the longest one,
+ * but estimates width from the longest line length in characters, and it
+ * accesses only lines which are visible.
+ */
+@ParametersAreNonnullByDefault
+public class LargeFileView extends View implements TabExpander {
+
+    private final Segment lineSegment = new Segment();
+    private int tabBase = 0;
+
+    public LargeFileView(Element element) {
+        super(element);
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        FontMetrics metrics = getFontMetrics();
+        switch (axis) {
+            case View.X_AXIS:
+                int longestLine = ((LargeFileDocument) getDocument()).getLargeFileContent().getLongestLineLength();
+                return (float) longestLine * metrics.charWidth('m') + 1;
+            case View.Y_AXIS:
+                return (float) getElement().getElementCount() * metrics.getHeight();
+            default:
+                throw new IllegalArgumentException("Invalid axis: " + axis);
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, Shape allocation) {
+        Rectangle alloc = allocation.getBounds();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = alloc;
+        }
+
+        JTextComponent host = (JTextComponent) getContainer();
+        FontMetrics metrics = getFontMetrics();
+        g.setFont(host.getFont());
+        g.setColor(host.isEnabled() ? host.getForeground() : host.getDisabledTextColor());
+        tabBase = alloc.x;
+        int lineHeight = metrics.getHeight();
+        int linesCount = getElement().getElementCount();
+        int firstLine = Math.max((clip.y - alloc.y) / lineHeight, 0);
+        int lastLine = Math.min((clip.y + clip.height - alloc.y) / lineHeight, linesCount - 1);
+        int y = alloc.y + firstLine * lineHeight + metrics.getAscent();
+        for (int line = firstLine; line <= lastLine; line++) {
+            Element lineElement = getElement().getElement(line);
+            int startOffset = lineElement.getStartOffset();
+            loadLine(lineElement);
+            Utilities.drawTabbedText(lineSegment, alloc.x, y, g, this, startOffset);
+            y += lineHeight;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Shape modelToView(int pos, Shape allocation, Position.Bias b) throws BadLocationException {
+        Document document = getDocument();
+        if (pos < 0 || pos > document.getLength()) {
+            throw new BadLocationException("Invalid position", pos);
+        }
+
+        Rectangle alloc = allocation.getBounds();
+        FontMetrics metrics = getFontMetrics();
+        tabBase = alloc.x;
+        int line = getElement().getElementIndex(pos);
+        int startOffset = getElement().getElement(line).getStartOffset();
+        document.getText(startOffset, pos - startOffset, lineSegment);
+        int x = alloc.x + Utilities.getTabbedTextWidth(lineSegment, metrics, alloc.x, this, startOffset);
+        return new Rectangle(x, alloc.y + line * metrics.getHeight(), 1, metrics.getHeight());
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape allocation, Position.Bias[] bias) {
+        bias[0] = Position.Bias.Forward;
+        Rectangle alloc = allocation.getBounds();
+        FontMetrics metrics = getFontMetrics();
+        tabBase = alloc.x;
+        if (fy < alloc.y) {
+            return getStartOffset();
+        }
+
+        int line = (int) ((fy - alloc.y) / metrics.getHeight());
+        if (line >= getElement().getElementCount()) {
+            return getDocument().getLength();
+        }
+
+        Element lineElement = getElement().getElement(line);
+        int startOffset = lineElement.getStartOffset();
+        if (fx < alloc.x) {
+            return startOffset;
+        }
+        loadLine(lineElement);
+        int offset = Utilities.getTabbedTextOffset(lineSegment, metrics, alloc.x, (int) fx, this, startOffset);
+        return Math.min(startOffset + offset, lineElement.getEndOffset() - 1);
+    }
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        Object tabSize = getDocument().getProperty(PlainDocument.tabSizeAttribute);
+        int tabWidth = (tabSize instanceof Integer ? (Integer) tabSize : 8) * getFontMetrics().charWidth('m');
+        if (tabWidth == 0) {
+            return x;
+        }
+        int tabs = ((int) x - tabBase) / tabWidth;
+        return tabBase + (tabs + 1) * (float) tabWidth;
+    }
+
+    /**
+     * Loads line without line end into line segment.
+     */
+    private void loadLine(Element lineElement) {
+        int startOffset = lineElement.getStartOffset();
+        try {
+            getDocument().getText(startOffset, lineElement.getEndOffset() - startOffset - 1, lineSegment);
+        } catch (BadLocationException ex) {
+            Logger.getLogger(LargeFileView.class.getName()).log(Level.SEVERE, null, ex);
+            lineSegment.count = 0;
+        }
+    }
+
+    @Nonnull
+    private FontMetrics getFontMetrics() {
+        Container container = getContainer();
+        return container.getFontMetrics(container.getFont());
+    }
+}
@@ -15,7 +15,7 @@
  */
 package org.exbin.jaguif.document.text.gui;
 
-import org.exbin.jaguif.document.text.TextPanelCompoundUndoManager;
+import org.exbin.jaguif.document.text.api.TextUndoManager;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Point;
@@ -26,8 +26,11 @@ import java.nio.charset.Charset;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JComponent;
 import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
 import javax.swing.JTextArea;
@@ -41,10 +44,17 @@ import javax.swing.text.Document;
 import javax.swing.text.Highlighter.Highlight;
 import javax.swing.text.JTextComponent;
 import org.exbin.jaguif.App;
+import org.exbin.jaguif.document.text.api.DocumentStateDebouncer;
+import org.exbin.jaguif.document.text.api.LargeFileDocument;
+import org.exbin.jaguif.document.text.api.TextLineIndex;
+import org.exbin.jaguif.document.text.TextPositionStatusApi;
+import org.exbin.jaguif.document.text.search.DocumentFindAll;
+import org.exbin.jaguif.document.text.search.TextSearchPattern;
 import org.exbin.jaguif.document.text.service.DefaultTextService;
 import org.exbin.jaguif.utils.UiUtils;
 import org.exbin.jaguif.document.text.service.TextSearchService;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.text.encoding.CharsetEncodingState;
 import org.exbin.jaguif.text.encoding.EncodingsManager;
 
 /**
@@ -55,15 +65,38 @@ public class TextPanel extends javax.swing.JPanel {
 
     private final java.util.ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(TextPanel.class);
 
-    private final TextPanelCompoundUndoManager undoManagement = new TextPanelCompoundUndoManager();
+    private final TextUndoManager undoManagement = new TextUndoManager();
     private boolean modified = false;
     private Object highlight;
+    private DocumentFindAll findAll = null;
+    private Object foundMatchesHighlight = null;
+    private FoundMatchesHighlightPainter foundMatchesPainter = null;
     private Color foundTextBackgroundColor;
     private Charset charset;
     private Font defaultFont;
     private Color[] defaultColors;
     private CharsetChangeListener charsetChangeListener = null;
+    private SelectionChangeListener selectionChangeListener = null;
+    private boolean selection = false;
     private TextStatusPanel textStatus = null;
+    private JComponent loadingComponent = null;
+    private final DocumentStateDebouncer stateDebouncer = new DocumentStateDebouncer();
+    private final DocumentListener modificationListener = new DocumentListener() {
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            setModified(true);
+        }
+    };
 
     public TextPanel() {
         initComponents();
@@ -83,27 +116,23 @@ public class TextPanel extends javax.swing.JPanel {
         defaultColors[4] = foundTextBackgroundColor;
 
         // if the document is ever edited, assume that it needs to be saved
-        textArea.getDocument().addDocumentListener(new DocumentListener() {
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                setModified(true);
+        textArea.getDocument().addDocumentListener(modificationListener);
+        undoManagement.install(textArea.getDocument());
+        textArea.addPropertyChangeListener("UI", (event) -> {
+            // Keep large file view when look and feel changes
+            if (textArea.getDocument() instanceof LargeFileDocument && !(textArea.getUI() instanceof LargeFileTextAreaUI)) {
+                textArea.setUI(new LargeFileTextAreaUI());
             }
-
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                setModified(true);
-            }
-
-            @Override
-            public void removeUpdate(DocumentEvent e) {
-                setModified(true);
+        });
+        textArea.addCaretListener((e) -> {
+            boolean hasSelection = e.getDot() != e.getMark();
+            if (selection != hasSelection) {
+                selection = hasSelection;
+                if (selectionChangeListener != null) {
+                    selectionChangeListener.selectionChanged();
+                }
             }
         });
-
-        textArea.getDocument().addUndoableEditListener(undoManagement::undoableEditHappened);
-        // TODO detect selection changes only
-//        textArea.addCaretListener((e) -> {
-//        });
     }
 
     public boolean changeLineWrap() {
@@ -134,7 +163,20 @@ public class TextPanel extends javax.swing.JPanel {
 
         findTextParameters.setStartFrom(pos);
         TextSearchService textService = new DefaultTextService();
-        Optional<TextSearchService.FoundMatch> optFoundMatch = textService.findText(textArea, findTextParameters);
+        TextSearchPattern searchPattern;
+        Optional<TextSearchService.FoundMatch> optFoundMatch;
+        try {
+            searchPattern = TextSearchPattern.create(findTextParameters);
+            optFoundMatch = textService.findText(textArea, findTextParameters);
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(UiUtils.getFrame(this), ex.getDescription(), resourceBundle.getString("invalidPattern.title"), JOptionPane.ERROR_MESSAGE);
+            highlight = null;
+            return;
+        }
+        // Running find all keeps matches updated, it's restarted only for different search
+        if (findAll == null || !findAll.getSearchPattern().equals(searchPattern)) {
+            findAll(searchPattern);
+        }
 
         if (optFoundMatch.isPresent()) {
             TextSearchService.FoundMatch foundMatch = optFoundMatch.get();
@@ -150,6 +192,51 @@ public class TextPanel extends javax.swing.JPanel {
         }
     }
 
+    /**
+     * Highlights all matches.
+     * <p>
+     * Matches are searched in background and kept updated while document is
+     * edited.
+     *
+     * @param findTextParameters find parameters
+     */
+    public void findAll(TextSearchService.FindTextParameters findTextParameters) {
+        findAll(TextSearchPattern.create(findTextParameters));
+    }
+
+    private void findAll(TextSearchPattern searchPattern) {
+        clearFoundMatches();
+        findAll = new DocumentFindAll(textArea.getDocument(), searchPattern);
+        foundMatchesPainter = new FoundMatchesHighlightPainter(findAll.getMatches(), getFoundMatchesColor());
+        try {
+            foundMatchesHighlight = textArea.getHighlighter().addHighlight(0, 0, foundMatchesPainter);
+        } catch (BadLocationException ex) {
+            Logger.getLogger(TextPanel.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        findAll.setChangeListener(textArea::repaint);
+        findAll.start();
+    }
+
+    /**
+     * Removes highlighting of all matches.
+     */
+    public void clearFoundMatches() {
+        if (findAll != null) {
+            findAll.stop();
+            findAll = null;
+        }
+        if (foundMatchesHighlight != null) {
+            textArea.getHighlighter().removeHighlight(foundMatchesHighlight);
+            foundMatchesHighlight = null;
+            foundMatchesPainter = null;
+        }
+    }
+
+    @Nonnull
+    public Optional<DocumentFindAll> getFindAll() {
+        return Optional.ofNullable(findAll);
+    }
+
     @Nonnull
     public Color[] getCurrentColors() {
         Color[] colors = new Color[5];
@@ -189,7 +276,17 @@ public class TextPanel extends javax.swing.JPanel {
     }
 
     public int getLineCount() {
-        return textArea.getLineCount();
+        return getLineIndex().getLinesCount();
+    }
+
+    /**
+     * Returns line index of the current document.
+     *
+     * @return line index
+     */
+    @Nonnull
+    public TextLineIndex getLineIndex() {
+        return TextLineIndex.getLineIndex(textArea.getDocument());
     }
 
     public String getText() {
@@ -201,11 +298,12 @@ public class TextPanel extends javax.swing.JPanel {
     }
 
     public void gotoLine(int line) {
-        try {
-            textArea.setCaretPosition(textArea.getLineStartOffset(line - 1));
-        } catch (BadLocationException ex) {
-            Logger.getLogger(TextPanel.class.getName()).log(Level.SEVERE, null, ex);
+        TextLineIndex lineIndex = getLineIndex();
+        if (line < 1 || line > lineIndex.getLinesCount()) {
+            Logger.getLogger(TextPanel.class.getName()).log(Level.WARNING, "Invalid line: {0}", line);
+            return;
         }
+        textArea.setCaretPosition(lineIndex.getLineStartOffset(line - 1));
     }
 
     public void gotoRelative(int charPos) {
@@ -245,6 +343,16 @@ public class TextPanel extends javax.swing.JPanel {
 
     public void setFoundTextBackgroundColor(Color color) {
         foundTextBackgroundColor = color;
+        if (foundMatchesPainter != null) {
+            foundMatchesPainter.setColor(getFoundMatchesColor());
+            textArea.repaint();
+        }
+    }
+
+    @Nonnull
+    private Color getFoundMatchesColor() {
+        // Other matches are painted lighter than the current match
+        return new Color(foundTextBackgroundColor.getRed(), foundTextBackgroundColor.getGreen(), foundTextBackgroundColor.getBlue(), 96);
     }
 
     /**
@@ -290,7 +398,7 @@ public class TextPanel extends javax.swing.JPanel {
     }
 
     @Nonnull
-    public TextPanelCompoundUndoManager getUndo() {
+    public TextUndoManager getUndo() {
         return undoManagement;
     }
 
@@ -300,16 +408,10 @@ public class TextPanel extends javax.swing.JPanel {
 
     @Nonnull
     public Point getCaretPosition() {
-        int line;
         int caretPosition = textArea.getCaretPosition();
-        javax.swing.text.Element root = textArea.getDocument().getDefaultRootElement();
-        line = root.getElementIndex(caretPosition);
-        try {
-            return new Point(caretPosition - textArea.getLineStartOffset(line) + 1, line + 1);
-        } catch (BadLocationException ex) {
-            Logger.getLogger(TextPanel.class.getName()).log(Level.SEVERE, null, ex);
-            return new Point(0, 0);
-        }
+        TextLineIndex lineIndex = getLineIndex();
+        int line = lineIndex.getLineIndex(caretPosition);
+        return new Point(caretPosition - lineIndex.getLineStartOffset(line) + 1, line + 1);
     }
 
     public void attachCaretListener(ChangeListener listener) {
@@ -334,6 +436,44 @@ public class TextPanel extends javax.swing.JPanel {
         textArea.setText(text);
     }
 
+    /**
+     * Replaces document of the text area.
+     * <p>
+     * Intended for documents prepared outside of the event dispatch thread,
+     * undo history is cleared and document is considered not modified.
+     *
+     * @param document document
+     */
+    public void setDocument(Document document) {
+        Document oldDocument = textArea.getDocument();
+        oldDocument.removeDocumentListener(modificationListener);
+        undoManagement.uninstall();
+        clearFoundMatches();
+        if (highlight != null) {
+            textArea.getHighlighter().removeHighlight(highlight);
+            highlight = null;
+        }
+        if (document instanceof LargeFileDocument) {
+            // Default text area view measures all lines
+            if (!(textArea.getUI() instanceof LargeFileTextAreaUI)) {
+                textArea.setUI(new LargeFileTextAreaUI());
+            }
+            textArea.setDocument(document);
+            textArea.setEditable(false);
+        } else {
+            textArea.setDocument(document);
+            if (textArea.getUI() instanceof LargeFileTextAreaUI) {
+                textArea.updateUI();
+                textArea.setEditable(true);
+            }
+        }
+        textArea.setCaretPosition(0);
+        document.addDocumentListener(modificationListener);
+        undoManagement.install(document);
+        undoManagement.clear();
+        setModified(false);
+    }
+
     public void setCharsetChangeListener(CharsetChangeListener charsetChangeListener) {
         this.charsetChangeListener = charsetChangeListener;
     }
@@ -345,15 +485,33 @@ public class TextPanel extends javax.swing.JPanel {
         }
     }
 
+    public void setSelectionChangeListener(@Nullable SelectionChangeListener selectionChangeListener) {
+        this.selectionChangeListener = selectionChangeListener;
+    }
+
+    /**
+     * Returns debouncer for updates of the states derived from the text area.
+     *
+     * @return state debouncer
+     */
+    @Nonnull
+    public DocumentStateDebouncer getStateDebouncer() {
+        return stateDebouncer;
+    }
+
     public void registerTextStatus(TextStatusPanel textStatusPanel) {
         this.textStatus = textStatusPanel;
         attachCaretListener((ChangeEvent e) -> {
-            Point pos = getCaretPosition();
-            String textPosition = Long.toString((long) pos.getX()) + ":" + Long.toString((long) pos.getY());
-            textStatus.setTextPosition(textPosition);
+            stateDebouncer.schedule(TextPositionStatusApi.class, () -> {
+                Point pos = getCaretPosition();
+                String textPosition = Long.toString((long) pos.getX()) + ":" + Long.toString((long) pos.getY());
+                textStatus.setTextPosition(textPosition);
+            });
         });
         setCharsetChangeListener(() -> {
-            textStatus.setEncoding(getCharset().name());
+            stateDebouncer.schedule(CharsetEncodingState.class, () -> {
+                textStatus.setEncoding(getCharset().name());
+            });
         });
     }
 
@@ -373,11 +531,30 @@ public class TextPanel extends javax.swing.JPanel {
         textArea.setEditable(editable);
     }
 
+    /**
+     * Shows given component instead of the text area, for example while
+     * document is loading.
+     *
+     * @param loadingComponent component or null to show text area again
+     */
+    public void setLoadingComponent(@Nullable JComponent loadingComponent) {
+        remove(this.loadingComponent != null ? this.loadingComponent : textAreaScrollPane);
+        this.loadingComponent = loadingComponent;
+        add(loadingComponent != null ? loadingComponent : textAreaScrollPane, java.awt.BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+
     public interface CharsetChangeListener {
 
         public void charsetChanged();
     }
 
+    public interface SelectionChangeListener {
+
+        public void selectionChanged();
+    }
+
     public interface TextChangeListener {
 
         public void textChanged();
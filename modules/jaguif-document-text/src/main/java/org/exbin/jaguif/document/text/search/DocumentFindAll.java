@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.ProgressOperation;
+import org.exbin.jaguif.utils.UiUtils;
+
+/**
+ * Finds all matches in document.
+ * <p>
+ * Document is scanned in chunks in background thread under document read
+ * lock, so edits can happen between chunks. Found matches are kept up to date
+ * while document is edited: matches after the edit are shifted and edited
+ * lines are searched again together with preceding text which can be part of
+ * a match.
+ */
+@ParametersAreNonnullByDefault
+public class DocumentFindAll implements CancellableOperation, ProgressOperation {
+
+    private final Document document;
+    private final TextSearchPattern searchPattern;
+    private final FoundMatches matches = new FoundMatches();
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            documentChanged(e.getOffset(), e.getLength());
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            documentChanged(e.getOffset(), -e.getLength());
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    private final AtomicBoolean changeNotificationPending = new AtomicBoolean();
+
+    private int chunkSize = TextSearchPattern.DEFAULT_CHUNK_SIZE;
+    private Runnable changeListener = null;
+    private Thread searchThread = null;
+    // Matches before scanned offset are known, accessed under document lock
+    private volatile int scannedOffset = 0;
+    private volatile boolean completed = false;
+    private volatile boolean cancelled = false;
+
+    public DocumentFindAll(Document document, TextSearchPattern searchPattern) {
+        this.document = document;
+        this.searchPattern = searchPattern;
+    }
+
+    @Nonnull
+    public Document getDocument() {
+        return document;
+    }
+
+    @Nonnull
+    public TextSearchPattern getSearchPattern() {
+        return searchPattern;
+    }
+
+    @Nonnull
+    public FoundMatches getMatches() {
+        return matches;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets listener invoked in UI thread when found matches change.
+     *
+     * @param changeListener change listener
+     */
+    public void setChangeListener(@Nullable Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Returns true if whole document was searched.
+     *
+     * @return true if completed
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Starts search in background thread.
+     */
+    public void start() {
+        document.addDocumentListener(documentListener);
+        searchThread = new Thread(this::run, "textFindAll");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    /**
+     * Runs search in current thread.
+     */
+    public void run() {
+        boolean[] finished = new boolean[1];
+        while (!cancelled && !finished[0]) {
+            document.render(() -> {
+                finished[0] = scanNextChunk();
+            });
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Stops search and updating of matches.
+     * <p>
+     * Doesn't wait for search thread, which ends after the current chunk.
+     */
+    public void stop() {
+        cancelled = true;
+        document.removeDocumentListener(documentListener);
+        searchThread = null;
+    }
+
+    @Override
+    public void cancelOperation() {
+        stop();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public int getOperationProgress() {
+        if (completed) {
+            return 1000;
+        }
+        int length = document.getLength();
+        return length == 0 ? 0 : (int) (scannedOffset * 1000L / length);
+    }
+
+    /**
+     * Searches next chunk, called under document read lock.
+     *
+     * @return true if whole document was searched
+     */
+    private boolean scanNextChunk() {
+        int length = document.getLength();
+        int chunkStart = scannedOffset;
+        if (chunkStart >= length) {
+            completed = true;
+            return true;
+        }
+
+        int chunkEnd = TextSearchPattern.getChunkEnd(document, chunkStart, chunkSize);
+        // Match found in previous chunk can continue into this chunk
+        int searchStart = Math.max(chunkStart, getLastMatchEnd());
+        if (searchStart < chunkEnd) {
+            searchRange(searchStart, chunkEnd);
+        }
+        scannedOffset = chunkEnd;
+        // Last line might not be terminated, it's handled as completed now
+        completed = chunkEnd == length;
+        return completed;
+    }
+
+    /**
+     * Processes document change, called under document write lock.
+     *
+     * @param offset offset of the change
+     * @param delta length of inserted data or negative length of removed data
+     */
+    private void documentChanged(int offset, int delta) {
+        if (!completed && offset >= scannedOffset) {
+            // Not yet scanned area, only match crossing end of scanned area is affected
+            int count = matches.getCount();
+            if (count > 0 && matches.getEndOffset(count - 1) > offset) {
+                int lineStart = getLineStart(matches.getStartOffset(count - 1));
+                matches.remove(lineStart, Integer.MAX_VALUE);
+                scannedOffset = lineStart;
+            }
+            return;
+        }
+
+        // Text preceding the edit can be part of the match
+        int rangeStart = getLineStart(Math.max(offset - searchPattern.getOverlap(), 0));
+        int index = matches.findIndex(offset);
+        if (index < matches.getCount() && matches.getStartOffset(index) < rangeStart) {
+            rangeStart = getLineStart(matches.getStartOffset(index));
+        }
+
+        if (delta > 0) {
+            matches.shift(offset, delta);
+            if (!completed) {
+                scannedOffset += delta;
+            }
+        } else {
+            matches.remove(offset, offset - delta);
+            matches.shift(offset - delta, delta);
+            if (!completed) {
+                int newScannedOffset = scannedOffset + delta;
+                if (newScannedOffset <= offset) {
+                    // Scanned area ends inside of the edited line
+                    newScannedOffset = getLineStart(offset);
+                    matches.remove(newScannedOffset, Integer.MAX_VALUE);
+                }
+                scannedOffset = newScannedOffset;
+            }
+        }
+
+        int limit = completed ? document.getLength() : scannedOffset;
+        int rangeEnd = Math.min(getLineEnd(delta > 0 ? offset + delta : offset), limit);
+        if (rangeStart < rangeEnd) {
+            searchRange(rangeStart, rangeEnd);
+        }
+        notifyChanged();
+    }
+
+    private void searchRange(int startOffset, int endOffset) {
+        int searchStart = startOffset;
+        while (true) {
+            // Match crossing start of the range is searched again too
+            int index = matches.findIndex(searchStart);
+            if (index == matches.getCount() || matches.getStartOffset(index) >= searchStart) {
+                break;
+            }
+            searchStart = getLineStart(matches.getStartOffset(index));
+        }
+        MatchCollector collector = new MatchCollector();
+        searchPattern.findAll(document, searchStart, endOffset, collector);
+        matches.replace(searchStart, endOffset, collector.offsets, collector.count);
+    }
+
+    private int getLastMatchEnd() {
+        int count = matches.getCount();
+        return count == 0 ? 0 : matches.getEndOffset(count - 1);
+    }
+
+    private int getLineStart(int offset) {
+        Element root = document.getDefaultRootElement();
+        return root.getElement(root.getElementIndex(offset)).getStartOffset();
+    }
+
+    private int getLineEnd(int offset) {
+        Element root = document.getDefaultRootElement();
+        return Math.min(root.getElement(root.getElementIndex(offset)).getEndOffset(), document.getLength());
+    }
+
+    private void notifyChanged() {
+        if (changeListener != null && !changeNotificationPending.getAndSet(true)) {
+            UiUtils.invokeInUiThread(() -> {
+                changeNotificationPending.set(false);
+                Runnable listener = changeListener;
+                if (listener != null && !cancelled) {
+                    listener.run();
+                }
+            });
+        }
+    }
+
+    private static class MatchCollector implements TextSearchPattern.MatchConsumer {
+
+        private int[] offsets = new int[32];
+        private int count = 0;
+
+        @Override
+        public boolean match(int startOffset, int endOffset) {
+            if (count * 2 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count * 2] = startOffset;
+            offsets[count * 2 + 1] = endOffset;
+            count++;
+            return true;
+        }
+    }
+}
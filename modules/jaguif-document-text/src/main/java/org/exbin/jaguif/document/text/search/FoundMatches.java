@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.search;
+
+import java.util.Arrays;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Sorted list of non-overlapping matches.
+ * <p>
+ * Matches are stored as offset pairs in primitive array.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class FoundMatches {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] offsets = new int[INITIAL_CAPACITY * 2];
+    private int count = 0;
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getStartOffset(int index) {
+        checkIndex(index);
+        return offsets[index * 2];
+    }
+
+    public synchronized int getEndOffset(int index) {
+        checkIndex(index);
+        return offsets[index * 2 + 1];
+    }
+
+    /**
+     * Returns index of first match ending after given offset.
+     *
+     * @param offset offset
+     * @return index of match or count if there is no such match
+     */
+    public synchronized int findIndex(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle * 2 + 1] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Passes matches intersecting given range to consumer.
+     *
+     * @param startOffset start offset
+     * @param endOffset end offset
+     * @param consumer consumer
+     */
+    public synchronized void forEachMatch(int startOffset, int endOffset, TextSearchPattern.MatchConsumer consumer) {
+        for (int index = findIndex(startOffset); index < count; index++) {
+            int matchStart = offsets[index * 2];
+            if (matchStart >= endOffset || !consumer.match(matchStart, offsets[index * 2 + 1])) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replaces matches intersecting given range with new matches.
+     * <p>
+     * Existing matches overlapping new matches which end after the range are
+     * replaced too.
+     *
+     * @param startOffset start offset
+     * @param endOffset end offset
+     * @param matches new matches as pairs of start and end offsets, all
+     * starting inside of given range
+     * @param matchesCount number of new matches
+     */
+    public synchronized void replace(int startOffset, int endOffset, int[] matches, int matchesCount) {
+        int replacedEnd = matchesCount > 0 ? Math.max(endOffset, matches[matchesCount * 2 - 1]) : endOffset;
+        int fromIndex = findIndex(startOffset);
+        int toIndex = fromIndex;
+        while (toIndex < count && offsets[toIndex * 2] < replacedEnd) {
+            toIndex++;
+        }
+        int newCount = count - (toIndex - fromIndex) + matchesCount;
+        if (newCount * 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(newCount * 2, offsets.length * 2));
+        }
+        System.arraycopy(offsets, toIndex * 2, offsets, (fromIndex + matchesCount) * 2, (count - toIndex) * 2);
+        System.arraycopy(matches, 0, offsets, fromIndex * 2, matchesCount * 2);
+        count = newCount;
+    }
+
+    /**
+     * Removes matches intersecting given range.
+     *
+     * @param startOffset start offset
+     * @param endOffset end offset
+     */
+    public void remove(int startOffset, int endOffset) {
+        replace(startOffset, endOffset, offsets, 0);
+    }
+
+    /**
+     * Shifts matches starting at or after given offset.
+     *
+     * @param offset offset
+     * @param delta shift
+     */
+    public synchronized void shift(int offset, int delta) {
+        int index = findIndex(offset);
+        if (index < count && offsets[index * 2] < offset) {
+            index++;
+        }
+        for (int i = index * 2; i < count * 2; i++) {
+            offsets[i] += delta;
+        }
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        if (offsets.length > INITIAL_CAPACITY * 2) {
+            offsets = new int[INITIAL_CAPACITY * 2];
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Invalid match index: " + index);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.search;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import org.exbin.jaguif.document.text.service.TextSearchService;
+
+/**
+ * Compiled text search pattern.
+ * <p>
+ * Document is scanned in chunks of whole lines read into segment, so the text
+ * of the document is never copied as a whole. Chunk is read with overlap into
+ * the next chunk, so that matches starting in the chunk can cross its end.
+ * Overlap is given by the length of the find text, matches of regular
+ * expressions can extend at most {@link #REGEX_OVERLAP} characters beyond the
+ * chunk end.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class TextSearchPattern {
+
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+    public static final int REGEX_OVERLAP = 4096;
+
+    private static final String WORD_CHARACTER = "[\\p{L}\\p{N}_]";
+
+    private final Pattern pattern;
+    private final boolean regularExpression;
+    private final int overlap;
+
+    private TextSearchPattern(Pattern pattern, boolean regularExpression, int overlap) {
+        this.pattern = pattern;
+        this.regularExpression = regularExpression;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Creates search pattern.
+     *
+     * @param findText text to find
+     * @param matchCase match case
+     * @param wholeWords match whole words only
+     * @param regularExpression find text is regular expression
+     * @return search pattern
+     * @throws java.util.regex.PatternSyntaxException if regular expression is
+     * not valid
+     */
+    @Nonnull
+    public static TextSearchPattern create(String findText, boolean matchCase, boolean wholeWords, boolean regularExpression) {
+        String regex = regularExpression ? findText : Pattern.quote(findText);
+        if (wholeWords) {
+            regex = "(?<!" + WORD_CHARACTER + ")(?:" + regex + ")(?!" + WORD_CHARACTER + ")";
+        }
+        int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        if (regularExpression) {
+            // Line anchors match at line boundaries as chunks start at line start
+            flags |= Pattern.MULTILINE;
+        }
+        int overlap = regularExpression ? REGEX_OVERLAP : findText.length();
+        return new TextSearchPattern(Pattern.compile(regex, flags), regularExpression, overlap);
+    }
+
+    /**
+     * Creates search pattern for given find parameters.
+     *
+     * @param findTextParameters find parameters
+     * @return search pattern
+     */
+    @Nonnull
+    public static TextSearchPattern create(TextSearchService.FindTextParameters findTextParameters) {
+        return create(findTextParameters.getFindText(), findTextParameters.isMatchCase(), findTextParameters.isWholeWords(), findTextParameters.isRegularExpression());
+    }
+
+    @Nonnull
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public boolean isRegularExpression() {
+        return regularExpression;
+    }
+
+    /**
+     * Returns how many characters beyond the end of the chunk can be part of
+     * the match starting in the chunk.
+     *
+     * @return overlap in characters
+     */
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Finds first match starting at or after given offset.
+     * <p>
+     * Caller is responsible for locking of the document.
+     *
+     * @param document document
+     * @param fromOffset start offset
+     * @return match if found
+     */
+    @Nonnull
+    public Optional<TextSearchService.FoundMatch> findNext(Document document, int fromOffset) {
+        int length = document.getLength();
+        int[] found = new int[2];
+        int chunkStart = Math.max(fromOffset, 0);
+        Matcher matcher = pattern.matcher("");
+        Segment segment = new Segment();
+        while (chunkStart < length) {
+            int chunkEnd = getChunkEnd(document, chunkStart, DEFAULT_CHUNK_SIZE);
+            found[0] = -1;
+            scan(document, matcher, segment, chunkStart, chunkEnd, overlap, (start, end) -> {
+                found[0] = start;
+                found[1] = end;
+                return false;
+            });
+            if (found[0] >= 0) {
+                return Optional.of(new TextSearchService.FoundMatch(found[0], found[1]));
+            }
+            chunkStart = chunkEnd;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds all matches starting in given range of document.
+     * <p>
+     * Range should start at the start of the line and end at the end of the
+     * line. Matches can end after the end of the range. Caller is responsible
+     * for locking of the document.
+     *
+     * @param document document
+     * @param startOffset start offset
+     * @param endOffset end offset
+     * @param consumer match consumer
+     */
+    public void findAll(Document document, int startOffset, int endOffset, MatchConsumer consumer) {
+        Matcher matcher = pattern.matcher("");
+        Segment segment = new Segment();
+        int[] lastMatchEnd = new int[]{startOffset};
+        MatchConsumer chunkConsumer = (matchStart, matchEnd) -> {
+            lastMatchEnd[0] = matchEnd;
+            return consumer.match(matchStart, matchEnd);
+        };
+        int chunkStart = startOffset;
+        while (chunkStart < endOffset) {
+            int chunkEnd = Math.min(getChunkEnd(document, chunkStart, DEFAULT_CHUNK_SIZE), endOffset);
+            // Match crossing previous chunk end hides overlapping matches
+            int scanStart = Math.max(chunkStart, lastMatchEnd[0]);
+            if (scanStart < chunkEnd && !scan(document, matcher, segment, scanStart, chunkEnd, overlap, chunkConsumer)) {
+                return;
+            }
+            chunkStart = chunkEnd;
+        }
+    }
+
+    /**
+     * Returns replacement for matched text.
+     *
+     * @param matchedText matched text
+     * @param replaceText replace text, can contain group references for
+     * regular expressions
+     * @return replacement
+     */
+    @Nonnull
+    public String getReplacement(String matchedText, String replaceText) {
+        if (!regularExpression) {
+            return replaceText;
+        }
+
+        Matcher matcher = pattern.matcher(matchedText);
+        return matcher.matches() ? matcher.replaceFirst(replaceText) : replaceText;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final TextSearchPattern other = (TextSearchPattern) obj;
+        if (this.regularExpression != other.regularExpression || this.pattern.flags() != other.pattern.flags()) {
+            return false;
+        }
+        return this.pattern.pattern().equals(other.pattern.pattern());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pattern.pattern(), pattern.flags(), regularExpression);
+    }
+
+    /**
+     * Returns end of the chunk starting at given offset.
+     * <p>
+     * Chunk ends at the end of the line where its size limit is reached.
+     *
+     * @param document document
+     * @param chunkStart start offset of the chunk
+     * @param chunkSize size limit of the chunk
+     * @return end offset of the chunk
+     */
+    public static int getChunkEnd(Document document, int chunkStart, int chunkSize) {
+        int length = document.getLength();
+        int limit = (int) Math.min((long) chunkStart + chunkSize, length);
+        if (limit == length) {
+            return length;
+        }
+        Element root = document.getDefaultRootElement();
+        return Math.min(root.getElement(root.getElementIndex(limit)).getEndOffset(), length);
+    }
+
+    /**
+     * Scans single chunk of the document.
+     * <p>
+     * Only matches starting in the chunk are reported, but they can end in
+     * the overlap after the chunk.
+     *
+     * @return false if consumer stopped the scanning
+     */
+    private static boolean scan(Document document, Matcher matcher, Segment segment, int chunkStart, int chunkEnd, int overlap, MatchConsumer consumer) {
+        int length = document.getLength();
+        int regionEnd = (int) Math.min((long) chunkEnd + overlap, length);
+        // Single character around scanned region is provided for boundary checks
+        int textStart = Math.max(chunkStart - 1, 0);
+        int textEnd = Math.min(regionEnd + 1, length);
+        try {
+            document.getText(textStart, textEnd - textStart, segment);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        matcher.reset(segment);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(chunkStart - textStart, regionEnd - textStart);
+        while (matcher.find()) {
+            int start = matcher.start();
+            int end = matcher.end();
+            if (textStart + start >= chunkEnd) {
+                // Match belongs to the next chunk
+                break;
+            }
+            if (start == end) {
+                // Empty matches are skipped
+                continue;
+            }
+            if (!consumer.match(textStart + start, textStart + end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumer of found matches.
+     */
+    public interface MatchConsumer {
+
+        /**
+         * Processes found match.
+         *
+         * @param startOffset start offset of the match
+         * @param endOffset end offset of the match
+         * @return true to continue search
+         */
+        boolean match(int startOffset, int endOffset);
+    }
+}
@@ -19,6 +19,8 @@ import java.util.Optional;
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
+import org.exbin.jaguif.document.text.search.TextSearchPattern;
 
 /**
  * Default implemention of text search service.
@@ -29,22 +31,21 @@ public class DefaultTextService implements TextSearchService {
     @Nonnull
     @Override
     public Optional<FoundMatch> findText(JTextArea textArea, FindTextParameters findTextParameters) {
-        String text = textArea.getText();
-        int pos = findTextParameters.getStartFrom();
-        String findText = findTextParameters.getFindText();
-        pos = text.indexOf(findText, pos);
-        if (pos >= 0) {
-            int toPos;
-            if (findTextParameters.isShallReplace()) {
-                String replaceText = findTextParameters.getReplaceText().get();
-                textArea.replaceRange(replaceText, pos, pos + findText.length());
-                toPos = pos + replaceText.length();
-            } else {
-                toPos = pos + findText.length();
+        TextSearchPattern searchPattern = TextSearchPattern.create(findTextParameters);
+        Optional<FoundMatch> optFoundMatch = searchPattern.findNext(textArea.getDocument(), findTextParameters.getStartFrom());
+        if (optFoundMatch.isPresent() && findTextParameters.isShallReplace()) {
+            FoundMatch foundMatch = optFoundMatch.get();
+            String replaceText = findTextParameters.getReplaceText().get();
+            try {
+                String matchedText = textArea.getText(foundMatch.getFrom(), foundMatch.getTo() - foundMatch.getFrom());
+                replaceText = searchPattern.getReplacement(matchedText, replaceText);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
             }
-            return Optional.of(new FoundMatch(pos, toPos));
+            textArea.replaceRange(replaceText, foundMatch.getFrom(), foundMatch.getTo());
+            return Optional.of(new FoundMatch(foundMatch.getFrom(), foundMatch.getFrom() + replaceText.length()));
         }
 
-        return Optional.empty();
+        return optFoundMatch;
     }
 }
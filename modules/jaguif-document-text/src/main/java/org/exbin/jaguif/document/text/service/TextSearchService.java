@@ -39,6 +39,9 @@ public interface TextSearchService {
         private String findText;
         private boolean searchFromStart;
         private String replaceText;
+        private boolean matchCase = true;
+        private boolean wholeWords;
+        private boolean regularExpression;
 
         public int getStartFrom() {
             return startFrom;
@@ -66,6 +69,18 @@ public interface TextSearchService {
             this.startFrom = startFrom;
         }
 
+        public boolean isMatchCase() {
+            return matchCase;
+        }
+
+        public boolean isWholeWords() {
+            return wholeWords;
+        }
+
+        public boolean isRegularExpression() {
+            return regularExpression;
+        }
+
         public void setShallReplace(boolean shallReplace) {
             this.shallReplace = shallReplace;
         }
@@ -81,6 +96,18 @@ public interface TextSearchService {
         public void setReplaceText(@Nullable String replaceText) {
             this.replaceText = replaceText;
         }
+
+        public void setMatchCase(boolean matchCase) {
+            this.matchCase = matchCase;
+        }
+
+        public void setWholeWords(boolean wholeWords) {
+            this.wholeWords = wholeWords;
+        }
+
+        public void setRegularExpression(boolean regularExpression) {
+            this.regularExpression = regularExpression;
+        }
     }
 
     @Immutable
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.document.text.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.Matcher;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import org.exbin.jaguif.document.text.service.TextSearchService;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for finding of all matches in document.
+ */
+@ParametersAreNonnullByDefault
+public class DocumentFindAllTest {
+
+    private static final String[] WORDS = {"alpha", "Beta", "gamma", "beta", "delta", "alphabet", "BETA", "x", "betamax", "_beta"};
+    private static final long TIMEOUT = 60000;
+
+    @Test
+    public void testSearchModes() throws Exception {
+        Document document = createDocument("Beta beta\nalphabet BETA_beta\nbetamax (beta)\n");
+        assertMatches(document, TextSearchPattern.create("beta", true, false, false), 5, 24, 29, 38);
+        assertMatches(document, TextSearchPattern.create("beta", false, false, false), 0, 5, 19, 24, 29, 38);
+        assertMatches(document, TextSearchPattern.create("beta", false, true, false), 0, 5, 38);
+        assertMatches(document, TextSearchPattern.create("bet[a-z]+", true, false, true), 5, 24, 29, 38);
+        assertMatches(document, TextSearchPattern.create("^\\w+", true, false, true), 0, 10, 29);
+        assertMatches(document, TextSearchPattern.create("(", true, false, false), 37);
+        assertMatches(document, TextSearchPattern.create("", true, false, false));
+        assertMatches(document, TextSearchPattern.create("a*", true, false, true), 3, 8, 10, 14, 27, 32, 34, 41);
+    }
+
+    @Test
+    public void testFindNext() throws Exception {
+        Document document = createDocument("one two\nthree TWO two\n");
+        TextSearchPattern pattern = TextSearchPattern.create("two", false, true, false);
+        Assert.assertEquals(4, pattern.findNext(document, 0).get().getFrom());
+        Assert.assertEquals(14, pattern.findNext(document, 5).get().getFrom());
+        Assert.assertEquals(18, pattern.findNext(document, 15).get().getFrom());
+        Assert.assertFalse(pattern.findNext(document, 19).isPresent());
+
+        TextSearchPattern regex = TextSearchPattern.create("t(\\w)o", true, false, true);
+        Optional<TextSearchService.FoundMatch> match = regex.findNext(document, 0);
+        Assert.assertEquals(7, match.get().getTo());
+        Assert.assertEquals("[w]", regex.getReplacement("two", "[$1]"));
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            Document document = createDocument(generateText(random, 2000));
+            TextSearchPattern pattern = TextSearchPattern.create("beta", round % 2 == 0, round % 4 < 2, false);
+            DocumentFindAll findAll = new DocumentFindAll(document, pattern);
+            findAll.setChunkSize(64);
+            findAll.start();
+
+            // Edits while searching
+            for (int i = 0; i < 200; i++) {
+                randomEdit(document, random);
+            }
+            waitForCompletion(findAll);
+            assertSameAsFullScan(document, findAll);
+
+            // Edits after search was completed
+            for (int i = 0; i < 100; i++) {
+                randomEdit(document, random);
+                assertSameAsFullScan(document, findAll);
+            }
+            findAll.stop();
+        }
+    }
+
+    @Test
+    public void testMatchCrossingChunkBoundary() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < TextSearchPattern.DEFAULT_CHUNK_SIZE; i++) {
+            builder.append('x');
+        }
+        int lineEnd = builder.length();
+        builder.append(" beta\ngamma beta\ngamma\n");
+        Document document = createDocument(builder.toString());
+        TextSearchPattern pattern = TextSearchPattern.create("beta\ngamma", true, false, false);
+        Assert.assertEquals(document.getDefaultRootElement().getElement(0).getEndOffset(), TextSearchPattern.getChunkEnd(document, 0, TextSearchPattern.DEFAULT_CHUNK_SIZE));
+        assertMatches(document, pattern, lineEnd + 1, lineEnd + 12);
+        Assert.assertEquals(lineEnd + 1, pattern.findNext(document, 0).get().getFrom());
+
+        DocumentFindAll findAll = new DocumentFindAll(document, pattern);
+        findAll.setChunkSize(8);
+        findAll.start();
+        waitForCompletion(findAll);
+        assertSameAsFullScan(document, findAll);
+        findAll.stop();
+    }
+
+    @Test
+    public void testIncrementalUpdatesOfMultilineMatches() throws Exception {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            Document document = createDocument(generateText(random, 2000));
+            TextSearchPattern pattern = TextSearchPattern.create(round % 2 == 0 ? "beta\nbeta" : "a\nb", true, false, false);
+            DocumentFindAll findAll = new DocumentFindAll(document, pattern);
+            findAll.setChunkSize(64);
+            findAll.start();
+
+            for (int i = 0; i < 200; i++) {
+                randomEdit(document, random);
+            }
+            waitForCompletion(findAll);
+            assertSameAsFullScan(document, findAll);
+
+            for (int i = 0; i < 100; i++) {
+                randomEdit(document, random);
+                assertSameAsFullScan(document, findAll);
+            }
+            findAll.stop();
+        }
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        Document document = createDocument("beta\nbeta");
+        DocumentFindAll findAll = new DocumentFindAll(document, TextSearchPattern.create("beta", true, false, false));
+        findAll.start();
+        waitForCompletion(findAll);
+        Assert.assertEquals(2, findAll.getMatches().getCount());
+        document.remove(0, document.getLength());
+        Assert.assertEquals(0, findAll.getMatches().getCount());
+        document.insertString(0, "xbeta", null);
+        Assert.assertEquals(1, findAll.getMatches().getCount());
+        Assert.assertEquals(1, findAll.getMatches().getStartOffset(0));
+        findAll.stop();
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        Random random = new Random(1);
+        for (int megabytes : new int[]{4, 16}) {
+            Document document = createDocument(generateText(random, megabytes * 1024 * 1024 / 7));
+            int length = document.getLength();
+
+            long start = System.nanoTime();
+            int stringCount = 0;
+            String text = document.getText(0, length);
+            int position = text.indexOf("beta");
+            while (position >= 0) {
+                stringCount++;
+                position = text.indexOf("beta", position + 4);
+            }
+            long stringTime = System.nanoTime() - start;
+
+            TextSearchPattern pattern = TextSearchPattern.create("beta", true, false, false);
+            start = System.nanoTime();
+            int[] segmentCount = new int[1];
+            pattern.findAll(document, 0, length, (matchStart, matchEnd) -> {
+                segmentCount[0]++;
+                return true;
+            });
+            long segmentTime = System.nanoTime() - start;
+            Assert.assertEquals(stringCount, segmentCount[0]);
+
+            start = System.nanoTime();
+            DocumentFindAll findAll = new DocumentFindAll(document, TextSearchPattern.create("beta", false, true, false));
+            findAll.start();
+            waitForCompletion(findAll);
+            long findAllTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                document.insertString(random.nextInt(document.getLength()), "beta ", null);
+            }
+            long editTime = System.nanoTime() - start;
+            findAll.stop();
+
+            System.out.println(megabytes + "M chars, " + stringCount + " matches: getText + indexOf " + (stringTime / 1000000) + " ms, segment search " + (segmentTime / 1000000) + " ms");
+            System.out.println("  background find all (ignore case, whole words): " + (findAllTime / 1000000) + " ms, 1000 inserts with incremental update: " + (editTime / 1000000) + " ms");
+        }
+    }
+
+    private static void assertMatches(Document document, TextSearchPattern pattern, int... expectedStarts) {
+        List<Integer> starts = new ArrayList<>();
+        pattern.findAll(document, 0, document.getLength(), (matchStart, matchEnd) -> {
+            starts.add(matchStart);
+            return true;
+        });
+        int[] actual = new int[starts.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = starts.get(i);
+        }
+        Assert.assertArrayEquals(pattern.getPattern().pattern(), expectedStarts, actual);
+    }
+
+    private static void assertSameAsFullScan(Document document, DocumentFindAll findAll) throws BadLocationException {
+        String text = document.getText(0, document.getLength());
+        Matcher matcher = findAll.getSearchPattern().getPattern().matcher(text);
+        FoundMatches matches = findAll.getMatches();
+        int index = 0;
+        while (matcher.find()) {
+            Assert.assertTrue("Missing match at " + matcher.start(), index < matches.getCount());
+            Assert.assertEquals(matcher.start(), matches.getStartOffset(index));
+            Assert.assertEquals(matcher.end(), matches.getEndOffset(index));
+            index++;
+        }
+        Assert.assertEquals(index, matches.getCount());
+    }
+
+    private static void randomEdit(Document document, Random random) throws BadLocationException {
+        int length = document.getLength();
+        if (length > 0 && random.nextInt(3) == 0) {
+            int offset = random.nextInt(length);
+            document.remove(offset, Math.min(random.nextInt(12) + 1, length - offset));
+        } else {
+            String[] inserts = {"beta", "b", "eta", "\n", " ", "x", "beta\nbeta", "Beta_"};
+            document.insertString(random.nextInt(length + 1), inserts[random.nextInt(inserts.length)], null);
+        }
+    }
+
+    private static void waitForCompletion(DocumentFindAll findAll) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!findAll.isCompleted()) {
+            Assert.assertTrue("Search timeout", System.currentTimeMillis() - start < TIMEOUT);
+            Thread.sleep(1);
+        }
+    }
+
+    @Nonnull
+    private static String generateText(Random random, int wordsCount) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < wordsCount; i++) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+            builder.append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        return builder.toString();
+    }
+
+    @Nonnull
+    private static Document createDocument(String text) throws BadLocationException {
+        PlainDocument document = new PlainDocument(new GapContent(text.length() + 1));
+        document.insertString(0, text, null);
+        return document;
+    }
+}
@@ -30,6 +30,7 @@ import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JComponent;
 import org.exbin.jaguif.App;
+import org.exbin.jaguif.StartupTracer;
 import org.exbin.jaguif.frame.api.FrameModuleApi;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
 import org.exbin.jaguif.utils.WindowPosition;
@@ -102,9 +103,11 @@ public class FrameModule implements FrameModuleApi {
 
     @Override
     public void init() {
-        getResourceBundle();
-        initMainMenu();
-        initMainToolBar();
+        try (StartupTracer.Phase phase = StartupTracer.begin("frame init")) {
+            getResourceBundle();
+            initMainMenu();
+            initMainToolBar();
+        }
     }
 
     private void initMainMenu() {
@@ -229,24 +232,26 @@ public class FrameModule implements FrameModuleApi {
     @Override
     public FrameController getFrameController() {
         if (applicationFrame == null) {
-            applicationFrame = new ApplicationFrame(undecorated);
-            applicationFrame.initApplication();
-            applicationFrame.setApplicationExitHandler(exitHandler);
-            appIcon = applicationFrame.getIconImage();
-
-            ActiveContextManagement contextManager = applicationFrame.getContextManager();
-            contextManager.changeActiveState(ContextFrame.class, applicationFrame);
-            contextManager.changeActiveState(DialogParentComponent.class, new DialogParentComponent() {
-                @Nonnull
-                @Override
-                public Component getComponent() {
-                    return applicationFrame;
-                }
-            });
+            try (StartupTracer.Phase phase = StartupTracer.begin("frame creation")) {
+                applicationFrame = new ApplicationFrame(undecorated);
+                applicationFrame.initApplication();
+                applicationFrame.setApplicationExitHandler(exitHandler);
+                appIcon = applicationFrame.getIconImage();
+
+                ActiveContextManagement contextManager = applicationFrame.getContextManager();
+                contextManager.changeActiveState(ContextFrame.class, applicationFrame);
+                contextManager.changeActiveState(DialogParentComponent.class, new DialogParentComponent() {
+                    @Nonnull
+                    @Override
+                    public Component getComponent() {
+                        return applicationFrame;
+                    }
+                });
 
-            OptionsSettingsModuleApi optionsSettingsModule = App.getModule(OptionsSettingsModuleApi.class);
-            OptionsSettingsManagement mainSettingsManager = optionsSettingsModule.getMainSettingsManager();
-            mainSettingsManager.applyContextOptions(ContextFrame.class, applicationFrame, mainSettingsManager.getSettingsOptionsProvider());
+                OptionsSettingsModuleApi optionsSettingsModule = App.getModule(OptionsSettingsModuleApi.class);
+                OptionsSettingsManagement mainSettingsManager = optionsSettingsModule.getMainSettingsManager();
+                mainSettingsManager.applyContextOptions(ContextFrame.class, applicationFrame, mainSettingsManager.getSettingsOptionsProvider());
+            }
         }
 
         return applicationFrame;
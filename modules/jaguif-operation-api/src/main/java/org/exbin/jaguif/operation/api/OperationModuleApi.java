@@ -15,6 +15,7 @@
  */
 package org.exbin.jaguif.operation.api;
 
+import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.Module;
 import org.exbin.jaguif.ModuleUtils;
@@ -27,4 +28,11 @@ public interface OperationModuleApi extends Module {
 
     public static String MODULE_ID = ModuleUtils.getModuleIdByApi(OperationModuleApi.class);
 
+    /**
+     * Returns shared operation scheduler.
+     *
+     * @return operation scheduler
+     */
+    @Nonnull
+    OperationScheduler getOperationScheduler();
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.api;
+
+/**
+ * Enumeration of operation scheduling priorities.
+ */
+public enum OperationPriority {
+    /**
+     * Operation requested by user waiting for the result.
+     */
+    INTERACTIVE,
+    /**
+     * Long running operation like indexing or searching.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Scheduler executing operations in shared pool of worker threads.
+ */
+@ParametersAreNonnullByDefault
+public interface OperationScheduler {
+
+    /**
+     * Submits operation for execution.
+     * <p>
+     * Operation is executed in worker thread and disposed when finished or
+     * cancelled. Listeners of the returned handle are notified in event
+     * dispatch thread, so listeners registered in event dispatch thread
+     * right after submitting receive all notifications.
+     *
+     * @param operation operation
+     * @param priority priority
+     * @return handle of the scheduled operation
+     */
+    @Nonnull
+    ScheduledOperation submit(Operation operation, OperationPriority priority);
+
+    /**
+     * Cancels all operations and stops worker threads.
+     */
+    void shutdown();
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Handle of operation submitted to operation scheduler.
+ * <p>
+ * Cancellation and pausing of running operation is delegated to operation if
+ * it implements {@link CancellableOperation} or {@link PausableOperation}.
+ * Operation which was not started yet is cancelled or held in queue
+ * directly.
+ */
+@ParametersAreNonnullByDefault
+public interface ScheduledOperation extends CancellableOperation, PausableOperation, ProgressOperation, StateObservableOperation {
+
+    /**
+     * Returns scheduled operation.
+     *
+     * @return operation
+     */
+    @Nonnull
+    Operation getOperation();
+
+    /**
+     * Returns scheduling priority.
+     *
+     * @return priority
+     */
+    @Nonnull
+    OperationPriority getPriority();
+
+    /**
+     * Returns whether operation is paused.
+     *
+     * @return true if paused
+     */
+    boolean isPaused();
+
+    /**
+     * Returns whether operation finished or was cancelled.
+     *
+     * @return true if done
+     */
+    boolean isDone();
+
+    /**
+     * Registers progress listener.
+     * <p>
+     * Progress is reported for operations implementing
+     * {@link ProgressOperation} only.
+     *
+     * @param listener progress listener
+     */
+    void addProgressListener(OperationProgressStateListener listener);
+
+    /**
+     * Unregisters progress listener.
+     *
+     * @param listener progress listener
+     */
+    void removeProgressListener(OperationProgressStateListener listener);
+
+    /**
+     * Registers pause state listener.
+     *
+     * @param listener pause state listener
+     */
+    void addPauseStateListener(OperationPauseStateListener listener);
+
+    /**
+     * Unregisters pause state listener.
+     *
+     * @param listener pause state listener
+     */
+    void removePauseStateListener(OperationPauseStateListener listener);
+}
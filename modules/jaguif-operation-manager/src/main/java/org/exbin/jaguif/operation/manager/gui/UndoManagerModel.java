@@ -15,22 +15,65 @@
  */
 package org.exbin.jaguif.operation.manager.gui;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.AbstractListModel;
 import org.exbin.jaguif.operation.api.Command;
+import org.exbin.jaguif.operation.api.CommandType;
 import org.exbin.jaguif.operation.undo.api.UndoRedo;
+import org.exbin.jaguif.operation.undo.api.UndoRedoChangeListener;
 
 /**
  * List model for undo manager.
+ * <p>
+ * Model provides single page of the undo history, optionally filtered by
+ * command type. Each row represents command position, first row is initial
+ * position. Labels are computed when requested and cached for the page.
+ * <p>
+ * Model keeps references to the commands to detect which rows were changed,
+ * commands are expected to be changed only at the end of the sequence or
+ * discarded from its start.
  */
 @ParametersAreNonnullByDefault
 public class UndoManagerModel extends AbstractListModel<String> {
 
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final String INITIAL_LABEL = "Initial";
+    private static final String CURRENT_LABEL = " (current)";
+    private static final String SAVED_LABEL = " (saved)";
+    private static final int INITIAL_CAPACITY = 16;
+
     private UndoRedo undoRedo = null;
+    private final UndoRedoChangeListener changeListener = this::undoRedoChanged;
+
+    private CommandType typeFilter = null;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int page = 0;
+    private int size = 0;
+    private String[] labels = new String[0];
+
+    private Command[] commands = new Command[INITIAL_CAPACITY];
+    private int commandsStart = 0;
+    private int commandsCount = 0;
+    private int droppedCount = 0;
+    private int commandPosition = 0;
+    private int syncPosition = 0;
+    private final Map<CommandType, Integer> typeCounts = new LinkedHashMap<>();
+
+    /**
+     * Sequence numbers of commands matching type filter.
+     */
+    private int[] filtered = new int[INITIAL_CAPACITY];
+    private int filteredStart = 0;
+    private int filteredCount = 0;
 
     public UndoManagerModel() {
     }
@@ -40,39 +83,373 @@ public class UndoManagerModel extends AbstractListModel<String> {
         return undoRedo;
     }
 
-    public void setUndoRedo(UndoRedo undoRedo) {
+    public void setUndoRedo(@Nullable UndoRedo undoRedo) {
         if (this.undoRedo != null) {
-            fireIntervalRemoved(this, 0, getList().size());
+            this.undoRedo.removeChangeListener(changeListener);
         }
 
         this.undoRedo = undoRedo;
-        fireIntervalAdded(this, 0, getList().size());
+        loadCommands();
+        page = 0;
+        if (undoRedo != null) {
+            undoRedo.addChangeListener(changeListener);
+        }
+        reloadPage();
+    }
+
+    @Nullable
+    public CommandType getTypeFilter() {
+        return typeFilter;
+    }
+
+    /**
+     * Sets type of commands to show.
+     *
+     * @param typeFilter command type or null for all commands
+     */
+    public void setTypeFilter(@Nullable CommandType typeFilter) {
+        if (Objects.equals(this.typeFilter, typeFilter)) {
+            return;
+        }
+
+        this.typeFilter = typeFilter;
+        filteredStart = 0;
+        filteredCount = 0;
+        if (typeFilter != null) {
+            for (int i = 0; i < commandsCount; i++) {
+                if (typeFilter.equals(commands[commandsStart + i].getType())) {
+                    addFiltered(droppedCount + i);
+                }
+            }
+        }
+        page = 0;
+        reloadPage();
+    }
+
+    /**
+     * Returns types of the commands in sequence.
+     *
+     * @return list of command types
+     */
+    @Nonnull
+    public List<CommandType> getCommandTypes() {
+        return new ArrayList<>(typeCounts.keySet());
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalStateException("Invalid page size: " + pageSize);
+        }
+
+        int firstRow = page * this.pageSize;
+        this.pageSize = pageSize;
+        page = firstRow / pageSize;
+        reloadPage();
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        int limitedPage = Math.max(0, Math.min(page, getPageCount() - 1));
+        if (this.page != limitedPage) {
+            this.page = limitedPage;
+            reloadPage();
+        }
+    }
+
+    public int getPageCount() {
+        return Math.max(1, (getRowsCount() + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Returns count of rows on all pages.
+     *
+     * @return count of rows
+     */
+    public int getRowsCount() {
+        if (undoRedo == null) {
+            return 0;
+        }
+
+        return (typeFilter == null ? commandsCount : filteredCount) + 1;
     }
 
     @Override
     public int getSize() {
-        return undoRedo == null ? 0 : getList().size() + 1;
+        return size;
     }
 
     @Nullable
     @Override
     public String getElementAt(int index) {
-        return undoRedo == null ? null : (index == 0 ? "Initial" : getList().get(index - 1).getType().toString())
-                + (undoRedo.getCommandPosition() == index ? " (current)" : "")
-                + (undoRedo.getSyncPosition() == index ? " (saved)" : "");
+        if (index < 0 || index >= size) {
+            return null;
+        }
+
+        String label = labels[index];
+        if (label == null) {
+            label = createLabel(getPositionAt(index));
+            labels[index] = label;
+        }
+        return label;
     }
 
     @Nullable
     public Command getItem(int index) {
-        return undoRedo == null || index == 0 ? null : getList().get(index - 1);
+        if (index < 0 || index >= size) {
+            return null;
+        }
+
+        int position = getPositionAt(index);
+        return position == 0 ? null : getCommand(position);
+    }
+
+    /**
+     * Returns command position for row of the current page.
+     *
+     * @param index row index
+     * @return command position
+     */
+    public int getPositionAt(int index) {
+        int row = page * pageSize + index;
+        if (typeFilter == null || row == 0) {
+            return row;
+        }
+
+        return filtered[filteredStart + row - 1] - droppedCount + 1;
     }
 
     public int getCurrentPosition() {
-        return (int) undoRedo.getCommandPosition();
+        return commandPosition;
+    }
+
+    private void undoRedoChanged() {
+        List<Command> commandList = undoRedo.getCommandList();
+        int oldSize = size;
+        int oldCurrentRow = getRow(commandPosition);
+        int oldSyncRow = getRow(syncPosition);
+        boolean currentChanged = commandPosition != undoRedo.getCommandPosition();
+        boolean syncChanged = syncPosition != undoRedo.getSyncPosition();
+        int firstChangedRow = updateCommands(commandList);
+        commandPosition = undoRedo.getCommandPosition();
+        syncPosition = undoRedo.getSyncPosition();
+
+        int pageCount = getPageCount();
+        if (page >= pageCount) {
+            page = pageCount - 1;
+            firstChangedRow = 0;
+        }
+        int pageStart = page * pageSize;
+        size = Math.max(0, Math.min(pageSize, getRowsCount() - pageStart));
+        if (labels.length != size) {
+            labels = Arrays.copyOf(labels, size);
+        }
+        int changedFrom = Math.max(0, Math.min(firstChangedRow - pageStart, Math.max(oldSize, size)));
+        Arrays.fill(labels, Math.min(changedFrom, size), size, null);
+
+        int commonSize = Math.min(oldSize, size);
+        if (currentChanged) {
+            updateRow(oldCurrentRow - pageStart, Math.min(changedFrom, commonSize));
+            updateRow(getRow(commandPosition) - pageStart, Math.min(changedFrom, commonSize));
+        }
+        if (syncChanged) {
+            updateRow(oldSyncRow - pageStart, Math.min(changedFrom, commonSize));
+            updateRow(getRow(syncPosition) - pageStart, Math.min(changedFrom, commonSize));
+        }
+        if (changedFrom < commonSize) {
+            fireContentsChanged(this, changedFrom, commonSize - 1);
+        }
+        if (size > oldSize) {
+            fireIntervalAdded(this, oldSize, size - 1);
+        } else if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        }
+    }
+
+    /**
+     * Updates references to the commands.
+     *
+     * @return first row which was changed
+     */
+    private int updateCommands(List<Command> commandList) {
+        int newCount = commandList.size();
+        boolean droppedFirst = false;
+        if (commandsCount > 0 && (newCount == 0 || commandList.get(0) != commands[commandsStart])) {
+            Command first = newCount == 0 ? null : commandList.get(0);
+            int dropCount = commandsCount;
+            for (int i = 1; i < commandsCount; i++) {
+                if (commands[commandsStart + i] == first) {
+                    dropCount = i;
+                    break;
+                }
+            }
+            removeFirst(dropCount);
+            droppedFirst = true;
+        }
+
+        int commonCount = Math.min(commandsCount, newCount);
+        while (commonCount > 0 && commands[commandsStart + commonCount - 1] != commandList.get(commonCount - 1)) {
+            commonCount--;
+        }
+        if (commonCount < commandsCount) {
+            removeLast(commandsCount - commonCount);
+        }
+        for (int i = commonCount; i < newCount; i++) {
+            append(commandList.get(i));
+        }
+
+        if (droppedFirst) {
+            return 1;
+        }
+        if (typeFilter == null) {
+            return commonCount + 1;
+        }
+        int commonSequence = droppedCount + commonCount;
+        int index = Arrays.binarySearch(filtered, filteredStart, filteredStart + filteredCount, commonSequence);
+        return (index >= 0 ? index : -index - 1) - filteredStart + 1;
+    }
+
+    private void updateRow(int index, int limit) {
+        if (index >= 0 && index < limit) {
+            labels[index] = null;
+            fireContentsChanged(this, index, index);
+        }
+    }
+
+    private void reloadPage() {
+        int oldSize = size;
+        size = Math.max(0, Math.min(pageSize, getRowsCount() - page * pageSize));
+        labels = new String[size];
+        int commonSize = Math.min(oldSize, size);
+        if (commonSize > 0) {
+            fireContentsChanged(this, 0, commonSize - 1);
+        }
+        if (size > oldSize) {
+            fireIntervalAdded(this, oldSize, size - 1);
+        } else if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        }
+    }
+
+    private void loadCommands() {
+        commands = new Command[INITIAL_CAPACITY];
+        commandsStart = 0;
+        commandsCount = 0;
+        droppedCount = 0;
+        filteredStart = 0;
+        filteredCount = 0;
+        typeCounts.clear();
+        if (undoRedo == null) {
+            commandPosition = 0;
+            syncPosition = 0;
+            return;
+        }
+
+        for (Command command : undoRedo.getCommandList()) {
+            append(command);
+        }
+        commandPosition = undoRedo.getCommandPosition();
+        syncPosition = undoRedo.getSyncPosition();
     }
 
     @Nonnull
-    private List<Command> getList() {
-        return Objects.requireNonNull(undoRedo.getCommandList());
+    private String createLabel(int position) {
+        StringBuilder builder = new StringBuilder(position == 0 ? INITIAL_LABEL : getCommand(position).getType().toString());
+        if (position == commandPosition) {
+            builder.append(CURRENT_LABEL);
+        }
+        if (position == syncPosition) {
+            builder.append(SAVED_LABEL);
+        }
+        return builder.toString();
+    }
+
+    @Nonnull
+    private Command getCommand(int position) {
+        return commands[commandsStart + position - 1];
+    }
+
+    /**
+     * Returns row for given command position.
+     *
+     * @return row or -1 if position is not visible
+     */
+    private int getRow(int position) {
+        if (position < 0 || position > commandsCount) {
+            return -1;
+        }
+        if (typeFilter == null || position == 0) {
+            return position;
+        }
+
+        int index = Arrays.binarySearch(filtered, filteredStart, filteredStart + filteredCount, droppedCount + position - 1);
+        return index < 0 ? -1 : index - filteredStart + 1;
+    }
+
+    private void append(Command command) {
+        if (commandsStart + commandsCount == commands.length) {
+            Command[] target = commandsStart > commands.length / 2 ? commands : new Command[commands.length * 2];
+            System.arraycopy(commands, commandsStart, target, 0, commandsCount);
+            if (target == commands) {
+                Arrays.fill(commands, commandsCount, commands.length, null);
+            }
+            commands = target;
+            commandsStart = 0;
+        }
+
+        CommandType type = command.getType();
+        if (typeFilter != null && typeFilter.equals(type)) {
+            addFiltered(droppedCount + commandsCount);
+        }
+        commands[commandsStart + commandsCount] = command;
+        commandsCount++;
+        typeCounts.merge(type, 1, Integer::sum);
+    }
+
+    private void removeFirst(int count) {
+        for (int i = 0; i < count; i++) {
+            removeType(commands[commandsStart + i]);
+            commands[commandsStart + i] = null;
+        }
+        commandsStart += count;
+        commandsCount -= count;
+        droppedCount += count;
+        while (filteredCount > 0 && filtered[filteredStart] < droppedCount) {
+            filteredStart++;
+            filteredCount--;
+        }
+    }
+
+    private void removeLast(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = commandsStart + commandsCount - 1 - i;
+            removeType(commands[index]);
+            commands[index] = null;
+        }
+        commandsCount -= count;
+        while (filteredCount > 0 && filtered[filteredStart + filteredCount - 1] >= droppedCount + commandsCount) {
+            filteredCount--;
+        }
+    }
+
+    private void removeType(Command command) {
+        typeCounts.computeIfPresent(command.getType(), (type, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void addFiltered(int sequence) {
+        if (filteredStart + filteredCount == filtered.length) {
+            int[] target = filteredStart > filtered.length / 2 ? filtered : new int[filtered.length * 2];
+            System.arraycopy(filtered, filteredStart, target, 0, filteredCount);
+            filtered = target;
+            filteredStart = 0;
+        }
+        filtered[filteredStart + filteredCount] = sequence;
+        filteredCount++;
     }
 }
@@ -15,13 +15,22 @@
  */
 package org.exbin.jaguif.operation.manager.gui;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import org.exbin.jaguif.App;
 import org.exbin.jaguif.operation.manager.service.UndoManagerService;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
 import org.exbin.jaguif.operation.api.Command;
+import org.exbin.jaguif.operation.api.CommandType;
 import org.exbin.jaguif.operation.undo.api.UndoRedo;
 
 /**
@@ -31,11 +40,50 @@ import org.exbin.jaguif.operation.undo.api.UndoRedo;
 public class UndoManagerPanel extends javax.swing.JPanel {
 
     private UndoManagerModel undoModel = new UndoManagerModel();
+    private final DefaultComboBoxModel<String> typeFilterComboBoxModel = new DefaultComboBoxModel<>();
+    private final List<CommandType> filterTypes = new ArrayList<>();
+    private boolean updatingTypeFilter = false;
     private final java.util.ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(UndoManagerPanel.class);
     private UndoManagerService undoManagerService;
 
     public UndoManagerPanel() {
         initComponents();
+        init();
+    }
+
+    private void init() {
+        typeFilterComboBoxModel.addElement(resourceBundle.getString("typeFilter.allTypes"));
+        typeFilterComboBox.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                updateTypeFilter();
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
+        });
+        undoModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                updatePaging();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                updatePaging();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                updatePaging();
+            }
+        });
+        updatePaging();
     }
 
     @Nonnull
@@ -43,7 +91,7 @@ public class UndoManagerPanel extends javax.swing.JPanel {
         return resourceBundle;
     }
 
-    public void setCommandSequence(UndoRedo undoRedo) {
+    public void setCommandSequence(@Nullable UndoRedo undoRedo) {
         undoModel.setUndoRedo(undoRedo);
     }
 
@@ -61,8 +109,14 @@ public class UndoManagerPanel extends javax.swing.JPanel {
     private void initComponents() {
 
         splitPane = new javax.swing.JSplitPane();
+        undoListPanel = new javax.swing.JPanel();
+        typeFilterComboBox = new javax.swing.JComboBox<>();
         undoListScrollPane = new javax.swing.JScrollPane();
         undoList = new javax.swing.JList();
+        pagingPanel = new javax.swing.JPanel();
+        previousPageButton = new javax.swing.JButton();
+        pageLabel = new javax.swing.JLabel();
+        nextPageButton = new javax.swing.JButton();
         undoDetailPanel = new javax.swing.JPanel();
         undoDetailInfoPanel = new javax.swing.JPanel();
         commandCaptionLabel = new javax.swing.JLabel();
@@ -84,6 +138,16 @@ public class UndoManagerPanel extends javax.swing.JPanel {
         splitPane.setBorder(null);
         splitPane.setDividerLocation(200);
 
+        undoListPanel.setLayout(new java.awt.BorderLayout());
+
+        typeFilterComboBox.setModel(typeFilterComboBoxModel);
+        typeFilterComboBox.addItemListener(new java.awt.event.ItemListener() {
+            public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                typeFilterComboBoxItemStateChanged(evt);
+            }
+        });
+        undoListPanel.add(typeFilterComboBox, java.awt.BorderLayout.PAGE_START);
+
         undoList.setModel(undoModel);
         undoList.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
         undoList.addListSelectionListener(new javax.swing.event.ListSelectionListener() {
@@ -93,7 +157,30 @@ public class UndoManagerPanel extends javax.swing.JPanel {
         });
         undoListScrollPane.setViewportView(undoList);
 
-        splitPane.setLeftComponent(undoListScrollPane);
+        undoListPanel.add(undoListScrollPane, java.awt.BorderLayout.CENTER);
+
+        previousPageButton.setText(resourceBundle.getString("previousPageButton.text")); // NOI18N
+        previousPageButton.setEnabled(false);
+        previousPageButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                previousPageButtonActionPerformed(evt);
+            }
+        });
+        pagingPanel.add(previousPageButton);
+        pagingPanel.add(pageLabel);
+
+        nextPageButton.setText(resourceBundle.getString("nextPageButton.text")); // NOI18N
+        nextPageButton.setEnabled(false);
+        nextPageButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                nextPageButtonActionPerformed(evt);
+            }
+        });
+        pagingPanel.add(nextPageButton);
+
+        undoListPanel.add(pagingPanel, java.awt.BorderLayout.PAGE_END);
+
+        splitPane.setLeftComponent(undoListPanel);
 
         undoDetailInfoPanel.setBorder(javax.swing.BorderFactory.createTitledBorder(resourceBundle.getString("undoDetailInfoPanel.border.title"))); // NOI18N
 
@@ -233,8 +320,24 @@ public class UndoManagerPanel extends javax.swing.JPanel {
         undoManagerService.exportCommand(this, command);
     }//GEN-LAST:event_exportButtonActionPerformed
 
+    private void typeFilterComboBoxItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_typeFilterComboBoxItemStateChanged
+        if (evt.getStateChange() == java.awt.event.ItemEvent.SELECTED && !updatingTypeFilter) {
+            int selectedIndex = typeFilterComboBox.getSelectedIndex();
+            undoModel.setTypeFilter(selectedIndex > 0 ? filterTypes.get(selectedIndex - 1) : null);
+        }
+    }//GEN-LAST:event_typeFilterComboBoxItemStateChanged
+
+    private void previousPageButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_previousPageButtonActionPerformed
+        undoModel.setPage(undoModel.getPage() - 1);
+    }//GEN-LAST:event_previousPageButtonActionPerformed
+
+    private void nextPageButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_nextPageButtonActionPerformed
+        undoModel.setPage(undoModel.getPage() + 1);
+    }//GEN-LAST:event_nextPageButtonActionPerformed
+
     public long getCommandPosition() {
-        return undoList.getSelectedIndex();
+        int selectedIndex = undoList.getSelectedIndex();
+        return selectedIndex >= 0 ? undoModel.getPositionAt(selectedIndex) : -1;
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -247,17 +350,60 @@ public class UndoManagerPanel extends javax.swing.JPanel {
     private javax.swing.JLabel executionTimeLabel;
     private javax.swing.JTextField executionTimeTextField;
     private javax.swing.JButton exportButton;
+    private javax.swing.JButton nextPageButton;
     private javax.swing.JLabel operationCaptionLabel;
     private javax.swing.JTextField operationCaptionTextField;
     private javax.swing.JLabel operationTypeLabel;
     private javax.swing.JTextField operationTypeTextField;
+    private javax.swing.JLabel pageLabel;
+    private javax.swing.JPanel pagingPanel;
+    private javax.swing.JButton previousPageButton;
     private javax.swing.JSplitPane splitPane;
+    private javax.swing.JComboBox<String> typeFilterComboBox;
     private javax.swing.JPanel undoDetailInfoPanel;
     private javax.swing.JPanel undoDetailPanel;
     private javax.swing.JList undoList;
+    private javax.swing.JPanel undoListPanel;
     private javax.swing.JScrollPane undoListScrollPane;
     // End of variables declaration//GEN-END:variables
 
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        undoModel.setUndoRedo(null);
+    }
+
+    private void updatePaging() {
+        int page = undoModel.getPage();
+        int pageCount = undoModel.getPageCount();
+        previousPageButton.setEnabled(page > 0);
+        nextPageButton.setEnabled(page < pageCount - 1);
+        pageLabel.setText(String.format(resourceBundle.getString("pageLabel.text"), page + 1, pageCount));
+    }
+
+    private void updateTypeFilter() {
+        List<CommandType> commandTypes = undoModel.getCommandTypes();
+        CommandType typeFilter = undoModel.getTypeFilter();
+        if (typeFilter != null && !commandTypes.contains(typeFilter)) {
+            commandTypes.add(typeFilter);
+        }
+        if (commandTypes.equals(filterTypes)) {
+            return;
+        }
+
+        updatingTypeFilter = true;
+        filterTypes.clear();
+        filterTypes.addAll(commandTypes);
+        while (typeFilterComboBoxModel.getSize() > 1) {
+            typeFilterComboBoxModel.removeElementAt(1);
+        }
+        for (CommandType commandType : commandTypes) {
+            typeFilterComboBoxModel.addElement(commandType.toString());
+        }
+        typeFilterComboBox.setSelectedIndex(typeFilter == null ? 0 : commandTypes.indexOf(typeFilter) + 1);
+        updatingTypeFilter = false;
+    }
+
     private void updateDetail(int selectedIndex) {
         Command command = null;
         if (selectedIndex >= 0) {
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.manager.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import org.exbin.jaguif.operation.api.Command;
+import org.exbin.jaguif.operation.api.CommandType;
+import org.exbin.jaguif.operation.undo.api.DefaultUndoRedo;
+import org.exbin.jaguif.operation.undo.api.UndoRedo;
+import org.exbin.jaguif.operation.undo.api.UndoableCommand;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for undo manager list model.
+ */
+@ParametersAreNonnullByDefault
+public class UndoManagerModelTest {
+
+    private static final TestType INSERT_TYPE = new TestType("Insert");
+    private static final TestType DELETE_TYPE = new TestType("Delete");
+
+    @Test
+    public void testIntervalEvents() {
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.execute(new TestCommand(INSERT_TYPE));
+        undoRedo.execute(new TestCommand(INSERT_TYPE));
+        UndoManagerModel model = new UndoManagerModel();
+        model.setUndoRedo(undoRedo);
+        Assert.assertEquals(3, model.getSize());
+        Assert.assertEquals("Initial (saved)", model.getElementAt(0));
+        Assert.assertEquals("Insert (current)", model.getElementAt(2));
+
+        EventsRecorder recorder = new EventsRecorder();
+        model.addListDataListener(recorder);
+        undoRedo.execute(new TestCommand(DELETE_TYPE));
+        Assert.assertEquals("changed 2-2, added 3-3", recorder.getEvents());
+        Assert.assertEquals("Insert", model.getElementAt(2));
+        Assert.assertEquals("Delete (current)", model.getElementAt(3));
+
+        undoRedo.performUndo(2);
+        Assert.assertEquals("changed 3-3, changed 1-1", recorder.getEvents());
+        Assert.assertEquals("Insert (current)", model.getElementAt(1));
+
+        // Redo commands are replaced
+        undoRedo.execute(new TestCommand(DELETE_TYPE));
+        Assert.assertEquals("changed 1-1, changed 2-2, removed 3-3", recorder.getEvents());
+        Assert.assertEquals("Delete (current)", model.getElementAt(2));
+
+        undoRedo.setMaxCommandsCount(1);
+        Assert.assertEquals("changed 0-0, changed 1-1, removed 2-2", recorder.getEvents());
+        Assert.assertEquals("Initial", model.getElementAt(0));
+        Assert.assertEquals("Delete (current)", model.getElementAt(1));
+
+        model.setUndoRedo(null);
+        Assert.assertEquals("removed 0-1", recorder.getEvents());
+        undoRedo.execute(new TestCommand(DELETE_TYPE));
+        Assert.assertEquals("", recorder.getEvents());
+    }
+
+    @Test
+    public void testPagingAndFilter() {
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        for (int i = 0; i < 25; i++) {
+            undoRedo.execute(new TestCommand(i % 5 == 0 ? DELETE_TYPE : INSERT_TYPE));
+        }
+        UndoManagerModel model = new UndoManagerModel();
+        model.setPageSize(10);
+        model.setUndoRedo(undoRedo);
+        Assert.assertEquals(3, model.getPageCount());
+        model.setPage(2);
+        Assert.assertEquals(6, model.getSize());
+        Assert.assertEquals(25, model.getPositionAt(5));
+        model.setPage(5);
+        Assert.assertEquals(2, model.getPage());
+
+        model.setTypeFilter(DELETE_TYPE);
+        Assert.assertEquals(0, model.getPage());
+        Assert.assertEquals(1, model.getPageCount());
+        Assert.assertEquals(6, model.getSize());
+        Assert.assertEquals(0, model.getPositionAt(0));
+        Assert.assertEquals(1, model.getPositionAt(1));
+        Assert.assertEquals(21, model.getPositionAt(5));
+        Assert.assertEquals("Delete", model.getElementAt(5));
+        Assert.assertEquals(2, model.getCommandTypes().size());
+
+        EventsRecorder recorder = new EventsRecorder();
+        model.addListDataListener(recorder);
+        undoRedo.execute(new TestCommand(INSERT_TYPE));
+        Assert.assertEquals("", recorder.getEvents());
+        undoRedo.execute(new TestCommand(DELETE_TYPE));
+        Assert.assertEquals("added 6-6", recorder.getEvents());
+        Assert.assertEquals("Delete (current)", model.getElementAt(6));
+        undoRedo.performUndo();
+        Assert.assertEquals("changed 6-6", recorder.getEvents());
+    }
+
+    @Test
+    public void testRandomChanges() {
+        Random random = new Random(11);
+        for (int round = 0; round < 10; round++) {
+            DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+            undoRedo.setMaxCommandsCount(50 + random.nextInt(50));
+            UndoManagerModel model = new UndoManagerModel();
+            model.setPageSize(1 + random.nextInt(30));
+            model.setUndoRedo(undoRedo);
+            ListMirror mirror = new ListMirror(model);
+            for (int i = 0; i < 2000; i++) {
+                int action = random.nextInt(20);
+                if (action < 10) {
+                    undoRedo.execute(new TestCommand(random.nextBoolean() ? INSERT_TYPE : DELETE_TYPE));
+                } else if (action < 14 && undoRedo.canUndo()) {
+                    undoRedo.performUndo(1 + random.nextInt(undoRedo.getCommandPosition()));
+                } else if (action < 17 && undoRedo.canRedo()) {
+                    undoRedo.performRedo(1 + random.nextInt(undoRedo.getCommandsCount() - undoRedo.getCommandPosition()));
+                } else if (action == 17) {
+                    undoRedo.setSyncPosition();
+                } else if (action == 18) {
+                    model.setPage(random.nextInt(model.getPageCount()));
+                } else {
+                    int filter = random.nextInt(3);
+                    model.setTypeFilter(filter == 0 ? null : (filter == 1 ? INSERT_TYPE : DELETE_TYPE));
+                }
+                Assert.assertEquals(getExpectedLabels(undoRedo, model), mirror.labels);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeHistory() {
+        int commandsCount = 200000;
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        for (int i = 0; i < commandsCount; i++) {
+            undoRedo.execute(new TestCommand(i % 3 == 0 ? DELETE_TYPE : INSERT_TYPE));
+        }
+        UndoManagerModel model = new UndoManagerModel();
+        model.setUndoRedo(undoRedo);
+        model.setPage(model.getPageCount() - 1);
+        for (int i = 0; i < model.getSize(); i++) {
+            model.getElementAt(i);
+        }
+
+        EventsRecorder recorder = new EventsRecorder();
+        model.addListDataListener(recorder);
+        ListMirror mirror = new ListMirror(model);
+        for (int i = 0; i < 1000; i++) {
+            undoRedo.performUndo();
+            undoRedo.performRedo();
+            undoRedo.execute(new TestCommand(INSERT_TYPE));
+        }
+        Assert.assertTrue(recorder.eventsCount <= 6000);
+        Assert.assertEquals(getExpectedLabels(undoRedo, model), mirror.labels);
+
+        model.setTypeFilter(DELETE_TYPE);
+        Assert.assertEquals(commandsCount / 3 / model.getPageSize() + 1, model.getPageCount());
+    }
+
+    @Nonnull
+    private static List<String> getExpectedLabels(UndoRedo undoRedo, UndoManagerModel model) {
+        List<Command> commands = undoRedo.getCommandList();
+        List<Integer> positions = new ArrayList<>();
+        positions.add(0);
+        for (int i = 0; i < commands.size(); i++) {
+            if (model.getTypeFilter() == null || model.getTypeFilter() == commands.get(i).getType()) {
+                positions.add(i + 1);
+            }
+        }
+
+        List<String> labels = new ArrayList<>();
+        int pageStart = model.getPage() * model.getPageSize();
+        for (int i = pageStart; i < Math.min(positions.size(), pageStart + model.getPageSize()); i++) {
+            int position = positions.get(i);
+            labels.add((position == 0 ? "Initial" : commands.get(position - 1).getType().toString())
+                    + (undoRedo.getCommandPosition() == position ? " (current)" : "")
+                    + (undoRedo.getSyncPosition() == position ? " (saved)" : ""));
+        }
+        return labels;
+    }
+
+    /**
+     * Copy of the model content updated using list events only.
+     */
+    private static class ListMirror implements ListDataListener {
+
+        private final UndoManagerModel model;
+        private final List<String> labels = new ArrayList<>();
+
+        public ListMirror(UndoManagerModel model) {
+            this.model = model;
+            for (int i = 0; i < model.getSize(); i++) {
+                labels.add(model.getElementAt(i));
+            }
+            model.addListDataListener(this);
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                labels.add(i, model.getElementAt(i));
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            labels.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                labels.set(i, model.getElementAt(i));
+            }
+        }
+    }
+
+    private static class EventsRecorder implements ListDataListener {
+
+        private final StringBuilder events = new StringBuilder();
+        private int eventsCount = 0;
+
+        @Nonnull
+        public String getEvents() {
+            String result = events.toString();
+            events.setLength(0);
+            return result;
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            record("added", e);
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            record("removed", e);
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            record("changed", e);
+        }
+
+        private void record(String type, ListDataEvent e) {
+            if (events.length() > 0) {
+                events.append(", ");
+            }
+            events.append(type).append(" ").append(e.getIndex0()).append("-").append(e.getIndex1());
+            eventsCount++;
+        }
+    }
+
+    private static class TestType implements CommandType {
+
+        private final String name;
+
+        public TestType(String name) {
+            this.name = name;
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class TestCommand implements UndoableCommand {
+
+        private final CommandType type;
+
+        public TestCommand(CommandType type) {
+            this.type = type;
+        }
+
+        @Nonnull
+        @Override
+        public CommandType getType() {
+            return type;
+        }
+
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public void redo() {
+        }
+
+        @Override
+        public void undo() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
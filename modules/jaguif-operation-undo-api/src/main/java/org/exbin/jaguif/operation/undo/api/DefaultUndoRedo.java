@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.undo.api;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.operation.api.Command;
+
+/**
+ * Default undo/redo implementation.
+ * <p>
+ * Commands are stored in circular buffer, so that both adding of a new command
+ * and discarding of the oldest command take constant time. Command executed
+ * when top undo command is {@link AppendableCommand} is offered to it first.
+ * Oldest commands are discarded when count of the commands or their estimated
+ * size exceeds the limit.
+ * <p>
+ * Listeners are notified once per each execute, undo or redo call, including
+ * calls performing multiple steps.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultUndoRedo implements UndoRedo {
+
+    /**
+     * Sync position value when synchronized state was discarded.
+     */
+    public static final int NO_SYNC_POSITION = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Command[] commands = new Command[INITIAL_CAPACITY];
+    private long[] sizes = null;
+    private int first = 0;
+    private int count = 0;
+    private int commandPosition = 0;
+    private int syncPosition = 0;
+
+    private int maxCommandsCount = Integer.MAX_VALUE;
+    private long maxSize = Long.MAX_VALUE;
+    private SizeEstimator sizeEstimator = null;
+    private long size = 0;
+
+    private final List<UndoRedoChangeListener> listeners = new ArrayList<>();
+    private final List<Command> commandList = new CommandList();
+
+    public DefaultUndoRedo() {
+    }
+
+    /**
+     * Sets maximum number of commands, oldest commands are discarded.
+     *
+     * @param maxCommandsCount maximum number of commands
+     */
+    public void setMaxCommandsCount(int maxCommandsCount) {
+        if (maxCommandsCount < 1) {
+            throw new IllegalStateException("Invalid commands count limit: " + maxCommandsCount);
+        }
+        this.maxCommandsCount = maxCommandsCount;
+        if (applyLimits()) {
+            notifyUndoChanged();
+        }
+    }
+
+    public int getMaxCommandsCount() {
+        return maxCommandsCount;
+    }
+
+    /**
+     * Sets maximum estimated size of commands, oldest commands are discarded.
+     * <p>
+     * Top undo command is always kept.
+     *
+     * @param maxSize maximum size
+     * @param sizeEstimator estimator of the size of the command
+     */
+    public void setMaxSize(long maxSize, SizeEstimator sizeEstimator) {
+        this.maxSize = maxSize;
+        this.sizeEstimator = sizeEstimator;
+        sizes = new long[commands.length];
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            long commandSize = sizeEstimator.estimateSize(get(i));
+            sizes[index(i)] = commandSize;
+            size += commandSize;
+        }
+        if (applyLimits()) {
+            notifyUndoChanged();
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns estimated size of all commands.
+     *
+     * @return size or 0 if size is not limited
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void execute(Command command) {
+        if (commandPosition > 0 && commandPosition > syncPosition && commandPosition == count) {
+            Command topCommand = get(commandPosition - 1);
+            if (topCommand instanceof AppendableCommand && ((AppendableCommand) topCommand).appendExecute(command)) {
+                command.dispose();
+                if (sizeEstimator != null) {
+                    int topIndex = index(commandPosition - 1);
+                    long commandSize = sizeEstimator.estimateSize(topCommand);
+                    size += commandSize - sizes[topIndex];
+                    sizes[topIndex] = commandSize;
+                    applyLimits();
+                }
+                notifyUndoChanged();
+                return;
+            }
+        }
+
+        command.execute();
+        discardRedoCommands();
+        append(command);
+        commandPosition++;
+        applyLimits();
+        notifyUndoChanged();
+    }
+
+    @Nonnull
+    @Override
+    public Optional<Command> getTopUndoCommand() {
+        return commandPosition > 0 ? Optional.of(get(commandPosition - 1)) : Optional.empty();
+    }
+
+    /**
+     * Returns list of commands.
+     * <p>
+     * Returned list is read-only view of the commands.
+     *
+     * @return list of commands
+     */
+    @Nonnull
+    @Override
+    public List<Command> getCommandList() {
+        return commandList;
+    }
+
+    @Override
+    public int getCommandPosition() {
+        return commandPosition;
+    }
+
+    @Override
+    public int getCommandsCount() {
+        return count;
+    }
+
+    @Override
+    public boolean canUndo() {
+        return commandPosition > 0;
+    }
+
+    @Override
+    public boolean canRedo() {
+        return commandPosition < count;
+    }
+
+    @Override
+    public boolean isModified() {
+        return syncPosition != commandPosition;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            get(i).dispose();
+        }
+        commands = new Command[INITIAL_CAPACITY];
+        if (sizes != null) {
+            sizes = new long[INITIAL_CAPACITY];
+        }
+        first = 0;
+        count = 0;
+        size = 0;
+        commandPosition = 0;
+        syncPosition = 0;
+        notifyUndoChanged();
+    }
+
+    @Override
+    public void performUndo() {
+        performUndo(1);
+    }
+
+    @Override
+    public void performUndo(int count) {
+        if (count < 0 || count > commandPosition) {
+            throw new IllegalStateException("Unable to perform " + count + " undo steps");
+        }
+
+        try {
+            for (int i = 0; i < count; i++) {
+                getUndoableCommand(commandPosition - 1).undo();
+                commandPosition--;
+            }
+        } finally {
+            notifyUndoChanged();
+        }
+    }
+
+    @Override
+    public void performRedo() {
+        performRedo(1);
+    }
+
+    @Override
+    public void performRedo(int count) {
+        if (count < 0 || count > this.count - commandPosition) {
+            throw new IllegalStateException("Unable to perform " + count + " redo steps");
+        }
+
+        try {
+            for (int i = 0; i < count; i++) {
+                getUndoableCommand(commandPosition).redo();
+                commandPosition++;
+            }
+        } finally {
+            notifyUndoChanged();
+        }
+    }
+
+    @Override
+    public void performSync() {
+        if (syncPosition == NO_SYNC_POSITION) {
+            throw new IllegalStateException("Synchronization position was discarded");
+        }
+
+        if (syncPosition < commandPosition) {
+            performUndo(commandPosition - syncPosition);
+        } else if (syncPosition > commandPosition) {
+            performRedo(syncPosition - commandPosition);
+        }
+    }
+
+    @Override
+    public int getSyncPosition() {
+        return syncPosition;
+    }
+
+    @Override
+    public void setSyncPosition(int commandPosition) {
+        if (commandPosition < 0 || commandPosition > count) {
+            throw new IllegalStateException("Invalid sync position: " + commandPosition);
+        }
+        syncPosition = commandPosition;
+        notifyUndoChanged();
+    }
+
+    @Override
+    public void setSyncPosition() {
+        syncPosition = commandPosition;
+        notifyUndoChanged();
+    }
+
+    @Override
+    public void addChangeListener(UndoRedoChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(UndoRedoChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyUndoChanged() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).undoChanged();
+        }
+    }
+
+    @Nonnull
+    private UndoableCommand getUndoableCommand(int position) {
+        Command command = get(position);
+        if (!(command instanceof UndoableCommand)) {
+            throw new IllegalStateException("Command is not undoable: " + command.getType());
+        }
+        return (UndoableCommand) command;
+    }
+
+    @Nonnull
+    private Command get(int position) {
+        return commands[index(position)];
+    }
+
+    private int index(int position) {
+        return (first + position) & (commands.length - 1);
+    }
+
+    private void append(Command command) {
+        if (count == commands.length) {
+            Command[] newCommands = new Command[commands.length * 2];
+            long[] newSizes = sizes == null ? null : new long[newCommands.length];
+            for (int i = 0; i < count; i++) {
+                int index = index(i);
+                newCommands[i] = commands[index];
+                if (newSizes != null) {
+                    newSizes[i] = sizes[index];
+                }
+            }
+            commands = newCommands;
+            sizes = newSizes;
+            first = 0;
+        }
+
+        int index = index(count);
+        commands[index] = command;
+        if (sizeEstimator != null) {
+            long commandSize = sizeEstimator.estimateSize(command);
+            sizes[index] = commandSize;
+            size += commandSize;
+        }
+        count++;
+    }
+
+    private void discardRedoCommands() {
+        while (count > commandPosition) {
+            int index = index(count - 1);
+            commands[index].dispose();
+            commands[index] = null;
+            if (sizes != null) {
+                size -= sizes[index];
+            }
+            count--;
+        }
+        if (syncPosition > commandPosition) {
+            syncPosition = NO_SYNC_POSITION;
+        }
+    }
+
+    /**
+     * Discards oldest commands exceeding the limits.
+     *
+     * @return true if any command was discarded
+     */
+    private boolean applyLimits() {
+        int originalCount = count;
+        while (commandPosition > 0 && (count > maxCommandsCount || (size > maxSize && commandPosition > 1))) {
+            commands[first].dispose();
+            commands[first] = null;
+            if (sizes != null) {
+                size -= sizes[first];
+            }
+            first = (first + 1) & (commands.length - 1);
+            count--;
+            commandPosition--;
+            if (syncPosition != NO_SYNC_POSITION) {
+                syncPosition = syncPosition == 0 ? NO_SYNC_POSITION : syncPosition - 1;
+            }
+        }
+        return count != originalCount;
+    }
+
+    /**
+     * Estimator of the command size.
+     */
+    public interface SizeEstimator {
+
+        /**
+         * Returns estimated size of the command.
+         *
+         * @param command command
+         * @return size
+         */
+        long estimateSize(Command command);
+    }
+
+    /**
+     * Read-only view of the commands.
+     */
+    @ParametersAreNonnullByDefault
+    private class CommandList extends AbstractList<Command> implements RandomAccess {
+
+        @Nonnull
+        @Override
+        public Command get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Invalid command index: " + index);
+            }
+            return DefaultUndoRedo.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int indexOf(@Nullable Object object) {
+            for (int i = 0; i < count; i++) {
+                if (DefaultUndoRedo.this.get(i) == object) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation.undo.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.operation.api.Command;
+import org.exbin.jaguif.operation.api.CommandType;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for default undo/redo implementation.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultUndoRedoTest {
+
+    private static final CommandType ADD_TYPE = new CommandType() {
+    };
+
+    @Test
+    public void testUndoRedo() {
+        Counter counter = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        for (int i = 1; i <= 5; i++) {
+            undoRedo.execute(new AddCommand(counter, i));
+        }
+        Assert.assertEquals(15, counter.value);
+        Assert.assertEquals(5, undoRedo.getCommandsCount());
+        Assert.assertEquals(5, undoRedo.getCommandPosition());
+        Assert.assertTrue(undoRedo.isModified());
+
+        undoRedo.performUndo(2);
+        Assert.assertEquals(6, counter.value);
+        Assert.assertTrue(undoRedo.canRedo());
+        undoRedo.performRedo();
+        Assert.assertEquals(10, counter.value);
+
+        // New command discards redo commands
+        AddCommand discarded = (AddCommand) undoRedo.getCommandList().get(4);
+        undoRedo.execute(new AddCommand(counter, 100));
+        Assert.assertTrue(discarded.disposed);
+        Assert.assertFalse(undoRedo.canRedo());
+        Assert.assertEquals(5, undoRedo.getCommandsCount());
+        Assert.assertEquals(110, counter.value);
+        Assert.assertEquals(100, ((AddCommand) undoRedo.getTopUndoCommand().get()).value);
+        Assert.assertEquals(4, undoRedo.getCommandList().indexOf(undoRedo.getTopUndoCommand().get()));
+
+        undoRedo.performUndo(5);
+        Assert.assertEquals(0, counter.value);
+        Assert.assertFalse(undoRedo.canUndo());
+        Assert.assertFalse(undoRedo.isModified());
+        try {
+            undoRedo.performUndo();
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+
+        undoRedo.clear();
+        Assert.assertEquals(0, undoRedo.getCommandsCount());
+        Assert.assertTrue(undoRedo.getCommandList().isEmpty());
+    }
+
+    @Test
+    public void testSync() {
+        Counter counter = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.execute(new AddCommand(counter, 1));
+        undoRedo.execute(new AddCommand(counter, 2));
+        undoRedo.setSyncPosition();
+        Assert.assertFalse(undoRedo.isModified());
+        undoRedo.execute(new AddCommand(counter, 3));
+        undoRedo.execute(new AddCommand(counter, 4));
+        Assert.assertTrue(undoRedo.isModified());
+        undoRedo.performSync();
+        Assert.assertEquals(3, counter.value);
+        Assert.assertFalse(undoRedo.isModified());
+
+        undoRedo.performUndo(2);
+        undoRedo.performSync();
+        Assert.assertEquals(3, counter.value);
+
+        // Sync position is lost when its command is discarded
+        undoRedo.performUndo();
+        undoRedo.execute(new AddCommand(counter, 10));
+        Assert.assertEquals(DefaultUndoRedo.NO_SYNC_POSITION, undoRedo.getSyncPosition());
+        Assert.assertTrue(undoRedo.isModified());
+    }
+
+    @Test
+    public void testAppend() {
+        Counter counter = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.execute(new AppendableAddCommand(counter, 1));
+        for (int i = 0; i < 9; i++) {
+            undoRedo.execute(new AppendableAddCommand(counter, 1));
+        }
+        Assert.assertEquals(10, counter.value);
+        Assert.assertEquals(1, undoRedo.getCommandsCount());
+
+        // Command is not appended to synchronized state
+        undoRedo.setSyncPosition();
+        undoRedo.execute(new AppendableAddCommand(counter, 1));
+        undoRedo.execute(new AppendableAddCommand(counter, 1));
+        Assert.assertEquals(2, undoRedo.getCommandsCount());
+
+        undoRedo.performUndo();
+        Assert.assertEquals(10, counter.value);
+        undoRedo.performUndo();
+        Assert.assertEquals(0, counter.value);
+    }
+
+    @Test
+    public void testBatchNotification() {
+        Counter counter = new Counter();
+        Counter notifications = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.addChangeListener(() -> notifications.value++);
+        for (int i = 0; i < 100; i++) {
+            undoRedo.execute(new AddCommand(counter, 1));
+        }
+        Assert.assertEquals(100, notifications.value);
+        undoRedo.performUndo(100);
+        Assert.assertEquals(101, notifications.value);
+        undoRedo.performRedo(50);
+        Assert.assertEquals(102, notifications.value);
+        undoRedo.performSync();
+        Assert.assertEquals(103, notifications.value);
+        Assert.assertEquals(0, counter.value);
+    }
+
+    @Test
+    public void testRetention() {
+        Counter counter = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.setMaxCommandsCount(10);
+        AddCommand first = new AddCommand(counter, 1);
+        undoRedo.execute(first);
+        for (int i = 2; i <= 100; i++) {
+            undoRedo.execute(new AddCommand(counter, i));
+        }
+        Assert.assertTrue(first.disposed);
+        Assert.assertEquals(10, undoRedo.getCommandsCount());
+        Assert.assertEquals(91, ((AddCommand) undoRedo.getCommandList().get(0)).value);
+        Assert.assertEquals(DefaultUndoRedo.NO_SYNC_POSITION, undoRedo.getSyncPosition());
+        undoRedo.performUndo(10);
+        Assert.assertEquals(90 * 91 / 2, counter.value);
+
+        // Size limit
+        undoRedo.clear();
+        undoRedo.setMaxCommandsCount(Integer.MAX_VALUE);
+        undoRedo.setMaxSize(1000, command -> ((AddCommand) command).value);
+        for (int i = 0; i < 100; i++) {
+            undoRedo.execute(new AddCommand(counter, 90));
+        }
+        Assert.assertEquals(11, undoRedo.getCommandsCount());
+        Assert.assertEquals(990, undoRedo.getSize());
+        undoRedo.execute(new AddCommand(counter, 5000));
+        Assert.assertEquals(1, undoRedo.getCommandsCount());
+        Assert.assertEquals(5000, undoRedo.getSize());
+    }
+
+    @Test
+    public void testThroughput() {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        int commandsCount = 5000000;
+        Counter counter = new Counter();
+        DefaultUndoRedo undoRedo = new DefaultUndoRedo();
+        undoRedo.setMaxCommandsCount(1000000);
+        long start = System.nanoTime();
+        for (int i = 0; i < commandsCount; i++) {
+            undoRedo.execute(new AddCommand(counter, 1));
+        }
+        long executeTime = System.nanoTime() - start;
+        Assert.assertEquals(1000000, undoRedo.getCommandsCount());
+
+        start = System.nanoTime();
+        undoRedo.performUndo(undoRedo.getCommandPosition());
+        undoRedo.performRedo(undoRedo.getCommandsCount());
+        long undoRedoTime = System.nanoTime() - start;
+        Assert.assertEquals(commandsCount, counter.value);
+
+        DefaultUndoRedo appendUndoRedo = new DefaultUndoRedo();
+        start = System.nanoTime();
+        for (int i = 0; i < commandsCount; i++) {
+            appendUndoRedo.execute(new AppendableAddCommand(counter, 1));
+        }
+        long appendTime = System.nanoTime() - start;
+        Assert.assertEquals(1, appendUndoRedo.getCommandsCount());
+
+        System.out.println(commandsCount + " commands: execute " + (executeTime / 1000000) + " ms, undo and redo 1M " + (undoRedoTime / 1000000) + " ms, append " + (appendTime / 1000000) + " ms");
+    }
+
+    private static class Counter {
+
+        private long value = 0;
+    }
+
+    private static class AddCommand implements UndoableCommand {
+
+        protected final Counter counter;
+        protected long value;
+        private boolean disposed = false;
+
+        public AddCommand(Counter counter, long value) {
+            this.counter = counter;
+            this.value = value;
+        }
+
+        @Nonnull
+        @Override
+        public CommandType getType() {
+            return ADD_TYPE;
+        }
+
+        @Override
+        public void execute() {
+            counter.value += value;
+        }
+
+        @Override
+        public void redo() {
+            counter.value += value;
+        }
+
+        @Override
+        public void undo() {
+            counter.value -= value;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+    }
+
+    private static class AppendableAddCommand extends AddCommand implements AppendableCommand {
+
+        public AppendableAddCommand(Counter counter, long value) {
+            super(counter, value);
+        }
+
+        @Override
+        public boolean appendExecute(Command command) {
+            if (!(command instanceof AppendableAddCommand)) {
+                return false;
+            }
+
+            long appendedValue = ((AppendableAddCommand) command).value;
+            counter.value += appendedValue;
+            value += appendedValue;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.Operation;
+import org.exbin.jaguif.operation.api.OperationPauseStateListener;
+import org.exbin.jaguif.operation.api.OperationPriority;
+import org.exbin.jaguif.operation.api.OperationProgressStateListener;
+import org.exbin.jaguif.operation.api.OperationScheduler;
+import org.exbin.jaguif.operation.api.OperationStateListener;
+import org.exbin.jaguif.operation.api.PausableOperation;
+import org.exbin.jaguif.operation.api.ProgressOperation;
+import org.exbin.jaguif.operation.api.ScheduledOperation;
+
+/**
+ * Operation scheduler with bounded pool of worker threads.
+ * <p>
+ * Operations are queued in interactive and background lanes. Interactive
+ * operations are preferred, but background operation is taken after each
+ * burst of interactive operations so that background lane is not starved.
+ * Background operations never occupy all workers when there is more than
+ * one, so that interactive operation can start immediately.
+ * <p>
+ * State changes are delivered to event dispatch thread in batches and
+ * progress of running operations is polled in fixed interval.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultOperationScheduler implements OperationScheduler {
+
+    /**
+     * Default interval of progress polling in milliseconds.
+     */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 100;
+    /**
+     * Default count of interactive operations taken before waiting
+     * background operation.
+     */
+    public static final int DEFAULT_INTERACTIVE_BURST = 3;
+
+    private static final String WORKER_THREAD_NAME = "operationWorker-";
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Task> interactiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Task> backgroundQueue = new ArrayDeque<>();
+    private final List<Task> heldTasks = new ArrayList<>();
+    private final List<Task> runningTasks = new ArrayList<>();
+    private final Thread[] workers;
+    private final int maxBackgroundWorkers;
+    private int runningBackgroundCount = 0;
+    private int interactiveBurst = DEFAULT_INTERACTIVE_BURST;
+    private int interactiveBurstCount = 0;
+    private boolean shutdown = false;
+
+    private final ConcurrentLinkedQueue<Runnable> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean deliveryPending = new AtomicBoolean();
+    private final Timer progressTimer;
+    private int batchesCount = 0;
+
+    public DefaultOperationScheduler() {
+        this(getDefaultWorkersCount());
+    }
+
+    public DefaultOperationScheduler(int workersCount) {
+        if (workersCount < 1) {
+            throw new IllegalStateException("Invalid workers count: " + workersCount);
+        }
+
+        maxBackgroundWorkers = workersCount > 1 ? workersCount - 1 : 1;
+        progressTimer = new Timer(DEFAULT_PROGRESS_INTERVAL, (event) -> pollProgress());
+        workers = new Thread[workersCount];
+        for (int i = 0; i < workersCount; i++) {
+            Thread worker = new Thread(this::runWorker, WORKER_THREAD_NAME + (i + 1));
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    private static int getDefaultWorkersCount() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getWorkersCount() {
+        return workers.length;
+    }
+
+    public int getInteractiveBurst() {
+        return interactiveBurst;
+    }
+
+    /**
+     * Sets count of interactive operations taken in row when background
+     * operation is waiting.
+     *
+     * @param interactiveBurst interactive burst
+     */
+    public void setInteractiveBurst(int interactiveBurst) {
+        if (interactiveBurst < 1) {
+            throw new IllegalStateException("Invalid interactive burst: " + interactiveBurst);
+        }
+        synchronized (lock) {
+            this.interactiveBurst = interactiveBurst;
+        }
+    }
+
+    /**
+     * Sets interval of progress polling.
+     *
+     * @param interval interval in milliseconds
+     */
+    public void setProgressInterval(int interval) {
+        progressTimer.setDelay(interval);
+        progressTimer.setInitialDelay(interval);
+    }
+
+    @Nonnull
+    @Override
+    public ScheduledOperation submit(Operation operation, OperationPriority priority) {
+        Task task = new Task(operation, priority);
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("Scheduler was shut down");
+            }
+            getQueue(priority).add(task);
+            lock.notifyAll();
+        }
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        List<Task> tasks;
+        synchronized (lock) {
+            shutdown = true;
+            tasks = new ArrayList<>(runningTasks);
+            tasks.addAll(interactiveQueue);
+            tasks.addAll(backgroundQueue);
+            tasks.addAll(heldTasks);
+            lock.notifyAll();
+        }
+        for (Task task : tasks) {
+            task.cancelOperation();
+        }
+    }
+
+    /**
+     * Returns count of batches of notifications delivered so far.
+     *
+     * @return batches count
+     */
+    int getBatchesCount() {
+        return batchesCount;
+    }
+
+    @Nonnull
+    private ArrayDeque<Task> getQueue(OperationPriority priority) {
+        return priority == OperationPriority.INTERACTIVE ? interactiveQueue : backgroundQueue;
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task task;
+            synchronized (lock) {
+                task = takeTask();
+                while (task == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    task = takeTask();
+                }
+                task.started = true;
+                runningTasks.add(task);
+                if (task.priority == OperationPriority.BACKGROUND) {
+                    runningBackgroundCount++;
+                }
+            }
+
+            task.run();
+
+            synchronized (lock) {
+                runningTasks.remove(task);
+                if (task.priority == OperationPriority.BACKGROUND) {
+                    runningBackgroundCount--;
+                    // Background slot is free again
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes next task to run, called under lock.
+     *
+     * @return task or null if no task can be run now
+     */
+    @Nullable
+    private Task takeTask() {
+        boolean backgroundAvailable = !backgroundQueue.isEmpty() && runningBackgroundCount < maxBackgroundWorkers;
+        if (!interactiveQueue.isEmpty() && (!backgroundAvailable || interactiveBurstCount < interactiveBurst)) {
+            interactiveBurstCount++;
+            return interactiveQueue.poll();
+        }
+        if (backgroundAvailable) {
+            interactiveBurstCount = 0;
+            return backgroundQueue.poll();
+        }
+        return null;
+    }
+
+    private void postEvent(Runnable event) {
+        pendingEvents.add(event);
+        if (!deliveryPending.getAndSet(true)) {
+            SwingUtilities.invokeLater(this::deliverEvents);
+        }
+    }
+
+    private void deliverEvents() {
+        deliveryPending.set(false);
+        batchesCount++;
+        Runnable event;
+        while ((event = pendingEvents.poll()) != null) {
+            event.run();
+        }
+    }
+
+    private void pollProgress() {
+        List<Task> tasks;
+        synchronized (lock) {
+            tasks = new ArrayList<>(runningTasks);
+        }
+        boolean observed = false;
+        for (Task task : tasks) {
+            if (task.operation instanceof ProgressOperation && !task.progressListeners.isEmpty()) {
+                task.updateProgress();
+                observed = true;
+            }
+        }
+        if (!observed) {
+            progressTimer.stop();
+        }
+    }
+
+    private void startProgressPolling(Task task) {
+        if (task.operation instanceof ProgressOperation && !task.progressListeners.isEmpty() && !progressTimer.isRunning()) {
+            progressTimer.start();
+        }
+    }
+
+    /**
+     * Scheduled operation handle.
+     */
+    private class Task implements ScheduledOperation {
+
+        private final Operation operation;
+        private final OperationPriority priority;
+        private final List<OperationStateListener> stateListeners = new CopyOnWriteArrayList<>();
+        private final List<OperationProgressStateListener> progressListeners = new CopyOnWriteArrayList<>();
+        private final List<OperationPauseStateListener> pauseListeners = new CopyOnWriteArrayList<>();
+        // Guarded by scheduler lock
+        private boolean started = false;
+        private boolean paused = false;
+        private volatile boolean cancelled = false;
+        private volatile boolean done = false;
+        private int lastProgress = -1;
+
+        public Task(Operation operation, OperationPriority priority) {
+            this.operation = operation;
+            this.priority = priority;
+        }
+
+        @Nonnull
+        @Override
+        public Operation getOperation() {
+            return operation;
+        }
+
+        @Nonnull
+        @Override
+        public OperationPriority getPriority() {
+            return priority;
+        }
+
+        private void run() {
+            if (cancelled) {
+                finish();
+                return;
+            }
+
+            postEvent(() -> {
+                for (OperationStateListener listener : stateListeners) {
+                    listener.operationStarted();
+                }
+                startProgressPolling(this);
+            });
+            try {
+                operation.execute();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(DefaultOperationScheduler.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            finish();
+        }
+
+        private void finish() {
+            try {
+                operation.dispose();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(DefaultOperationScheduler.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            done = true;
+            boolean wasCancelled = cancelled;
+            postEvent(() -> {
+                for (OperationStateListener listener : stateListeners) {
+                    if (wasCancelled) {
+                        listener.operationCancelled();
+                    } else {
+                        listener.operationFinished();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancelOperation() {
+            boolean queued;
+            boolean wasPaused;
+            synchronized (lock) {
+                if (cancelled || done) {
+                    return;
+                }
+                cancelled = true;
+                queued = !started;
+                wasPaused = paused;
+                if (queued) {
+                    if (!getQueue(priority).remove(this)) {
+                        heldTasks.remove(this);
+                    }
+                }
+            }
+
+            if (queued) {
+                finish();
+            } else if (operation instanceof CancellableOperation) {
+                ((CancellableOperation) operation).cancelOperation();
+                if (wasPaused && operation instanceof PausableOperation) {
+                    // Let the operation observe cancellation
+                    ((PausableOperation) operation).resumeOperation();
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void pauseOperation() {
+            boolean running;
+            synchronized (lock) {
+                if (paused || cancelled || done) {
+                    return;
+                }
+                if (!started) {
+                    getQueue(priority).remove(this);
+                    heldTasks.add(this);
+                } else if (!(operation instanceof PausableOperation)) {
+                    return;
+                }
+                paused = true;
+                running = started;
+            }
+            if (running) {
+                ((PausableOperation) operation).pauseOperation();
+            }
+            postEvent(() -> {
+                for (OperationPauseStateListener listener : pauseListeners) {
+                    listener.operationPaused();
+                }
+            });
+        }
+
+        @Override
+        public void resumeOperation() {
+            boolean running;
+            synchronized (lock) {
+                if (!paused || cancelled || done) {
+                    return;
+                }
+                paused = false;
+                running = started;
+                if (!running) {
+                    heldTasks.remove(this);
+                    getQueue(priority).add(this);
+                    lock.notifyAll();
+                }
+            }
+            if (running) {
+                ((PausableOperation) operation).resumeOperation();
+            }
+            postEvent(() -> {
+                for (OperationPauseStateListener listener : pauseListeners) {
+                    listener.operationResumed();
+                }
+            });
+        }
+
+        @Override
+        public boolean isPaused() {
+            synchronized (lock) {
+                return paused;
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public int getOperationProgress() {
+            if (done) {
+                return cancelled ? -1 : 1000;
+            }
+            return operation instanceof ProgressOperation ? ((ProgressOperation) operation).getOperationProgress() : -1;
+        }
+
+        private void updateProgress() {
+            int progress = ((ProgressOperation) operation).getOperationProgress();
+            if (progress != lastProgress) {
+                lastProgress = progress;
+                for (OperationProgressStateListener listener : progressListeners) {
+                    listener.operationInProgress(progress < 0 ? -1 : progress / 10);
+                }
+            }
+        }
+
+        @Override
+        public void addOperationStateListener(OperationStateListener listener) {
+            stateListeners.add(listener);
+        }
+
+        @Override
+        public void removeOperationStateListener(OperationStateListener listener) {
+            stateListeners.remove(listener);
+        }
+
+        @Override
+        public void addProgressListener(OperationProgressStateListener listener) {
+            progressListeners.add(listener);
+            if (started && !done) {
+                postEvent(() -> startProgressPolling(this));
+            }
+        }
+
+        @Override
+        public void removeProgressListener(OperationProgressStateListener listener) {
+            progressListeners.remove(listener);
+        }
+
+        @Override
+        public void addPauseStateListener(OperationPauseStateListener listener) {
+            pauseListeners.add(listener);
+        }
+
+        @Override
+        public void removePauseStateListener(OperationPauseStateListener listener) {
+            pauseListeners.remove(listener);
+        }
+    }
+}
@@ -15,13 +15,29 @@
  */
 package org.exbin.jaguif.operation;
 
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.operation.api.OperationModuleApi;
+import org.exbin.jaguif.operation.api.OperationScheduler;
 
 /**
  * Implementation of operation support module.
  */
+@ParametersAreNonnullByDefault
 public class OperationModule implements OperationModuleApi {
 
+    private OperationScheduler operationScheduler;
+
     public OperationModule() {
     }
+
+    @Nonnull
+    @Override
+    public OperationScheduler getOperationScheduler() {
+        if (operationScheduler == null) {
+            operationScheduler = new DefaultOperationScheduler();
+        }
+
+        return operationScheduler;
+    }
 }
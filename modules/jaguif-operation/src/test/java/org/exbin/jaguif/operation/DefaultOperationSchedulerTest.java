@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import org.exbin.jaguif.operation.api.CancellableOperation;
+import org.exbin.jaguif.operation.api.Operation;
+import org.exbin.jaguif.operation.api.OperationPriority;
+import org.exbin.jaguif.operation.api.OperationStateListener;
+import org.exbin.jaguif.operation.api.OperationType;
+import org.exbin.jaguif.operation.api.PausableOperation;
+import org.exbin.jaguif.operation.api.ProgressOperation;
+import org.exbin.jaguif.operation.api.ScheduledOperation;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for operation scheduler.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultOperationSchedulerTest {
+
+    private static final long TIMEOUT = 10000;
+    private static final int OPERATIONS_COUNT = 10000;
+
+    @Test
+    public void testLanesFairness() throws Exception {
+        DefaultOperationScheduler scheduler = new DefaultOperationScheduler(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        scheduler.submit(new TestOperation(blocker::await), OperationPriority.INTERACTIVE);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch executed = new CountDownLatch(40);
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit(new TestOperation(() -> {
+                order.add("B");
+                executed.countDown();
+            }), OperationPriority.BACKGROUND);
+        }
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit(new TestOperation(() -> {
+                order.add("I");
+                executed.countDown();
+            }), OperationPriority.INTERACTIVE);
+        }
+        blocker.countDown();
+        Assert.assertTrue(executed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // Burst of interactive operations is followed by background operation
+        Assert.assertEquals("IIBIIIBIIIBIIIBIIIBIIIBIIIBBBBBBBBBBBBBB", String.join("", order));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testInteractiveWorkerReserved() throws Exception {
+        DefaultOperationScheduler scheduler = new DefaultOperationScheduler(2);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch firstBackgroundStarted = new CountDownLatch(1);
+        AtomicInteger backgroundStarted = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(new TestOperation(() -> {
+                backgroundStarted.incrementAndGet();
+                firstBackgroundStarted.countDown();
+                blocker.await();
+            }), OperationPriority.BACKGROUND);
+        }
+        CountDownLatch interactiveExecuted = new CountDownLatch(1);
+        scheduler.submit(new TestOperation(interactiveExecuted::countDown), OperationPriority.INTERACTIVE);
+        Assert.assertTrue(interactiveExecuted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(firstBackgroundStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, backgroundStarted.get());
+        blocker.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        DefaultOperationScheduler scheduler = new DefaultOperationScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        LoopOperation loopOperation = new LoopOperation(started);
+        ScheduledOperation running = scheduler.submit(loopOperation, OperationPriority.BACKGROUND);
+        TestOperation queuedOperation = new TestOperation(() -> Assert.fail("Cancelled operation executed"));
+        ScheduledOperation queued = scheduler.submit(queuedOperation, OperationPriority.BACKGROUND);
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        StateRecorder queuedRecorder = new StateRecorder();
+        queued.addOperationStateListener(queuedRecorder);
+        queued.cancelOperation();
+        Assert.assertTrue(queued.isDone());
+        Assert.assertTrue(queuedOperation.disposed);
+
+        // Started event is already posted, deliver it before recording
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        StateRecorder recorder = new StateRecorder();
+        running.addOperationStateListener(recorder);
+        long cancelTime = System.nanoTime();
+        running.cancelOperation();
+        Assert.assertTrue(recorder.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        long latency = recorder.doneTime.get() - cancelTime;
+        Assert.assertTrue(latency < TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals("cancelled", recorder.getStates());
+        Assert.assertTrue(queuedRecorder.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("cancelled", queuedRecorder.getStates());
+        Assert.assertTrue(loopOperation.disposed);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testPauseAndProgress() throws Exception {
+        DefaultOperationScheduler scheduler = new DefaultOperationScheduler(1);
+        scheduler.setProgressInterval(5);
+        CountDownLatch blocker = new CountDownLatch(1);
+        scheduler.submit(new TestOperation(blocker::await), OperationPriority.INTERACTIVE);
+        AtomicInteger executions = new AtomicInteger();
+        ScheduledOperation held = scheduler.submit(new TestOperation(executions::incrementAndGet), OperationPriority.INTERACTIVE);
+        held.pauseOperation();
+        Assert.assertTrue(held.isPaused());
+
+        CountDownLatch started = new CountDownLatch(1);
+        LoopOperation loopOperation = new LoopOperation(started);
+        ScheduledOperation running = scheduler.submit(loopOperation, OperationPriority.INTERACTIVE);
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        running.addProgressListener(progress::add);
+        blocker.countDown();
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, executions.get());
+
+        running.pauseOperation();
+        Assert.assertTrue(loopOperation.paused);
+        running.resumeOperation();
+        Assert.assertFalse(loopOperation.paused);
+        long start = System.currentTimeMillis();
+        while (progress.size() < 3) {
+            Assert.assertTrue("Progress timeout", System.currentTimeMillis() - start < TIMEOUT);
+            Thread.sleep(1);
+        }
+        StateRecorder recorder = new StateRecorder();
+        running.addOperationStateListener(recorder);
+        running.cancelOperation();
+        Assert.assertTrue(recorder.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        synchronized (progress) {
+            for (int i = 1; i < progress.size(); i++) {
+                Assert.assertTrue(progress.get(i) >= progress.get(i - 1));
+                Assert.assertTrue(progress.get(i) <= 100);
+            }
+        }
+
+        StateRecorder heldRecorder = new StateRecorder();
+        held.addOperationStateListener(heldRecorder);
+        held.resumeOperation();
+        Assert.assertTrue(heldRecorder.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("started, finished", heldRecorder.getStates());
+        Assert.assertEquals(1, executions.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        DefaultOperationScheduler scheduler = new DefaultOperationScheduler(4);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(OPERATIONS_COUNT);
+        OperationStateListener listener = new OperationStateListener() {
+            @Override
+            public void operationStarted() {
+                Assert.assertTrue(SwingUtilities.isEventDispatchThread());
+            }
+
+            @Override
+            public void operationFinished() {
+                finished.countDown();
+            }
+
+            @Override
+            public void operationCancelled() {
+            }
+        };
+
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < OPERATIONS_COUNT; i++) {
+                ScheduledOperation operation = scheduler.submit(new TestOperation(executions::incrementAndGet), i % 2 == 0 ? OperationPriority.INTERACTIVE : OperationPriority.BACKGROUND);
+                operation.addOperationStateListener(listener);
+            }
+        });
+        Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        int[] batchesCount = new int[1];
+        SwingUtilities.invokeAndWait(() -> batchesCount[0] = scheduler.getBatchesCount());
+
+        Assert.assertEquals(OPERATIONS_COUNT, executions.get());
+        Assert.assertTrue(batchesCount[0] < OPERATIONS_COUNT);
+        scheduler.shutdown();
+    }
+
+    /**
+     * Operation executing given action.
+     */
+    private static class TestOperation implements Operation {
+
+        private final Action action;
+        private volatile boolean disposed = false;
+
+        public TestOperation(Action action) {
+            this.action = action;
+        }
+
+        @Nonnull
+        @Override
+        public OperationType getType() {
+            return TestType.INSTANCE;
+        }
+
+        @Override
+        public void execute() {
+            try {
+                action.perform();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+    }
+
+    /**
+     * Operation running until cancelled.
+     */
+    private static class LoopOperation implements Operation, CancellableOperation, PausableOperation, ProgressOperation {
+
+        private final CountDownLatch started;
+        private final AtomicLong iterations = new AtomicLong();
+        private volatile boolean cancelled = false;
+        private volatile boolean paused = false;
+        private volatile boolean disposed = false;
+
+        public LoopOperation(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Nonnull
+        @Override
+        public OperationType getType() {
+            return TestType.INSTANCE;
+        }
+
+        @Override
+        public void execute() {
+            started.countDown();
+            while (!cancelled) {
+                if (!paused) {
+                    iterations.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+
+        @Override
+        public void cancelOperation() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void pauseOperation() {
+            paused = true;
+        }
+
+        @Override
+        public void resumeOperation() {
+            paused = false;
+        }
+
+        @Override
+        public int getOperationProgress() {
+            return (int) Math.min(iterations.get(), 1000);
+        }
+    }
+
+    private static class StateRecorder implements OperationStateListener {
+
+        private final List<String> states = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicLong doneTime = new AtomicLong();
+
+        @Nonnull
+        public String getStates() {
+            synchronized (states) {
+                return String.join(", ", states);
+            }
+        }
+
+        @Override
+        public void operationStarted() {
+            record("started");
+        }
+
+        @Override
+        public void operationFinished() {
+            record("finished");
+            doneTime.set(System.nanoTime());
+            done.countDown();
+        }
+
+        @Override
+        public void operationCancelled() {
+            record("cancelled");
+            doneTime.set(System.nanoTime());
+            done.countDown();
+        }
+
+        private void record(String state) {
+            Assert.assertTrue(SwingUtilities.isEventDispatchThread());
+            synchronized (states) {
+                states.add(state);
+            }
+        }
+    }
+
+    private interface Action {
+
+        void perform() throws InterruptedException;
+    }
+
+    private enum TestType implements OperationType {
+        INSTANCE
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Activity reporting progress to progress registry.
+ * <p>
+ * Methods can be called from any thread, reporting of progress doesn't lock
+ * and doesn't wait for event dispatch thread.
+ */
+@ParametersAreNonnullByDefault
+public interface ProgressActivity {
+
+    /**
+     * Sets total amount of work units.
+     *
+     * @param total total work units or 0 if unknown
+     */
+    void setTotal(long total);
+
+    /**
+     * Reports amount of work units done.
+     *
+     * @param units work units done since the last report
+     */
+    void addProgress(long units);
+
+    /**
+     * Sets activity detail like for example transfer rate.
+     *
+     * @param detail activity detail or null
+     */
+    void setDetail(@Nullable ActivityDetail detail);
+
+    /**
+     * Starts nested activity.
+     * <p>
+     * Progress of activity with nested activities is weighted total of
+     * progress of nested activities.
+     *
+     * @param title title
+     * @param weight weight in parent activity
+     * @return nested activity
+     */
+    @Nonnull
+    ProgressActivity startChild(String title, long weight);
+
+    /**
+     * Marks activity as finished.
+     */
+    void finish();
+
+    /**
+     * Returns whether activity is finished.
+     *
+     * @return true if finished
+     */
+    boolean isFinished();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Snapshot of the activity state.
+ */
+public interface ProgressActivityState {
+
+    /**
+     * Returns activity title.
+     *
+     * @return title
+     */
+    @Nonnull
+    String getTitle();
+
+    /**
+     * Returns nesting level of the activity, 0 for top level activity.
+     *
+     * @return depth
+     */
+    int getDepth();
+
+    /**
+     * Returns progress in range of 0 to 1000 or -1 if unknown.
+     *
+     * @return progress
+     */
+    int getProgress();
+
+    /**
+     * Returns activity detail.
+     *
+     * @return activity detail or null
+     */
+    @Nullable
+    ActivityDetail getDetail();
+}
@@ -15,6 +15,7 @@
  */
 package org.exbin.jaguif.progress.api;
 
+import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.Module;
 import org.exbin.jaguif.ModuleUtils;
@@ -27,4 +28,11 @@ public interface ProgressModuleApi extends Module {
 
     public static String MODULE_ID = ModuleUtils.getModuleIdByApi(ProgressModuleApi.class);
 
+    /**
+     * Returns shared progress registry.
+     *
+     * @return progress registry
+     */
+    @Nonnull
+    ProgressRegistry getProgressRegistry();
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress.api;
+
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Registry of running activities with aggregated progress.
+ */
+@ParametersAreNonnullByDefault
+public interface ProgressRegistry {
+
+    /**
+     * Starts top level activity.
+     * <p>
+     * Can be called from any thread.
+     *
+     * @param title title
+     * @param weight weight in total progress
+     * @return activity
+     */
+    @Nonnull
+    ProgressActivity startActivity(String title, long weight);
+
+    /**
+     * Returns snapshot of running activities including nested activities in
+     * depth first order.
+     * <p>
+     * Should be called from event dispatch thread.
+     *
+     * @return list of activity states
+     */
+    @Nonnull
+    List<ProgressActivityState> getActivities();
+
+    /**
+     * Returns weighted total progress of all running activities.
+     * <p>
+     * Should be called from event dispatch thread.
+     *
+     * @return progress in range of 0 to 1000 or -1 if unknown
+     */
+    int getTotalProgress();
+
+    /**
+     * Registers progress listener.
+     *
+     * @param listener listener
+     */
+    void addProgressListener(ProgressRegistryListener listener);
+
+    /**
+     * Unregisters progress listener.
+     *
+     * @param listener listener
+     */
+    void removeProgressListener(ProgressRegistryListener listener);
+}
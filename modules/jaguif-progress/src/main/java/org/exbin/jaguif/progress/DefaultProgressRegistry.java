@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.Timer;
+import org.exbin.jaguif.progress.api.ActivityDetail;
+import org.exbin.jaguif.progress.api.ProgressActivity;
+import org.exbin.jaguif.progress.api.ProgressActivityState;
+import org.exbin.jaguif.progress.api.ProgressRegistry;
+import org.exbin.jaguif.progress.api.ProgressRegistryListener;
+
+/**
+ * Progress registry aggregating activities into weighted totals.
+ * <p>
+ * Workers report progress into per activity counters without locking.
+ * Snapshot of activities is computed in event dispatch thread once per frame
+ * while any activity is running and listeners are notified only when
+ * snapshot changes, regardless of how often progress is reported.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultProgressRegistry implements ProgressRegistry {
+
+    /**
+     * Default count of updates per second.
+     */
+    public static final int DEFAULT_FRAME_RATE = 30;
+
+    private final List<Activity> activities = new CopyOnWriteArrayList<>();
+    private final List<ProgressRegistryListener> listeners = new CopyOnWriteArrayList<>();
+    private final Timer timer;
+    private List<ProgressActivityState> states = Collections.emptyList();
+    private int totalProgress = -1;
+
+    public DefaultProgressRegistry() {
+        timer = new Timer(1000 / DEFAULT_FRAME_RATE, (event) -> refresh());
+    }
+
+    /**
+     * Sets maximum count of updates per second.
+     *
+     * @param frameRate frame rate
+     */
+    public void setFrameRate(int frameRate) {
+        if (frameRate < 1) {
+            throw new IllegalStateException("Invalid frame rate: " + frameRate);
+        }
+        timer.setDelay(1000 / frameRate);
+        timer.setInitialDelay(1000 / frameRate);
+    }
+
+    @Nonnull
+    @Override
+    public ProgressActivity startActivity(String title, long weight) {
+        Activity activity = new Activity(title, weight);
+        activities.add(activity);
+        // Starting running timer does nothing, checking isRunning first could
+        // miss concurrent stop in refresh
+        timer.start();
+        return activity;
+    }
+
+    @Nonnull
+    @Override
+    public List<ProgressActivityState> getActivities() {
+        return states;
+    }
+
+    @Override
+    public int getTotalProgress() {
+        return totalProgress;
+    }
+
+    @Override
+    public void addProgressListener(ProgressRegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeProgressListener(ProgressRegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Computes snapshot of activities and notifies listeners if changed.
+     * <p>
+     * Called in event dispatch thread once per frame.
+     */
+    void refresh() {
+        List<ProgressActivityState> newStates = new ArrayList<>();
+        WeightedProgress total = new WeightedProgress();
+        for (Activity activity : activities) {
+            if (activity.finished) {
+                activities.remove(activity);
+                continue;
+            }
+            total.add(activity.weight, activity.collect(newStates, 0));
+        }
+
+        int newTotalProgress = total.getProgress();
+        if (newTotalProgress != totalProgress || !newStates.equals(states)) {
+            states = Collections.unmodifiableList(newStates);
+            totalProgress = newTotalProgress;
+            for (ProgressRegistryListener listener : listeners) {
+                listener.progressChanged();
+            }
+        }
+        if (activities.isEmpty()) {
+            timer.stop();
+            // Activity could be added after the check, restart for it
+            if (!activities.isEmpty()) {
+                timer.start();
+            }
+        }
+    }
+
+    /**
+     * Returns whether periodic refresh is running.
+     *
+     * @return true if running
+     */
+    boolean isRefreshRunning() {
+        return timer.isRunning();
+    }
+
+    private static void checkWeight(long weight) {
+        if (weight < 1) {
+            throw new IllegalStateException("Invalid weight: " + weight);
+        }
+    }
+
+    /**
+     * Activity with lock-free progress counter.
+     */
+    private static class Activity implements ProgressActivity {
+
+        private final String title;
+        private final long weight;
+        private final LongAdder done = new LongAdder();
+        private final List<Activity> children = new CopyOnWriteArrayList<>();
+        private volatile long total = 0;
+        private volatile ActivityDetail detail = null;
+        private volatile boolean finished = false;
+
+        public Activity(String title, long weight) {
+            checkWeight(weight);
+            this.title = title;
+            this.weight = weight;
+        }
+
+        @Override
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        @Override
+        public void addProgress(long units) {
+            done.add(units);
+        }
+
+        @Override
+        public void setDetail(@Nullable ActivityDetail detail) {
+            this.detail = detail;
+        }
+
+        @Nonnull
+        @Override
+        public ProgressActivity startChild(String title, long weight) {
+            Activity child = new Activity(title, weight);
+            children.add(child);
+            return child;
+        }
+
+        @Override
+        public void finish() {
+            finished = true;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Adds states of this and nested running activities.
+         *
+         * @param states list of states
+         * @param depth depth of this activity
+         * @return progress in range of 0 to 1000 or -1 if unknown
+         */
+        private int collect(List<ProgressActivityState> states, int depth) {
+            int index = states.size();
+            states.add(null);
+            int progress;
+            if (children.isEmpty()) {
+                long currentTotal = total;
+                progress = currentTotal <= 0 ? -1 : (int) Math.min(1000, done.sum() * 1000 / currentTotal);
+            } else {
+                WeightedProgress childrenProgress = new WeightedProgress();
+                for (Activity child : children) {
+                    childrenProgress.add(child.weight, child.finished ? 1000 : child.collect(states, depth + 1));
+                }
+                progress = childrenProgress.getProgress();
+            }
+            states.set(index, new ActivityState(title, depth, progress, detail));
+            return progress;
+        }
+    }
+
+    /**
+     * Weighted sum of progress values, unknown progress counts as zero.
+     */
+    private static class WeightedProgress {
+
+        private long weightSum = 0;
+        private double progressSum = 0;
+        private boolean known = false;
+
+        public void add(long weight, int progress) {
+            weightSum += weight;
+            if (progress >= 0) {
+                progressSum += (double) weight * progress;
+                known = true;
+            }
+        }
+
+        public int getProgress() {
+            return known ? (int) (progressSum / weightSum) : -1;
+        }
+    }
+
+    /**
+     * Immutable activity state.
+     */
+    private static class ActivityState implements ProgressActivityState {
+
+        private final String title;
+        private final int depth;
+        private final int progress;
+        private final ActivityDetail detail;
+
+        public ActivityState(String title, int depth, int progress, @Nullable ActivityDetail detail) {
+            this.title = title;
+            this.depth = depth;
+            this.progress = progress;
+            this.detail = detail;
+        }
+
+        @Nonnull
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public int getDepth() {
+            return depth;
+        }
+
+        @Override
+        public int getProgress() {
+            return progress;
+        }
+
+        @Nullable
+        @Override
+        public ActivityDetail getDetail() {
+            return detail;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, depth, progress);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            ActivityState other = (ActivityState) obj;
+            return depth == other.depth && progress == other.progress && title.equals(other.title) && detail == other.detail;
+        }
+    }
+}
@@ -15,8 +15,12 @@
  */
 package org.exbin.jaguif.progress;
 
+import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.progress.api.ProgressModuleApi;
+import org.exbin.jaguif.progress.api.ProgressRegistry;
+import org.exbin.jaguif.progress.gui.ActivityListPanel;
+import org.exbin.jaguif.progress.gui.ProgressStatusPanel;
 
 /**
  * Support for operations with progress state module.
@@ -24,4 +28,42 @@ import org.exbin.jaguif.progress.api.ProgressModuleApi;
 @ParametersAreNonnullByDefault
 public class ProgressModule implements ProgressModuleApi {
 
+    private ProgressRegistry progressRegistry;
+
+    public ProgressModule() {
+    }
+
+    @Nonnull
+    @Override
+    public ProgressRegistry getProgressRegistry() {
+        if (progressRegistry == null) {
+            progressRegistry = new DefaultProgressRegistry();
+        }
+
+        return progressRegistry;
+    }
+
+    /**
+     * Creates status bar indicator of shared progress registry.
+     *
+     * @return status panel
+     */
+    @Nonnull
+    public ProgressStatusPanel createStatusPanel() {
+        ProgressStatusPanel statusPanel = new ProgressStatusPanel();
+        statusPanel.setProgressRegistry(getProgressRegistry());
+        return statusPanel;
+    }
+
+    /**
+     * Creates list view of activities of shared progress registry.
+     *
+     * @return activity list panel
+     */
+    @Nonnull
+    public ActivityListPanel createActivityListPanel() {
+        ActivityListPanel listPanel = new ActivityListPanel();
+        listPanel.setProgressRegistry(getProgressRegistry());
+        return listPanel;
+    }
 }
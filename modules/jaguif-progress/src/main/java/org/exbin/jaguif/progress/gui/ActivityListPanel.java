@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress.gui;
+
+import java.awt.Component;
+import java.util.Collections;
+import java.util.List;
+import java.util.ResourceBundle;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.progress.api.ActivityDetail;
+import org.exbin.jaguif.progress.api.ProgressActivityState;
+import org.exbin.jaguif.progress.api.ProgressRegistry;
+import org.exbin.jaguif.progress.api.ProgressRegistryListener;
+import org.exbin.jaguif.progress.api.TextActivityDetail;
+
+/**
+ * List of running activities.
+ */
+@ParametersAreNonnullByDefault
+public class ActivityListPanel extends javax.swing.JPanel {
+
+    private static final int DEPTH_INDENT = 16;
+
+    private final ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(ActivityListPanel.class);
+    private final ActivityListModel listModel = new ActivityListModel();
+    private final ProgressRegistryListener registryListener = this::updateActivities;
+    private ProgressRegistry progressRegistry = null;
+
+    public ActivityListPanel() {
+        initComponents();
+        init();
+    }
+
+    private void init() {
+        activitiesList.setModel(listModel);
+        activitiesList.setCellRenderer(new DefaultListCellRenderer() {
+            @Nonnull
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, @Nullable Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                if (value instanceof ProgressActivityState) {
+                    ProgressActivityState state = (ProgressActivityState) value;
+                    Component component = super.getListCellRendererComponent(list, getActivityText(state), index, isSelected, cellHasFocus);
+                    setBorder(BorderFactory.createEmptyBorder(0, state.getDepth() * DEPTH_INDENT, 0, 0));
+                    return component;
+                }
+                return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            }
+        });
+    }
+
+    @Nonnull
+    public ResourceBundle getResourceBundle() {
+        return resourceBundle;
+    }
+
+    /**
+     * Sets progress registry to show.
+     *
+     * @param progressRegistry progress registry or null
+     */
+    public void setProgressRegistry(@Nullable ProgressRegistry progressRegistry) {
+        if (this.progressRegistry != null) {
+            this.progressRegistry.removeProgressListener(registryListener);
+        }
+        this.progressRegistry = progressRegistry;
+        if (progressRegistry != null) {
+            progressRegistry.addProgressListener(registryListener);
+        }
+        updateActivities();
+    }
+
+    private void updateActivities() {
+        listModel.setActivities(progressRegistry == null ? Collections.emptyList() : progressRegistry.getActivities());
+    }
+
+    @Nonnull
+    private String getActivityText(ProgressActivityState state) {
+        int progress = state.getProgress();
+        String text = progress < 0
+                ? String.format(resourceBundle.getString("activity.unknownProgress"), state.getTitle())
+                : String.format(resourceBundle.getString("activity.progress"), state.getTitle(), progress / 10f);
+        ActivityDetail detail = state.getDetail();
+        if (detail instanceof TextActivityDetail) {
+            String detailText = ((TextActivityDetail) detail).getText();
+            if (!detailText.isEmpty()) {
+                text = String.format(resourceBundle.getString("activity.detail"), text, detailText);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        activitiesScrollPane = new javax.swing.JScrollPane();
+        activitiesList = new javax.swing.JList<>();
+
+        setLayout(new java.awt.BorderLayout());
+
+        activitiesScrollPane.setViewportView(activitiesList);
+
+        add(activitiesScrollPane, java.awt.BorderLayout.CENTER);
+    }// </editor-fold>//GEN-END:initComponents
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JList<ProgressActivityState> activitiesList;
+    private javax.swing.JScrollPane activitiesScrollPane;
+    // End of variables declaration//GEN-END:variables
+
+    /**
+     * List model firing events for changed rows only.
+     */
+    private static class ActivityListModel extends AbstractListModel<ProgressActivityState> {
+
+        private List<ProgressActivityState> activities = Collections.emptyList();
+
+        @Override
+        public int getSize() {
+            return activities.size();
+        }
+
+        @Nonnull
+        @Override
+        public ProgressActivityState getElementAt(int index) {
+            return activities.get(index);
+        }
+
+        public void setActivities(List<ProgressActivityState> newActivities) {
+            List<ProgressActivityState> oldActivities = activities;
+            activities = newActivities;
+            int commonSize = Math.min(oldActivities.size(), newActivities.size());
+            int firstChanged = 0;
+            while (firstChanged < commonSize && oldActivities.get(firstChanged).equals(newActivities.get(firstChanged))) {
+                firstChanged++;
+            }
+            int lastChanged = commonSize - 1;
+            while (lastChanged >= firstChanged && oldActivities.get(lastChanged).equals(newActivities.get(lastChanged))) {
+                lastChanged--;
+            }
+            if (firstChanged <= lastChanged) {
+                fireContentsChanged(this, firstChanged, lastChanged);
+            }
+            if (newActivities.size() > oldActivities.size()) {
+                fireIntervalAdded(this, commonSize, newActivities.size() - 1);
+            } else if (newActivities.size() < oldActivities.size()) {
+                fireIntervalRemoved(this, commonSize, oldActivities.size() - 1);
+            }
+        }
+    }
+}
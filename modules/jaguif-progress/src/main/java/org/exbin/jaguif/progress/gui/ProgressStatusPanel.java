@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress.gui;
+
+import java.util.List;
+import java.util.ResourceBundle;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.progress.api.ProgressActivityState;
+import org.exbin.jaguif.progress.api.ProgressRegistry;
+import org.exbin.jaguif.progress.api.ProgressRegistryListener;
+
+/**
+ * Status bar indicator of running activities.
+ */
+@ParametersAreNonnullByDefault
+public class ProgressStatusPanel extends javax.swing.JPanel {
+
+    private final ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(ProgressStatusPanel.class);
+    private final ProgressRegistryListener registryListener = this::updateProgress;
+    private ProgressRegistry progressRegistry = null;
+
+    public ProgressStatusPanel() {
+        initComponents();
+        init();
+    }
+
+    private void init() {
+        updateProgress();
+    }
+
+    @Nonnull
+    public ResourceBundle getResourceBundle() {
+        return resourceBundle;
+    }
+
+    /**
+     * Sets progress registry to show.
+     *
+     * @param progressRegistry progress registry or null
+     */
+    public void setProgressRegistry(@Nullable ProgressRegistry progressRegistry) {
+        if (this.progressRegistry != null) {
+            this.progressRegistry.removeProgressListener(registryListener);
+        }
+        this.progressRegistry = progressRegistry;
+        if (progressRegistry != null) {
+            progressRegistry.addProgressListener(registryListener);
+        }
+        updateProgress();
+    }
+
+    private void updateProgress() {
+        List<ProgressActivityState> activities = progressRegistry == null ? null : progressRegistry.getActivities();
+        int rootsCount = 0;
+        ProgressActivityState firstActivity = null;
+        if (activities != null) {
+            for (ProgressActivityState activity : activities) {
+                if (activity.getDepth() == 0) {
+                    if (firstActivity == null) {
+                        firstActivity = activity;
+                    }
+                    rootsCount++;
+                }
+            }
+        }
+
+        if (firstActivity == null) {
+            activityLabel.setText("");
+            progressBar.setVisible(false);
+            return;
+        }
+
+        activityLabel.setText(rootsCount == 1 ? firstActivity.getTitle() : String.format(resourceBundle.getString("activityLabel.multiple"), firstActivity.getTitle(), rootsCount - 1));
+        int totalProgress = progressRegistry.getTotalProgress();
+        progressBar.setIndeterminate(totalProgress < 0);
+        progressBar.setValue(Math.max(totalProgress, 0));
+        progressBar.setVisible(true);
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        activityLabel = new javax.swing.JLabel();
+        progressBar = new javax.swing.JProgressBar();
+
+        setLayout(new java.awt.BorderLayout(5, 0));
+        add(activityLabel, java.awt.BorderLayout.CENTER);
+
+        progressBar.setMaximum(1000);
+        progressBar.setPreferredSize(new java.awt.Dimension(150, 16));
+        add(progressBar, java.awt.BorderLayout.EAST);
+    }// </editor-fold>//GEN-END:initComponents
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JLabel activityLabel;
+    private javax.swing.JProgressBar progressBar;
+    // End of variables declaration//GEN-END:variables
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.progress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+import org.exbin.jaguif.progress.api.ProgressActivity;
+import org.exbin.jaguif.progress.api.ProgressActivityState;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for progress registry.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultProgressRegistryTest {
+
+    private static final int WORKERS_COUNT = 8;
+    private static final long REPORTING_TIME = 1000;
+    private static final long WORKER_TOTAL = 5000000;
+
+    @Test
+    public void testWeightedAggregation() throws Exception {
+        DefaultProgressRegistry registry = new DefaultProgressRegistry();
+        ProgressActivity copy = registry.startActivity("Copy", 3);
+        ProgressActivity first = copy.startChild("First file", 1);
+        ProgressActivity second = copy.startChild("Second file", 3);
+        first.setTotal(100);
+        second.setTotal(10);
+        ProgressActivity index = registry.startActivity("Index", 1);
+
+        first.addProgress(50);
+        second.addProgress(5);
+        SwingUtilities.invokeAndWait(registry::refresh);
+        List<ProgressActivityState> states = registry.getActivities();
+        Assert.assertEquals(4, states.size());
+        Assert.assertEquals("Copy", states.get(0).getTitle());
+        Assert.assertEquals(0, states.get(0).getDepth());
+        Assert.assertEquals(500, states.get(0).getProgress());
+        Assert.assertEquals("Second file", states.get(2).getTitle());
+        Assert.assertEquals(1, states.get(2).getDepth());
+        Assert.assertEquals(-1, states.get(3).getProgress());
+        // Unknown progress of index counts as zero
+        Assert.assertEquals(375, registry.getTotalProgress());
+
+        first.finish();
+        second.addProgress(5);
+        index.setTotal(4);
+        index.addProgress(2);
+        SwingUtilities.invokeAndWait(registry::refresh);
+        Assert.assertEquals(1000, registry.getActivities().get(0).getProgress());
+        Assert.assertEquals(875, registry.getTotalProgress());
+
+        copy.finish();
+        index.finish();
+        SwingUtilities.invokeAndWait(registry::refresh);
+        Assert.assertTrue(registry.getActivities().isEmpty());
+        Assert.assertEquals(-1, registry.getTotalProgress());
+    }
+
+    @Test
+    public void testThrottledNotifications() throws Exception {
+        DefaultProgressRegistry registry = new DefaultProgressRegistry();
+        AtomicInteger notifications = new AtomicInteger();
+        registry.addProgressListener(notifications::incrementAndGet);
+
+        ProgressActivity parent = registry.startActivity("Parallel work", 1);
+        AtomicLong reports = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < WORKERS_COUNT; i++) {
+            ProgressActivity worker = parent.startChild("Worker " + i, 1);
+            worker.setTotal(WORKER_TOTAL);
+            Thread thread = new Thread(() -> {
+                long count = 0;
+                while (System.currentTimeMillis() - start < REPORTING_TIME) {
+                    worker.addProgress(1);
+                    count++;
+                }
+                reports.addAndGet(count);
+                worker.finish();
+            });
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        parent.finish();
+        SwingUtilities.invokeAndWait(registry::refresh);
+
+        int maxFrames = (int) (elapsed * DefaultProgressRegistry.DEFAULT_FRAME_RATE / 1000) + 2;
+        Assert.assertTrue(reports.get() > notifications.get());
+        Assert.assertTrue(notifications.get() <= maxFrames);
+        Assert.assertTrue(registry.getActivities().isEmpty());
+    }
+
+    @Test
+    public void testActivityStartedDuringRefresh() throws Exception {
+        DefaultProgressRegistry registry = new DefaultProgressRegistry();
+        AtomicReference<ProgressActivity> activity = new AtomicReference<>();
+        for (int i = 0; i < 500; i++) {
+            Thread thread = new Thread(() -> activity.set(registry.startActivity("Concurrent work", 1)));
+            SwingUtilities.invokeLater(registry::refresh);
+            thread.start();
+            thread.join();
+            SwingUtilities.invokeAndWait(() -> {
+                // Running activity must not be left without refresh
+                Assert.assertTrue(registry.isRefreshRunning());
+            });
+
+            activity.get().finish();
+            SwingUtilities.invokeAndWait(registry::refresh);
+            Assert.assertFalse(registry.isRefreshRunning());
+        }
+    }
+}
@@ -15,12 +15,21 @@
  */
 package org.exbin.jaguif.search.file;
 
+import java.io.File;
 import java.util.ResourceBundle;
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import org.exbin.jaguif.App;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
 import org.exbin.jaguif.search.file.action.SearchInFilesActions;
+import org.exbin.jaguif.search.file.api.ReplaceInFilesController;
+import org.exbin.jaguif.search.file.api.SearchInFilesController;
+import org.exbin.jaguif.search.file.controller.DefaultReplaceInFilesController;
+import org.exbin.jaguif.search.file.controller.DefaultSearchInFilesController;
+import org.exbin.jaguif.search.file.service.DefaultFileReplaceService;
+import org.exbin.jaguif.search.file.service.DefaultFileSearchService;
+import org.exbin.jaguif.search.file.service.FileReplaceService;
+import org.exbin.jaguif.search.file.service.FileSearchService;
 import org.exbin.jaguif.search.api.SearchModuleApi;
 
 /**
@@ -29,9 +38,15 @@ import org.exbin.jaguif.search.api.SearchModuleApi;
 @ParametersAreNonnullByDefault
 public class SearchFileModule implements SearchModuleApi {
 
+    public static final String SEARCH_INDEX_DIRECTORY = "search-index";
+
     private java.util.ResourceBundle resourceBundle = null;
 
     private SearchInFilesActions findReplaceActions = null;
+    private FileSearchService fileSearchService = null;
+    private FileReplaceService fileReplaceService = null;
+    private SearchInFilesController searchInFilesController = null;
+    private ReplaceInFilesController replaceInFilesController = null;
 
     public SearchFileModule() {
     }
@@ -49,8 +64,72 @@ public class SearchFileModule implements SearchModuleApi {
     public SearchInFilesActions getFindReplaceActions() {
         if (findReplaceActions == null) {
             findReplaceActions = new SearchInFilesActions();
+            findReplaceActions.setDefaultSearchController(this::getSearchInFilesController);
+            findReplaceActions.setDefaultReplaceController(this::getReplaceInFilesController);
         }
 
         return findReplaceActions;
     }
+
+    /**
+     * Returns search in files engine for implementations of search in files
+     * controller.
+     *
+     * @return file search service
+     */
+    @Nonnull
+    public FileSearchService getFileSearchService() {
+        if (fileSearchService == null) {
+            DefaultFileSearchService searchService = new DefaultFileSearchService();
+            searchService.setIndexDirectory(new File(App.getConfigDirectory(), SEARCH_INDEX_DIRECTORY).toPath());
+            fileSearchService = searchService;
+        }
+
+        return fileSearchService;
+    }
+
+    /**
+     * Returns search in files controller used when active context doesn't
+     * provide any.
+     *
+     * @return search in files controller
+     */
+    @Nonnull
+    public SearchInFilesController getSearchInFilesController() {
+        if (searchInFilesController == null) {
+            searchInFilesController = new DefaultSearchInFilesController(getFileSearchService());
+        }
+
+        return searchInFilesController;
+    }
+
+    /**
+     * Returns replace in files controller used when active context doesn't
+     * provide any.
+     *
+     * @return replace in files controller
+     */
+    @Nonnull
+    public ReplaceInFilesController getReplaceInFilesController() {
+        if (replaceInFilesController == null) {
+            replaceInFilesController = new DefaultReplaceInFilesController(getFileSearchService(), getFileReplaceService());
+        }
+
+        return replaceInFilesController;
+    }
+
+    /**
+     * Returns replace in files engine for implementations of replace in files
+     * controller.
+     *
+     * @return file replace service
+     */
+    @Nonnull
+    public FileReplaceService getFileReplaceService() {
+        if (fileReplaceService == null) {
+            fileReplaceService = new DefaultFileReplaceService();
+        }
+
+        return fileReplaceService;
+    }
 }
@@ -17,6 +17,8 @@ package org.exbin.jaguif.search.file.action;
 
 import java.awt.event.ActionEvent;
 import java.util.ResourceBundle;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -37,26 +39,41 @@ public class FindInFilesAction extends AbstractAction implements ActionContextCh
 
     public static final String ACTION_ID = "findInFiles";
     protected SearchInFilesController searchController;
+    protected Supplier<SearchInFilesController> defaultSearchController;
 
     public void init(ResourceBundle resourceBundle) {
         ActionModuleApi actionModule = App.getModule(ActionModuleApi.class);
         actionModule.initAction(this, resourceBundle, ACTION_ID);
-        setEnabled(false);
+        setEnabled(defaultSearchController != null);
         putValue(Action.ACCELERATOR_KEY, javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F, ActionUtils.getMetaMask()));
         putValue(ActionConsts.ACTION_DIALOG_MODE, true);
         putValue(ActionConsts.ACTION_CONTEXT_CHANGE, this);
     }
 
+    /**
+     * Sets provider of search controller used when active context doesn't
+     * provide any.
+     *
+     * @param defaultSearchController search controller provider
+     */
+    public void setDefaultSearchController(@Nullable Supplier<SearchInFilesController> defaultSearchController) {
+        this.defaultSearchController = defaultSearchController;
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
-        searchController.performFindInFiles();
+        if (searchController != null) {
+            searchController.performFindInFiles();
+        } else if (defaultSearchController != null) {
+            defaultSearchController.get().performFindInFiles();
+        }
     }
 
     @Override
     public void register(ContextChangeRegistration registrar) {
         registrar.registerChangeListener(ContextSearch.class, (instance) -> {
             searchController = instance instanceof SearchInFilesController ? (SearchInFilesController) instance : null;
-            setEnabled(searchController != null);
+            setEnabled(searchController != null || defaultSearchController != null);
         });
     }
 }
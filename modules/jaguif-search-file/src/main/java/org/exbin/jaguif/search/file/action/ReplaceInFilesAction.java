@@ -17,6 +17,8 @@ package org.exbin.jaguif.search.file.action;
 
 import java.awt.event.ActionEvent;
 import java.util.ResourceBundle;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -37,26 +39,41 @@ public class ReplaceInFilesAction extends AbstractAction implements ActionContex
 
     public static final String ACTION_ID = "replaceInFiles";
     protected ReplaceInFilesController replaceSearchController;
+    protected Supplier<ReplaceInFilesController> defaultReplaceController;
 
     public void init(ResourceBundle resourceBundle) {
         ActionModuleApi actionModule = App.getModule(ActionModuleApi.class);
         actionModule.initAction(this, resourceBundle, ACTION_ID);
-        setEnabled(false);
+        setEnabled(defaultReplaceController != null);
         putValue(Action.ACCELERATOR_KEY, javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_H, ActionUtils.getMetaMask()));
         putValue(ActionConsts.ACTION_DIALOG_MODE, true);
         putValue(ActionConsts.ACTION_CONTEXT_CHANGE, this);
     }
 
+    /**
+     * Sets provider of replace controller used when active context doesn't
+     * provide any.
+     *
+     * @param defaultReplaceController replace controller provider
+     */
+    public void setDefaultReplaceController(@Nullable Supplier<ReplaceInFilesController> defaultReplaceController) {
+        this.defaultReplaceController = defaultReplaceController;
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
-        replaceSearchController.performReplaceInFiles();
+        if (replaceSearchController != null) {
+            replaceSearchController.performReplaceInFiles();
+        } else if (defaultReplaceController != null) {
+            defaultReplaceController.get().performReplaceInFiles();
+        }
     }
 
     @Override
     public void register(ContextChangeRegistration registrar) {
         registrar.registerChangeListener(ContextSearch.class, (instance) -> {
             replaceSearchController = instance instanceof ReplaceInFilesController ? (ReplaceInFilesController) instance : null;
-            setEnabled(replaceSearchController != null);
+            setEnabled(replaceSearchController != null || defaultReplaceController != null);
         });
     }
 }
@@ -16,7 +16,9 @@
 package org.exbin.jaguif.search.file.action;
 
 import java.util.ResourceBundle;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.Action;
 import org.exbin.jaguif.App;
@@ -26,6 +28,8 @@ import org.exbin.jaguif.contribution.api.SequenceContribution;
 import org.exbin.jaguif.menu.api.MenuDefinitionManagement;
 import org.exbin.jaguif.menu.api.MenuModuleApi;
 import org.exbin.jaguif.search.file.SearchFileModule;
+import org.exbin.jaguif.search.file.api.ReplaceInFilesController;
+import org.exbin.jaguif.search.file.api.SearchInFilesController;
 import org.exbin.jaguif.search.api.SearchModuleApi;
 import org.exbin.jaguif.toolbar.api.ToolBarDefinitionManagement;
 import org.exbin.jaguif.toolbar.api.ToolBarModuleApi;
@@ -37,6 +41,8 @@ import org.exbin.jaguif.toolbar.api.ToolBarModuleApi;
 public class SearchInFilesActions {
 
     private ResourceBundle resourceBundle;
+    private Supplier<SearchInFilesController> defaultSearchController = null;
+    private Supplier<ReplaceInFilesController> defaultReplaceController = null;
 
     public SearchInFilesActions() {
     }
@@ -45,9 +51,30 @@ public class SearchInFilesActions {
         this.resourceBundle = resourceBundle;
     }
 
+    /**
+     * Sets provider of search controller used when active context doesn't
+     * provide any.
+     *
+     * @param defaultSearchController search controller provider
+     */
+    public void setDefaultSearchController(@Nullable Supplier<SearchInFilesController> defaultSearchController) {
+        this.defaultSearchController = defaultSearchController;
+    }
+
+    /**
+     * Sets provider of replace controller used when active context doesn't
+     * provide any.
+     *
+     * @param defaultReplaceController replace controller provider
+     */
+    public void setDefaultReplaceController(@Nullable Supplier<ReplaceInFilesController> defaultReplaceController) {
+        this.defaultReplaceController = defaultReplaceController;
+    }
+
     @Nonnull
     public Action createFindInFilesAction() {
         FindInFilesAction findInFilesAction = new FindInFilesAction();
+        findInFilesAction.setDefaultSearchController(defaultSearchController);
         findInFilesAction.init(resourceBundle);
         return findInFilesAction;
     }
@@ -55,6 +82,7 @@ public class SearchInFilesActions {
     @Nonnull
     public Action createReplaceInFilesAction() {
         ReplaceInFilesAction replaceInFilesAction = new ReplaceInFilesAction();
+        replaceInFilesAction.setDefaultReplaceController(defaultReplaceController);
         replaceInFilesAction.init(resourceBundle);
         return replaceInFilesAction;
     }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.frame.api.FrameModuleApi;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.search.file.api.ReplaceInFilesController;
+import org.exbin.jaguif.search.file.gui.SearchInFilesPanel;
+import org.exbin.jaguif.search.file.service.FileReplaceService;
+import org.exbin.jaguif.search.file.service.FileSearchService;
+import org.exbin.jaguif.window.api.WindowHandler;
+import org.exbin.jaguif.window.api.WindowModuleApi;
+import org.exbin.jaguif.window.api.controller.DefaultControlController;
+import org.exbin.jaguif.window.api.gui.DefaultControlPanel;
+
+/**
+ * Default replace in files controller.
+ * <p>
+ * Replace is performed as transaction, prepared changes are listed and
+ * committed after confirmation. Transaction phases run outside of event
+ * dispatch thread.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultReplaceInFilesController extends DefaultSearchInFilesController implements ReplaceInFilesController {
+
+    private static final String REPLACE_THREAD_NAME = "replaceInFiles";
+
+    private final ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(DefaultReplaceInFilesController.class);
+    protected final FileReplaceService fileReplaceService;
+    private FileReplaceService.ReplaceTransaction runningTransaction = null;
+
+    public DefaultReplaceInFilesController(FileSearchService fileSearchService, FileReplaceService fileReplaceService) {
+        super(fileSearchService);
+        this.fileReplaceService = fileReplaceService;
+    }
+
+    @Override
+    public void performReplaceInFiles() {
+        WindowModuleApi windowModule = App.getModule(WindowModuleApi.class);
+        SearchInFilesPanel searchPanel = new SearchInFilesPanel();
+        searchPanel.setShallReplace(true);
+        searchPanel.setRootDirectory(rootDirectory);
+        DefaultControlPanel controlPanel = new DefaultControlPanel(resourceBundle);
+        WindowHandler dialog = windowModule.createDialog(searchPanel, controlPanel);
+        controlPanel.setController((DefaultControlController.ControlActionType actionType) -> {
+            if (actionType == DefaultControlController.ControlActionType.OK) {
+                if (runningTransaction != null) {
+                    return;
+                }
+
+                FileReplaceService.FileReplaceParameters replaceParameters = new FileReplaceService.FileReplaceParameters();
+                if (fillParameters(searchPanel, replaceParameters)) {
+                    prepareReplace(searchPanel, controlPanel, replaceParameters);
+                }
+            } else {
+                dialog.close();
+            }
+        });
+        windowModule.addHeaderPanel(dialog.getWindow(), DefaultReplaceInFilesController.class, resourceBundle);
+        windowModule.setWindowTitle(dialog, resourceBundle);
+        dialog.showCentered(App.getModule(FrameModuleApi.class).getFrame());
+        // Transaction is rolled back by the replace thread when cancelled
+        if (runningTransaction != null) {
+            runningTransaction.cancel();
+            runningTransaction = null;
+        }
+        dialog.dispose();
+    }
+
+    private void prepareReplace(SearchInFilesPanel searchPanel, DefaultControlPanel controlPanel, FileReplaceService.FileReplaceParameters replaceParameters) {
+        FileReplaceService.ReplaceTransaction transaction;
+        try {
+            transaction = fileReplaceService.createTransaction(replaceParameters);
+        } catch (PatternSyntaxException ex) {
+            showError(searchPanel, ex.getDescription());
+            return;
+        }
+
+        runningTransaction = transaction;
+        searchPanel.clearResults();
+        searchPanel.setInputEnabled(false);
+        controlPanel.setActionEnabled(DefaultControlController.ControlActionType.OK, false);
+        searchPanel.setStatus(resourceBundle.getString("preparing.status"));
+        runInBackground(() -> {
+            try {
+                transaction.prepare();
+                SwingUtilities.invokeLater(() -> {
+                    if (transaction == runningTransaction) {
+                        transactionPrepared(searchPanel, controlPanel, transaction);
+                    } else {
+                        runInBackground(transaction::rollback);
+                    }
+                });
+            } catch (CancellationException ex) {
+                SwingUtilities.invokeLater(() -> finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("replaceCancelled.status")));
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("replaceFailed.status"));
+                    showError(searchPanel, ex.getMessage());
+                });
+            }
+        });
+    }
+
+    private void transactionPrepared(SearchInFilesPanel searchPanel, DefaultControlPanel controlPanel, FileReplaceService.ReplaceTransaction transaction) {
+        List<FileReplaceService.FileChange> changes = transaction.getChanges();
+        int replacementsCount = 0;
+        List<String> results = new ArrayList<>();
+        for (FileReplaceService.FileChange change : changes) {
+            replacementsCount += change.getReplacementsCount();
+            results.add(MessageFormat.format(resourceBundle.getString("fileChange.text"), rootDirectory.relativize(change.getFile()), change.getReplacementsCount()));
+        }
+        for (Path skippedFile : transaction.getSkippedFiles()) {
+            results.add(MessageFormat.format(resourceBundle.getString("fileSkipped.text"), rootDirectory.relativize(skippedFile)));
+        }
+        searchPanel.addResults(results);
+
+        if (changes.isEmpty()) {
+            runInBackground(transaction::rollback);
+            finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("noMatches.status"));
+            return;
+        }
+
+        String confirmMessage = MessageFormat.format(resourceBundle.getString("confirmReplace.message"), replacementsCount, changes.size());
+        if (JOptionPane.showConfirmDialog(searchPanel, confirmMessage, resourceBundle.getString("confirmReplace.title"), JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            runInBackground(transaction::rollback);
+            finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("replaceCancelled.status"));
+            return;
+        }
+
+        String finishedStatus = MessageFormat.format(resourceBundle.getString("replaceFinished.status"), replacementsCount, changes.size());
+        searchPanel.setStatus(resourceBundle.getString("replacing.status"));
+        runInBackground(() -> {
+            try {
+                transaction.commit();
+                SwingUtilities.invokeLater(() -> finishReplace(searchPanel, controlPanel, transaction, finishedStatus));
+            } catch (CancellationException ex) {
+                SwingUtilities.invokeLater(() -> finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("replaceCancelled.status")));
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    finishReplace(searchPanel, controlPanel, transaction, resourceBundle.getString("replaceFailed.status"));
+                    showError(searchPanel, ex.getMessage());
+                });
+            }
+        });
+    }
+
+    private void finishReplace(SearchInFilesPanel searchPanel, DefaultControlPanel controlPanel, FileReplaceService.ReplaceTransaction transaction, String status) {
+        if (transaction != runningTransaction) {
+            return;
+        }
+
+        runningTransaction = null;
+        searchPanel.setStatus(status);
+        searchPanel.setInputEnabled(true);
+        controlPanel.setActionEnabled(DefaultControlController.ControlActionType.OK, true);
+    }
+
+    private static void runInBackground(Runnable runnable) {
+        Thread thread = new Thread(runnable, REPLACE_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.controller;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.JOptionPane;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.frame.api.FrameModuleApi;
+import org.exbin.jaguif.search.file.api.SearchInFilesController;
+import org.exbin.jaguif.search.file.gui.SearchInFilesPanel;
+import org.exbin.jaguif.search.file.service.FileSearchService;
+import org.exbin.jaguif.window.api.WindowHandler;
+import org.exbin.jaguif.window.api.WindowModuleApi;
+import org.exbin.jaguif.window.api.controller.DefaultControlController;
+import org.exbin.jaguif.window.api.gui.DefaultControlPanel;
+
+/**
+ * Default search in files controller showing dialog with found matches.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultSearchInFilesController implements SearchInFilesController {
+
+    /**
+     * Maximum count of matches listed in the dialog.
+     */
+    public static final int MAX_MATCHES_COUNT = 10000;
+
+    protected final FileSearchService fileSearchService;
+    protected Path rootDirectory = Paths.get(System.getProperty("user.dir"));
+    private FileSearchService.FileSearch runningSearch = null;
+
+    public DefaultSearchInFilesController(FileSearchService fileSearchService) {
+        this.fileSearchService = fileSearchService;
+    }
+
+    @Nonnull
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    /**
+     * Sets directory offered for search.
+     *
+     * @param rootDirectory root directory
+     */
+    public void setRootDirectory(Path rootDirectory) {
+        this.rootDirectory = rootDirectory;
+    }
+
+    @Override
+    public void performFindInFiles() {
+        WindowModuleApi windowModule = App.getModule(WindowModuleApi.class);
+        SearchInFilesPanel searchPanel = new SearchInFilesPanel();
+        searchPanel.setRootDirectory(rootDirectory);
+        DefaultControlPanel controlPanel = new DefaultControlPanel(searchPanel.getResourceBundle());
+        WindowHandler dialog = windowModule.createDialog(searchPanel, controlPanel);
+        controlPanel.setController((DefaultControlController.ControlActionType actionType) -> {
+            if (actionType == DefaultControlController.ControlActionType.OK) {
+                FileSearchService.FileSearchParameters searchParameters = new FileSearchService.FileSearchParameters();
+                if (fillParameters(searchPanel, searchParameters)) {
+                    startSearch(searchPanel, searchParameters);
+                }
+            } else {
+                dialog.close();
+            }
+        });
+        windowModule.addHeaderPanel(dialog.getWindow(), searchPanel.getClass(), searchPanel.getResourceBundle());
+        windowModule.setWindowTitle(dialog, searchPanel.getResourceBundle());
+        dialog.showCentered(App.getModule(FrameModuleApi.class).getFrame());
+        // Dialog is modal, search is no longer needed when it's closed
+        cancelSearch();
+        dialog.dispose();
+    }
+
+    /**
+     * Fills search parameters from panel and validates them.
+     *
+     * @param searchPanel search panel
+     * @param searchParameters search parameters to fill
+     * @return true if parameters are valid
+     */
+    protected boolean fillParameters(SearchInFilesPanel searchPanel, FileSearchService.FileSearchParameters searchParameters) {
+        ResourceBundle resourceBundle = searchPanel.getResourceBundle();
+        try {
+            searchPanel.fillParameters(searchParameters);
+        } catch (InvalidPathException ex) {
+            showError(searchPanel, resourceBundle.getString("invalidDirectory.message"));
+            return false;
+        }
+        if (!Files.isDirectory(searchParameters.getRootDirectory())) {
+            showError(searchPanel, resourceBundle.getString("invalidDirectory.message"));
+            return false;
+        }
+        if (searchParameters.getFindText().isEmpty()) {
+            return false;
+        }
+
+        rootDirectory = searchParameters.getRootDirectory();
+        return true;
+    }
+
+    private void startSearch(SearchInFilesPanel searchPanel, FileSearchService.FileSearchParameters searchParameters) {
+        cancelSearch();
+        searchParameters.setMaxMatchesCount(MAX_MATCHES_COUNT);
+        ResourceBundle resourceBundle = searchPanel.getResourceBundle();
+        searchPanel.clearResults();
+        searchPanel.setStatus(resourceBundle.getString("searching.status"));
+        Path searchDirectory = searchParameters.getRootDirectory();
+        FileSearchService.FileSearch[] search = new FileSearchService.FileSearch[1];
+        FileSearchService.FileSearchListener listener = new FileSearchService.FileSearchListener() {
+            @Override
+            public void matchesFound(List<FileSearchService.FoundFileMatch> matches) {
+                if (search[0] != runningSearch) {
+                    return;
+                }
+                List<String> results = new ArrayList<>();
+                for (FileSearchService.FoundFileMatch match : matches) {
+                    results.add(searchDirectory.relativize(match.getFile()) + ":" + (match.getLine() + 1) + ": " + match.getLineText().trim());
+                }
+                searchPanel.addResults(results);
+            }
+
+            @Override
+            public void searchFinished(boolean cancelled) {
+                if (search[0] != runningSearch) {
+                    return;
+                }
+                runningSearch = null;
+                searchPanel.setStatus(MessageFormat.format(resourceBundle.getString(cancelled ? "searchStopped.status" : "searchFinished.status"), searchPanel.getResultsCount(), search[0].getScannedFilesCount()));
+            }
+        };
+        try {
+            search[0] = fileSearchService.startSearch(searchParameters, listener);
+        } catch (PatternSyntaxException ex) {
+            searchPanel.setStatus(" ");
+            showError(searchPanel, ex.getDescription());
+            return;
+        }
+        runningSearch = search[0];
+    }
+
+    private void cancelSearch() {
+        if (runningSearch != null) {
+            runningSearch.cancel();
+            runningSearch = null;
+        }
+    }
+
+    protected void showError(SearchInFilesPanel searchPanel, @Nullable String message) {
+        JOptionPane.showMessageDialog(searchPanel, message, searchPanel.getResourceBundle().getString("error.title"), JOptionPane.ERROR_MESSAGE);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.gui;
+
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.ResourceBundle;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import org.exbin.jaguif.App;
+import org.exbin.jaguif.language.api.LanguageModuleApi;
+import org.exbin.jaguif.search.file.service.FileReplaceService;
+import org.exbin.jaguif.search.file.service.FileSearchService;
+
+/**
+ * Search in files panel with search parameters and list of results.
+ */
+@ParametersAreNonnullByDefault
+public class SearchInFilesPanel extends javax.swing.JPanel {
+
+    private final java.util.ResourceBundle resourceBundle = App.getModule(LanguageModuleApi.class).getBundle(SearchInFilesPanel.class);
+
+    private final JLabel directoryLabel = new JLabel();
+    private final JTextField directoryTextField = new JTextField();
+    private final JButton browseButton = new JButton();
+    private final JLabel findTextLabel = new JLabel();
+    private final JTextField findTextField = new JTextField();
+    private final JLabel replaceTextLabel = new JLabel();
+    private final JTextField replaceTextField = new JTextField();
+    private final JLabel fileNamePatternLabel = new JLabel();
+    private final JTextField fileNamePatternTextField = new JTextField("*");
+    private final JCheckBox matchCaseCheckBox = new JCheckBox();
+    private final JCheckBox wholeWordsCheckBox = new JCheckBox();
+    private final JCheckBox regularExpressionCheckBox = new JCheckBox();
+    private final DefaultListModel<String> resultsListModel = new DefaultListModel<>();
+    private final JList<String> resultsList = new JList<>(resultsListModel);
+    private final JLabel statusLabel = new JLabel(" ");
+
+    public SearchInFilesPanel() {
+        initComponents();
+        setShallReplace(false);
+    }
+
+    private void initComponents() {
+        setName("Form"); // NOI18N
+        setLayout(new GridBagLayout());
+
+        directoryLabel.setText(resourceBundle.getString("directoryLabel.text")); // NOI18N
+        browseButton.setText(resourceBundle.getString("browseButton.text")); // NOI18N
+        browseButton.addActionListener((evt) -> {
+            JFileChooser fileChooser = new JFileChooser(directoryTextField.getText());
+            fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                directoryTextField.setText(fileChooser.getSelectedFile().getAbsolutePath());
+            }
+        });
+        findTextLabel.setText(resourceBundle.getString("findTextLabel.text")); // NOI18N
+        replaceTextLabel.setText(resourceBundle.getString("replaceTextLabel.text")); // NOI18N
+        fileNamePatternLabel.setText(resourceBundle.getString("fileNamePatternLabel.text")); // NOI18N
+        matchCaseCheckBox.setSelected(true);
+        matchCaseCheckBox.setText(resourceBundle.getString("matchCaseCheckBox.text")); // NOI18N
+        wholeWordsCheckBox.setText(resourceBundle.getString("wholeWordsCheckBox.text")); // NOI18N
+        regularExpressionCheckBox.setText(resourceBundle.getString("regularExpressionCheckBox.text")); // NOI18N
+        JScrollPane resultsScrollPane = new JScrollPane(resultsList);
+        resultsScrollPane.setPreferredSize(new Dimension(600, 300));
+
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.insets = new Insets(5, 5, 0, 5);
+        constraints.anchor = GridBagConstraints.WEST;
+        addRow(directoryLabel, directoryTextField, browseButton, 0, constraints);
+        addRow(findTextLabel, findTextField, null, 1, constraints);
+        addRow(replaceTextLabel, replaceTextField, null, 2, constraints);
+        addRow(fileNamePatternLabel, fileNamePatternTextField, null, 3, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridwidth = 2;
+        constraints.fill = GridBagConstraints.NONE;
+        constraints.weightx = 0;
+        constraints.gridy = 4;
+        add(matchCaseCheckBox, constraints);
+        constraints.gridy = 5;
+        add(wholeWordsCheckBox, constraints);
+        constraints.gridy = 6;
+        add(regularExpressionCheckBox, constraints);
+
+        constraints.gridx = 0;
+        constraints.gridy = 7;
+        constraints.gridwidth = 3;
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.weightx = 1;
+        constraints.weighty = 1;
+        add(resultsScrollPane, constraints);
+        constraints.gridy = 8;
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        constraints.weighty = 0;
+        constraints.insets = new Insets(5, 5, 5, 5);
+        add(statusLabel, constraints);
+    }
+
+    private void addRow(JLabel label, JTextField textField, @Nullable JButton button, int row, GridBagConstraints constraints) {
+        constraints.gridy = row;
+        constraints.gridx = 0;
+        constraints.gridwidth = 1;
+        constraints.fill = GridBagConstraints.NONE;
+        constraints.weightx = 0;
+        add(label, constraints);
+        constraints.gridx = 1;
+        constraints.gridwidth = button == null ? 2 : 1;
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        constraints.weightx = 1;
+        add(textField, constraints);
+        if (button != null) {
+            constraints.gridx = 2;
+            constraints.fill = GridBagConstraints.NONE;
+            constraints.weightx = 0;
+            add(button, constraints);
+        }
+    }
+
+    @Nonnull
+    public ResourceBundle getResourceBundle() {
+        return resourceBundle;
+    }
+
+    public void setShallReplace(boolean shallReplace) {
+        replaceTextLabel.setVisible(shallReplace);
+        replaceTextField.setVisible(shallReplace);
+    }
+
+    public void setRootDirectory(Path rootDirectory) {
+        directoryTextField.setText(rootDirectory.toString());
+    }
+
+    /**
+     * Fills search parameters from the values entered in the panel.
+     *
+     * @param searchParameters search parameters
+     */
+    public void fillParameters(FileSearchService.FileSearchParameters searchParameters) {
+        searchParameters.setRootDirectory(Paths.get(directoryTextField.getText()));
+        searchParameters.setFindText(findTextField.getText());
+        String fileNamePattern = fileNamePatternTextField.getText().trim();
+        searchParameters.setFileNamePattern(fileNamePattern.isEmpty() ? "*" : fileNamePattern);
+        searchParameters.setMatchCase(matchCaseCheckBox.isSelected());
+        searchParameters.setWholeWords(wholeWordsCheckBox.isSelected());
+        searchParameters.setRegularExpression(regularExpressionCheckBox.isSelected());
+        if (searchParameters instanceof FileReplaceService.FileReplaceParameters) {
+            ((FileReplaceService.FileReplaceParameters) searchParameters).setReplaceText(replaceTextField.getText());
+        }
+    }
+
+    public void clearResults() {
+        resultsListModel.clear();
+        statusLabel.setText(" ");
+    }
+
+    public void addResults(List<String> results) {
+        for (String result : results) {
+            resultsListModel.addElement(result);
+        }
+    }
+
+    public int getResultsCount() {
+        return resultsListModel.getSize();
+    }
+
+    public void setStatus(String status) {
+        statusLabel.setText(status);
+    }
+
+    public void setInputEnabled(boolean enabled) {
+        directoryTextField.setEnabled(enabled);
+        browseButton.setEnabled(enabled);
+        findTextField.setEnabled(enabled);
+        replaceTextField.setEnabled(enabled);
+        fileNamePatternTextField.setEnabled(enabled);
+        matchCaseCheckBox.setEnabled(enabled);
+        wholeWordsCheckBox.setEnabled(enabled);
+        regularExpressionCheckBox.setEnabled(enabled);
+    }
+}
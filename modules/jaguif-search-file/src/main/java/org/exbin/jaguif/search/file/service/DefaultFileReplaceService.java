@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Replace in files with transactional commit.
+ * <p>
+ * Files are transformed line by line in parallel into temporary files placed
+ * next to the original files, line ends are preserved. Commit moves each
+ * original file to backup and temporary file in its place, so that all
+ * replaced files can be restored if any file fails. Files which are not
+ * valid for the charset are never rewritten.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultFileReplaceService implements FileReplaceService {
+
+    private static final String PREPARE_THREAD_NAME = "fileReplace-";
+    private static final String TEMP_FILE_SUFFIX = ".replace";
+    private static final String BACKUP_FILE_SUFFIX = ".backup";
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    public DefaultFileReplaceService() {
+    }
+
+    @Nonnull
+    @Override
+    public ReplaceTransaction createTransaction(FileReplaceParameters replaceParameters) {
+        if (replaceParameters.getThreadsCount() < 1) {
+            throw new IllegalStateException("Invalid threads count: " + replaceParameters.getThreadsCount());
+        }
+        return new Transaction(replaceParameters, FileSearchPattern.create(replaceParameters));
+    }
+
+    @Nonnull
+    private static Reader openReader(InputStream input, Charset charset) {
+        return new InputStreamReader(input, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT));
+    }
+
+    @Nonnull
+    private static Writer openWriter(Path file, Charset charset) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)));
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class Transaction implements ReplaceTransaction {
+
+        private final FileReplaceParameters replaceParameters;
+        private final FileSearchPattern searchPattern;
+        private final List<Change> changes = new ArrayList<>();
+        private final List<Path> skippedFiles = new ArrayList<>();
+        private final AtomicInteger processedFilesCount = new AtomicInteger();
+        private volatile int filesCount = 0;
+        private volatile boolean cancelled = false;
+        private volatile TransactionState state = TransactionState.CREATED;
+
+        public Transaction(FileReplaceParameters replaceParameters, FileSearchPattern searchPattern) {
+            this.replaceParameters = replaceParameters;
+            this.searchPattern = searchPattern;
+        }
+
+        @Override
+        public void prepare() throws IOException {
+            checkState(TransactionState.CREATED);
+            try {
+                checkCancelled();
+                List<Path> files = collectFiles();
+                filesCount = files.size();
+                prepareFiles(files);
+                checkCancelled();
+            } catch (IOException | RuntimeException ex) {
+                rollback();
+                throw ex;
+            }
+
+            changes.sort(Comparator.comparing(Change::getFile));
+            skippedFiles.sort(Comparator.naturalOrder());
+            state = TransactionState.PREPARED;
+        }
+
+        @Nonnull
+        @Override
+        public List<FileChange> getChanges() {
+            return Collections.unmodifiableList(changes);
+        }
+
+        @Nonnull
+        @Override
+        public List<Path> getSkippedFiles() {
+            return Collections.unmodifiableList(skippedFiles);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            checkState(TransactionState.PREPARED);
+            try {
+                checkCancelled();
+                for (Change change : changes) {
+                    change.replaceFile();
+                }
+            } catch (IOException | RuntimeException ex) {
+                restoreFiles();
+                rollback();
+                throw ex;
+            }
+
+            for (Change change : changes) {
+                change.deleteBackup();
+            }
+            state = TransactionState.COMMITTED;
+        }
+
+        @Override
+        public void rollback() {
+            if (state == TransactionState.COMMITTED) {
+                throw new IllegalStateException("Transaction already committed");
+            }
+            synchronized (changes) {
+                for (Change change : changes) {
+                    change.deleteTempFile();
+                }
+            }
+            state = TransactionState.ROLLED_BACK;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Nonnull
+        @Override
+        public TransactionState getState() {
+            return state;
+        }
+
+        @Override
+        public int getProcessedFilesCount() {
+            return processedFilesCount.get();
+        }
+
+        @Override
+        public int getFilesCount() {
+            return filesCount;
+        }
+
+        private void checkState(TransactionState expectedState) {
+            if (state != expectedState) {
+                throw new IllegalStateException("Invalid transaction state: " + state);
+            }
+        }
+
+        private void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        @Nonnull
+        private List<Path> collectFiles() throws IOException {
+            List<Path> files = new ArrayList<>();
+            PathMatcher fileNameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + replaceParameters.getFileNamePattern());
+            Files.walkFileTree(replaceParameters.getRootDirectory(), new SimpleFileVisitor<Path>() {
+                @Nonnull
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && attrs.size() <= replaceParameters.getMaxFileSize()) {
+                        Path fileName = file.getFileName();
+                        if (fileName != null && fileNameMatcher.matches(fileName)) {
+                            files.add(file);
+                        }
+                    }
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Nonnull
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return files;
+        }
+
+        private void prepareFiles(List<Path> files) throws IOException {
+            AtomicInteger nextFile = new AtomicInteger();
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            Runnable worker = () -> {
+                FileSearchPattern.LineMatcher lineMatcher = searchPattern.createMatcher();
+                int fileIndex;
+                while (!cancelled && failure.get() == null && (fileIndex = nextFile.getAndIncrement()) < files.size()) {
+                    try {
+                        prepareFile(files.get(fileIndex), lineMatcher);
+                    } catch (IOException ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        processedFilesCount.incrementAndGet();
+                    }
+                }
+            };
+
+            int threadsCount = Math.min(replaceParameters.getThreadsCount(), files.size());
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadsCount; i++) {
+                Thread thread = new Thread(worker, PREPARE_THREAD_NAME + (i + 1));
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+
+        private void prepareFile(Path file, FileSearchPattern.LineMatcher lineMatcher) throws IOException {
+            Charset charset = replaceParameters.getCharset();
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            try {
+                if (!containsMatch(file, lineMatcher)) {
+                    return;
+                }
+            } catch (CharacterCodingException ex) {
+                addSkippedFile(file);
+                return;
+            }
+
+            Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), TEMP_FILE_SUFFIX);
+            Change change = new Change(file, tempFile, attributes);
+            synchronized (changes) {
+                changes.add(change);
+            }
+            try (Reader reader = openReader(Files.newInputStream(file), charset); Writer writer = openWriter(tempFile, charset)) {
+                LineReader lineReader = new LineReader(reader);
+                StringBuilder replaced = new StringBuilder();
+                int replacementsCount = 0;
+                while (lineReader.readLine()) {
+                    if (cancelled) {
+                        return;
+                    }
+                    replaced.setLength(0);
+                    replacementsCount += lineMatcher.replaceAll(lineReader.getContent(), replaceParameters.getReplaceText(), replaced);
+                    writer.append(replaced).append(lineReader.getLineEnd());
+                }
+                change.replacementsCount = replacementsCount;
+            } catch (CharacterCodingException ex) {
+                synchronized (changes) {
+                    changes.remove(change);
+                }
+                change.deleteTempFile();
+                addSkippedFile(file);
+                return;
+            }
+
+            try {
+                Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(file));
+            } catch (UnsupportedOperationException ex) {
+                // Permissions are not supported by the file system
+            }
+        }
+
+        private boolean containsMatch(Path file, FileSearchPattern.LineMatcher lineMatcher) throws IOException {
+            try (InputStream input = Files.newInputStream(file)) {
+                byte[] prefix = new byte[DefaultFileSearchService.SNIFF_LENGTH];
+                int prefixLength = DefaultFileSearchService.readPrefix(input, prefix);
+                if (DefaultFileSearchService.isBinaryContent(prefix, prefixLength, replaceParameters.getCharset())) {
+                    return false;
+                }
+
+                InputStream content = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, prefixLength), input);
+                LineReader lineReader = new LineReader(openReader(content, replaceParameters.getCharset()));
+                boolean[] found = new boolean[1];
+                while (!found[0] && !cancelled && lineReader.readLine()) {
+                    lineMatcher.findAll(lineReader.getContent(), (start, end) -> {
+                        found[0] = true;
+                        return false;
+                    });
+                }
+                return found[0];
+            }
+        }
+
+        private void addSkippedFile(Path file) {
+            synchronized (skippedFiles) {
+                skippedFiles.add(file);
+            }
+        }
+
+        private void restoreFiles() {
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                changes.get(i).restoreFile();
+            }
+        }
+
+        /**
+         * Prepared change of the file.
+         */
+        @ParametersAreNonnullByDefault
+        private class Change implements FileChange {
+
+            private final Path file;
+            private final Path tempFile;
+            private final long size;
+            private final FileTime lastModifiedTime;
+            private int replacementsCount = 0;
+            private Path backupFile = null;
+            private List<ChangedLine> changedLines = null;
+
+            public Change(Path file, Path tempFile, BasicFileAttributes attributes) {
+                this.file = file;
+                this.tempFile = tempFile;
+                size = attributes.size();
+                lastModifiedTime = attributes.lastModifiedTime();
+            }
+
+            @Nonnull
+            @Override
+            public Path getFile() {
+                return file;
+            }
+
+            @Override
+            public int getReplacementsCount() {
+                return replacementsCount;
+            }
+
+            @Nonnull
+            @Override
+            public synchronized List<ChangedLine> getChangedLines() throws IOException {
+                if (changedLines != null) {
+                    return changedLines;
+                }
+                if (state != TransactionState.PREPARED) {
+                    throw new IllegalStateException("Preview is not available in state: " + state);
+                }
+
+                List<ChangedLine> lines = new ArrayList<>();
+                FileSearchPattern.LineMatcher lineMatcher = searchPattern.createMatcher();
+                try (Reader reader = openReader(Files.newInputStream(file), replaceParameters.getCharset())) {
+                    LineReader lineReader = new LineReader(reader);
+                    StringBuilder replaced = new StringBuilder();
+                    int line = 0;
+                    while (lineReader.readLine()) {
+                        replaced.setLength(0);
+                        String content = lineReader.getContent();
+                        if (lineMatcher.replaceAll(content, replaceParameters.getReplaceText(), replaced) > 0) {
+                            lines.add(new ChangedLine(line, content, replaced.toString()));
+                        }
+                        line++;
+                    }
+                }
+                changedLines = Collections.unmodifiableList(lines);
+                return changedLines;
+            }
+
+            private void replaceFile() throws IOException {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.size() != size || !attributes.lastModifiedTime().equals(lastModifiedTime)) {
+                    throw new IOException("File was modified: " + file);
+                }
+
+                Path backup = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), BACKUP_FILE_SUFFIX);
+                try {
+                    Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    Files.deleteIfExists(backup);
+                    throw ex;
+                }
+                backupFile = backup;
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            private void restoreFile() {
+                if (backupFile == null) {
+                    return;
+                }
+
+                try {
+                    if (Files.exists(file) && !Files.exists(tempFile)) {
+                        // Keep replaced content as temporary file to be deleted
+                        Files.move(file, tempFile, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    Files.move(backupFile, file, StandardCopyOption.ATOMIC_MOVE);
+                    backupFile = null;
+                } catch (IOException ex) {
+                    Logger.getLogger(DefaultFileReplaceService.class.getName()).log(Level.SEVERE, "Unable to restore file " + file + " from " + backupFile, ex);
+                }
+            }
+
+            private void deleteBackup() {
+                if (backupFile == null) {
+                    return;
+                }
+
+                try {
+                    Files.deleteIfExists(backupFile);
+                    backupFile = null;
+                } catch (IOException ex) {
+                    Logger.getLogger(DefaultFileReplaceService.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+
+            private void deleteTempFile() {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ex) {
+                    Logger.getLogger(DefaultFileReplaceService.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reader of lines keeping line ends.
+     * <p>
+     * Line ends with line feed, preceding carriage return is part of the line
+     * end.
+     */
+    @ParametersAreNonnullByDefault
+    private static class LineReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[READ_BUFFER_SIZE];
+        private final StringBuilder content = new StringBuilder();
+        private int position = 0;
+        private int limit = 0;
+        private String lineEnd = "";
+
+        public LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads next line.
+         *
+         * @return false if end of the input was reached
+         * @throws IOException if read fails
+         */
+        public boolean readLine() throws IOException {
+            content.setLength(0);
+            lineEnd = "";
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return content.length() > 0;
+                    }
+                }
+
+                int lineStart = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                content.append(buffer, lineStart, position - lineStart);
+                if (position < limit) {
+                    position++;
+                    int contentLength = content.length();
+                    if (contentLength > 0 && content.charAt(contentLength - 1) == '\r') {
+                        content.setLength(contentLength - 1);
+                        lineEnd = "\r\n";
+                    } else {
+                        lineEnd = "\n";
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Nonnull
+        public String getContent() {
+            return content.toString();
+        }
+
+        @Nonnull
+        public String getLineEnd() {
+            return lineEnd;
+        }
+    }
+}
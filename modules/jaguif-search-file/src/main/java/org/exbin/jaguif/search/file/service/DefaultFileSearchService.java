@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
+
+/**
+ * Multi-threaded search in files.
+ * <p>
+ * Directory tree is walked by single thread which feeds bounded queue of
+ * files for searching threads. Binary files are detected from the start of
+ * the file and skipped, text is decoded and matched line by line while
+ * reading, so that file is never loaded as a whole. Found matches are
+ * delivered to event dispatch thread in batches as they are found.
+ * <p>
+ * When index directory is set, searches requesting content index are
+ * narrowed to candidate files of persistent trigram index of the root
+ * directory, which is updated before each search.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultFileSearchService implements FileSearchService {
+
+    /**
+     * Length of the start of the file used to detect binary files.
+     */
+    public static final int SNIFF_LENGTH = 8000;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long POLL_TIMEOUT = 10;
+    private static final String WALKER_THREAD_NAME = "fileSearchWalker";
+    private static final String SEARCH_THREAD_NAME = "fileSearch-";
+
+    private final Map<Path, FileContentIndex> contentIndexes = new HashMap<>();
+    private Path indexDirectory = null;
+
+    public DefaultFileSearchService() {
+    }
+
+    @Nullable
+    public Path getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    /**
+     * Sets directory for content index files.
+     *
+     * @param indexDirectory index directory or null to disable content
+     * indexes
+     */
+    public void setIndexDirectory(@Nullable Path indexDirectory) {
+        this.indexDirectory = indexDirectory;
+        synchronized (contentIndexes) {
+            contentIndexes.clear();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public FileSearch startSearch(FileSearchParameters searchParameters, FileSearchListener listener) {
+        if (searchParameters.getThreadsCount() < 1) {
+            throw new IllegalStateException("Invalid threads count: " + searchParameters.getThreadsCount());
+        }
+        FileContentIndex contentIndex = searchParameters.isUseContentIndex() ? getContentIndex(searchParameters) : null;
+        SearchTask searchTask = new SearchTask(searchParameters, FileSearchPattern.create(searchParameters), contentIndex, listener);
+        searchTask.start();
+        return searchTask;
+    }
+
+    @Nullable
+    private FileContentIndex getContentIndex(FileSearchParameters searchParameters) {
+        if (indexDirectory == null) {
+            return null;
+        }
+
+        Path indexFile = FileContentIndex.getIndexFile(indexDirectory, searchParameters.getRootDirectory(), searchParameters.getCharset());
+        synchronized (contentIndexes) {
+            return contentIndexes.computeIfAbsent(indexFile, (file) -> new FileContentIndex(file, searchParameters.getRootDirectory(), searchParameters.getCharset()));
+        }
+    }
+
+    /**
+     * Returns true if the start of the file looks like binary data.
+     * <p>
+     * Data containing zero byte or more than 10 % of control characters is
+     * considered binary. Data is never considered binary for UTF-16 and
+     * UTF-32 charsets.
+     *
+     * @param data start of the file
+     * @param length length of the data
+     * @param charset charset of the file
+     * @return true for binary data
+     */
+    public static boolean isBinaryContent(byte[] data, int length, Charset charset) {
+        String charsetName = charset.name();
+        if (charsetName.startsWith("UTF-16") || charsetName.startsWith("UTF-32")) {
+            return false;
+        }
+
+        int controlCount = 0;
+        for (int i = 0; i < length; i++) {
+            int value = data[i] & 0xff;
+            if (value == 0) {
+                return true;
+            }
+            if (value < 0x20 && value != '\t' && value != '\n' && value != '\r' && value != '\f' && value != '\b' && value != 0x1b) {
+                controlCount++;
+            }
+        }
+        return controlCount * 10 > length;
+    }
+
+    /**
+     * Opens reader of text file.
+     * <p>
+     * Malformed input is replaced and byte order mark is not skipped.
+     *
+     * @param input input stream
+     * @param charset charset
+     * @return reader
+     */
+    @Nonnull
+    public static BufferedReader openReader(InputStream input, Charset charset) {
+        return new BufferedReader(new InputStreamReader(input, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+    }
+
+    /**
+     * Reads start of the stream.
+     *
+     * @param input input stream
+     * @param buffer target buffer
+     * @return count of bytes read
+     * @throws IOException if read fails
+     */
+    public static int readPrefix(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int count = input.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                break;
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class SearchTask implements FileSearch {
+
+        private final FileSearchParameters searchParameters;
+        private final FileSearchPattern searchPattern;
+        private final FileContentIndex contentIndex;
+        private final FileSearchListener listener;
+        private final PathMatcher fileNameMatcher;
+        private final BlockingQueue<Path> files = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final ConcurrentLinkedQueue<FoundFileMatch> pendingMatches = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean deliveryScheduled = new AtomicBoolean();
+        private final AtomicInteger scannedFilesCount = new AtomicInteger();
+        private final AtomicInteger binaryFilesCount = new AtomicInteger();
+        private final AtomicInteger matchesCount = new AtomicInteger();
+        private final AtomicInteger runningThreads;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean walkFinished = false;
+        private volatile boolean cancelled = false;
+
+        public SearchTask(FileSearchParameters searchParameters, FileSearchPattern searchPattern, @Nullable FileContentIndex contentIndex, FileSearchListener listener) {
+            this.searchParameters = searchParameters;
+            this.searchPattern = searchPattern;
+            this.contentIndex = contentIndex;
+            this.listener = listener;
+            fileNameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + searchParameters.getFileNamePattern());
+            runningThreads = new AtomicInteger(searchParameters.getThreadsCount() + 1);
+        }
+
+        public void start() {
+            Thread walker = new Thread(this::walkFiles, WALKER_THREAD_NAME);
+            walker.setDaemon(true);
+            walker.start();
+            for (int i = 0; i < searchParameters.getThreadsCount(); i++) {
+                Thread searchThread = new Thread(this::searchFiles, SEARCH_THREAD_NAME + (i + 1));
+                searchThread.setDaemon(true);
+                searchThread.start();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return finished.getCount() == 0;
+        }
+
+        @Override
+        public void waitFor() throws InterruptedException {
+            finished.await();
+        }
+
+        @Override
+        public int getScannedFilesCount() {
+            return scannedFilesCount.get();
+        }
+
+        @Override
+        public int getBinaryFilesCount() {
+            return binaryFilesCount.get();
+        }
+
+        private void walkFiles() {
+            try {
+                if (contentIndex != null) {
+                    walkCandidateFiles();
+                    return;
+                }
+
+                Files.walkFileTree(searchParameters.getRootDirectory(), new SimpleFileVisitor<Path>() {
+                    @Nonnull
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Nonnull
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && attrs.size() <= searchParameters.getMaxFileSize()) {
+                            Path fileName = file.getFileName();
+                            if (fileName != null && fileNameMatcher.matches(fileName) && !enqueue(file)) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                        }
+                        return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Nonnull
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException ex) {
+                Logger.getLogger(DefaultFileSearchService.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                walkFinished = true;
+                threadFinished();
+            }
+        }
+
+        private void walkCandidateFiles() throws IOException {
+            contentIndex.update(searchParameters.getThreadsCount(), () -> cancelled);
+            if (cancelled) {
+                return;
+            }
+            contentIndex.save();
+            for (Path file : contentIndex.findCandidates(searchParameters.getFindText(), searchParameters.isRegularExpression())) {
+                if (cancelled) {
+                    break;
+                }
+                Path fileName = file.getFileName();
+                if (fileName == null || !fileNameMatcher.matches(fileName)) {
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException ex) {
+                    continue;
+                }
+                if (attrs.size() <= searchParameters.getMaxFileSize() && !enqueue(file)) {
+                    break;
+                }
+            }
+        }
+
+        private boolean enqueue(Path file) {
+            try {
+                while (!cancelled) {
+                    if (files.offer(file, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+            }
+            return false;
+        }
+
+        private void searchFiles() {
+            try {
+                FileSearchPattern.LineMatcher lineMatcher = searchPattern.createMatcher();
+                byte[] prefix = new byte[SNIFF_LENGTH];
+                while (!cancelled) {
+                    boolean lastFiles = walkFinished;
+                    Path file = files.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (file == null) {
+                        if (lastFiles) {
+                            break;
+                        }
+                        continue;
+                    }
+                    searchFile(file, lineMatcher, prefix);
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+            } finally {
+                threadFinished();
+            }
+        }
+
+        private void searchFile(Path file, FileSearchPattern.LineMatcher lineMatcher, byte[] prefix) {
+            try (InputStream input = Files.newInputStream(file)) {
+                int prefixLength = readPrefix(input, prefix);
+                Charset charset = searchParameters.getCharset();
+                if (isBinaryContent(prefix, prefixLength, charset)) {
+                    binaryFilesCount.incrementAndGet();
+                    return;
+                }
+
+                InputStream content = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, prefixLength), input);
+                BufferedReader reader = openReader(content, charset);
+                LineMatchConsumer consumer = new LineMatchConsumer(file);
+                String line;
+                while (!cancelled && (line = reader.readLine()) != null) {
+                    if (consumer.line == 0 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                        // Byte order mark
+                        line = line.substring(1);
+                    }
+                    consumer.lineText = line;
+                    if (!lineMatcher.findAll(line, consumer)) {
+                        break;
+                    }
+                    consumer.line++;
+                }
+            } catch (IOException ex) {
+                // Unreadable files are skipped
+                Logger.getLogger(DefaultFileSearchService.class.getName()).log(Level.FINE, null, ex);
+            } finally {
+                scannedFilesCount.incrementAndGet();
+            }
+        }
+
+        private boolean addMatch(FoundFileMatch match) {
+            if (matchesCount.incrementAndGet() > searchParameters.getMaxMatchesCount()) {
+                cancelled = true;
+                return false;
+            }
+
+            pendingMatches.add(match);
+            if (deliveryScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::deliverMatches);
+            }
+            return true;
+        }
+
+        private void deliverMatches() {
+            deliveryScheduled.set(false);
+            List<FoundFileMatch> matches = new ArrayList<>();
+            FoundFileMatch match;
+            while ((match = pendingMatches.poll()) != null) {
+                matches.add(match);
+            }
+            if (!matches.isEmpty()) {
+                listener.matchesFound(matches);
+            }
+        }
+
+        private void threadFinished() {
+            if (runningThreads.decrementAndGet() > 0) {
+                return;
+            }
+
+            files.clear();
+            boolean wasCancelled = cancelled;
+            finished.countDown();
+            SwingUtilities.invokeLater(() -> {
+                deliverMatches();
+                listener.searchFinished(wasCancelled);
+            });
+        }
+
+        @ParametersAreNonnullByDefault
+        private class LineMatchConsumer implements FileSearchPattern.MatchConsumer {
+
+            private final Path file;
+            private int line = 0;
+            private String lineText = "";
+
+            public LineMatchConsumer(Path file) {
+                this.file = file;
+            }
+
+            @Override
+            public boolean matchFound(int start, int end) {
+                return addMatch(new FoundFileMatch(file, line, start, end, lineText));
+            }
+        }
+    }
+}
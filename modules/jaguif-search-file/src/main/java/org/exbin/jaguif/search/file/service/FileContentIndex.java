@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Persistent trigram index of content of files in directory tree.
+ * <p>
+ * Each indexed file has sorted set of hashes of case folded character
+ * trigrams. Search narrows files to candidates containing all trigrams of
+ * literal parts of the find text, candidates still have to be verified by
+ * scanning. Entries are valid only while size and modification time of the
+ * file are unchanged and are refreshed on each update. Hash collisions only
+ * add false candidates.
+ * <p>
+ * Files larger than the limit and binary files are not indexed and are
+ * always candidates.
+ */
+@ParametersAreNonnullByDefault
+public class FileContentIndex {
+
+    /**
+     * Default maximum size of indexed file.
+     */
+    public static final long DEFAULT_MAX_INDEXED_FILE_SIZE = 4 * 1024 * 1024;
+
+    private static final int INDEX_VERSION = 1;
+    private static final String INDEX_FILE_SUFFIX = ".index";
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final String INDEX_THREAD_NAME = "fileIndex-";
+    private static final Pattern UNSUPPORTED_REGEX = Pattern.compile("\\\\[xu0cpPNkQ]|\\(\\?[a-zA-Z-]*x");
+
+    private final Path indexFile;
+    private final Path rootDirectory;
+    private final Charset charset;
+    private final Map<Path, Entry> entries = new HashMap<>();
+    private long maxIndexedFileSize = DEFAULT_MAX_INDEXED_FILE_SIZE;
+    private boolean loaded = false;
+    private boolean modified = false;
+    private int updatedFilesCount = 0;
+
+    public FileContentIndex(Path indexFile, Path rootDirectory, Charset charset) {
+        this.indexFile = indexFile;
+        this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+        this.charset = charset;
+    }
+
+    /**
+     * Returns index file for given root directory and charset.
+     *
+     * @param indexDirectory directory of index files
+     * @param rootDirectory root directory
+     * @param charset charset
+     * @return index file
+     */
+    @Nonnull
+    public static Path getIndexFile(Path indexDirectory, Path rootDirectory, Charset charset) {
+        String key = rootDirectory.toAbsolutePath().normalize() + "\n" + charset.name();
+        return indexDirectory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + INDEX_FILE_SUFFIX);
+    }
+
+    @Nonnull
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    @Nonnull
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    public synchronized void setMaxIndexedFileSize(long maxIndexedFileSize) {
+        this.maxIndexedFileSize = maxIndexedFileSize;
+    }
+
+    /**
+     * Loads index from file if not loaded yet.
+     * <p>
+     * Missing or unreadable index file is treated as empty index.
+     */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != INDEX_VERSION || !rootDirectory.toString().equals(input.readUTF()) || !charset.name().equals(input.readUTF())) {
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Path file = rootDirectory.resolve(input.readUTF());
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                int trigramsCount = input.readInt();
+                int[] trigrams = null;
+                if (trigramsCount >= 0) {
+                    trigrams = new int[trigramsCount];
+                    int previous = 0;
+                    for (int j = 0; j < trigramsCount; j++) {
+                        previous += readVarInt(input);
+                        trigrams[j] = previous;
+                    }
+                }
+                entries.put(file, new Entry(size, lastModified, trigrams));
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(FileContentIndex.class.getName()).log(Level.WARNING, "Unable to read content index " + indexFile, ex);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Saves index to file if it was modified.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(indexFile.toAbsolutePath().getParent());
+            Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(INDEX_VERSION);
+                output.writeUTF(rootDirectory.toString());
+                output.writeUTF(charset.name());
+                output.writeInt(entries.size());
+                for (Map.Entry<Path, Entry> mapEntry : entries.entrySet()) {
+                    Entry entry = mapEntry.getValue();
+                    output.writeUTF(rootDirectory.relativize(mapEntry.getKey()).toString());
+                    output.writeLong(entry.size);
+                    output.writeLong(entry.lastModified);
+                    if (entry.trigrams == null) {
+                        output.writeInt(-1);
+                        continue;
+                    }
+                    output.writeInt(entry.trigrams.length);
+                    // Sorted hashes are stored as differences
+                    int previous = 0;
+                    for (int trigram : entry.trigrams) {
+                        writeVarInt(output, trigram - previous);
+                        previous = trigram;
+                    }
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } catch (IOException ex) {
+            Logger.getLogger(FileContentIndex.class.getName()).log(Level.WARNING, "Unable to write content index " + indexFile, ex);
+        }
+    }
+
+    /**
+     * Updates index to the current state of directory tree.
+     * <p>
+     * New and modified files are indexed in parallel, entries of no longer
+     * existing files are dropped. When cancelled, files indexed so far are
+     * kept and entries of missing files are dropped by the next update.
+     *
+     * @param threadsCount count of indexing threads
+     * @param cancelled cancellation check
+     * @throws IOException if walking of the directory tree fails
+     */
+    public synchronized void update(int threadsCount, BooleanSupplier cancelled) throws IOException {
+        load();
+        List<Path> changedFiles = new ArrayList<>();
+        Map<Path, BasicFileAttributes> changedAttributes = new HashMap<>();
+        Set<Path> existingFiles = new HashSet<>();
+        Files.walkFileTree(rootDirectory, new SimpleFileVisitor<Path>() {
+            @Nonnull
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    existingFiles.add(file);
+                    Entry entry = entries.get(file);
+                    if (entry == null || entry.size != attrs.size() || entry.lastModified != attrs.lastModifiedTime().toMillis()) {
+                        changedFiles.add(file);
+                        changedAttributes.put(file, attrs);
+                    }
+                }
+                return cancelled.getAsBoolean() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Nonnull
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (cancelled.getAsBoolean()) {
+            updatedFilesCount = 0;
+            return;
+        }
+
+        if (entries.keySet().retainAll(existingFiles)) {
+            modified = true;
+        }
+        updatedFilesCount = changedFiles.size();
+        if (changedFiles.isEmpty()) {
+            return;
+        }
+
+        Entry[] newEntries = new Entry[changedFiles.size()];
+        AtomicInteger nextFile = new AtomicInteger();
+        Runnable worker = () -> {
+            int fileIndex;
+            while (!cancelled.getAsBoolean() && (fileIndex = nextFile.getAndIncrement()) < newEntries.length) {
+                Path file = changedFiles.get(fileIndex);
+                BasicFileAttributes attributes = changedAttributes.get(file);
+                newEntries[fileIndex] = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), indexFile(file, attributes.size()));
+            }
+        };
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < Math.min(threadsCount, newEntries.length); i++) {
+            Thread thread = new Thread(worker, INDEX_THREAD_NAME + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing interrupted", ex);
+        }
+
+        int indexedFilesCount = 0;
+        for (int i = 0; i < newEntries.length; i++) {
+            if (newEntries[i] != null) {
+                entries.put(changedFiles.get(i), newEntries[i]);
+                indexedFilesCount++;
+            }
+        }
+        updatedFilesCount = indexedFilesCount;
+        if (indexedFilesCount > 0) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Returns files which can contain matches of the find text.
+     *
+     * @param findText find text
+     * @param regularExpression find text is regular expression
+     * @return candidate files
+     */
+    @Nonnull
+    public synchronized List<Path> findCandidates(String findText, boolean regularExpression) {
+        List<String> literals = regularExpression ? getRequiredLiterals(findText) : Arrays.asList(findText);
+        int[] queryTrigrams = getTrigrams(literals);
+        List<Path> candidates = new ArrayList<>();
+        for (Map.Entry<Path, Entry> mapEntry : entries.entrySet()) {
+            int[] trigrams = mapEntry.getValue().trigrams;
+            if (trigrams == null || containsAll(trigrams, queryTrigrams)) {
+                candidates.add(mapEntry.getKey());
+            }
+        }
+        candidates.sort(null);
+        return candidates;
+    }
+
+    public synchronized int getFilesCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns count of files indexed by the last update.
+     *
+     * @return count of files
+     */
+    public synchronized int getUpdatedFilesCount() {
+        return updatedFilesCount;
+    }
+
+    /**
+     * Returns literal texts which every match of regular expression has to
+     * contain.
+     * <p>
+     * Only literal runs outside of groups and character classes are used and
+     * nothing is returned for expressions with alternatives, numeric or
+     * property escapes or comments mode.
+     *
+     * @param regex regular expression
+     * @return list of literals
+     */
+    @Nonnull
+    public static List<String> getRequiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0 || UNSUPPORTED_REGEX.matcher(regex).find()) {
+            return literals;
+        }
+
+        StringBuilder literal = new StringBuilder();
+        int groupDepth = 0;
+        int position = 0;
+        while (position < regex.length()) {
+            char character = regex.charAt(position);
+            position++;
+            int literalCharacter = -1;
+            switch (character) {
+                case '\\': {
+                    if (position < regex.length()) {
+                        char escaped = regex.charAt(position);
+                        position++;
+                        if (!Character.isLetterOrDigit(escaped)) {
+                            literalCharacter = escaped;
+                        }
+                    }
+                    break;
+                }
+                case '[': {
+                    position = skipCharacterClass(regex, position);
+                    break;
+                }
+                case '{': {
+                    int end = regex.indexOf('}', position);
+                    position = end < 0 ? regex.length() : end + 1;
+                    break;
+                }
+                case '(': {
+                    groupDepth++;
+                    break;
+                }
+                case ')': {
+                    groupDepth = Math.max(0, groupDepth - 1);
+                    break;
+                }
+                case '.':
+                case '^':
+                case '$':
+                case '+':
+                case '?':
+                case '*': {
+                    break;
+                }
+                default: {
+                    literalCharacter = character;
+                }
+            }
+
+            if (literalCharacter < 0 || groupDepth > 0 || isOptionalQuantifier(regex, position)) {
+                addLiteral(literals, literal);
+            } else {
+                literal.append((char) literalCharacter);
+            }
+        }
+        addLiteral(literals, literal);
+        return literals;
+    }
+
+    private static boolean isOptionalQuantifier(String regex, int position) {
+        if (position >= regex.length()) {
+            return false;
+        }
+        char character = regex.charAt(position);
+        return character == '?' || character == '*' || character == '{';
+    }
+
+    private static int skipCharacterClass(String regex, int position) {
+        if (position < regex.length() && regex.charAt(position) == '^') {
+            position++;
+        }
+        if (position < regex.length() && regex.charAt(position) == ']') {
+            position++;
+        }
+        int depth = 1;
+        while (position < regex.length() && depth > 0) {
+            char character = regex.charAt(position);
+            if (character == '\\') {
+                position++;
+            } else if (character == '[') {
+                depth++;
+            } else if (character == ']') {
+                depth--;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder literal) {
+        if (literal.length() >= 3) {
+            literals.add(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    @Nullable
+    private int[] indexFile(Path file, long size) {
+        if (size > maxIndexedFileSize) {
+            return null;
+        }
+
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] prefix = new byte[DefaultFileSearchService.SNIFF_LENGTH];
+            int prefixLength = DefaultFileSearchService.readPrefix(input, prefix);
+            if (DefaultFileSearchService.isBinaryContent(prefix, prefixLength, charset)) {
+                return null;
+            }
+
+            Reader reader = DefaultFileSearchService.openReader(new SequenceInputStream(new ByteArrayInputStream(prefix, 0, prefixLength), input), charset);
+            TrigramCollector collector = new TrigramCollector();
+            char[] buffer = new char[READ_BUFFER_SIZE];
+            int count;
+            while ((count = reader.read(buffer)) > 0) {
+                collector.add(buffer, count);
+            }
+            return collector.getTrigrams();
+        } catch (IOException ex) {
+            // Unreadable file is always candidate
+            Logger.getLogger(FileContentIndex.class.getName()).log(Level.FINE, null, ex);
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static int[] getTrigrams(List<String> literals) {
+        TrigramCollector collector = new TrigramCollector();
+        for (String literal : literals) {
+            collector.reset();
+            char[] chars = literal.toCharArray();
+            collector.add(chars, chars.length);
+        }
+        return collector.getTrigrams();
+    }
+
+    private static boolean containsAll(int[] trigrams, int[] queryTrigrams) {
+        for (int queryTrigram : queryTrigrams) {
+            if (Arrays.binarySearch(trigrams, queryTrigram) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int data;
+        do {
+            data = input.readUnsignedByte();
+            value |= (data & 0x7f) << shift;
+            shift += 7;
+        } while ((data & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Index entry of single file.
+     */
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final int[] trigrams;
+
+        public Entry(long size, long lastModified, @Nullable int[] trigrams) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * Collector of hashes of case folded trigrams.
+     */
+    private static class TrigramCollector {
+
+        private int[] trigrams = new int[256];
+        private int trigramsCount = 0;
+        private long window = 0;
+        private int windowLength = 0;
+
+        public void add(char[] chars, int length) {
+            for (int i = 0; i < length; i++) {
+                char folded = Character.toLowerCase(Character.toUpperCase(chars[i]));
+                window = ((window << 16) | folded) & 0xffffffffffffL;
+                if (windowLength < 2) {
+                    windowLength++;
+                    continue;
+                }
+                if (trigramsCount == trigrams.length) {
+                    trigrams = Arrays.copyOf(trigrams, trigrams.length * 2);
+                }
+                trigrams[trigramsCount++] = (int) ((window * 0x9E3779B97F4A7C15L) >>> 32);
+            }
+        }
+
+        public void reset() {
+            window = 0;
+            windowLength = 0;
+        }
+
+        @Nonnull
+        public int[] getTrigrams() {
+            int[] sorted = Arrays.copyOf(trigrams, trigramsCount);
+            Arrays.sort(sorted);
+            int uniqueCount = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[uniqueCount++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, uniqueCount);
+        }
+    }
+}
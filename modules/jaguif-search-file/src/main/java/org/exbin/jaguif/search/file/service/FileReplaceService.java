@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Replace in files service.
+ */
+@ParametersAreNonnullByDefault
+public interface FileReplaceService {
+
+    /**
+     * Creates replace transaction.
+     *
+     * @param replaceParameters replace parameters
+     * @return replace transaction
+     * @throws java.util.regex.PatternSyntaxException if regular expression is
+     * not valid
+     */
+    @Nonnull
+    ReplaceTransaction createTransaction(FileReplaceParameters replaceParameters);
+
+    /**
+     * Replace across files performed in two phases.
+     * <p>
+     * Prepare phase writes replaced content of all files into temporary
+     * files, commit phase replaces all original files. If any phase fails or
+     * is cancelled, all changes are rolled back. Methods prepare and commit
+     * are blocking and should be called outside of event dispatch thread.
+     */
+    public interface ReplaceTransaction {
+
+        /**
+         * Writes replaced content of all matching files into temporary files.
+         *
+         * @throws IOException if any file fails, transaction is rolled back
+         * @throws java.util.concurrent.CancellationException if cancelled,
+         * transaction is rolled back
+         */
+        void prepare() throws IOException;
+
+        /**
+         * Returns changes of prepared transaction ordered by file path.
+         *
+         * @return list of file changes
+         */
+        @Nonnull
+        List<FileChange> getChanges();
+
+        /**
+         * Returns matching files which were not changed, because they are not
+         * valid for the charset or replacement can't be encoded.
+         *
+         * @return list of files
+         */
+        @Nonnull
+        List<Path> getSkippedFiles();
+
+        /**
+         * Replaces all original files with prepared content.
+         *
+         * @throws IOException if any file fails, all already replaced files
+         * are restored
+         * @throws java.util.concurrent.CancellationException if cancelled,
+         * transaction is rolled back
+         */
+        void commit() throws IOException;
+
+        /**
+         * Discards prepared changes.
+         */
+        void rollback();
+
+        /**
+         * Requests transaction to stop as soon as possible.
+         */
+        void cancel();
+
+        boolean isCancelled();
+
+        @Nonnull
+        TransactionState getState();
+
+        /**
+         * Returns count of files processed by prepare phase.
+         *
+         * @return count of files
+         */
+        int getProcessedFilesCount();
+
+        /**
+         * Returns count of files to process in prepare phase.
+         *
+         * @return count of files
+         */
+        int getFilesCount();
+    }
+
+    /**
+     * Prepared change of single file.
+     */
+    public interface FileChange {
+
+        @Nonnull
+        Path getFile();
+
+        int getReplacementsCount();
+
+        /**
+         * Returns changed lines for preview.
+         * <p>
+         * Lines are computed on first request and available only before
+         * commit.
+         *
+         * @return changed lines
+         * @throws IOException if reading of the file fails
+         */
+        @Nonnull
+        List<ChangedLine> getChangedLines() throws IOException;
+    }
+
+    @Immutable
+    public static class ChangedLine {
+
+        private final int line;
+        private final String originalText;
+        private final String replacedText;
+
+        public ChangedLine(int line, String originalText, String replacedText) {
+            this.line = line;
+            this.originalText = originalText;
+            this.replacedText = replacedText;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        @Nonnull
+        public String getOriginalText() {
+            return originalText;
+        }
+
+        @Nonnull
+        public String getReplacedText() {
+            return replacedText;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    public static class FileReplaceParameters extends FileSearchService.FileSearchParameters {
+
+        private String replaceText = "";
+
+        /**
+         * Returns replace text, can contain group references for regular
+         * expressions.
+         *
+         * @return replace text
+         */
+        @Nonnull
+        public String getReplaceText() {
+            return replaceText;
+        }
+
+        public void setReplaceText(String replaceText) {
+            this.replaceText = replaceText;
+        }
+    }
+
+    public enum TransactionState {
+        CREATED,
+        PREPARED,
+        COMMITTED,
+        ROLLED_BACK
+    }
+}
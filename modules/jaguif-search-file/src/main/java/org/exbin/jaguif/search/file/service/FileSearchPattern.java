@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Compiled search pattern for matching lines of files.
+ * <p>
+ * Case sensitive literal text is matched using plain text search, other
+ * modes use regular expression. Matches can't span lines.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class FileSearchPattern {
+
+    private static final String WORD_CHARACTER = "[\\p{L}\\p{N}_]";
+
+    private final String literal;
+    private final Pattern pattern;
+    private final boolean regularExpression;
+
+    private FileSearchPattern(@Nullable String literal, @Nullable Pattern pattern, boolean regularExpression) {
+        this.literal = literal;
+        this.pattern = pattern;
+        this.regularExpression = regularExpression;
+    }
+
+    /**
+     * Creates search pattern.
+     *
+     * @param findText text to find
+     * @param matchCase match case
+     * @param wholeWords match whole words only
+     * @param regularExpression find text is regular expression
+     * @return search pattern
+     * @throws java.util.regex.PatternSyntaxException if regular expression is
+     * not valid
+     */
+    @Nonnull
+    public static FileSearchPattern create(String findText, boolean matchCase, boolean wholeWords, boolean regularExpression) {
+        if (findText.isEmpty()) {
+            throw new IllegalStateException("Empty find text");
+        }
+        if (matchCase && !wholeWords && !regularExpression) {
+            return new FileSearchPattern(findText, null, false);
+        }
+
+        String regex = regularExpression ? findText : Pattern.quote(findText);
+        if (wholeWords) {
+            regex = "(?<!" + WORD_CHARACTER + ")(?:" + regex + ")(?!" + WORD_CHARACTER + ")";
+        }
+        int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return new FileSearchPattern(null, Pattern.compile(regex, flags), regularExpression);
+    }
+
+    /**
+     * Creates search pattern for given search parameters.
+     *
+     * @param searchParameters search parameters
+     * @return search pattern
+     */
+    @Nonnull
+    public static FileSearchPattern create(FileSearchService.FileSearchParameters searchParameters) {
+        return create(searchParameters.getFindText(), searchParameters.isMatchCase(), searchParameters.isWholeWords(), searchParameters.isRegularExpression());
+    }
+
+    /**
+     * Returns literal text if pattern is plain text search.
+     *
+     * @return literal text or null for regular expression
+     */
+    @Nullable
+    public String getLiteral() {
+        return literal;
+    }
+
+    @Nullable
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public boolean isRegularExpression() {
+        return regularExpression;
+    }
+
+    /**
+     * Creates matcher for single searching thread.
+     *
+     * @return line matcher
+     */
+    @Nonnull
+    public LineMatcher createMatcher() {
+        return new LineMatcher();
+    }
+
+    /**
+     * Matcher of lines, not thread safe.
+     */
+    @ParametersAreNonnullByDefault
+    public class LineMatcher {
+
+        private final Matcher matcher = pattern == null ? null : pattern.matcher("");
+
+        /**
+         * Finds all matches in given line.
+         *
+         * @param line line text without line end
+         * @param consumer match consumer
+         * @return false if consumer stopped the matching
+         */
+        public boolean findAll(String line, MatchConsumer consumer) {
+            if (literal != null) {
+                int position = line.indexOf(literal);
+                while (position >= 0) {
+                    if (!consumer.matchFound(position, position + literal.length())) {
+                        return false;
+                    }
+                    position = line.indexOf(literal, position + literal.length());
+                }
+                return true;
+            }
+
+            matcher.reset(line);
+            while (matcher.find()) {
+                if (!consumer.matchFound(matcher.start(), matcher.end())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Replaces all matches in given line.
+         *
+         * @param line line text without line end
+         * @param replaceText replace text, can contain group references for
+         * regular expressions
+         * @param target target for the line with replaced matches
+         * @return count of replaced matches
+         */
+        public int replaceAll(String line, String replaceText, StringBuilder target) {
+            if (literal != null) {
+                int count = 0;
+                int lineStart = 0;
+                int position = line.indexOf(literal);
+                while (position >= 0) {
+                    target.append(line, lineStart, position).append(replaceText);
+                    lineStart = position + literal.length();
+                    count++;
+                    position = line.indexOf(literal, lineStart);
+                }
+                target.append(line, lineStart, line.length());
+                return count;
+            }
+
+            matcher.reset(line);
+            if (!matcher.find()) {
+                target.append(line);
+                return 0;
+            }
+
+            String replacement = regularExpression ? replaceText : Matcher.quoteReplacement(replaceText);
+            StringBuffer buffer = new StringBuffer();
+            int count = 0;
+            do {
+                matcher.appendReplacement(buffer, replacement);
+                count++;
+            } while (matcher.find());
+            matcher.appendTail(buffer);
+            target.append(buffer);
+            return count;
+        }
+    }
+
+    /**
+     * Consumer of found matches.
+     */
+    public interface MatchConsumer {
+
+        /**
+         * Reports found match.
+         *
+         * @param start start column
+         * @param end end column
+         * @return true to continue matching
+         */
+        boolean matchFound(int start, int end);
+    }
+}
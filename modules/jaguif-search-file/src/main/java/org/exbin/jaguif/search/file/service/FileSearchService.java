@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Search in files service.
+ */
+@ParametersAreNonnullByDefault
+public interface FileSearchService {
+
+    /**
+     * Starts search in files.
+     *
+     * @param searchParameters search parameters
+     * @param listener listener notified in event dispatch thread
+     * @return running search
+     * @throws java.util.regex.PatternSyntaxException if regular expression is
+     * not valid
+     */
+    @Nonnull
+    FileSearch startSearch(FileSearchParameters searchParameters, FileSearchListener listener);
+
+    /**
+     * Running search in files.
+     */
+    public interface FileSearch {
+
+        /**
+         * Requests search to stop as soon as possible.
+         */
+        void cancel();
+
+        boolean isCancelled();
+
+        boolean isDone();
+
+        /**
+         * Waits until all searching threads finish.
+         *
+         * @throws InterruptedException if interrupted
+         */
+        void waitFor() throws InterruptedException;
+
+        /**
+         * Returns count of files already scanned.
+         *
+         * @return count of files
+         */
+        int getScannedFilesCount();
+
+        /**
+         * Returns count of files skipped as binary.
+         *
+         * @return count of files
+         */
+        int getBinaryFilesCount();
+    }
+
+    /**
+     * Listener for search in files results.
+     */
+    public interface FileSearchListener {
+
+        /**
+         * Reports batch of found matches.
+         *
+         * @param matches found matches
+         */
+        void matchesFound(List<FoundFileMatch> matches);
+
+        /**
+         * Reports end of the search.
+         *
+         * @param cancelled true if search was cancelled or limit of matches
+         * was reached
+         */
+        void searchFinished(boolean cancelled);
+    }
+
+    @ParametersAreNonnullByDefault
+    public static class FileSearchParameters {
+
+        private Path rootDirectory;
+        private String findText;
+        private boolean matchCase = true;
+        private boolean wholeWords;
+        private boolean regularExpression;
+        private String fileNamePattern = "*";
+        private long maxFileSize = Long.MAX_VALUE;
+        private Charset charset = StandardCharsets.UTF_8;
+        private int maxMatchesCount = Integer.MAX_VALUE;
+        private int threadsCount = Runtime.getRuntime().availableProcessors();
+        private boolean useContentIndex;
+
+        @Nonnull
+        public Path getRootDirectory() {
+            return rootDirectory;
+        }
+
+        public void setRootDirectory(Path rootDirectory) {
+            this.rootDirectory = rootDirectory;
+        }
+
+        @Nonnull
+        public String getFindText() {
+            return findText;
+        }
+
+        public void setFindText(String findText) {
+            this.findText = findText;
+        }
+
+        public boolean isMatchCase() {
+            return matchCase;
+        }
+
+        public void setMatchCase(boolean matchCase) {
+            this.matchCase = matchCase;
+        }
+
+        public boolean isWholeWords() {
+            return wholeWords;
+        }
+
+        public void setWholeWords(boolean wholeWords) {
+            this.wholeWords = wholeWords;
+        }
+
+        public boolean isRegularExpression() {
+            return regularExpression;
+        }
+
+        public void setRegularExpression(boolean regularExpression) {
+            this.regularExpression = regularExpression;
+        }
+
+        /**
+         * Returns glob pattern for file names, for example *.{java,xml}.
+         *
+         * @return glob pattern
+         */
+        @Nonnull
+        public String getFileNamePattern() {
+            return fileNamePattern;
+        }
+
+        public void setFileNamePattern(String fileNamePattern) {
+            this.fileNamePattern = fileNamePattern;
+        }
+
+        public long getMaxFileSize() {
+            return maxFileSize;
+        }
+
+        public void setMaxFileSize(long maxFileSize) {
+            this.maxFileSize = maxFileSize;
+        }
+
+        @Nonnull
+        public Charset getCharset() {
+            return charset;
+        }
+
+        public void setCharset(Charset charset) {
+            this.charset = charset;
+        }
+
+        public int getMaxMatchesCount() {
+            return maxMatchesCount;
+        }
+
+        public void setMaxMatchesCount(int maxMatchesCount) {
+            this.maxMatchesCount = maxMatchesCount;
+        }
+
+        public int getThreadsCount() {
+            return threadsCount;
+        }
+
+        public void setThreadsCount(int threadsCount) {
+            this.threadsCount = threadsCount;
+        }
+
+        /**
+         * Returns whether search should be narrowed by persistent content
+         * index of the root directory if available.
+         *
+         * @return true to use content index
+         */
+        public boolean isUseContentIndex() {
+            return useContentIndex;
+        }
+
+        public void setUseContentIndex(boolean useContentIndex) {
+            this.useContentIndex = useContentIndex;
+        }
+    }
+
+    @Immutable
+    public static class FoundFileMatch {
+
+        private final Path file;
+        private final int line;
+        private final int startColumn;
+        private final int endColumn;
+        private final String lineText;
+
+        public FoundFileMatch(Path file, int line, int startColumn, int endColumn, String lineText) {
+            this.file = file;
+            this.line = line;
+            this.startColumn = startColumn;
+            this.endColumn = endColumn;
+            this.lineText = lineText;
+        }
+
+        @Nonnull
+        public Path getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getStartColumn() {
+            return startColumn;
+        }
+
+        public int getEndColumn() {
+            return endColumn;
+        }
+
+        @Nonnull
+        public String getLineText() {
+            return lineText;
+        }
+    }
+}
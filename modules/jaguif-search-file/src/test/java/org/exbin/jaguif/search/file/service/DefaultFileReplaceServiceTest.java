@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for transactional replace in files.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultFileReplaceServiceTest {
+
+    private static final int LARGE_DIRECTORIES_COUNT = 20;
+    private static final int LARGE_FILES_PER_DIRECTORY = 20;
+    private static final int LARGE_LINES_PER_FILE = 30;
+
+    private final DefaultFileReplaceService replaceService = new DefaultFileReplaceService();
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fileReplace");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLargeTree() throws Exception {
+        Map<Path, String> expectedContents = new HashMap<>();
+        int changedFilesCount = 0;
+        for (int i = 0; i < LARGE_DIRECTORIES_COUNT; i++) {
+            Path subDirectory = Files.createDirectories(directory.resolve("dir" + i));
+            for (int j = 0; j < LARGE_FILES_PER_DIRECTORY; j++) {
+                StringBuilder builder = new StringBuilder();
+                for (int line = 0; line < LARGE_LINES_PER_FILE; line++) {
+                    builder.append((i + j + line) % 53 == 0 ? "    oldName.call(" : "    other.call(").append(line).append(");\n");
+                }
+                String content = builder.toString();
+                Path file = subDirectory.resolve("File" + j + ".java");
+                Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+                expectedContents.put(file, content.replace("oldName", "newName"));
+                if (content.contains("oldName")) {
+                    changedFilesCount++;
+                }
+            }
+        }
+
+        FileReplaceService.FileReplaceParameters parameters = createParameters("oldName", "newName");
+        parameters.setThreadsCount(4);
+        FileReplaceService.ReplaceTransaction transaction = replaceService.createTransaction(parameters);
+        transaction.prepare();
+        Assert.assertEquals(FileReplaceService.TransactionState.PREPARED, transaction.getState());
+        Assert.assertEquals(LARGE_DIRECTORIES_COUNT * LARGE_FILES_PER_DIRECTORY, transaction.getProcessedFilesCount());
+        Assert.assertEquals(changedFilesCount, transaction.getChanges().size());
+
+        FileReplaceService.FileChange change = transaction.getChanges().get(0);
+        List<FileReplaceService.ChangedLine> changedLines = change.getChangedLines();
+        Assert.assertEquals(change.getReplacementsCount(), changedLines.size());
+        Assert.assertTrue(changedLines.get(0).getOriginalText().contains("oldName"));
+        Assert.assertEquals(changedLines.get(0).getOriginalText().replace("oldName", "newName"), changedLines.get(0).getReplacedText());
+        Assert.assertSame(changedLines, change.getChangedLines());
+
+        transaction.commit();
+        Assert.assertEquals(FileReplaceService.TransactionState.COMMITTED, transaction.getState());
+        for (Map.Entry<Path, String> entry : expectedContents.entrySet()) {
+            Assert.assertEquals(entry.getValue(), new String(Files.readAllBytes(entry.getKey()), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(expectedContents.size(), listFiles().size());
+    }
+
+    @Test
+    public void testMixedEncodings() throws Exception {
+        Charset latin2 = Charset.forName("ISO-8859-2");
+        Path utf8File = directory.resolve("utf8.txt");
+        Path latin2File = directory.resolve("latin2.txt");
+        Path binaryFile = directory.resolve("data.bin");
+        byte[] utf8Content = "\uFEFFkey = value\r\nkůň = value\r\nlast=value".getBytes(StandardCharsets.UTF_8);
+        byte[] latin2Content = "kůň = value\n".getBytes(latin2);
+        byte[] binaryContent = new byte[]{'v', 'a', 'l', 'u', 'e', 0, 1, 2};
+        Files.write(utf8File, utf8Content);
+        Files.write(latin2File, latin2Content);
+        Files.write(binaryFile, binaryContent);
+
+        FileReplaceService.FileReplaceParameters parameters = createParameters("(\\w+) *= *value", "$1: žluťoučký");
+        parameters.setRegularExpression(true);
+        FileReplaceService.ReplaceTransaction transaction = replaceService.createTransaction(parameters);
+        transaction.prepare();
+        Assert.assertEquals(1, transaction.getChanges().size());
+        Assert.assertEquals(Arrays.asList(latin2File), transaction.getSkippedFiles());
+        Assert.assertEquals(2, transaction.getChanges().get(0).getChangedLines().get(1).getLine());
+        transaction.commit();
+        Assert.assertEquals("\uFEFFkey: žluťoučký\r\nkůň = value\r\nlast: žluťoučký", new String(Files.readAllBytes(utf8File), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(latin2Content, Files.readAllBytes(latin2File));
+        Assert.assertArrayEquals(binaryContent, Files.readAllBytes(binaryFile));
+
+        parameters = createParameters("value", "žluťoučký");
+        parameters.setCharset(latin2);
+        parameters.setFileNamePattern("latin2.txt");
+        transaction = replaceService.createTransaction(parameters);
+        transaction.prepare();
+        transaction.commit();
+        Assert.assertArrayEquals("kůň = žluťoučký\n".getBytes(latin2), Files.readAllBytes(latin2File));
+
+        // Replacement which can't be encoded
+        parameters.setReplaceText("€");
+        parameters.setFindText("kůň");
+        transaction = replaceService.createTransaction(parameters);
+        transaction.prepare();
+        Assert.assertTrue(transaction.getChanges().isEmpty());
+        Assert.assertEquals(Arrays.asList(latin2File), transaction.getSkippedFiles());
+        Assert.assertEquals(3, listFiles().size());
+    }
+
+    @Test
+    public void testPartialFailureRollback() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = directory.resolve("file" + (char) ('a' + i) + ".txt");
+            Files.write(file, ("original " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+
+        FileReplaceService.ReplaceTransaction transaction = replaceService.createTransaction(createParameters("original", "replaced"));
+        transaction.prepare();
+        Assert.assertEquals(files.size(), transaction.getChanges().size());
+        Assert.assertEquals(2 * files.size(), listFiles().size());
+
+        // Concurrent modification of the last file fails the commit
+        Path modifiedFile = files.get(files.size() - 1);
+        Files.write(modifiedFile, "modified original\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            transaction.commit();
+            Assert.fail("Commit should fail");
+        } catch (IOException ex) {
+            // Expected
+        }
+        Assert.assertEquals(FileReplaceService.TransactionState.ROLLED_BACK, transaction.getState());
+        for (int i = 0; i < files.size() - 1; i++) {
+            Assert.assertEquals("original " + i + "\n", new String(Files.readAllBytes(files.get(i)), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals("modified original\n", new String(Files.readAllBytes(modifiedFile), StandardCharsets.UTF_8));
+        Assert.assertEquals(files, listFiles());
+        try {
+            transaction.getChanges().get(0).getChangedLines();
+            Assert.fail("Preview should not be available");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        Files.write(directory.resolve("file.txt"), "original\n".getBytes(StandardCharsets.UTF_8));
+        FileReplaceService.ReplaceTransaction transaction = replaceService.createTransaction(createParameters("original", "replaced"));
+        transaction.cancel();
+        try {
+            transaction.prepare();
+            Assert.fail("Prepare should be cancelled");
+        } catch (CancellationException ex) {
+            // Expected
+        }
+        Assert.assertEquals(FileReplaceService.TransactionState.ROLLED_BACK, transaction.getState());
+
+        transaction = replaceService.createTransaction(createParameters("original", "replaced"));
+        transaction.prepare();
+        transaction.cancel();
+        try {
+            transaction.commit();
+            Assert.fail("Commit should be cancelled");
+        } catch (CancellationException ex) {
+            // Expected
+        }
+        Assert.assertEquals("original\n", new String(Files.readAllBytes(directory.resolve("file.txt")), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, listFiles().size());
+    }
+
+    private FileReplaceService.FileReplaceParameters createParameters(String findText, String replaceText) {
+        FileReplaceService.FileReplaceParameters parameters = new FileReplaceService.FileReplaceParameters();
+        parameters.setRootDirectory(directory);
+        parameters.setFindText(findText);
+        parameters.setReplaceText(replaceText);
+        return parameters;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for search in files.
+ */
+@ParametersAreNonnullByDefault
+public class DefaultFileSearchServiceTest {
+
+    private static final int BENCHMARK_DIRECTORIES_COUNT = 200;
+    private static final int BENCHMARK_FILES_PER_DIRECTORY = 100;
+    private static final int BENCHMARK_LINES_PER_FILE = 40;
+    private static final long TIMEOUT = 60;
+
+    private final DefaultFileSearchService searchService = new DefaultFileSearchService();
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fileSearch");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSearchModes() throws Exception {
+        Files.createDirectories(directory.resolve("src/nested"));
+        Files.write(directory.resolve("src/First.java"), "class First {\n    int value = 10;\n    // Value of first\n}\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("src/nested/Second.java"), "\uFEFFvalue values value\r\nno match\r\nlast value".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("src/notes.txt"), "value\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("src/data.java"), new byte[]{'v', 'a', 'l', 'u', 'e', 0, 1, 2, 3});
+
+        FileSearchService.FileSearchParameters parameters = createParameters("value");
+        parameters.setFileNamePattern("*.java");
+        SearchResult result = search(parameters);
+        Assert.assertFalse(result.cancelled);
+        Assert.assertEquals(5, result.matches.size());
+        Assert.assertEquals(1, result.binaryFilesCount);
+        FileSearchService.FoundFileMatch match = result.find("Second.java", 2);
+        Assert.assertEquals(5, match.getStartColumn());
+        Assert.assertEquals(10, match.getEndColumn());
+        Assert.assertEquals("last value", match.getLineText());
+        Assert.assertEquals(0, result.find("Second.java", 0).getStartColumn());
+
+        parameters.setMatchCase(false);
+        parameters.setWholeWords(true);
+        result = search(parameters);
+        Assert.assertEquals(5, result.matches.size());
+
+        parameters.setMatchCase(true);
+        parameters.setWholeWords(false);
+        parameters.setRegularExpression(true);
+        parameters.setFindText("val\\w+ *=");
+        result = search(parameters);
+        Assert.assertEquals(1, result.matches.size());
+        Assert.assertEquals(1, result.matches.get(0).getLine());
+
+        parameters.setFileNamePattern("*");
+        parameters.setRegularExpression(false);
+        parameters.setFindText("value");
+        parameters.setMaxFileSize(10);
+        result = search(parameters);
+        Assert.assertEquals(1, result.matches.size());
+        Assert.assertEquals("notes.txt", result.matches.get(0).getFile().getFileName().toString());
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        Charset charset = Charset.forName("ISO-8859-2");
+        Files.write(directory.resolve("latin2.txt"), "Příliš žluťoučký kůň\n".getBytes(charset));
+        Files.write(directory.resolve("utf16.txt"), "kůň úpěl\n".getBytes(StandardCharsets.UTF_16));
+
+        FileSearchService.FileSearchParameters parameters = createParameters("kůň");
+        SearchResult result = search(parameters);
+        Assert.assertEquals(0, result.matches.size());
+
+        parameters.setCharset(charset);
+        parameters.setFileNamePattern("latin2.txt");
+        result = search(parameters);
+        Assert.assertEquals(1, result.matches.size());
+        Assert.assertEquals(17, result.matches.get(0).getStartColumn());
+
+        parameters.setCharset(StandardCharsets.UTF_16);
+        parameters.setFileNamePattern("utf16.txt");
+        result = search(parameters);
+        Assert.assertEquals(1, result.matches.size());
+        Assert.assertEquals(0, result.matches.get(0).getStartColumn());
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        generateTree(20, 100, 20);
+        FileSearchService.FileSearchParameters parameters = createParameters("needle");
+        parameters.setThreadsCount(2);
+        CountDownLatch finished = new CountDownLatch(1);
+        boolean[] cancelled = new boolean[1];
+        FileSearchService.FileSearch[] search = new FileSearchService.FileSearch[1];
+        search[0] = searchService.startSearch(parameters, new FileSearchService.FileSearchListener() {
+            @Override
+            public void matchesFound(List<FileSearchService.FoundFileMatch> matches) {
+                search[0].cancel();
+            }
+
+            @Override
+            public void searchFinished(boolean wasCancelled) {
+                cancelled[0] = wasCancelled;
+                finished.countDown();
+            }
+        });
+        Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertTrue(cancelled[0]);
+        Assert.assertTrue(search[0].isDone());
+        Assert.assertTrue(search[0].getScannedFilesCount() < 2000);
+
+        parameters.setMaxMatchesCount(10);
+        SearchResult result = search(parameters);
+        Assert.assertTrue(result.cancelled);
+        Assert.assertEquals(10, result.matches.size());
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        long start = System.nanoTime();
+        int expectedMatches = generateTree(BENCHMARK_DIRECTORIES_COUNT, BENCHMARK_FILES_PER_DIRECTORY, BENCHMARK_LINES_PER_FILE);
+        int filesCount = BENCHMARK_DIRECTORIES_COUNT * BENCHMARK_FILES_PER_DIRECTORY;
+        System.out.println("Generated " + filesCount + " files in " + ((System.nanoTime() - start) / 1000000) + " ms");
+
+        // Warm up file system cache
+        search(createParameters("needle"));
+        int[] threadCounts = {1, 2, 4, 8};
+        for (boolean regularExpression : new boolean[]{false, true}) {
+            StringBuilder report = new StringBuilder(regularExpression ? "  regex:  " : "  literal:");
+            for (int threadsCount : threadCounts) {
+                FileSearchService.FileSearchParameters parameters = createParameters(regularExpression ? "ne+dle\\d*" : "needle");
+                parameters.setRegularExpression(regularExpression);
+                parameters.setThreadsCount(threadsCount);
+                start = System.nanoTime();
+                SearchResult result = search(parameters);
+                long time = System.nanoTime() - start;
+                Assert.assertEquals(expectedMatches, result.matches.size());
+                Assert.assertEquals(filesCount, result.scannedFilesCount);
+                report.append(" ").append(threadsCount).append(" threads ").append(time / 1000000).append(" ms,");
+            }
+            System.out.println(report);
+        }
+    }
+
+    private FileSearchService.FileSearchParameters createParameters(String findText) {
+        FileSearchService.FileSearchParameters parameters = new FileSearchService.FileSearchParameters();
+        parameters.setRootDirectory(directory);
+        parameters.setFindText(findText);
+        return parameters;
+    }
+
+    private SearchResult search(FileSearchService.FileSearchParameters parameters) throws InterruptedException {
+        SearchResult result = new SearchResult();
+        CountDownLatch finished = new CountDownLatch(1);
+        FileSearchService.FileSearch search = searchService.startSearch(parameters, new FileSearchService.FileSearchListener() {
+            @Override
+            public void matchesFound(List<FileSearchService.FoundFileMatch> matches) {
+                result.matches.addAll(matches);
+            }
+
+            @Override
+            public void searchFinished(boolean cancelled) {
+                result.cancelled = cancelled;
+                finished.countDown();
+            }
+        });
+        Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+        result.scannedFilesCount = search.getScannedFilesCount();
+        result.binaryFilesCount = search.getBinaryFilesCount();
+        return result;
+    }
+
+    private int generateTree(int directoriesCount, int filesPerDirectory, int linesPerFile) throws IOException {
+        int matchesCount = 0;
+        for (int i = 0; i < directoriesCount; i++) {
+            Path subDirectory = Files.createDirectories(directory.resolve("dir" + (i % 10)).resolve("sub" + i));
+            for (int j = 0; j < filesPerDirectory; j++) {
+                StringBuilder builder = new StringBuilder();
+                for (int line = 0; line < linesPerFile; line++) {
+                    builder.append("    private static final String text").append(line).append(" = \"lorem ipsum dolor sit amet ").append(i * j + line).append("\";\n");
+                    if ((i + j + line) % 97 == 0) {
+                        builder.append("    // needle").append(line).append('\n');
+                        matchesCount++;
+                    }
+                }
+                Files.write(subDirectory.resolve("File" + j + ".java"), builder.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return matchesCount;
+    }
+
+    private static class SearchResult {
+
+        private final List<FileSearchService.FoundFileMatch> matches = new ArrayList<>();
+        private boolean cancelled;
+        private int scannedFilesCount;
+        private int binaryFilesCount;
+
+        private FileSearchService.FoundFileMatch find(String fileName, int line) {
+            for (FileSearchService.FoundFileMatch match : matches) {
+                if (match.getFile().getFileName().toString().equals(fileName) && match.getLine() == line) {
+                    return match;
+                }
+            }
+            throw new IllegalStateException("Match not found");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) ExBin Project, https://exbin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.jaguif.search.file.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for persistent content index.
+ */
+@ParametersAreNonnullByDefault
+public class FileContentIndexTest {
+
+    private static final int CORPUS_DIRECTORIES_COUNT = 10;
+    private static final int CORPUS_FILES_PER_DIRECTORY = 20;
+    private static final int BENCHMARK_DIRECTORIES_COUNT = 100;
+    private static final int BENCHMARK_FILES_PER_DIRECTORY = 100;
+    private static final int CORPUS_LINES_PER_FILE = 40;
+    private static final long TIMEOUT = 60;
+
+    private Path directory;
+    private Path rootDirectory;
+    private Path indexDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("contentIndex");
+        rootDirectory = Files.createDirectories(directory.resolve("project"));
+        indexDirectory = directory.resolve("index");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        Assert.assertEquals(Arrays.asList("foo", "barbaz"), FileContentIndex.getRequiredLiterals("foo.*barbaz"));
+        Assert.assertEquals(Arrays.asList("cde"), FileContentIndex.getRequiredLiterals("ab?cde"));
+        Assert.assertEquals(Arrays.asList("abb"), FileContentIndex.getRequiredLiterals("abb+c"));
+        Assert.assertEquals(Arrays.asList("text"), FileContentIndex.getRequiredLiterals("(group)?text"));
+        Assert.assertEquals(Arrays.asList(".java"), FileContentIndex.getRequiredLiterals("\\.java\\b"));
+        Assert.assertEquals(Arrays.asList("yyy"), FileContentIndex.getRequiredLiterals("x{2,3}yyy[abc]"));
+        Assert.assertEquals(Collections.emptyList(), FileContentIndex.getRequiredLiterals("first|second"));
+        Assert.assertEquals(Collections.emptyList(), FileContentIndex.getRequiredLiterals("\\x41bcd"));
+        Assert.assertEquals(Collections.emptyList(), FileContentIndex.getRequiredLiterals("(?x)a b c d"));
+    }
+
+    @Test
+    public void testStaleEntries() throws Exception {
+        Path first = rootDirectory.resolve("first.txt");
+        Path second = Files.createDirectories(rootDirectory.resolve("sub")).resolve("second.txt");
+        Files.write(first, "Alpha beta\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(second, "gamma delta\n".getBytes(StandardCharsets.UTF_8));
+        Path indexFile = FileContentIndex.getIndexFile(indexDirectory, rootDirectory, StandardCharsets.UTF_8);
+        FileContentIndex index = new FileContentIndex(indexFile, rootDirectory, StandardCharsets.UTF_8);
+        index.update(2, () -> false);
+        Assert.assertEquals(2, index.getUpdatedFilesCount());
+        Assert.assertEquals(Arrays.asList(first), index.findCandidates("ALPHA", false));
+        Assert.assertEquals(Arrays.asList(second), index.findCandidates("gam+a del", true));
+        Assert.assertEquals(2, index.findCandidates("a", false).size());
+        index.save();
+
+        Files.write(first, "changed content with delta\n".getBytes(StandardCharsets.UTF_8));
+        Files.delete(second);
+        index = new FileContentIndex(indexFile, rootDirectory, StandardCharsets.UTF_8);
+        index.update(2, () -> false);
+        Assert.assertEquals(1, index.getUpdatedFilesCount());
+        Assert.assertEquals(1, index.getFilesCount());
+        Assert.assertEquals(Arrays.asList(first), index.findCandidates("delta", false));
+        Assert.assertTrue(index.findCandidates("alpha", false).isEmpty());
+    }
+
+    @Test
+    public void testCancelledUpdate() throws Exception {
+        generateCorpus(CORPUS_DIRECTORIES_COUNT, CORPUS_FILES_PER_DIRECTORY);
+        int filesCount = CORPUS_DIRECTORIES_COUNT * CORPUS_FILES_PER_DIRECTORY;
+        Path indexFile = FileContentIndex.getIndexFile(indexDirectory, rootDirectory, StandardCharsets.UTF_8);
+        FileContentIndex index = new FileContentIndex(indexFile, rootDirectory, StandardCharsets.UTF_8);
+        index.update(2, () -> true);
+        Assert.assertEquals(0, index.getFilesCount());
+
+        AtomicInteger checksCount = new AtomicInteger();
+        index.update(2, () -> checksCount.incrementAndGet() > filesCount + 10);
+        int partialFilesCount = index.getFilesCount();
+        Assert.assertTrue(partialFilesCount < filesCount);
+        Assert.assertEquals(partialFilesCount, index.getUpdatedFilesCount());
+
+        // Files indexed before cancellation are kept
+        index.update(2, () -> false);
+        Assert.assertEquals(filesCount, index.getFilesCount());
+        Assert.assertEquals(filesCount - partialFilesCount, index.getUpdatedFilesCount());
+
+        // Cancelled walk does not drop entries of files which were not visited
+        Files.delete(rootDirectory.resolve("dir3").resolve("File5.java"));
+        index.update(2, () -> true);
+        Assert.assertEquals(filesCount, index.getFilesCount());
+        index.update(2, () -> false);
+        Assert.assertEquals(filesCount - 1, index.getFilesCount());
+    }
+
+    @Test
+    public void testIndexedSearch() throws Exception {
+        generateCorpus(CORPUS_DIRECTORIES_COUNT, CORPUS_FILES_PER_DIRECTORY);
+        DefaultFileSearchService plainService = new DefaultFileSearchService();
+        int expectedMatches = search(plainService, "uniqueToken7", false).size();
+        Assert.assertTrue(expectedMatches > 0);
+
+        DefaultFileSearchService indexedService = new DefaultFileSearchService();
+        indexedService.setIndexDirectory(indexDirectory);
+        Assert.assertEquals(expectedMatches, search(indexedService, "uniqueToken7", true).size());
+        Assert.assertEquals(expectedMatches, search(indexedService, "uniqueToken7", true).size());
+
+        // Index loaded from disk as after restart
+        DefaultFileSearchService restartedService = new DefaultFileSearchService();
+        restartedService.setIndexDirectory(indexDirectory);
+        Assert.assertEquals(expectedMatches, search(restartedService, "uniqueToken7", true).size());
+        Assert.assertEquals(search(plainService, "uniquetoken1\\d", false).size(), search(indexedService, "uniquetoken1\\d", true).size());
+
+        // Stale entries are refreshed automatically
+        Path changedFile = rootDirectory.resolve("dir3").resolve("File5.java");
+        Files.write(changedFile, "    // zebracorn\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        List<FileSearchService.FoundFileMatch> matches = search(indexedService, "zebracorn", true);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(changedFile, matches.get(0).getFile());
+    }
+
+    @Test
+    public void testIndexedSearchBenchmark() throws Exception {
+        Assume.assumeTrue("Benchmark is enabled by jaguif.benchmark property", Boolean.getBoolean("jaguif.benchmark"));
+        generateCorpus(BENCHMARK_DIRECTORIES_COUNT, BENCHMARK_FILES_PER_DIRECTORY);
+        DefaultFileSearchService plainService = new DefaultFileSearchService();
+        long start = System.nanoTime();
+        int expectedMatches = search(plainService, "uniqueToken7", false).size();
+        long plainTime = System.nanoTime() - start;
+
+        DefaultFileSearchService indexedService = new DefaultFileSearchService();
+        indexedService.setIndexDirectory(indexDirectory);
+        start = System.nanoTime();
+        Assert.assertEquals(expectedMatches, search(indexedService, "uniqueToken7", true).size());
+        long firstTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        Assert.assertEquals(expectedMatches, search(indexedService, "uniqueToken7", true).size());
+        long repeatTime = System.nanoTime() - start;
+
+        DefaultFileSearchService restartedService = new DefaultFileSearchService();
+        restartedService.setIndexDirectory(indexDirectory);
+        start = System.nanoTime();
+        Assert.assertEquals(expectedMatches, search(restartedService, "uniqueToken7", true).size());
+        long restartTime = System.nanoTime() - start;
+
+        long indexSize = Files.size(FileContentIndex.getIndexFile(indexDirectory, rootDirectory, StandardCharsets.UTF_8));
+        System.out.println((BENCHMARK_DIRECTORIES_COUNT * BENCHMARK_FILES_PER_DIRECTORY) + " files: plain search " + (plainTime / 1000000) + " ms, indexed first " + (firstTime / 1000000) + " ms, repeat " + (repeatTime / 1000000) + " ms, after restart " + (restartTime / 1000000) + " ms, index size " + (indexSize / 1024) + " kB");
+    }
+
+    private List<FileSearchService.FoundFileMatch> search(DefaultFileSearchService searchService, String findText, boolean useContentIndex) throws InterruptedException {
+        FileSearchService.FileSearchParameters parameters = new FileSearchService.FileSearchParameters();
+        parameters.setRootDirectory(rootDirectory);
+        parameters.setFindText(findText);
+        parameters.setMatchCase(false);
+        parameters.setRegularExpression(findText.contains("\\"));
+        parameters.setUseContentIndex(useContentIndex);
+        List<FileSearchService.FoundFileMatch> matches = new ArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        searchService.startSearch(parameters, new FileSearchService.FileSearchListener() {
+            @Override
+            public void matchesFound(List<FileSearchService.FoundFileMatch> foundMatches) {
+                matches.addAll(foundMatches);
+            }
+
+            @Override
+            public void searchFinished(boolean cancelled) {
+                finished.countDown();
+            }
+        });
+        Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+        return matches;
+    }
+
+    private void generateCorpus(int directoriesCount, int filesPerDirectory) throws IOException {
+        for (int i = 0; i < directoriesCount; i++) {
+            Path subDirectory = Files.createDirectories(rootDirectory.resolve("dir" + i));
+            for (int j = 0; j < filesPerDirectory; j++) {
+                StringBuilder builder = new StringBuilder();
+                for (int line = 0; line < CORPUS_LINES_PER_FILE; line++) {
+                    builder.append("    value").append(line).append(" = compute(").append(i * j + line).append(");\n");
+                }
+                builder.append("    // UniqueToken").append((i * filesPerDirectory + j) % 997).append('\n');
+                Files.write(subDirectory.resolve("File" + j + ".java"), builder.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import org.exbin.jaguif.App;
+import org.exbin.jaguif.StartupTracer;
 import org.exbin.jaguif.frame.api.FrameModuleApi;
 import org.exbin.jaguif.language.api.LanguageModuleApi;
 import org.exbin.jaguif.ui.api.UiModuleApi;
@@ -156,6 +157,12 @@ public class UiThemeModule implements UiThemeModuleApi {
     }
 
     public void switchToLookAndFeel(String laf) {
+        try (StartupTracer.Phase phase = StartupTracer.begin("look and feel " + laf)) {
+            applyLookAndFeel(laf);
+        }
+    }
+
+    private void applyLookAndFeel(String laf) {
         for (LafProvider provider : lafProviders) {
             if (laf.equals(provider.getLafId())) {
                 provider.applyLaf();